@@ -0,0 +1,199 @@
+package org.stianloader.softmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.stianloader.softmap.MemberIndex.Postings;
+import org.stianloader.softmap.insns.ConstantInsn;
+import org.stianloader.softmap.insns.FieldInsn;
+import org.stianloader.softmap.insns.InsnBlock;
+import org.stianloader.softmap.insns.WildcardInsnBlock;
+
+/**
+ * Discards candidate methods of an expression by matching the opcodes of the expression outwards from the occurrences
+ * of its most selective instruction block (the anchor).
+ *
+ * <p>If a method has at least as many instructions as the expression has blocks, the expression can only match the method if
+ * every block matches an instruction. The blocks of a run of blocks not separated by wildcards match consecutive instructions,
+ * so the run containing the anchor must be located at an occurrence of the anchor, with all preceding runs fitting in before it
+ * and all following runs fitting in after it. Methods where none of the occurrences of the anchor fulfil this cannot be matched.
+ *
+ * <p>The actual matching is always performed from the first instruction onwards, as mappings applied by earlier blocks
+ * affect the later blocks. As such, this merely serves as an inexpensive way of proving that a method cannot be matched.
+ */
+final class AnchorMatcher {
+
+    /**
+     * The runs of an expression along with its anchor.
+     */
+    private static final class Skeleton {
+        private final boolean anchoredStart;
+        private final int anchorOffset;
+        @NotNull
+        private final Postings anchorPostings;
+        private final int anchorRun;
+        private final int @NotNull[] @NotNull[] runs;
+
+        private Skeleton(int @NotNull[] @NotNull[] runs, boolean anchoredStart, int anchorRun, int anchorOffset, @NotNull Postings anchorPostings) {
+            this.runs = runs;
+            this.anchoredStart = anchoredStart;
+            this.anchorRun = anchorRun;
+            this.anchorOffset = anchorOffset;
+            this.anchorPostings = anchorPostings;
+        }
+    }
+
+    @Contract(pure = true)
+    private static boolean isRunAt(@NotNull InstructionStore instructions, int ordinal, int insnCount, int @NotNull[] run, int offset) {
+        if (offset < 0 || offset + run.length > insnCount) {
+            return false;
+        }
+        for (int i = 0; i < run.length; i++) {
+            if (instructions.getOpcode(ordinal, offset + i) != run[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @NotNull
+    private final ConstantIndex constantIndex;
+
+    @NotNull
+    private final MemberIndex memberIndex;
+
+    @NotNull
+    private final MethodTable table;
+
+    AnchorMatcher(@NotNull MethodTable table, @NotNull MemberIndex memberIndex, @NotNull ConstantIndex constantIndex) {
+        this.table = table;
+        this.memberIndex = memberIndex;
+        this.constantIndex = constantIndex;
+    }
+
+    /**
+     * Discards all candidates which the expression cannot match.
+     *
+     * @param expr The expression.
+     * @param candidates The ascendingly sorted ordinals of the candidate methods.
+     * @param ordinalStart The first ordinal to consider (inclusive).
+     * @param ordinalEnd The last ordinal to consider (exclusive).
+     * @return The ascendingly sorted ordinals of the remaining candidates between the start and end ordinal,
+     * or the unaltered candidates if the expression has no anchor.
+     */
+    @Contract(pure = false)
+    int @NotNull[] filter(@NotNull MethodExpression expr, int @NotNull[] candidates, int ordinalStart, int ordinalEnd) {
+        Skeleton skeleton = this.getSkeleton(expr);
+        if (skeleton == null) {
+            return candidates;
+        }
+        int blockCount = expr.getInsns().size();
+        int[] remaining = new int[candidates.length];
+        int remainingCount = 0;
+        for (int i = MethodTable.lowerBound(candidates, ordinalStart); i < candidates.length && candidates[i] < ordinalEnd; i++) {
+            int ordinal = candidates[i];
+            if (this.table.getInstructionCount(ordinal) < blockCount || this.isViable(skeleton, ordinal)) {
+                remaining[remainingCount++] = ordinal;
+            }
+        }
+        return Arrays.copyOf(remaining, remainingCount);
+    }
+
+    @Nullable
+    @Contract(pure = false)
+    private Skeleton getSkeleton(@NotNull MethodExpression expr) {
+        List<int @NotNull[]> runs = new ArrayList<>();
+        int[] run = new int[expr.getInsns().size()];
+        int runLength = 0;
+        Postings anchorPostings = null;
+        int anchorRun = -1;
+        int anchorOffset = -1;
+        for (InsnBlock block : expr.getInsns()) {
+            if (block instanceof WildcardInsnBlock) {
+                if (runLength != 0) {
+                    runs.add(Arrays.copyOf(run, runLength));
+                    runLength = 0;
+                }
+                continue;
+            } else if (block.getOpcode() < 0) {
+                return null;
+            }
+
+            Postings postings = null;
+            if (block instanceof FieldInsn) {
+                postings = this.memberIndex.getFieldPostings((FieldInsn) block);
+            } else if (block instanceof ConstantInsn) {
+                postings = this.constantIndex.getConstantPostings((ConstantInsn) block);
+            }
+            if (postings != null && (anchorPostings == null || postings.getOccurrenceCount() < anchorPostings.getOccurrenceCount())) {
+                anchorPostings = postings;
+                anchorRun = runs.size();
+                anchorOffset = runLength;
+            }
+            run[runLength++] = block.getOpcode();
+        }
+        if (runLength != 0) {
+            runs.add(Arrays.copyOf(run, runLength));
+        }
+        if (anchorPostings == null) {
+            return null;
+        }
+        boolean anchoredStart = !(expr.getInsns().get(0) instanceof WildcardInsnBlock);
+        return new Skeleton(runs.toArray(new int[0][]), anchoredStart, anchorRun, anchorOffset, anchorPostings);
+    }
+
+    @Contract(pure = false)
+    private boolean isViable(@NotNull Skeleton skeleton, int ordinal) {
+        Postings postings = skeleton.anchorPostings;
+        InstructionStore instructions = this.table.getInstructions();
+        int insnCount = instructions.getInstructionCount(ordinal);
+        int[][] runs = skeleton.runs;
+        occurrenceLoop:
+        for (int occurrence = postings.getFirstOccurrence(ordinal, 0); occurrence != postings.getOccurrenceCount() && postings.getOrdinal(occurrence) == ordinal; occurrence++) {
+            int anchorRunStart = postings.getOffset(occurrence) - skeleton.anchorOffset;
+            if (!AnchorMatcher.isRunAt(instructions, ordinal, insnCount, runs[skeleton.anchorRun], anchorRunStart)
+                    || (skeleton.anchoredStart && skeleton.anchorRun == 0 && anchorRunStart != 0)) {
+                continue;
+            }
+
+            // Extend backwards, placing the preceding runs as late as possible
+            int limit = anchorRunStart;
+            for (int run = skeleton.anchorRun - 1; run >= 0; run--) {
+                int start = limit - runs[run].length;
+                if (skeleton.anchoredStart && run == 0) {
+                    if (start < 0 || !AnchorMatcher.isRunAt(instructions, ordinal, insnCount, runs[run], 0)) {
+                        continue occurrenceLoop;
+                    }
+                    start = 0;
+                } else {
+                    while (start >= 0 && !AnchorMatcher.isRunAt(instructions, ordinal, insnCount, runs[run], start)) {
+                        start--;
+                    }
+                    if (start < 0) {
+                        continue occurrenceLoop;
+                    }
+                }
+                limit = start;
+            }
+
+            // Extend forwards, placing the following runs as early as possible
+            limit = anchorRunStart + runs[skeleton.anchorRun].length;
+            for (int run = skeleton.anchorRun + 1; run < runs.length; run++) {
+                int start = limit;
+                while (start + runs[run].length <= insnCount && !AnchorMatcher.isRunAt(instructions, ordinal, insnCount, runs[run], start)) {
+                    start++;
+                }
+                if (start + runs[run].length > insnCount) {
+                    continue occurrenceLoop;
+                }
+                limit = start + runs[run].length;
+            }
+            return true;
+        }
+        return false;
+    }
+}
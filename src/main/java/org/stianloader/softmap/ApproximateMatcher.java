@@ -0,0 +1,223 @@
+package org.stianloader.softmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.stianloader.softmap.insns.InsnBlock;
+import org.stianloader.softmap.insns.WildcardInsnBlock;
+
+/**
+ * Scores methods by how closely their opcodes resemble the instruction blocks of an {@link MethodExpression expression}
+ * which did not match any method.
+ *
+ * <p>The blocks of an expression are split into runs of blocks not separated by wildcards. The distance of a method is the sum
+ * of the edit distances of each run to the substring of the opcodes of the method that is closest to the run,
+ * where blocks which cannot tell which opcode they match match any opcode and pseudo-instructions are ignored.
+ * The edit distances are computed using the bit-parallel algorithm of Myers in the formulation by Hyyrö, which processes
+ * each instruction in a constant amount of operations for runs of up to 64 blocks. Longer runs are split into chunks of 64 blocks.
+ *
+ * <p>The distance ignores the order of runs and the operands of instructions, so it is a lower bound of the amount
+ * of blocks that would need to change for the expression to match the method. Distances exceeding the maximum distance
+ * are not computed in full.
+ */
+final class ApproximateMatcher {
+
+    /**
+     * The scored candidates of a single expression.
+     */
+    final class Ranking {
+        private int candidateCount;
+        private int @NotNull[] candidates = new int[16];
+        @NotNull
+        private final List<long @NotNull[]> chunkMasks;
+        private final int @NotNull[] chunkLengths;
+
+        private Ranking(@NotNull List<long @NotNull[]> chunkMasks, int @NotNull[] chunkLengths) {
+            this.chunkMasks = chunkMasks;
+            this.chunkLengths = chunkLengths;
+        }
+
+        /**
+         * Discards all offered candidates.
+         */
+        @Contract(pure = false)
+        void clear() {
+            this.candidateCount = 0;
+        }
+
+        /**
+         * Offers a method as a candidate. Candidates are scored once {@link #rank(int)} is called.
+         *
+         * @param ordinal The ordinal of the method.
+         */
+        @Contract(pure = false)
+        void offer(int ordinal) {
+            if (this.candidateCount == this.candidates.length) {
+                this.candidates = Arrays.copyOf(this.candidates, this.candidateCount * 2);
+            }
+            this.candidates[this.candidateCount++] = ordinal;
+        }
+
+        /**
+         * Scores all offered candidates and obtains the closest ones.
+         *
+         * @param limit The maximum amount of candidates to obtain.
+         * @return Pairs of the ordinal of a candidate and its distance, in ascending order of the distance.
+         * Candidates exceeding the maximum distance are omitted.
+         */
+        @NotNull
+        @Contract(pure = false)
+        long @NotNull[] rank(int limit) {
+            if (this.chunkLengths.length == 0) {
+                // Every method is equally close to an expression consisting of wildcards only
+                return new long[0];
+            }
+            long[] ranked = new long[limit];
+            int rankedCount = 0;
+            for (int i = 0; i < this.candidateCount; i++) {
+                int ordinal = this.candidates[i];
+                int distance = ApproximateMatcher.this.getDistance(this.chunkMasks, this.chunkLengths, ordinal);
+                if (distance > ApproximateMatcher.this.maximumDistance) {
+                    continue;
+                }
+                // Sort by distance first and then by ordinal
+                long key = ((long) distance << 32) | ordinal;
+                int insertion = rankedCount;
+                while (insertion != 0 && ranked[insertion - 1] > key) {
+                    insertion--;
+                }
+                if (insertion == limit) {
+                    continue;
+                }
+                System.arraycopy(ranked, insertion, ranked, insertion + 1, Math.min(rankedCount, limit - 1) - insertion);
+                ranked[insertion] = key;
+                rankedCount = Math.min(rankedCount + 1, limit);
+            }
+            return Arrays.copyOf(ranked, rankedCount);
+        }
+    }
+
+    private static final int CHUNK_LENGTH = Long.SIZE;
+
+    /**
+     * Obtains the distance of a pair returned by {@link Ranking#rank(int)}.
+     *
+     * @param pair The pair.
+     * @return The distance.
+     */
+    @Contract(pure = true)
+    static int getDistance(long pair) {
+        return (int) (pair >>> 32);
+    }
+
+    /**
+     * Obtains the ordinal of a pair returned by {@link Ranking#rank(int)}.
+     *
+     * @param pair The pair.
+     * @return The ordinal of the method.
+     */
+    @Contract(pure = true)
+    static int getOrdinal(long pair) {
+        return (int) pair;
+    }
+
+    private final int maximumDistance;
+
+    @NotNull
+    private final MethodTable table;
+
+    ApproximateMatcher(@NotNull MethodTable table, int maximumDistance) {
+        this.table = table;
+        this.maximumDistance = maximumDistance;
+    }
+
+    @Contract(pure = false)
+    private int getDistance(@NotNull List<long @NotNull[]> chunkMasks, int @NotNull[] chunkLengths, int ordinal) {
+        InstructionStore instructions = this.table.getInstructions();
+        int insnCount = instructions.getInstructionCount(ordinal);
+        int distance = 0;
+        for (int chunk = 0; chunk < chunkLengths.length; chunk++) {
+            long[] masks = chunkMasks.get(chunk);
+            int length = chunkLengths[chunk];
+            long lastBit = 1L << (length - 1);
+            long positiveVertical = -1L;
+            long negativeVertical = 0L;
+            int score = length;
+            int bestScore = length;
+            for (int offset = 0; offset < insnCount && bestScore != 0; offset++) {
+                int opcode = instructions.getOpcode(ordinal, offset);
+                if (opcode < 0) {
+                    continue;
+                }
+                long equal = masks[opcode];
+                long verticalChange = equal | negativeVertical;
+                long horizontalChange = (((equal & positiveVertical) + positiveVertical) ^ positiveVertical) | equal;
+                long positiveHorizontal = negativeVertical | ~(horizontalChange | positiveVertical);
+                long negativeHorizontal = positiveVertical & horizontalChange;
+                if ((positiveHorizontal & lastBit) != 0) {
+                    score++;
+                } else if ((negativeHorizontal & lastBit) != 0) {
+                    score--;
+                }
+                // The run may start at any instruction, so the first row of the matrix stays zero
+                positiveHorizontal <<= 1;
+                negativeHorizontal <<= 1;
+                positiveVertical = negativeHorizontal | ~(verticalChange | positiveHorizontal);
+                negativeVertical = positiveHorizontal & verticalChange;
+                bestScore = Math.min(bestScore, score);
+            }
+            distance += bestScore;
+            if (distance > this.maximumDistance) {
+                break;
+            }
+        }
+        return distance;
+    }
+
+    /**
+     * Creates the ranking of an expression, splitting its blocks into runs.
+     *
+     * @param expr The expression.
+     * @return The ranking, to which candidates are offered as the expression is applied.
+     */
+    @NotNull
+    @Contract(pure = true, value = "_ -> new")
+    Ranking newRanking(@NotNull MethodExpression expr) {
+        List<long @NotNull[]> chunkMasks = new ArrayList<>();
+        int[] chunkLengths = new int[expr.getInsns().size()];
+        long[] masks = null;
+        int length = 0;
+        for (InsnBlock block : expr.getInsns()) {
+            if (block instanceof WildcardInsnBlock || length == ApproximateMatcher.CHUNK_LENGTH) {
+                if (length != 0) {
+                    chunkLengths[chunkMasks.size()] = length;
+                    chunkMasks.add(masks);
+                    length = 0;
+                }
+                if (block instanceof WildcardInsnBlock) {
+                    continue;
+                }
+            }
+            if (length == 0) {
+                masks = new long[256];
+            }
+            long bit = 1L << length++;
+            int opcode = block.getOpcode();
+            if (opcode < 0) {
+                for (int i = 0; i < masks.length; i++) {
+                    masks[i] |= bit;
+                }
+            } else {
+                masks[opcode] |= bit;
+            }
+        }
+        if (length != 0) {
+            chunkLengths[chunkMasks.size()] = length;
+            chunkMasks.add(masks);
+        }
+        return new Ranking(chunkMasks, Arrays.copyOf(chunkLengths, chunkMasks.size()));
+    }
+}
@@ -0,0 +1,179 @@
+package org.stianloader.softmap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Unmodifiable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+import org.stianloader.softmap.SoftmapContext.ApplicationResult;
+import org.stianloader.softmap.classpath.ClassHeaderCache;
+import org.stianloader.softmap.classpath.ClassNodeCache;
+import org.stianloader.softmap.classpath.ClassStore;
+
+/**
+ * Applies the expressions of a single {@link SoftmapContext} to many versions of a jar concurrently.
+ *
+ * <p>The context is parsed once by the caller and its matchers are {@link SoftmapContext#setCompilingMatchers(boolean) compiled}
+ * (if enabled) once before any version is applied, after which all versions share the same expressions and matchers.
+ * Each version is loaded into its own {@link ClassStore#mapped() mapped store}, so that the class files occupy no heap memory.
+ * Class files which are identical across versions share a single header, and the names and descriptors of all other headers
+ * are interned through a shared {@link SymbolTable}, as the headers of all versions are held in memory until the versions are applied. Method bodies are decoded through a
+ * {@link ClassNodeCache} per version.
+ *
+ * <p>The memory budget bounds the total size of the class files of the classes cached by the versions which are being applied
+ * at the same time. Every version reserves the size of all of its class files (at most the whole budget) before the expressions
+ * are applied and releases it afterwards. As such small versions are applied in parallel, whereas a version exceeding the budget
+ * is applied with a cache as large as the budget once no other version is being applied. Loading versions is not part of the budget.
+ *
+ * <p>Applying the expressions to a version is equivalent to {@link SoftmapContext#tryApply(ClassNodeCache, MappingSeed, ClassHeaderCache)},
+ * so the results do not depend on the amount of versions applied in parallel.
+ */
+public final class BatchApplication {
+
+    @NotNull
+    private final SoftmapContext context;
+
+    /**
+     * The memory budget in KiB, which is the unit of the permits of the budget semaphore.
+     */
+    private final int memoryBudget;
+
+    private final int parallelism;
+
+    /**
+     * Creates a batch application of a context.
+     *
+     * @param context The context to apply. The context must not be modified while the batch is applied.
+     * @param memoryBudget The maximum total size in bytes of the class files of all classes cached by versions being applied at the same time.
+     * @param parallelism The maximum amount of versions being loaded or applied at the same time.
+     */
+    public BatchApplication(@NotNull SoftmapContext context, long memoryBudget, int parallelism) {
+        if (memoryBudget < 1024) {
+            throw new IllegalArgumentException("The memory budget must be at least 1 KiB: " + memoryBudget);
+        }
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("The parallelism must be positive: " + parallelism);
+        }
+        this.context = context;
+        this.memoryBudget = (int) Math.min(Integer.MAX_VALUE, memoryBudget / 1024);
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Obtains the header of a class, that is the class without method bodies, debug information and frames.
+     *
+     * @param classFile The class file.
+     * @param headers The headers of all class files decoded so far, by the SHA-256 digest of the class file.
+     * @param symbols The table interning the names and descriptors of new headers.
+     * @return The header, which is shared with all identical class files.
+     */
+    @NotNull
+    @Contract(pure = false)
+    private static ClassNode getHeader(byte @NotNull[] classFile, @NotNull Map<@NotNull ByteBuffer, @NotNull ClassNode> headers, @NotNull SymbolTable symbols) {
+        ByteBuffer digest;
+        try {
+            // MessageDigest instances are not thread-safe, and cheap to obtain compared to decoding the class
+            digest = ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(classFile));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Every java runtime is required to support SHA-256", e);
+        }
+        return headers.computeIfAbsent(digest, ignore -> {
+            ClassNode header = new ClassNode();
+            new ClassReader(classFile).accept(header, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+            symbols.internHeader(header);
+            return header;
+        });
+    }
+
+    @NotNull
+    @Contract(pure = false)
+    private ApplicationResult apply(@NotNull Path jar, @NotNull Map<@NotNull ByteBuffer, @NotNull ClassNode> sharedHeaders,
+            @NotNull SymbolTable symbols, @NotNull Semaphore budget,
+            @Nullable MappingSeed seed, @Nullable ClassHeaderCache libraries) throws IOException, InterruptedException {
+        try (ClassStore store = ClassStore.mapped()) {
+            store.addJar(jar);
+            List<@NotNull ClassNode> headers = new ArrayList<>(store.getClassCount());
+            long size = 0;
+            for (int i = 0; i < store.getClassCount(); i++) {
+                headers.add(BatchApplication.getHeader(store.getClassBytes(i), sharedHeaders, symbols));
+                size += store.getClassSize(i);
+            }
+
+            int reservation = (int) Math.max(1, Math.min(this.memoryBudget, (size + 1023) / 1024));
+            budget.acquire(reservation);
+            try {
+                ClassNodeCache bodies = new ClassNodeCache(store, reservation * 1024L, 0);
+                return this.context.tryApply(headers, bodies, seed, libraries, null, null);
+            } finally {
+                budget.release(reservation);
+            }
+        }
+    }
+
+    /**
+     * Applies the expressions to all versions, using a new thread pool of the configured parallelism.
+     *
+     * @param jars The jar files of the versions.
+     * @param seed The mappings to write into the base frame of every version before applying any expression,
+     * or null to start without mappings.
+     * @param libraries The headers of library classes shared by all versions, or null to compute method realms from the classes
+     * of each version only. Beware that the libraries of different versions may differ.
+     * @return The result of each version, in the order of the jar files.
+     * @throws IOException If any jar file could not be read.
+     * @throws InterruptedException If the calling thread was interrupted while waiting for the versions to be applied.
+     */
+    @NotNull
+    @Unmodifiable
+    @Contract(pure = false)
+    public List<@NotNull ApplicationResult> apply(@NotNull List<@NotNull Path> jars, @Nullable MappingSeed seed,
+            @Nullable ClassHeaderCache libraries) throws IOException, InterruptedException {
+        this.context.prepareMatchers();
+        Map<@NotNull ByteBuffer, @NotNull ClassNode> headers = new ConcurrentHashMap<>();
+        SymbolTable symbols = new SymbolTable();
+        // Fairness ensures that large reservations are not starved by a stream of small ones
+        Semaphore budget = new Semaphore(this.memoryBudget, true);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.parallelism, Math.max(1, jars.size())));
+        try {
+            List<@NotNull Future<@NotNull ApplicationResult>> futures = new ArrayList<>(jars.size());
+            for (Path jar : jars) {
+                futures.add(executor.submit(() -> this.apply(jar, headers, symbols, budget, seed, libraries)));
+            }
+            List<@NotNull ApplicationResult> results = new ArrayList<>(jars.size());
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw new IOException("Unable to apply the expressions to " + jars.get(i), cause);
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IllegalStateException("Unable to apply the expressions to " + jars.get(i), cause);
+                }
+            }
+            return Collections.unmodifiableList(results);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package org.stianloader.softmap;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.stianloader.softmap.insns.ConstantInsn;
+import org.stianloader.softmap.insns.FieldInsn;
+import org.stianloader.softmap.insns.InsnBlock;
+import org.stianloader.softmap.insns.MatchResult;
+import org.stianloader.softmap.tokens.StringToken;
+
+/**
+ * A memo table of the results of evaluating instruction blocks against the instructions of the methods within a {@link MethodTable},
+ * shared by all {@link MethodExpression expressions} applied in a single run.
+ *
+ * <p>Only blocks which merely compare the operands of an instruction against literals and never touch the remapper are memoized,
+ * as their result solely depends on the instruction. Blocks which compare the same literals (e.g. the same explicitly named field)
+ * are interned to the same block id, no matter which expression they belong to, so that they share their memoized results.
+ * As such, no entry ever needs to be invalidated. Blocks whose comparisons are cheaper than a lookup (e.g. those only checking
+ * the opcode or a local variable index) are not memoized.
+ *
+ * <p>Blocks cannot be interned as instances, as each block refers to the tokens of its own expression, which are used as the location
+ * of errors. For the same reason, memoized failures are only reused by the block instance that produced them, while
+ * successful matches are reused by all blocks with the same id.
+ */
+final class BlockMemo {
+
+    private static final int MAXIMUM_CAPACITY = 1 << 20;
+
+    private static final int NOT_MEMOIZED = -1;
+
+    private final int @NotNull[] @NotNull[] expressionBlockIds;
+
+    // Open addressing hash table, an entry is empty if its result is null
+    private int @NotNull[] keyBlocks = new int[1024];
+    private int @NotNull[] keyOffsets = new int[1024];
+    private int @NotNull[] keyOrdinals = new int[1024];
+    @Nullable
+    private InsnBlock @NotNull[] producers = new InsnBlock[1024];
+    @Nullable
+    private MatchResult @NotNull[] results = new MatchResult[1024];
+    private int size;
+
+    BlockMemo(@NotNull List<@NotNull MethodExpression> expressions) {
+        Map<@NotNull List<?>, @NotNull Integer> blockIds = new HashMap<>();
+        this.expressionBlockIds = new int[expressions.size()][];
+        for (int i = 0; i < expressions.size(); i++) {
+            List<? extends @NotNull InsnBlock> insnBlocks = expressions.get(i).getInsns();
+            int[] ids = new int[insnBlocks.size()];
+            for (int j = 0; j < ids.length; j++) {
+                List<?> key = BlockMemo.getLiteralKey(insnBlocks.get(j));
+                ids[j] = key == null ? BlockMemo.NOT_MEMOIZED : blockIds.computeIfAbsent(key, (ignore) -> blockIds.size());
+            }
+            this.expressionBlockIds[i] = ids;
+        }
+    }
+
+    /**
+     * Obtains the literals compared by a block, should the block be memoized.
+     *
+     * @param block The block.
+     * @return The kind of the block along with its opcode and literals, or null if the block is not memoized.
+     */
+    @Nullable
+    @Contract(pure = true)
+    private static List<?> getLiteralKey(@NotNull InsnBlock block) {
+        if (block.getClass() == FieldInsn.class && MatcherCompiler.isPure(block)) {
+            FieldInsn fieldInsn = (FieldInsn) block;
+            return Arrays.asList(FieldInsn.class, block.getOpcode(), BlockMemo.getText(fieldInsn.getFieldOwner()),
+                    BlockMemo.getText(fieldInsn.getFieldName()), BlockMemo.getText(fieldInsn.getFieldDesc()));
+        } else if (block.getClass() == ConstantInsn.class && block.getOpcode() == Opcodes.LDC && MatcherCompiler.isPure(block)) {
+            ConstantInsn constantInsn = (ConstantInsn) block;
+            if (constantInsn.getConstantToken() == null) {
+                return null;
+            }
+            return Arrays.asList(ConstantInsn.class, block.getOpcode(), constantInsn.getConstant());
+        }
+        return null;
+    }
+
+    @Nullable
+    @Contract(pure = true)
+    private static String getText(@Nullable StringToken token) {
+        return token == null ? null : token.getText();
+    }
+
+    @Contract(pure = true)
+    private static int hash(int blockId, int ordinal, int offset) {
+        int hash = blockId * 0x9E3779B9 + ordinal;
+        hash = hash * 0x9E3779B9 + offset;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Evaluates a block against an instruction, reusing the memoized result if there is one.
+     *
+     * @param block The block.
+     * @param blockId The id of the block as per {@link #getBlockIds(int)}.
+     * @param insn The instruction.
+     * @param ordinal The ordinal of the method declaring the instruction.
+     * @param offset The offset of the instruction within the method, including pseudo-instructions.
+     * @param remapper The remapper.
+     * @return The result of {@link InsnBlock#matchesInstruction(AbstractInsnNode, FramedRemapper)}.
+     */
+    @NotNull
+    @Contract(pure = false, mutates = "this, param6")
+    MatchResult evaluate(@NotNull InsnBlock block, int blockId, @NotNull AbstractInsnNode insn, int ordinal, int offset, @NotNull FramedRemapper remapper) {
+        if (blockId == BlockMemo.NOT_MEMOIZED || insn.getOpcode() != block.getOpcode()) {
+            // Opcode mismatches are cheaper to detect than to look up
+            return block.matchesInstruction(insn, remapper);
+        }
+
+        int mask = this.results.length - 1;
+        int slot = BlockMemo.hash(blockId, ordinal, offset) & mask;
+        MatchResult memoized;
+        while ((memoized = this.results[slot]) != null) {
+            if (this.keyBlocks[slot] == blockId && this.keyOrdinals[slot] == ordinal && this.keyOffsets[slot] == offset) {
+                if (memoized.isBreakingMatching() || this.producers[slot] == block) {
+                    return memoized;
+                }
+                // The failure references the tokens of another block
+                MatchResult result = block.matchesInstruction(insn, remapper);
+                this.producers[slot] = block;
+                this.results[slot] = result;
+                return result;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        MatchResult result = block.matchesInstruction(insn, remapper);
+        if (this.size == BlockMemo.MAXIMUM_CAPACITY / 2) {
+            return result;
+        }
+        this.keyBlocks[slot] = blockId;
+        this.keyOrdinals[slot] = ordinal;
+        this.keyOffsets[slot] = offset;
+        this.producers[slot] = block;
+        this.results[slot] = result;
+        if (++this.size * 2 > this.results.length) {
+            this.grow();
+        }
+        return result;
+    }
+
+    /**
+     * Obtains the ids of the blocks of an expression. Blocks which compare the same literals share the same id,
+     * blocks that are not memoized have an id of -1.
+     *
+     * @param expressionIndex The index of the expression within the list of expressions the memo table was created for.
+     * @return The ids of the blocks of the expression.
+     */
+    @Contract(pure = true)
+    int @NotNull[] getBlockIds(int expressionIndex) {
+        return this.expressionBlockIds[expressionIndex];
+    }
+
+    @Contract(pure = false)
+    private void grow() {
+        int[] keyBlocks = this.keyBlocks;
+        int[] keyOrdinals = this.keyOrdinals;
+        int[] keyOffsets = this.keyOffsets;
+        InsnBlock[] producers = this.producers;
+        MatchResult[] results = this.results;
+        int capacity = results.length * 2;
+        this.keyBlocks = new int[capacity];
+        this.keyOrdinals = new int[capacity];
+        this.keyOffsets = new int[capacity];
+        this.producers = new InsnBlock[capacity];
+        this.results = new MatchResult[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == null) {
+                continue;
+            }
+            int slot = BlockMemo.hash(keyBlocks[i], keyOrdinals[i], keyOffsets[i]) & mask;
+            while (this.results[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            this.keyBlocks[slot] = keyBlocks[i];
+            this.keyOrdinals[slot] = keyOrdinals[i];
+            this.keyOffsets[slot] = keyOffsets[i];
+            this.producers[slot] = producers[i];
+            this.results[slot] = results[i];
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package org.stianloader.softmap;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * An index of the normalized bodies of the methods within a {@link MethodTable}, used to recognize methods
+ * that did not change between two versions of a jar.
+ *
+ * <p>The hash of a method body covers the opcodes and operands of all instructions as well as the descriptor and
+ * static-ness of the method. Names that are likely to be obfuscated are abstracted out: The names of classes within the table
+ * (including occurrences within descriptors) and the names of members owned by classes within the table are not hashed,
+ * whereas the names of library classes and their members are. As such, renaming classes or members between versions does not change
+ * the hash, while changing the instructions does. Pseudo-instructions and the operands of switch instructions are not hashed.
+ */
+final class BodyHashIndex {
+
+    private static final long FNV_PRIME = 0x100000001B3L;
+
+    /**
+     * Computes the normalized hash of the body of a method.
+     *
+     * @param table The table declaring the method.
+     * @param ordinal The ordinal of the method.
+     * @return The hash.
+     */
+    @Contract(pure = false)
+    static long getBodyHash(@NotNull MethodTable table, int ordinal) {
+        MethodNode method = table.getMethodHeader(ordinal);
+        long hash = 0xCBF29CE484222325L;
+        hash = BodyHashIndex.hashDesc(table, method.desc, hash);
+        hash = BodyHashIndex.hash(hash, method.access & Opcodes.ACC_STATIC);
+        InstructionStore.Cursor insn = table.getInstructions().open(ordinal);
+        while (insn.next()) {
+            int opcode = insn.getOpcode();
+            if (opcode < 0) {
+                continue;
+            }
+            hash = BodyHashIndex.hash(hash, opcode);
+            if (opcode >= Opcodes.GETSTATIC && opcode <= Opcodes.INVOKEINTERFACE) {
+                String owner = insn.getOwner();
+                if (table.getClassIndex(owner) == -1) {
+                    hash = BodyHashIndex.hash(hash, owner.hashCode());
+                    hash = BodyHashIndex.hash(hash, insn.getName().hashCode());
+                }
+                hash = BodyHashIndex.hashDesc(table, insn.getDesc(), hash);
+            } else if (opcode == Opcodes.INVOKEDYNAMIC) {
+                hash = BodyHashIndex.hash(hash, insn.getName().hashCode());
+                hash = BodyHashIndex.hashDesc(table, insn.getDesc(), hash);
+            } else if (opcode == Opcodes.NEW || opcode == Opcodes.ANEWARRAY || opcode == Opcodes.CHECKCAST
+                    || opcode == Opcodes.INSTANCEOF || opcode == Opcodes.MULTIANEWARRAY) {
+                String type = insn.getDesc();
+                hash = BodyHashIndex.hashDesc(table, type.charAt(0) == '[' ? type : 'L' + type + ';', hash);
+                if (opcode == Opcodes.MULTIANEWARRAY) {
+                    hash = BodyHashIndex.hash(hash, insn.getIntOperand());
+                }
+            } else if (opcode == Opcodes.LDC) {
+                Object constant = insn.getConstant();
+                if (constant instanceof Type) {
+                    hash = BodyHashIndex.hashDesc(table, ((Type) constant).getDescriptor(), hash);
+                } else {
+                    hash = BodyHashIndex.hash(hash, constant.hashCode());
+                }
+            } else if (InstructionStore.OPERAND_COUNTS[opcode] != 0) {
+                hash = BodyHashIndex.hash(hash, insn.getIntOperand());
+            }
+        }
+        return hash ^ (hash >>> 29);
+    }
+
+    @Contract(pure = true)
+    private static long hash(long hash, int value) {
+        return (hash ^ value) * BodyHashIndex.FNV_PRIME;
+    }
+
+    @Contract(pure = false)
+    private static long hashDesc(@NotNull MethodTable table, @NotNull String desc, long hash) {
+        for (int i = 0; i < desc.length(); i++) {
+            char c = desc.charAt(i);
+            hash = BodyHashIndex.hash(hash, c);
+            if (c == 'L') {
+                int end = desc.indexOf(';', i);
+                String name = desc.substring(i + 1, end);
+                if (table.getClassIndex(name) == -1) {
+                    hash = BodyHashIndex.hash(hash, name.hashCode());
+                }
+                i = end;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * The ordinals of all methods by their hash, -1 for hashes shared by multiple methods.
+     */
+    @Nullable
+    private Map<@NotNull Long, @NotNull Integer> methods;
+
+    @NotNull
+    private final MethodTable table;
+
+    BodyHashIndex(@NotNull MethodTable table) {
+        this.table = table;
+    }
+
+    /**
+     * Obtains the only method with the given hash.
+     *
+     * @param hash The hash, as per {@link #getBodyHash(MethodTable, int)}.
+     * @return The ordinal of the method, -1 if no method or more than one method has the hash.
+     */
+    @Contract(pure = false)
+    int getUniqueMethod(long hash) {
+        Map<Long, Integer> methods = this.methods;
+        if (methods == null) {
+            // The index is built lazily as it requires walking over all instructions of all methods
+            this.methods = methods = new HashMap<>();
+            for (int ordinal = 0; ordinal < this.table.getMethodCount(); ordinal++) {
+                methods.merge(BodyHashIndex.getBodyHash(this.table, ordinal), ordinal, (a, b) -> -1);
+            }
+        }
+        Integer ordinal = methods.get(hash);
+        return ordinal == null ? -1 : ordinal;
+    }
+}
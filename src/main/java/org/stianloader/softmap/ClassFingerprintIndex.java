@@ -0,0 +1,230 @@
+package org.stianloader.softmap;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * An index of the structure of the classes within a {@link MethodTable}, that is their superclass,
+ * their interfaces, the descriptors of their fields and methods as well as their access flags.
+ *
+ * <p>The index answers containment queries: Which classes extend a given class, implement all given interfaces,
+ * declare at least the given amount of fields and methods with each given descriptor and have all given access flags set?
+ * Classes are identified by their index within the {@link MethodTable} and returned as ascendingly sorted arrays.
+ */
+final class ClassFingerprintIndex {
+
+    /**
+     * The classes declaring a member with a given descriptor, along with the amount of such members declared by each class.
+     */
+    private static final class DescriptorOccurrences {
+        private int @NotNull[] classes = new int[4];
+        private int @NotNull[] counts = new int[4];
+        private int length;
+
+        @Contract(pure = false)
+        private void add(int classIndex) {
+            if (this.length != 0 && this.classes[this.length - 1] == classIndex) {
+                this.counts[this.length - 1]++;
+                return;
+            }
+            if (this.length == this.classes.length) {
+                this.classes = Arrays.copyOf(this.classes, this.length * 2);
+                this.counts = Arrays.copyOf(this.counts, this.length * 2);
+            }
+            this.classes[this.length] = classIndex;
+            this.counts[this.length++] = 1;
+        }
+
+        @Contract(pure = true)
+        private int @NotNull[] getClasses(int minimumCount) {
+            int[] classes = new int[this.length];
+            int classCount = 0;
+            for (int i = 0; i < this.length; i++) {
+                if (this.counts[i] >= minimumCount) {
+                    classes[classCount++] = this.classes[i];
+                }
+            }
+            return Arrays.copyOf(classes, classCount);
+        }
+    }
+
+    /**
+     * The structure a class is required to have. An empty query is fulfilled by every class.
+     */
+    static final class Query {
+        private int access;
+        @NotNull
+        private final Map<@NotNull String, @NotNull Integer> fieldDescs = new HashMap<>();
+        @NotNull
+        private final Map<@NotNull String, @NotNull Integer> interfaces = new HashMap<>();
+        @NotNull
+        private final Map<@NotNull String, @NotNull Integer> methodDescs = new HashMap<>();
+        @Nullable
+        private String superName;
+
+        @Contract(pure = true)
+        boolean isEmpty() {
+            return this.access == 0 && this.superName == null && this.interfaces.isEmpty() && this.fieldDescs.isEmpty() && this.methodDescs.isEmpty();
+        }
+
+        @NotNull
+        @Contract(mutates = "this", value = "_ -> this")
+        Query requireAccess(int access) {
+            this.access |= access;
+            return this;
+        }
+
+        @NotNull
+        @Contract(mutates = "this", value = "_ -> this")
+        Query requireField(@NotNull String desc) {
+            this.fieldDescs.merge(desc, 1, Integer::sum);
+            return this;
+        }
+
+        @NotNull
+        @Contract(mutates = "this", value = "_ -> this")
+        Query requireInterface(@NotNull String name) {
+            this.interfaces.put(name, 1);
+            return this;
+        }
+
+        @NotNull
+        @Contract(mutates = "this", value = "_ -> this")
+        Query requireMethod(@NotNull String desc) {
+            this.methodDescs.merge(desc, 1, Integer::sum);
+            return this;
+        }
+
+        @NotNull
+        @Contract(mutates = "this", value = "_ -> this")
+        Query requireSuperclass(@NotNull String name) {
+            this.superName = name;
+            return this;
+        }
+    }
+
+    @NotNull
+    private static final int @NotNull[] NO_CLASSES = new int[0];
+
+    @NotNull
+    private final Map<@NotNull String, @NotNull DescriptorOccurrences> fieldDescs = new HashMap<>();
+
+    private boolean indexed;
+
+    @NotNull
+    private final Map<@NotNull String, @NotNull DescriptorOccurrences> interfaces = new HashMap<>();
+
+    @NotNull
+    private final Map<@NotNull String, @NotNull DescriptorOccurrences> methodDescs = new HashMap<>();
+
+    @NotNull
+    private final Map<@NotNull String, @NotNull DescriptorOccurrences> superclasses = new HashMap<>();
+
+    @NotNull
+    private final MethodTable table;
+
+    ClassFingerprintIndex(@NotNull MethodTable table) {
+        this.table = table;
+    }
+
+    @Contract(pure = false)
+    private void ensureIndexed() {
+        if (this.indexed) {
+            return;
+        }
+        this.indexed = true;
+        for (int classIndex = 0; classIndex < this.table.getClassCount(); classIndex++) {
+            ClassNode node = this.table.getClassNode(classIndex);
+            if (node.superName != null) {
+                this.superclasses.computeIfAbsent(node.superName, (ignore) -> new DescriptorOccurrences()).add(classIndex);
+            }
+            for (String itf : node.interfaces) {
+                this.interfaces.computeIfAbsent(itf, (ignore) -> new DescriptorOccurrences()).add(classIndex);
+            }
+            for (FieldNode field : node.fields) {
+                this.fieldDescs.computeIfAbsent(field.desc, (ignore) -> new DescriptorOccurrences()).add(classIndex);
+            }
+            for (MethodNode method : node.methods) {
+                this.methodDescs.computeIfAbsent(method.desc, (ignore) -> new DescriptorOccurrences()).add(classIndex);
+            }
+        }
+    }
+
+    @Contract(pure = false)
+    private int @Nullable[] intersect(int @Nullable[] classes, @NotNull Map<@NotNull String, @NotNull DescriptorOccurrences> index, @NotNull Map<@NotNull String, @NotNull Integer> required) {
+        for (Map.Entry<String, Integer> entry : required.entrySet()) {
+            DescriptorOccurrences occurrences = index.get(entry.getKey());
+            classes = MethodTable.intersect(classes, occurrences == null ? ClassFingerprintIndex.NO_CLASSES : occurrences.getClasses(entry.getValue()));
+        }
+        return classes;
+    }
+
+    /**
+     * Obtains all classes having the structure required by a query which can be mapped to a given name,
+     * that is all classes which are either already mapped to the name or not mapped yet while no other class is mapped to the name.
+     *
+     * @param query The query.
+     * @param remapper The remapper holding the current mappings.
+     * @param mappedName The name the class is to be mapped to.
+     * @return The ascendingly sorted indices of all matching classes.
+     */
+    @Contract(pure = false)
+    int @NotNull[] getMappableClasses(@NotNull Query query, @NotNull FramedRemapper remapper, @NotNull String mappedName) {
+        int[] classes = this.getMatchingClasses(query);
+        int[] mappable = new int[classes == null ? this.table.getClassCount() : classes.length];
+        int mappableCount = 0;
+        String mappedSrcName = remapper.getSourceClass(mappedName);
+        for (int i = 0; i < mappable.length; i++) {
+            int classIndex = classes == null ? i : classes[i];
+            String srcName = this.table.getClassNode(classIndex).name;
+            String dstName = remapper.getMappedClassOpt(srcName);
+            if ((srcName.equals(dstName) && (mappedSrcName == null || mappedSrcName.equals(srcName))) || mappedName.equals(dstName)) {
+                mappable[mappableCount++] = classIndex;
+            }
+        }
+        return Arrays.copyOf(mappable, mappableCount);
+    }
+
+    /**
+     * Obtains all classes having the structure required by a query.
+     *
+     * @param query The query.
+     * @return The ascendingly sorted indices of all matching classes, or null if the query is empty.
+     */
+    @Contract(pure = false)
+    int @Nullable[] getMatchingClasses(@NotNull Query query) {
+        if (query.isEmpty()) {
+            return null;
+        }
+        this.ensureIndexed();
+        int[] classes = null;
+        String superName = query.superName;
+        if (superName != null) {
+            DescriptorOccurrences occurrences = this.superclasses.get(superName);
+            classes = occurrences == null ? ClassFingerprintIndex.NO_CLASSES : occurrences.getClasses(1);
+        }
+        classes = this.intersect(classes, this.interfaces, query.interfaces);
+        classes = this.intersect(classes, this.fieldDescs, query.fieldDescs);
+        classes = this.intersect(classes, this.methodDescs, query.methodDescs);
+        if (query.access != 0) {
+            int[] matching = new int[classes == null ? this.table.getClassCount() : classes.length];
+            int matchCount = 0;
+            for (int i = 0; i < matching.length; i++) {
+                int classIndex = classes == null ? i : classes[i];
+                if ((this.table.getClassNode(classIndex).access & query.access) == query.access) {
+                    matching[matchCount++] = classIndex;
+                }
+            }
+            classes = Arrays.copyOf(matching, matchCount);
+        }
+        return classes;
+    }
+}
@@ -0,0 +1,600 @@
+package org.stianloader.softmap;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Unmodifiable;
+import org.stianloader.softmap.SimpleFramedRemapper.MethodLoc;
+import org.stianloader.softmap.SimpleFramedRemapper.MethodRealm;
+
+/**
+ * A {@link FramedRemapper} which can be shared between multiple threads.
+ *
+ * <p>The lowermost frame (the committed frame) is shared by all threads. All other frames are speculative and local to
+ * the thread which pushed them, so that each thread can evaluate mappings independently of other threads.
+ * Merging the lowermost speculative frame of a thread commits its mappings to the committed frame, at which point they
+ * become visible to all threads. Committing fails if another thread has committed a different mapping for any of
+ * the classes or members of the frame in the meantime, or has mapped a different class or member to the same destination name.
+ *
+ * <p>The committed frame is an immutable snapshot which is atomically replaced on every commit.
+ * As such lookups never block, and a commit either becomes visible as a whole or not at all.
+ *
+ * <p>The speculative frames of a thread are released once the thread has committed, merged or discarded all of them,
+ * so that pooled threads do not retain frames (or this remapper) after they are done. Threads should therefore
+ * discard their frames should the evaluation of a frame fail.
+ *
+ * <p>Unlike {@link SimpleFramedRemapper}, the lookup methods of this class return null for all unmapped
+ * classes and members.
+ */
+public final class ConcurrentFramedRemapper implements FramedRemapper {
+
+    /**
+     * A speculative frame of a thread.
+     */
+    private static final class Frame implements FramedRemapper.RemapperFrame {
+        @NotNull
+        private final Map<@NotNull String, @NotNull String> classNameMappings = new HashMap<>();
+
+        /**
+         * The field and method mappings of the frame. Like in {@link SimpleFramedRemapper}, methods are stored under the
+         * declaring class of their realm.
+         */
+        @NotNull
+        private final Map<@NotNull MethodLoc, @NotNull String> methodFieldMappings = new HashMap<>();
+
+        /**
+         * Reverse index of the class mappings, as in {@link SimpleFramedRemapper}.
+         */
+        @NotNull
+        private final Map<@NotNull String, @NotNull String> classNameSources = new HashMap<>();
+
+        /**
+         * Reverse index of the field and method mappings keyed by owner, destination name and source descriptor,
+         * as in {@link SimpleFramedRemapper}. Methods are stored for every member of their realm.
+         */
+        @NotNull
+        private final Map<@NotNull MethodLoc, @NotNull String> methodFieldSources = new HashMap<>();
+
+        private void putClass(@NotNull String srcName, @NotNull String dstName) {
+            String oldDstName = this.classNameMappings.put(srcName, dstName);
+            if (oldDstName != null && !oldDstName.equals(dstName)) {
+                this.classNameSources.remove(oldDstName, srcName);
+            }
+            this.classNameSources.put(dstName, srcName);
+        }
+
+        private void putMember(@NotNull MethodLoc loc, @NotNull String dstName, @NotNull Set<@NotNull String> owners) {
+            String oldDstName = this.methodFieldMappings.put(loc, dstName);
+            for (String owner : owners) {
+                if (oldDstName != null && !oldDstName.equals(dstName)) {
+                    this.methodFieldSources.remove(new MethodLoc(owner, oldDstName, loc.getDesc()), loc.getName());
+                }
+                this.methodFieldSources.put(new MethodLoc(owner, dstName, loc.getDesc()), loc.getName());
+            }
+        }
+    }
+
+    /**
+     * A set of mappings within the committed frame. Layers are never modified once published.
+     */
+    private static final class Layer {
+        @NotNull
+        private final Map<@NotNull String, @NotNull String> classNameMappings;
+        @NotNull
+        private final Map<@NotNull MethodLoc, @NotNull String> methodFieldMappings;
+        @NotNull
+        private final Map<@NotNull String, @NotNull String> classNameSources;
+        @NotNull
+        private final Map<@NotNull MethodLoc, @NotNull String> methodFieldSources;
+
+        private Layer(@NotNull Map<@NotNull String, @NotNull String> classNameMappings, @NotNull Map<@NotNull MethodLoc, @NotNull String> methodFieldMappings,
+                @NotNull Map<@NotNull String, @NotNull String> classNameSources, @NotNull Map<@NotNull MethodLoc, @NotNull String> methodFieldSources) {
+            this.classNameMappings = classNameMappings;
+            this.methodFieldMappings = methodFieldMappings;
+            this.classNameSources = classNameSources;
+            this.methodFieldSources = methodFieldSources;
+        }
+
+        @Contract(pure = true)
+        private int size() {
+            return this.classNameMappings.size() + this.methodFieldMappings.size();
+        }
+    }
+
+    /**
+     * An immutable snapshot of the committed frame.
+     *
+     * <p>Each commit appends a new layer holding only the mappings which are not yet committed, so that
+     * committing does not require copying all previously committed mappings. In order to keep lookups cheap,
+     * the uppermost layer is folded into the layer below it as long as it is not smaller than that layer.
+     * This keeps the amount of layers logarithmic in the amount of committed mappings while each mapping is
+     * only copied a logarithmic amount of times.
+     *
+     * <p>A class or member is mapped in at most one layer and no two classes or members of an owner
+     * are mapped to the same destination name.
+     */
+    private static final class Snapshot {
+        @NotNull
+        private static final Snapshot EMPTY = new Snapshot(new Layer[0]);
+
+        @NotNull
+        private final Layer @NotNull[] layers;
+
+        private Snapshot(@NotNull Layer @NotNull[] layers) {
+            this.layers = layers;
+        }
+
+        @Nullable
+        @Contract(pure = true)
+        private String getClassMapping(@NotNull String srcName) {
+            for (Layer layer : this.layers) {
+                String mapping = layer.classNameMappings.get(srcName);
+                if (mapping != null) {
+                    return mapping;
+                }
+            }
+            return null;
+        }
+
+        @Nullable
+        @Contract(pure = true)
+        private String getClassSource(@NotNull String dstName) {
+            for (Layer layer : this.layers) {
+                String srcName = layer.classNameSources.get(dstName);
+                if (srcName != null) {
+                    return srcName;
+                }
+            }
+            return null;
+        }
+
+        @Nullable
+        @Contract(pure = true)
+        private String getMemberMapping(@NotNull MethodLoc loc) {
+            for (Layer layer : this.layers) {
+                String mapping = layer.methodFieldMappings.get(loc);
+                if (mapping != null) {
+                    return mapping;
+                }
+            }
+            return null;
+        }
+
+        @Nullable
+        @Contract(pure = true)
+        private String getMemberSource(@NotNull MethodLoc reverseLoc) {
+            for (Layer layer : this.layers) {
+                String srcName = layer.methodFieldSources.get(reverseLoc);
+                if (srcName != null) {
+                    return srcName;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Creates a snapshot containing the mappings of this snapshot as well as the mappings of a frame.
+         *
+         * @param frame The frame to add.
+         * @param remapper The remapper providing the method realms.
+         * @return The new snapshot, this snapshot if the frame does not add any mappings,
+         * or null if the frame contains a mapping conflicting with a mapping of this snapshot.
+         * A mapping conflicts if the class or member is mapped to a different name or if a different class or member
+         * of the owner is mapped to the same name.
+         */
+        @Nullable
+        @Contract(pure = true)
+        private Snapshot with(@NotNull Frame frame, @NotNull ConcurrentFramedRemapper remapper) {
+            Map<String, String> classNameMappings = new HashMap<>();
+            Map<String, String> classNameSources = new HashMap<>();
+            for (Map.Entry<String, String> entry : frame.classNameMappings.entrySet()) {
+                String srcName = entry.getKey();
+                String dstName = entry.getValue();
+                String committed = this.getClassMapping(srcName);
+                if (committed == null) {
+                    String committedSource = this.getClassSource(dstName);
+                    if (committedSource != null) {
+                        return null;
+                    }
+                    classNameMappings.put(srcName, dstName);
+                    classNameSources.put(dstName, srcName);
+                } else if (!committed.equals(dstName)) {
+                    return null;
+                }
+            }
+            Map<MethodLoc, String> methodFieldMappings = new HashMap<>();
+            Map<MethodLoc, String> methodFieldSources = new HashMap<>();
+            for (Map.Entry<MethodLoc, String> entry : frame.methodFieldMappings.entrySet()) {
+                MethodLoc loc = entry.getKey();
+                String dstName = entry.getValue();
+                String committed = this.getMemberMapping(loc);
+                if (committed == null) {
+                    for (String owner : remapper.getReverseOwners(loc)) {
+                        MethodLoc reverseLoc = new MethodLoc(owner, dstName, loc.getDesc());
+                        if (this.getMemberSource(reverseLoc) != null) {
+                            return null;
+                        }
+                        methodFieldSources.put(reverseLoc, loc.getName());
+                    }
+                    methodFieldMappings.put(loc, dstName);
+                } else if (!committed.equals(dstName)) {
+                    return null;
+                }
+            }
+            if (classNameMappings.isEmpty() && methodFieldMappings.isEmpty()) {
+                return this;
+            }
+
+            Layer[] layers = this.layers;
+            int layerCount = layers.length;
+            Layer top = new Layer(classNameMappings, methodFieldMappings, classNameSources, methodFieldSources);
+            while (layerCount != 0 && top.size() >= layers[layerCount - 1].size()) {
+                Layer below = layers[--layerCount];
+                Map<String, String> mergedClasses = new HashMap<>(below.classNameMappings);
+                mergedClasses.putAll(top.classNameMappings);
+                Map<MethodLoc, String> mergedMembers = new HashMap<>(below.methodFieldMappings);
+                mergedMembers.putAll(top.methodFieldMappings);
+                Map<String, String> mergedClassSources = new HashMap<>(below.classNameSources);
+                mergedClassSources.putAll(top.classNameSources);
+                Map<MethodLoc, String> mergedMemberSources = new HashMap<>(below.methodFieldSources);
+                mergedMemberSources.putAll(top.methodFieldSources);
+                top = new Layer(mergedClasses, mergedMembers, mergedClassSources, mergedMemberSources);
+            }
+            layers = Arrays.copyOf(layers, layerCount + 1);
+            layers[layerCount] = top;
+            return new Snapshot(layers);
+        }
+    }
+
+    /**
+     * The frames of threads without speculative frames. Never modified.
+     */
+    @NotNull
+    private static final ArrayDeque<@NotNull Frame> NO_FRAMES = new ArrayDeque<>(0);
+
+    @NotNull
+    private final AtomicReference<@NotNull Snapshot> committed = new AtomicReference<>(Snapshot.EMPTY);
+
+    /**
+     * The speculative frames of each thread, only set while the thread has at least one speculative frame.
+     */
+    @NotNull
+    private final ThreadLocal<@Nullable ArrayDeque<@NotNull Frame>> frames = new ThreadLocal<>();
+
+    @NotNull
+    @Unmodifiable
+    private final Map<MethodLoc, MethodRealm> realms;
+
+    public ConcurrentFramedRemapper(@NotNull @Unmodifiable Map<MethodLoc, MethodRealm> realms) {
+        this.realms = realms;
+    }
+
+    /**
+     * Commits the lowermost speculative frame of the current thread, making its mappings visible to all threads.
+     * If another thread has committed a different mapping for any class or member mapped by the frame
+     * or has mapped a different class or member to the same destination name, nothing is committed and the frame is left as-is, so that the caller can decide whether to discard it.
+     *
+     * <p>This method requires the current thread to have exactly one speculative frame.
+     *
+     * @return True if the frame was committed, false if it conflicts with the committed mappings.
+     */
+    @Contract(pure = false)
+    public boolean commitFrame() {
+        ArrayDeque<Frame> frames = this.getThreadFrames();
+        if (frames.size() != 1) {
+            throw new IllegalStateException("Only the lowermost speculative frame can be committed, but the current thread has " + frames.size() + " speculative frames");
+        }
+        Frame frame = frames.element();
+        while (true) {
+            Snapshot snapshot = this.committed.get();
+            Snapshot updated = snapshot.with(frame, this);
+            if (updated == null) {
+                return false;
+            } else if (updated == snapshot || this.committed.compareAndSet(snapshot, updated)) {
+                frames.remove();
+                this.frames.remove();
+                return true;
+            }
+            // Another thread committed concurrently, retry against the new snapshot
+        }
+    }
+
+    @Override
+    @Contract(pure = false)
+    public void discardFrame() {
+        this.popThreadFrame();
+    }
+
+    @Override
+    @NotNull
+    @Contract(pure = true, value = "-> new")
+    public @Unmodifiable List<@NotNull String> exportToTinyV1() {
+        List<@NotNull String> tiny = new ArrayList<>();
+        for (Layer layer : this.committed.get().layers) {
+            SimpleFramedRemapper.exportToTinyV1(layer.classNameMappings, layer.methodFieldMappings, this.realms, tiny);
+        }
+        for (Iterator<Frame> it = this.getThreadFrames().descendingIterator(); it.hasNext();) {
+            Frame frame = it.next();
+            SimpleFramedRemapper.exportToTinyV1(frame.classNameMappings, frame.methodFieldMappings, this.realms, tiny);
+        }
+        return Collections.unmodifiableList(tiny);
+    }
+
+    /**
+     * Obtains the amount of frames visible to the current thread, that is the amount of speculative frames
+     * of the current thread plus the committed frame.
+     *
+     * @return The amount of frames.
+     */
+    @Override
+    @Contract(pure = true)
+    public int getFrameCount() {
+        return this.getThreadFrames().size() + 1;
+    }
+
+    @Override
+    @Nullable
+    @Contract(pure = true)
+    public String getMappedClass(@NotNull String srcName) {
+        String mapping = this.committed.get().getClassMapping(srcName);
+        if (mapping != null) {
+            return mapping;
+        }
+        // The lowermost frame containing a mapping takes precedence, mirroring SimpleFramedRemapper
+        for (Iterator<Frame> it = this.getThreadFrames().descendingIterator(); it.hasNext();) {
+            mapping = it.next().classNameMappings.get(srcName);
+            if (mapping != null) {
+                return mapping;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    @Nullable
+    @Contract(pure = true)
+    public String getMappedField(@NotNull String srcNameOwner, @NotNull String srcNameField, @NotNull String srcDescField) {
+        return this.getMemberMapping(new MethodLoc(srcNameOwner, srcNameField, srcDescField));
+    }
+
+    @Override
+    @Nullable
+    @Contract(pure = true)
+    public String getMappedMethod(@NotNull String srcNameOwner, @NotNull String srcNameMethod, @NotNull String srcDescMethod) {
+        if (srcDescMethod.codePointAt(0) != '(') {
+            throw new IllegalStateException("Method " + srcNameOwner + "." + srcNameMethod + " " + srcDescMethod + " is not a method. (illegal desc)");
+        }
+        return this.getMemberMapping(new MethodLoc(this.getRealmOwner(srcNameOwner, srcNameMethod, srcDescMethod), srcNameMethod, srcDescMethod));
+    }
+
+    @Nullable
+    @Contract(pure = true)
+    private String getMemberMapping(@NotNull MethodLoc loc) {
+        String mapping = this.committed.get().getMemberMapping(loc);
+        if (mapping != null) {
+            return mapping;
+        }
+        for (Iterator<Frame> it = this.getThreadFrames().descendingIterator(); it.hasNext();) {
+            mapping = it.next().methodFieldMappings.get(loc);
+            if (mapping != null) {
+                return mapping;
+            }
+        }
+        return null;
+    }
+
+    @NotNull
+    @Contract(pure = true)
+    private Set<@NotNull String> getReverseOwners(@NotNull MethodLoc loc) {
+        if (loc.getDesc().codePointAt(0) == '(') {
+            return this.realms.get(loc).getRealmMembers();
+        }
+        return Collections.singleton(loc.getOwner());
+    }
+
+    @NotNull
+    @Contract(pure = true)
+    private String getRealmOwner(@NotNull String owner, @NotNull String srcName, @NotNull String desc) {
+        MethodRealm realm = this.realms.get(new MethodLoc(owner, srcName, desc));
+        if (realm == null) {
+            throw new IllegalStateException("Realm may not be null for methodLoc " + new MethodLoc(owner, srcName, desc));
+        }
+        return realm.getDeclaringClass();
+    }
+
+    @Override
+    @Nullable
+    @Contract(pure = true)
+    public String getCollidingMethod(@NotNull String srcNameOwner, @NotNull String srcNameMethod, @NotNull String srcDescMethod, @NotNull String dstNameMethod) {
+        MethodRealm realm = this.realms.get(new MethodLoc(srcNameOwner, srcNameMethod, srcDescMethod));
+        return SimpleFramedRemapper.getCollidingMethod(this, realm, srcNameOwner, srcNameMethod, srcDescMethod, dstNameMethod);
+    }
+
+    @Override
+    @Nullable
+    @Contract(pure = true)
+    public String getSourceClass(@NotNull String dstName) {
+        String srcName = this.committed.get().getClassSource(dstName);
+        if (srcName != null) {
+            return srcName;
+        }
+        for (Iterator<Frame> it = this.getThreadFrames().descendingIterator(); it.hasNext();) {
+            srcName = it.next().classNameSources.get(dstName);
+            // The mapping may be shadowed by a different mapping of the same class in a lower frame
+            if (srcName != null && dstName.equals(this.getMappedClass(srcName))) {
+                return srcName;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    @Nullable
+    @Contract(pure = true)
+    public String getSourceField(@NotNull String srcNameOwner, @NotNull String dstNameField, @NotNull String srcDescField) {
+        return this.getMemberSource(new MethodLoc(srcNameOwner, dstNameField, srcDescField));
+    }
+
+    @Override
+    @Nullable
+    @Contract(pure = true)
+    public String getSourceMethod(@NotNull String srcNameOwner, @NotNull String dstNameMethod, @NotNull String srcDescMethod) {
+        return this.getMemberSource(new MethodLoc(srcNameOwner, dstNameMethod, srcDescMethod));
+    }
+
+    @Nullable
+    @Contract(pure = true)
+    private String getMemberSource(@NotNull MethodLoc reverseLoc) {
+        String srcName = this.committed.get().getMemberSource(reverseLoc);
+        if (srcName != null) {
+            return srcName;
+        }
+        for (Iterator<Frame> it = this.getThreadFrames().descendingIterator(); it.hasNext();) {
+            srcName = it.next().methodFieldSources.get(reverseLoc);
+            if (srcName == null) {
+                continue;
+            }
+            String owner = reverseLoc.getOwner();
+            String desc = reverseLoc.getDesc();
+            String mapping = desc.codePointAt(0) == '(' ? this.getMappedMethod(owner, srcName, desc) : this.getMappedField(owner, srcName, desc);
+            if (reverseLoc.getName().equals(mapping)) {
+                return srcName;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    @Contract(pure = false)
+    public void mapClass(@NotNull String srcOwner, @NotNull String dstOwner) {
+        Frame frame = this.peekThreadFrame();
+
+        if (srcOwner.codePointBefore(srcOwner.length()) == ';' || srcOwner.codePointAt(0) == '[') {
+            throw new IllegalArgumentException("Illegal owner for the source namespace: " + srcOwner);
+        }
+
+        if (dstOwner.codePointBefore(dstOwner.length()) == ';' || dstOwner.codePointAt(0) == '[') {
+            throw new IllegalArgumentException("Illegal owner for the destination namespace: " + dstOwner);
+        }
+
+        frame.putClass(srcOwner, dstOwner);
+    }
+
+    @Override
+    @Contract(pure = false)
+    public void mapField(@NotNull String owner, @NotNull String srcName, @NotNull String desc, @NotNull String dstName) {
+        this.peekThreadFrame().putMember(new MethodLoc(owner, srcName, desc), dstName, Collections.singleton(owner));
+    }
+
+    @Override
+    @Contract(pure = false)
+    public void mapMethod(@NotNull String owner, @NotNull String srcName, @NotNull String desc, @NotNull String dstName) {
+        Frame frame = this.peekThreadFrame();
+        MethodLoc loc = new MethodLoc(this.getRealmOwner(owner, srcName, desc), srcName, desc);
+        frame.putMember(loc, dstName, this.getReverseOwners(loc));
+    }
+
+    /**
+     * Merges the uppermost speculative frame of the current thread into the frame below it.
+     * If it is the only speculative frame of the thread, it is committed as per {@link #commitFrame()}.
+     *
+     * @throws IllegalStateException If the thread has no speculative frames or if committing fails due to a conflict.
+     */
+    @Override
+    @Contract(pure = false)
+    public void mergeFrame() {
+        ArrayDeque<Frame> frames = this.getThreadFrames();
+        if (frames.isEmpty()) {
+            throw new IllegalStateException("In order to be able to merge frames, at least two frames have to exist");
+        } else if (frames.size() == 1) {
+            if (!this.commitFrame()) {
+                throw new IllegalStateException("The frame conflicts with mappings committed by another thread");
+            }
+            return;
+        }
+
+        Frame topFrame = frames.pop();
+        Frame bottomFrame = frames.element();
+
+        for (Map.Entry<String, String> entry : topFrame.classNameMappings.entrySet()) {
+            bottomFrame.putClass(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<MethodLoc, String> entry : topFrame.methodFieldMappings.entrySet()) {
+            MethodLoc loc = entry.getKey();
+            bottomFrame.putMember(loc, entry.getValue(), this.getReverseOwners(loc));
+        }
+    }
+
+    /**
+     * Obtains the speculative frames of the current thread, with the uppermost frame first.
+     *
+     * @return The frames, which must not be modified if the thread has no frames.
+     */
+    @NotNull
+    @Contract(pure = true)
+    private ArrayDeque<@NotNull Frame> getThreadFrames() {
+        ArrayDeque<Frame> frames = this.frames.get();
+        return frames == null ? ConcurrentFramedRemapper.NO_FRAMES : frames;
+    }
+
+    @NotNull
+    @Contract(pure = true)
+    private Frame peekThreadFrame() {
+        Frame frame = this.getThreadFrames().peek();
+        if (frame == null) {
+            throw new NoSuchElementException("No frame to edit");
+        }
+        return frame;
+    }
+
+    @Override
+    @NotNull
+    @Contract(pure = false)
+    public FramedRemapper.RemapperFrame popFrame() {
+        return this.popThreadFrame();
+    }
+
+    @NotNull
+    @Contract(pure = false)
+    private Frame popThreadFrame() {
+        ArrayDeque<Frame> frames = this.getThreadFrames();
+        Frame frame = frames.poll();
+        if (frame == null) {
+            throw new NoSuchElementException("The committed frame cannot be popped");
+        }
+        if (frames.isEmpty()) {
+            this.frames.remove();
+        }
+        return frame;
+    }
+
+    @Override
+    @Contract(pure = false)
+    public void pushFrame() {
+        this.pushFrame(new Frame());
+    }
+
+    @Override
+    @Contract(pure = false)
+    public void pushFrame(FramedRemapper.@NotNull RemapperFrame frame) {
+        ArrayDeque<Frame> frames = this.frames.get();
+        if (frames == null) {
+            frames = new ArrayDeque<>();
+            this.frames.set(frames);
+        }
+        frames.push(Objects.requireNonNull((Frame) frame));
+    }
+}
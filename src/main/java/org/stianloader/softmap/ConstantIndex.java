@@ -0,0 +1,187 @@
+package org.stianloader.softmap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.stianloader.softmap.MemberIndex.Postings;
+import org.stianloader.softmap.insns.ConstantInsn;
+import org.stianloader.softmap.insns.InsnBlock;
+
+/**
+ * An inverted index of the constants pushed by the <code>LDC</code>, <code>BIPUSH</code> and <code>SIPUSH</code>
+ * instructions of the methods within a {@link MethodTable}.
+ *
+ * <p>Much like the {@link MemberIndex}, the index is used to select the candidate methods of expressions
+ * that explicitly match a constant.
+ */
+final class ConstantIndex {
+
+    /**
+     * A constant as pushed by an instruction with a given opcode.
+     */
+    private static final class ConstantKey {
+        @NotNull
+        private final Object constant;
+        private final int opcode;
+
+        private ConstantKey(int opcode, @NotNull Object constant) {
+            this.opcode = opcode;
+            this.constant = constant;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ConstantKey)) {
+                return false;
+            }
+            ConstantKey other = (ConstantKey) obj;
+            return this.opcode == other.opcode && this.constant.equals(other.constant);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.opcode * 31 + this.constant.hashCode();
+        }
+    }
+
+    /**
+     * All class literals loaded by <code>LDC</code> instructions that refer to a class (or an array thereof).
+     * Class literals are compared against the mapped name of the class, so they need to be checked one by one.
+     */
+    @NotNull
+    private final List<@NotNull Type> classLiterals = new ArrayList<>();
+
+    @NotNull
+    private final Map<@NotNull ConstantKey, @NotNull Postings> constants = new HashMap<>();
+
+    private boolean indexed;
+
+    @NotNull
+    private final MethodTable table;
+
+    ConstantIndex(@NotNull MethodTable table) {
+        this.table = table;
+    }
+
+    @Contract(pure = false)
+    private void ensureIndexed() {
+        if (this.indexed) {
+            return;
+        }
+        this.indexed = true;
+        MethodTable table = this.table;
+        InstructionStore instructions = table.getInstructions();
+        for (int ordinal = 0; ordinal < table.getMethodCount(); ordinal++) {
+            InstructionStore.Cursor insn = instructions.open(ordinal);
+            while (insn.next()) {
+                Object constant;
+                int opcode = insn.getOpcode();
+                if (opcode == Opcodes.LDC) {
+                    constant = insn.getConstant();
+                } else if (opcode == Opcodes.BIPUSH || opcode == Opcodes.SIPUSH) {
+                    constant = insn.getIntOperand();
+                } else {
+                    continue;
+                }
+                Postings postings = this.constants.get(new ConstantKey(opcode, constant));
+                if (postings == null) {
+                    postings = new Postings();
+                    this.constants.put(new ConstantKey(opcode, constant), postings);
+                    if (constant instanceof Type) {
+                        Type type = (Type) constant;
+                        if ((type.getSort() == Type.ARRAY ? type.getElementType() : type).getSort() == Type.OBJECT) {
+                            this.classLiterals.add(type);
+                        }
+                    }
+                }
+                postings.add(ordinal, insn.getOffset());
+            }
+        }
+    }
+
+    /**
+     * Obtains the occurrences of instructions pushing the constant explicitly matched by a constant instruction block.
+     * Class literals are not supported as they are compared against mapped names.
+     *
+     * @param block The instruction block.
+     * @return The occurrences of the constant, or null if the block does not match a specific constant or matches a class literal.
+     */
+    @Nullable
+    @Contract(pure = false)
+    Postings getConstantPostings(@NotNull ConstantInsn block) {
+        Object constant = block.getConstant();
+        if (constant == null || block.isClassReference()) {
+            return null;
+        }
+        this.ensureIndexed();
+        Postings postings = this.constants.get(new ConstantKey(block.getOpcode(), constant));
+        return postings == null ? MemberIndex.NO_OCCURRENCES : postings;
+    }
+
+    /**
+     * Obtains the methods that push all constants explicitly matched by an expression.
+     *
+     * <p>Class literals are compared against mapped names, which is why the lookup depends on the current state
+     * of the remapper. Class literals whose name is the target of a mapping request within the expression are ignored.
+     *
+     * <p>Note that methods with fewer instructions than blocks are not necessarily pushing all constants
+     * yet may still be matched by the expression; they need to be added to the result by the caller.
+     *
+     * @param expr The expression.
+     * @param remapper The remapper holding the mappings that are applied while matching the expression.
+     * @return The ascendingly sorted ordinals of the methods pushing all constants, or null if the expression does not match any constant.
+     */
+    @Contract(pure = false)
+    int @Nullable[] getAnchoredMethods(@NotNull MethodExpression expr, @NotNull FramedRemapper remapper) {
+        int[] anchoredMethods = null;
+        List<@NotNull String> mappingRequests = null;
+        for (InsnBlock block : expr.getInsns()) {
+            if (!(block instanceof ConstantInsn)) {
+                continue;
+            }
+            ConstantInsn constantBlock = (ConstantInsn) block;
+            Object constant = constantBlock.getConstant();
+            if (constant == null) {
+                continue;
+            }
+            if (!constantBlock.isClassReference()) {
+                anchoredMethods = MethodTable.intersect(anchoredMethods, Objects.requireNonNull(this.getConstantPostings(constantBlock)).getMethods());
+                continue;
+            }
+            this.ensureIndexed();
+
+            if (Objects.requireNonNull(constantBlock.getConstantToken()).lastCodepoint() == '?') {
+                // Any class may be mapped to the requested name
+                continue;
+            }
+            Type expectedType = (Type) constant;
+            Type expectedElementType = expectedType.getSort() == Type.ARRAY ? expectedType.getElementType() : expectedType;
+            if (mappingRequests == null) {
+                mappingRequests = MemberIndex.collectMappingRequests(expr);
+            }
+            if (MemberIndex.isMappingTarget(expectedElementType.getInternalName(), mappingRequests)) {
+                continue;
+            }
+            int[] methods = new int[0];
+            for (Type type : this.classLiterals) {
+                Type elementType = type.getSort() == Type.ARRAY ? type.getElementType() : type;
+                if (type.getSort() != expectedType.getSort()
+                        || (type.getSort() == Type.ARRAY && type.getDimensions() != expectedType.getDimensions())
+                        || !expectedElementType.getInternalName().equals(remapper.getMappedClassOpt(elementType.getInternalName()))) {
+                    continue;
+                }
+                methods = MethodTable.union(methods, this.constants.get(new ConstantKey(Opcodes.LDC, type)).getMethods());
+            }
+            anchoredMethods = MethodTable.intersect(anchoredMethods, methods);
+        }
+        return anchoredMethods;
+    }
+}
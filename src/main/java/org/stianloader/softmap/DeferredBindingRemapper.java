@@ -0,0 +1,386 @@
+package org.stianloader.softmap;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Unmodifiable;
+import org.stianloader.softmap.SimpleFramedRemapper.MethodRealm;
+
+/**
+ * A {@link FramedRemapper} which defers all writes to an underlying {@link SimpleFramedRemapper}.
+ *
+ * <p>Frames pushed onto this remapper are not pushed onto the underlying remapper. Instead, mappings (bindings) are recorded
+ * in a flat log alongside markers for pushed and merged frames. Discarding a frame merely truncates the log,
+ * so that evaluations which end up not matching never write to the underlying remapper.
+ * Only when the lowermost deferred frame is popped via {@link #popFrame()} is the log replayed onto the underlying remapper,
+ * producing exactly the frame that would have been produced had all operations been performed on the underlying remapper directly.
+ *
+ * <p>Lookups behave as if the deferred frames were stacked on top of the frames of the underlying remapper,
+ * where the lowermost frame that contains a mapping takes precedence and within a frame the latest mapping takes precedence.
+ *
+ * <p>Frames of the underlying remapper must not be modified while there are deferred frames.
+ */
+final class DeferredBindingRemapper implements FramedRemapper {
+
+    private static final byte OP_BIND_CLASS = 0;
+    private static final byte OP_BIND_FIELD = 1;
+    private static final byte OP_BIND_METHOD = 2;
+    private static final byte OP_MERGE = 3;
+    private static final byte OP_PUSH = 4;
+
+    /**
+     * The amount of values stored per operation: owner (or source class name), name, descriptor, destination name
+     * and the declaring class of the method realm (for methods).
+     */
+    private static final int STRIDE = 5;
+
+    @NotNull
+    private final SimpleFramedRemapper delegate;
+
+    /**
+     * The index of the {@link #OP_PUSH} operation of each open deferred frame.
+     */
+    private int @NotNull[] frameStarts = new int[4];
+
+    private int frameCount;
+
+    private int length;
+
+    private byte @NotNull[] operations = new byte[16];
+
+    @Nullable
+    private String @NotNull[] values = new String[16 * DeferredBindingRemapper.STRIDE];
+
+    DeferredBindingRemapper(@NotNull SimpleFramedRemapper delegate) {
+        this.delegate = delegate;
+    }
+
+    @Contract(pure = false)
+    private void append(byte operation, @Nullable String owner, @Nullable String name, @Nullable String desc, @Nullable String dstName, @Nullable String realmOwner) {
+        if (this.frameCount == 0) {
+            throw new IllegalStateException("No deferred frame to edit");
+        }
+        if (this.length == this.operations.length) {
+            this.operations = Arrays.copyOf(this.operations, this.length * 2);
+            this.values = Arrays.copyOf(this.values, this.length * 2 * DeferredBindingRemapper.STRIDE);
+        }
+        int base = this.length * DeferredBindingRemapper.STRIDE;
+        this.operations[this.length++] = operation;
+        this.values[base] = owner;
+        this.values[base + 1] = name;
+        this.values[base + 2] = desc;
+        this.values[base + 3] = dstName;
+        this.values[base + 4] = realmOwner;
+    }
+
+    @Override
+    @Contract(pure = false)
+    public void discardFrame() {
+        if (this.frameCount == 0) {
+            this.delegate.discardFrame();
+            return;
+        }
+        this.truncate(this.frameStarts[--this.frameCount]);
+    }
+
+    @Override
+    @NotNull
+    @Unmodifiable
+    @Contract(pure = true, value = "-> new")
+    public List<@NotNull String> exportToTinyV1() {
+        if (this.frameCount != 0) {
+            throw new IllegalStateException("Deferred frames cannot be exported");
+        }
+        return this.delegate.exportToTinyV1();
+    }
+
+    /**
+     * Looks up the deferred mapping of a class or member.
+     *
+     * @param operation The bind operation of the mapping.
+     * @param owner The (realm) owner of the member, or the source name of the class.
+     * @param name The name of the member, null for classes.
+     * @param desc The descriptor of the member, null for classes.
+     * @return The destination name, or null if there is no deferred mapping.
+     */
+    @Nullable
+    @Contract(pure = true)
+    private String findBinding(byte operation, @NotNull String owner, @Nullable String name, @Nullable String desc) {
+        int frame = 0;
+        String mapping = null;
+        int frameEnd = -1;
+        for (int i = 0; i < this.length; i++) {
+            while (frame + 1 < this.frameCount && this.frameStarts[frame + 1] <= i) {
+                frame++;
+            }
+            if (i == frameEnd) {
+                // The lowermost frame containing a mapping takes precedence
+                return mapping;
+            }
+            if (this.operations[i] != operation) {
+                continue;
+            }
+            int base = i * DeferredBindingRemapper.STRIDE;
+            String boundOwner = operation == DeferredBindingRemapper.OP_BIND_METHOD ? this.values[base + 4] : this.values[base];
+            if (!owner.equals(boundOwner) || !Objects.equals(name, this.values[base + 1]) || !Objects.equals(desc, this.values[base + 2])) {
+                continue;
+            }
+            // Within a frame, the latest mapping takes precedence (this includes mappings from merged frames)
+            mapping = this.values[base + 3];
+            if (frameEnd == -1) {
+                frameEnd = frame + 1 < this.frameCount ? this.frameStarts[frame + 1] : this.length;
+            }
+        }
+        return mapping;
+    }
+
+    /**
+     * Looks up the source name of a class or member which has a deferred mapping to a given destination name.
+     *
+     * @param operation The bind operation of the mapping.
+     * @param owner The owner of the member, null for classes.
+     * @param dstName The destination name.
+     * @param desc The descriptor of the member, null for classes.
+     * @return The source name, or null if there is no deferred mapping to the destination name.
+     */
+    @Nullable
+    @Contract(pure = true)
+    private String findSource(byte operation, @Nullable String owner, @NotNull String dstName, @Nullable String desc) {
+        for (int i = 0; i < this.length; i++) {
+            int base = i * DeferredBindingRemapper.STRIDE;
+            String[] values = this.values;
+            if (this.operations[i] != operation || !dstName.equals(values[base + 3]) || !Objects.equals(desc, values[base + 2])) {
+                continue;
+            }
+            String srcName;
+            if (operation == DeferredBindingRemapper.OP_BIND_CLASS) {
+                srcName = Objects.requireNonNull(values[base]);
+                if (dstName.equals(this.getMappedClassOpt(srcName))) {
+                    return srcName;
+                }
+                continue;
+            }
+            srcName = Objects.requireNonNull(values[base + 1]);
+            Objects.requireNonNull(owner);
+            Objects.requireNonNull(desc);
+            if (operation == DeferredBindingRemapper.OP_BIND_FIELD) {
+                if (owner.equals(values[base]) && dstName.equals(this.getMappedFieldOpt(owner, srcName, desc))) {
+                    return srcName;
+                }
+            } else if (this.delegate.isRealmMember(owner, srcName, desc, Objects.requireNonNull(values[base + 4]))
+                    && dstName.equals(this.getMappedMethodOpt(owner, srcName, desc))) {
+                return srcName;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    @Contract(pure = true)
+    public int getFrameCount() {
+        return this.delegate.getFrameCount() + this.frameCount;
+    }
+
+    @Override
+    @Nullable
+    @Contract(pure = true)
+    public String getCollidingMethod(@NotNull String srcNameOwner, @NotNull String srcNameMethod, @NotNull String srcDescMethod, @NotNull String dstNameMethod) {
+        MethodRealm realm = this.delegate.getRealm(srcNameOwner, srcNameMethod, srcDescMethod);
+        return SimpleFramedRemapper.getCollidingMethod(this, realm, srcNameOwner, srcNameMethod, srcDescMethod, dstNameMethod);
+    }
+
+    @Override
+    @Nullable
+    @Contract(pure = true)
+    public String getMappedClass(@NotNull String srcName) {
+        String mapping = this.delegate.getMappedClass(srcName);
+        if (mapping != null || this.length == 0) {
+            return mapping;
+        }
+        mapping = this.findBinding(DeferredBindingRemapper.OP_BIND_CLASS, srcName, null, null);
+        return mapping == srcName ? null : mapping; // Instance comparison intended, mirroring SimpleFramedRemapper
+    }
+
+    @Override
+    @Nullable
+    @Contract(pure = true)
+    public String getMappedField(@NotNull String srcNameOwner, @NotNull String srcNameField, @NotNull String srcDescField) {
+        String mapping = this.delegate.getMappedField(srcNameOwner, srcNameField, srcDescField);
+        if ((mapping != null && mapping != srcNameField) || this.length == 0) { // Instance comparison intended
+            return mapping;
+        }
+        String deferredMapping = this.findBinding(DeferredBindingRemapper.OP_BIND_FIELD, srcNameOwner, srcNameField, srcDescField);
+        if (deferredMapping == null) {
+            return mapping;
+        }
+        return deferredMapping == srcNameOwner ? null : deferredMapping; // Instance comparison intended, mirroring SimpleFramedRemapper
+    }
+
+    @Override
+    @Nullable
+    @Contract(pure = true)
+    public String getMappedMethod(@NotNull String srcNameOwner, @NotNull String srcNameMethod, @NotNull String srcDescMethod) {
+        String mapping = this.delegate.getMappedMethod(srcNameOwner, srcNameMethod, srcDescMethod);
+        if ((mapping != null && mapping != srcNameMethod) || this.length == 0) { // Instance comparison intended
+            return mapping;
+        }
+        String realmOwner = this.delegate.getRealmOwner(srcNameOwner, srcNameMethod, srcDescMethod);
+        String deferredMapping = this.findBinding(DeferredBindingRemapper.OP_BIND_METHOD, realmOwner, srcNameMethod, srcDescMethod);
+        if (deferredMapping == null) {
+            return mapping;
+        }
+        return deferredMapping == realmOwner ? null : deferredMapping; // Instance comparison intended, mirroring SimpleFramedRemapper
+    }
+
+    @Override
+    @Nullable
+    @Contract(pure = true)
+    public String getSourceClass(@NotNull String dstName) {
+        String srcName = this.delegate.getSourceClass(dstName);
+        if (srcName != null || this.length == 0) {
+            return srcName;
+        }
+        return this.findSource(DeferredBindingRemapper.OP_BIND_CLASS, null, dstName, null);
+    }
+
+    @Override
+    @Nullable
+    @Contract(pure = true)
+    public String getSourceField(@NotNull String srcNameOwner, @NotNull String dstNameField, @NotNull String srcDescField) {
+        String srcName = this.delegate.getSourceField(srcNameOwner, dstNameField, srcDescField);
+        if (srcName != null || this.length == 0) {
+            return srcName;
+        }
+        return this.findSource(DeferredBindingRemapper.OP_BIND_FIELD, srcNameOwner, dstNameField, srcDescField);
+    }
+
+    @Override
+    @Nullable
+    @Contract(pure = true)
+    public String getSourceMethod(@NotNull String srcNameOwner, @NotNull String dstNameMethod, @NotNull String srcDescMethod) {
+        String srcName = this.delegate.getSourceMethod(srcNameOwner, dstNameMethod, srcDescMethod);
+        if (srcName != null || this.length == 0) {
+            return srcName;
+        }
+        return this.findSource(DeferredBindingRemapper.OP_BIND_METHOD, srcNameOwner, dstNameMethod, srcDescMethod);
+    }
+
+    @Override
+    @Contract(pure = false)
+    public void mapClass(@NotNull String srcOwner, @NotNull String dstOwner) {
+        if (srcOwner.codePointBefore(srcOwner.length()) == ';' || srcOwner.codePointAt(0) == '[') {
+            throw new IllegalArgumentException("Illegal owner for the source namespace: " + srcOwner);
+        }
+
+        if (dstOwner.codePointBefore(dstOwner.length()) == ';' || dstOwner.codePointAt(0) == '[') {
+            throw new IllegalArgumentException("Illegal owner for the destination namespace: " + dstOwner);
+        }
+
+        this.append(DeferredBindingRemapper.OP_BIND_CLASS, srcOwner, null, null, dstOwner, null);
+    }
+
+    @Override
+    @Contract(pure = false)
+    public void mapField(@NotNull String owner, @NotNull String srcName, @NotNull String desc, @NotNull String dstName) {
+        this.append(DeferredBindingRemapper.OP_BIND_FIELD, owner, srcName, desc, dstName, null);
+    }
+
+    @Override
+    @Contract(pure = false)
+    public void mapMethod(@NotNull String owner, @NotNull String srcName, @NotNull String desc, @NotNull String dstName) {
+        this.append(DeferredBindingRemapper.OP_BIND_METHOD, owner, srcName, desc, dstName, this.delegate.getRealmOwner(owner, srcName, desc));
+    }
+
+    @Override
+    @Contract(pure = false)
+    public void mergeFrame() {
+        if (this.frameCount == 0) {
+            this.delegate.mergeFrame();
+            return;
+        } else if (this.frameCount == 1) {
+            throw new IllegalStateException("The lowermost deferred frame cannot be merged into the underlying remapper, pop it instead");
+        }
+        int frameStart = this.frameStarts[--this.frameCount];
+        if (frameStart + 1 == this.length) {
+            // The frame is empty, merging it is a no-op
+            this.truncate(frameStart);
+        } else {
+            this.append(DeferredBindingRemapper.OP_MERGE, null, null, null, null, null);
+        }
+    }
+
+    /**
+     * Pops the uppermost frame. If it is the lowermost deferred frame, all deferred operations are performed on the
+     * underlying remapper and the resulting frame is popped from the underlying remapper.
+     *
+     * @return The popped frame.
+     */
+    @Override
+    @NotNull
+    @Contract(pure = false)
+    public RemapperFrame popFrame() {
+        if (this.frameCount == 0) {
+            return this.delegate.popFrame();
+        } else if (this.frameCount != 1) {
+            throw new IllegalStateException("Only the lowermost deferred frame can be popped");
+        }
+
+        SimpleFramedRemapper delegate = this.delegate;
+        for (int i = 0; i < this.length; i++) {
+            int base = i * DeferredBindingRemapper.STRIDE;
+            String[] values = this.values;
+            switch (this.operations[i]) {
+            case OP_PUSH:
+                delegate.pushFrame();
+                break;
+            case OP_MERGE:
+                delegate.mergeFrame();
+                break;
+            case OP_BIND_CLASS:
+                delegate.mapClass(Objects.requireNonNull(values[base]), Objects.requireNonNull(values[base + 3]));
+                break;
+            case OP_BIND_FIELD:
+                delegate.mapField(Objects.requireNonNull(values[base]), Objects.requireNonNull(values[base + 1]), Objects.requireNonNull(values[base + 2]), Objects.requireNonNull(values[base + 3]));
+                break;
+            case OP_BIND_METHOD:
+                delegate.mapMethod(Objects.requireNonNull(values[base]), Objects.requireNonNull(values[base + 1]), Objects.requireNonNull(values[base + 2]), Objects.requireNonNull(values[base + 3]));
+                break;
+            default:
+                throw new IllegalStateException("Unknown operation: " + this.operations[i]);
+            }
+        }
+        this.frameCount = 0;
+        this.truncate(0);
+        return delegate.popFrame();
+    }
+
+    @Override
+    @Contract(pure = false)
+    public void pushFrame() {
+        if (this.frameCount == this.frameStarts.length) {
+            this.frameStarts = Arrays.copyOf(this.frameStarts, this.frameCount * 2);
+        }
+        this.frameStarts[this.frameCount++] = this.length;
+        this.append(DeferredBindingRemapper.OP_PUSH, null, null, null, null, null);
+    }
+
+    @Override
+    @Contract(pure = false)
+    public void pushFrame(@NotNull RemapperFrame frame) {
+        if (this.frameCount != 0) {
+            throw new IllegalStateException("Frames cannot be pushed on top of deferred frames");
+        }
+        this.delegate.pushFrame(frame);
+    }
+
+    @Contract(pure = false)
+    private void truncate(int length) {
+        // Clear references so that the strings can be garbage collected
+        Arrays.fill(this.values, length * DeferredBindingRemapper.STRIDE, this.length * DeferredBindingRemapper.STRIDE, null);
+        this.length = length;
+    }
+}
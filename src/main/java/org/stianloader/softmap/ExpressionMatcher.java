@@ -0,0 +1,218 @@
+package org.stianloader.softmap;
+
+import java.util.List;
+import java.util.Objects;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.InsnList;
+import org.stianloader.softmap.insns.InsnBlock;
+import org.stianloader.softmap.insns.MatchResult;
+import org.stianloader.softmap.insns.WildcardInsnBlock;
+
+/**
+ * Matches the instruction blocks of a {@link MethodExpression} against the instructions of a method.
+ *
+ * <p>This class interprets the blocks of the expression one after another. {@link MatcherCompiler} generates
+ * subclasses specialized for a single expression which override {@link #match(InsnList, int, OpcodeIndex, BlockMemo, int[], FramedRemapper, Progress)}
+ * while behaving exactly like the interpreter.
+ */
+class ExpressionMatcher {
+
+    /**
+     * How far the instructions of a method could be matched by the blocks of an expression.
+     */
+    static final class Progress {
+        /**
+         * The amount of blocks that were fully matched.
+         */
+        int evaluatedBlocks;
+
+        /**
+         * Whether all instructions of the method were consumed.
+         */
+        boolean exhaustedInstructions;
+    }
+
+    /**
+     * The index of the last block which cannot match an empty sequence of instructions, that is the last block which is neither
+     * a plain wildcard nor a bounded wildcard with a minimum length of 0. -1 if the blocks do not contain any bounded wildcards.
+     */
+    private final int lastRequiredBlock;
+
+    @NotNull
+    private final List<? extends @NotNull InsnBlock> insnBlocks;
+
+    ExpressionMatcher(@NotNull List<? extends @NotNull InsnBlock> insnBlocks) {
+        this.insnBlocks = insnBlocks;
+        boolean bounded = false;
+        int lastRequiredBlock = -1;
+        for (int i = 0; i < insnBlocks.size(); i++) {
+            InsnBlock block = insnBlocks.get(i);
+            if (!(block instanceof WildcardInsnBlock)) {
+                lastRequiredBlock = i;
+            } else if (((WildcardInsnBlock) block).isBounded()) {
+                bounded = true;
+                if (((WildcardInsnBlock) block).getMinimumLength() != 0) {
+                    lastRequiredBlock = i;
+                }
+            }
+        }
+        this.lastRequiredBlock = bounded ? lastRequiredBlock : -1;
+    }
+
+    /**
+     * Matches the blocks against the instructions of a method. The remapper must have a frame dedicated
+     * to the method on top, mappings requested by blocks are applied to this frame.
+     *
+     * @param instructions The instructions of the method.
+     * @param ordinal The ordinal of the method within the {@link MethodTable} the opcode index was built for.
+     * @param opcodeIndex The opcode index used to seed wildcards.
+     * @param memo The memo table of block results, built for the same {@link MethodTable}.
+     * @param blockIds The ids of the blocks within the memo table.
+     * @param remapper The remapper to apply mappings to.
+     * @param progress The progress, written by this method.
+     * @return The result of the last block that did not match (or of the last greedy match), null if no such result exists.
+     */
+    @Nullable
+    @Contract(pure = false, mutates = "param4, param6, param7")
+    MatchResult match(@NotNull InsnList instructions, int ordinal, @NotNull OpcodeIndex opcodeIndex, @NotNull BlockMemo memo, int @NotNull[] blockIds,
+            @NotNull FramedRemapper remapper, @NotNull Progress progress) {
+        List<? extends @NotNull InsnBlock> insnBlocks = this.insnBlocks;
+        int i = 0;
+        int offset = 0;
+        int seededBlock = -1;
+        int seedOffset = -1;
+        AbstractInsnNode currentInsn = instructions.getFirst();
+        MatchResult lastResult = null;
+        WildcardInsnBlock boundedWildcard = null;
+        int boundedBlock = -1;
+        int boundedStart = -1;
+        while (i != insnBlocks.size() && currentInsn != null) {
+            InsnBlock currentBlock = insnBlocks.get(i);
+            if (currentBlock instanceof WildcardInsnBlock && ((WildcardInsnBlock) currentBlock).isBounded()) {
+                // Bounded wildcards skip their minimum amount of instructions and then stop at the first instruction matched
+                // by the following block. Instructions that block cannot match are skipped using the opcode index, and
+                // matching is aborted as soon as the next instruction it could match lies beyond the maximum amount of instructions.
+                boundedWildcard = (WildcardInsnBlock) currentBlock;
+                if (boundedBlock != i) {
+                    boundedBlock = i;
+                    boundedStart = offset;
+                }
+                int insnCount = instructions.size();
+                int from = (int) Math.min(insnCount + 1L, Math.max(offset, (long) boundedStart + boundedWildcard.getMinimumLength()));
+                InsnBlock nextBlock = i + 1 == insnBlocks.size() ? null : insnBlocks.get(i + 1);
+                if (nextBlock == null || nextBlock instanceof WildcardInsnBlock) {
+                    // Nothing would stop the wildcard, so it consumes its minimum amount of instructions
+                    if (from <= insnCount) {
+                        i++;
+                        if (nextBlock == null) {
+                            // Like a trailing plain wildcard, a trailing bounded wildcard whose bounds are satisfied
+                            // supersedes the failures encountered by earlier wildcards while searching for their following block
+                            lastResult = MatchResult.RESULT_GREEDY;
+                        }
+                    }
+                    offset = Math.min(from, insnCount);
+                    currentInsn = offset == insnCount ? null : instructions.get(offset);
+                    continue;
+                }
+
+                int nextOpcode = nextBlock.getOpcode();
+                if (nextOpcode >= 0 && from < insnCount) {
+                    from = opcodeIndex.getNextOccurrence(ordinal, nextOpcode, from);
+                }
+                if (from >= insnCount || from - boundedStart > boundedWildcard.getMaximumLength()) {
+                    lastResult = new MatchResult("No instruction within the bounds of the wildcard is matched by the following block", Objects.requireNonNull(boundedWildcard.getWildcardToken()));
+                    if (from - boundedStart > boundedWildcard.getMaximumLength()) {
+                        break;
+                    }
+                    offset = insnCount;
+                    currentInsn = null;
+                    continue;
+                }
+
+                offset = from;
+                currentInsn = instructions.get(offset);
+                remapper.pushFrame();
+                MatchResult result = memo.evaluate(nextBlock, blockIds[i + 1], currentInsn, ordinal, offset, remapper);
+                if (result.isBreakingMatching()) {
+                    remapper.mergeFrame();
+                    i += 2;
+                } else if (result.isAnyMatch()) {
+                    throw new IllegalStateException("Unexpected positive-match type (problem in the softmap implementation code - please report this bug):" + result.toString());
+                } else {
+                    remapper.discardFrame();
+                }
+                currentInsn = currentInsn.getNext();
+                offset++;
+                continue;
+            } else if (currentBlock instanceof WildcardInsnBlock) {
+                // Wildcards consume all instructions up to the first instruction matched by the following block (if any).
+                // Skip over the instructions that block cannot match except for the last one, whose evaluation yields
+                // the same result the wildcard would have ended up with without skipping instructions.
+                if (seededBlock != i || offset > seedOffset) {
+                    seededBlock = i;
+                    int nextOpcode = i + 1 == insnBlocks.size() ? -1 : insnBlocks.get(i + 1).getOpcode();
+                    if (i + 1 == insnBlocks.size()) {
+                        seedOffset = instructions.size();
+                    } else if (nextOpcode >= 0) {
+                        seedOffset = opcodeIndex.getNextOccurrence(ordinal, nextOpcode, offset);
+                    } else {
+                        seedOffset = offset;
+                    }
+                }
+                if (seedOffset - 1 > offset) {
+                    offset = seedOffset - 1;
+                    currentInsn = instructions.get(offset);
+                }
+            }
+            remapper.pushFrame();
+            if (remapper.getFrameCount() != 3) {
+                throw new IllegalStateException("Unexpected frame count: " + remapper.getFrameCount());
+            }
+            MatchResult result = memo.evaluate(currentBlock, blockIds[i], currentInsn, ordinal, offset, remapper);
+            if (result.isBreakingMatching()) {
+                i++;
+                remapper.mergeFrame();
+            } else if (result.isGreedyMatch() && insnBlocks.size() != i + 1) {
+                result = memo.evaluate(insnBlocks.get(i + 1), blockIds[i + 1], currentInsn, ordinal, offset, remapper);
+                if (result.isBreakingMatching()) {
+                    remapper.mergeFrame();
+                    i += 2;
+                } else if (result.isContinuingMatching() || result.isGreedyMatch()) {
+                    i++;
+                    remapper.mergeFrame();
+                } else if (result.isAnyMatch()) {
+                    throw new IllegalStateException("Unexpected positive-match type (problem in the softmap implementation code - please report this bug):" + result.toString());
+                } else {
+                    lastResult = result;
+                    remapper.discardFrame();
+                }
+            } else if (result.isGreedyMatch() /* Final greedy matcher */ || result.isContinuingMatching()) {
+                // NOP
+                remapper.mergeFrame();
+                lastResult = result;
+            } else if (result.isAnyMatch()) {
+                throw new IllegalStateException("Unexpected positive-match type (problem in the softmap implementation code - please report this bug):" + result.toString());
+            } else {
+                lastResult = result;
+                remapper.discardFrame();
+                break;
+            }
+            currentInsn = currentInsn.getNext();
+            offset++;
+        }
+
+        if (currentInsn == null && i <= this.lastRequiredBlock && boundedWildcard != null && lastResult == null) {
+            // Bounded wildcards demand that the blocks after them are matched in full, as otherwise the opcode runs
+            // used to discard methods beforehand would no longer be sound
+            lastResult = new MatchResult("Method ends before the blocks following the wildcard were matched", Objects.requireNonNull(boundedWildcard.getWildcardToken()));
+        }
+
+        progress.evaluatedBlocks = i;
+        progress.exhaustedInstructions = currentInsn == null;
+        return lastResult;
+    }
+}
@@ -0,0 +1,219 @@
+package org.stianloader.softmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Unmodifiable;
+import org.stianloader.softmap.tokens.StringToken;
+
+/**
+ * Decides the order in which {@link MethodExpression expressions} are applied and records the cost of applying each expression.
+ *
+ * <p>If planning is enabled, expressions are applied in ascending order of their estimated amount of candidate methods, falling back
+ * to the order of declaration for equal estimates. The estimate is an upper bound of the amount of methods passing the header
+ * lookups and the opcode scan done by {@link SoftmapContext#tryApply(List)}: The smallest of the methods declared by an explicitly named
+ * owner, the methods with an explicitly named name, the methods with a matching descriptor and the methods which could be matched
+ * according to the {@link MultiPatternMatcher}. Expressions requesting the owner to be mapped are estimated dynamically:
+ * Once another expression maps a class to the requested name, only the methods of that class are candidates.
+ * As such, expressions that map classes make later expressions requesting the same class cheaper.
+ *
+ * <p>Beware that mappings applied by an expression influence all expressions applied after it,
+ * so that changing the order of expressions may change which methods they match.
+ *
+ * <p>Regardless of whether planning is enabled, the actual cost of every expression is recorded,
+ * i.e. the amount of methods the instructions were matched against and the time spent applying the expression.
+ */
+final class ExpressionPlanner {
+
+    private static final int UNPLANNED = -1;
+
+    private final boolean @NotNull[] applied;
+
+    private int current = -1;
+
+    private long currentStart;
+
+    private final int @NotNull[] estimates;
+
+    private final int @NotNull[] evaluations;
+
+    @NotNull
+    private final List<@NotNull MethodExpression> expressions;
+
+    @NotNull
+    private final MethodTable methodTable;
+
+    private final long @NotNull[] nanos;
+
+    private final int @NotNull[] order;
+
+    private int orderLength;
+
+    /**
+     * For each expression requesting its owner to be mapped, the requested name. Null for all other expressions.
+     */
+    @Nullable
+    private final String @Nullable[] ownerRequests;
+
+    /**
+     * Creates a planner for a single application of the expressions.
+     *
+     * @param expressions The expressions to apply.
+     * @param methodTable The methods the expressions are applied to.
+     * @param headerIndex The header index of the methods.
+     * @param candidateOrdinals The methods each expression could match as per the {@link MultiPatternMatcher}.
+     * @param planning True to apply the expressions in the order of their estimated cost, false to apply them in the order of declaration.
+     */
+    ExpressionPlanner(@NotNull List<@NotNull MethodExpression> expressions, @NotNull MethodTable methodTable, @NotNull HeaderIndex headerIndex,
+            MultiPatternMatcher.@NotNull Candidates candidateOrdinals, boolean planning) {
+        this.expressions = expressions;
+        this.methodTable = methodTable;
+        this.applied = new boolean[expressions.size()];
+        this.estimates = new int[expressions.size()];
+        this.evaluations = new int[expressions.size()];
+        this.nanos = new long[expressions.size()];
+        this.order = new int[expressions.size()];
+        if (!planning) {
+            this.ownerRequests = null;
+            Arrays.fill(this.estimates, ExpressionPlanner.UNPLANNED);
+            return;
+        }
+        this.ownerRequests = new String[expressions.size()];
+
+        for (int i = 0; i < expressions.size(); i++) {
+            MethodExpression expr = expressions.get(i);
+            int estimate = methodTable.getMethodCount();
+            StringToken ownerName = expr.getOwnerName();
+            if (ownerName != null) {
+                if (ownerName.codepointBefore(ownerName.getContentLength()) == '?') {
+                    this.ownerRequests[i] = ownerName.subtext(0, ownerName.getContentLength() - 1);
+                } else {
+                    estimate = Math.min(estimate, this.getMethodCount(ownerName.getText()));
+                }
+            }
+            StringToken methodName = expr.getMethodName();
+            if (methodName != null && methodName.codepointBefore(methodName.getContentLength()) != '?') {
+                estimate = Math.min(estimate, headerIndex.getMethodsByName(methodName.getText()).length);
+            }
+            StringToken methodDesc = expr.getMethodDesc();
+            if (methodDesc != null) {
+                if (methodDesc.indexOf('?') != -1) {
+                    estimate = Math.min(estimate, headerIndex.getMethodsByDescriptorShape(Objects.requireNonNull(expr.getMethodDescPattern())).length);
+                } else {
+                    estimate = Math.min(estimate, headerIndex.getMethodsByDescriptor(methodDesc.getText()).length);
+                }
+            }
+            int[] candidates = candidateOrdinals.get(i);
+            if (candidates != null) {
+                estimate = Math.min(estimate, candidates.length);
+            }
+            this.estimates[i] = estimate;
+        }
+    }
+
+    /**
+     * Starts applying an expression, finishing the expression that was applied before.
+     *
+     * @param exprIndex The index of the expression.
+     */
+    @Contract(pure = false)
+    private void begin(int exprIndex) {
+        long now = System.nanoTime();
+        if (this.current != -1) {
+            this.nanos[this.current] = now - this.currentStart;
+        }
+        this.current = exprIndex;
+        this.currentStart = now;
+        if (exprIndex != -1) {
+            this.applied[exprIndex] = true;
+            this.order[this.orderLength++] = exprIndex;
+        }
+    }
+
+    /**
+     * Records that the instructions of a method were matched against the expression that is currently applied.
+     */
+    @Contract(pure = false)
+    void countEvaluation() {
+        this.evaluations[this.current]++;
+    }
+
+    /**
+     * Finishes applying the last expression and describes the cost of applying each expression, in the order
+     * the expressions were applied.
+     *
+     * @return One line per expression.
+     */
+    @NotNull
+    @Unmodifiable
+    @Contract(pure = false)
+    List<@NotNull String> explain() {
+        this.begin(-1);
+        List<@NotNull String> lines = new ArrayList<>(this.orderLength);
+        for (int i = 0; i < this.orderLength; i++) {
+            int exprIndex = this.order[i];
+            MethodExpression expr = this.expressions.get(exprIndex);
+            StringToken location = expr.getMethodLocation();
+            if (location == null) {
+                location = expr.getDeclaringLocation();
+            }
+            int estimate = this.estimates[exprIndex];
+            lines.add(String.format(Locale.ROOT, "%d. Expression #%d at row %d, column %d (%s): estimated %s candidates, matched against %d methods in %.3f ms",
+                    i + 1, exprIndex + 1, location.getRow(), location.getColumn(), location.getText(),
+                    estimate == ExpressionPlanner.UNPLANNED ? "n/a" : Integer.toString(estimate),
+                    this.evaluations[exprIndex], this.nanos[exprIndex] / 1_000_000D));
+        }
+        return Collections.unmodifiableList(lines);
+    }
+
+    @Contract(pure = true)
+    private int getMethodCount(@NotNull String className) {
+        int classIndex = this.methodTable.getClassIndex(className);
+        if (classIndex == -1) {
+            return 0;
+        }
+        return this.methodTable.getFirstOrdinal(classIndex + 1) - this.methodTable.getFirstOrdinal(classIndex);
+    }
+
+    /**
+     * Selects the next expression to apply and starts applying it.
+     *
+     * @param remapper The remapper holding the mappings applied so far.
+     * @return The index of the expression to apply.
+     */
+    @Contract(pure = false)
+    int next(@NotNull FramedRemapper remapper) {
+        String[] ownerRequests = this.ownerRequests;
+        if (ownerRequests == null) {
+            this.begin(this.orderLength);
+            return this.orderLength - 1;
+        }
+
+        int best = -1;
+        for (int i = 0; i < this.estimates.length; i++) {
+            if (this.applied[i]) {
+                continue;
+            }
+            String ownerRequest = ownerRequests[i];
+            if (ownerRequest != null) {
+                String srcOwner = remapper.getSourceClass(ownerRequest);
+                if (srcOwner != null) {
+                    this.estimates[i] = Math.min(this.estimates[i], this.getMethodCount(srcOwner));
+                    ownerRequests[i] = null;
+                }
+            }
+            if (best == -1 || this.estimates[i] < this.estimates[best]) {
+                best = i;
+            }
+        }
+        this.begin(best);
+        return best;
+    }
+}
@@ -74,6 +74,71 @@ public interface FramedRemapper {
         return dstName == null ? defaultName : dstName;
     }
 
+    /**
+     * Obtains the source name of the class which is mapped to a given destination name.
+     *
+     * <p>Remappers which do not keep track of destination names may always return null,
+     * in which case duplicate destination names cannot be detected while matching.
+     *
+     * @param dstName The destination name of the class.
+     * @return The source name of the class mapped to the destination name, or null if no class is mapped to it.
+     */
+    @Nullable
+    @Contract(pure = true)
+    default String getSourceClass(@NotNull String dstName) {
+        return null;
+    }
+
+    /**
+     * Obtains the source name of the field within a given owner which is mapped to a given destination name.
+     *
+     * @param srcNameOwner The source name of the owner of the field.
+     * @param dstNameField The destination name of the field.
+     * @param srcDescField The source descriptor of the field.
+     * @return The source name of the field mapped to the destination name, or null if no field is mapped to it.
+     * @see #getSourceClass(String)
+     */
+    @Nullable
+    @Contract(pure = true)
+    default String getSourceField(@NotNull String srcNameOwner, @NotNull String dstNameField, @NotNull String srcDescField) {
+        return null;
+    }
+
+    /**
+     * Obtains the source name of a method which already uses the destination name a given method is about to be mapped to.
+     * As the mapping applies to the entire method realm, remappers aware of method realms check every member of the realm,
+     * so that a method cannot take the name of a method declared by a class inheriting it.
+     *
+     * @param srcNameOwner The source name of the owner of the method.
+     * @param srcNameMethod The source name of the method.
+     * @param srcDescMethod The source descriptor of the method.
+     * @param dstNameMethod The destination name the method is about to be mapped to.
+     * @return The source name of the colliding method, or null if the destination name is not used by a different method.
+     * @see #getSourceMethod(String, String, String)
+     */
+    @Nullable
+    @Contract(pure = true)
+    default String getCollidingMethod(@NotNull String srcNameOwner, @NotNull String srcNameMethod, @NotNull String srcDescMethod, @NotNull String dstNameMethod) {
+        String collidingName = this.getSourceMethod(srcNameOwner, dstNameMethod, srcDescMethod);
+        return srcNameMethod.equals(collidingName) ? null : collidingName;
+    }
+
+    /**
+     * Obtains the source name of the method within a given owner which is mapped to a given destination name.
+     * As methods are mapped per method realm, this includes methods whose realm the owner is a member of.
+     *
+     * @param srcNameOwner The source name of the owner of the method.
+     * @param dstNameMethod The destination name of the method.
+     * @param srcDescMethod The source descriptor of the method.
+     * @return The source name of the method mapped to the destination name, or null if no method is mapped to it.
+     * @see #getSourceClass(String)
+     */
+    @Nullable
+    @Contract(pure = true)
+    default String getSourceMethod(@NotNull String srcNameOwner, @NotNull String dstNameMethod, @NotNull String srcDescMethod) {
+        return null;
+    }
+
     @Contract(pure = false)
     void mapClass(@NotNull String srcOwner, @NotNull String dstOwner);
 
@@ -0,0 +1,166 @@
+package org.stianloader.softmap;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.stianloader.softmap.insns.DescriptorPattern;
+
+/**
+ * An index of the methods within a {@link MethodTable} by their name, their descriptor
+ * and the shape of their descriptor. The shape of a descriptor is the descriptor of the
+ * arguments where the names of all classes are omitted, e.g. <code>(IL;[L;)</code>.
+ *
+ * <p>The lookups return methods as ascendingly sorted ordinals. The individual indices are built lazily,
+ * so that expressions which only make use of some lookups do not pay for the others.
+ */
+final class HeaderIndex {
+
+    @NotNull
+    private static final int @NotNull[] NO_METHODS = new int[0];
+
+    /**
+     * Computes the shape of a method descriptor.
+     *
+     * @param desc The method descriptor.
+     * @return The shape of the descriptor.
+     */
+    @NotNull
+    @Contract(pure = true)
+    static String getShape(@NotNull String desc) {
+        StringBuilder shape = new StringBuilder().append('(');
+        DescString dString = new DescString(desc);
+        while (dString.hasNext()) {
+            String type = dString.nextType();
+            int elementStart = type.lastIndexOf('[') + 1;
+            shape.append(type, 0, elementStart + 1);
+            if (type.charAt(elementStart) == 'L') {
+                shape.append(';');
+            }
+        }
+        return shape.append(')').toString();
+    }
+
+    @Nullable
+    private Map<@NotNull String, int @NotNull[]> descriptors;
+
+    @Nullable
+    private Map<@NotNull String, int @NotNull[]> names;
+
+    @Nullable
+    private Map<@NotNull String, int @NotNull[]> shapes;
+
+    /**
+     * Cache of {@link #getMethodsByDescriptorShape(DescriptorPattern)} results, keyed by the text of the descriptor token.
+     */
+    @NotNull
+    private final Map<@NotNull String, int @NotNull[]> shapeMatches = new HashMap<>();
+
+    @NotNull
+    private final MethodTable table;
+
+    HeaderIndex(@NotNull MethodTable table) {
+        this.table = table;
+    }
+
+    @NotNull
+    @Contract(pure = true)
+    private Map<@NotNull String, int @NotNull[]> group(@NotNull KeyFunction keyFunction) {
+        Map<String, int[]> groups = new HashMap<>();
+        Map<String, Integer> groupSizes = new HashMap<>();
+        String[] keys = new String[this.table.getMethodCount()];
+        for (int ordinal = 0; ordinal < keys.length; ordinal++) {
+            keys[ordinal] = keyFunction.getKey(this.table.getMethodHeader(ordinal).name, this.table.getMethodHeader(ordinal).desc);
+            groupSizes.merge(keys[ordinal], 1, Integer::sum);
+        }
+        for (Map.Entry<String, Integer> entry : groupSizes.entrySet()) {
+            groups.put(entry.getKey(), new int[entry.getValue()]);
+        }
+        // Iterate backwards so that the ordinals are inserted in ascending order
+        for (int ordinal = keys.length - 1; ordinal >= 0; ordinal--) {
+            int remaining = groupSizes.merge(keys[ordinal], -1, Integer::sum);
+            groups.get(keys[ordinal])[remaining] = ordinal;
+        }
+        return groups;
+    }
+
+    /**
+     * Obtains all methods whose descriptor is exactly the given descriptor.
+     *
+     * @param desc The method descriptor.
+     * @return The ascendingly sorted ordinals of all methods with the descriptor.
+     */
+    @Contract(pure = false)
+    int @NotNull[] getMethodsByDescriptor(@NotNull String desc) {
+        Map<String, int[]> descriptors = this.descriptors;
+        if (descriptors == null) {
+            this.descriptors = descriptors = this.group((name, methodDesc) -> methodDesc);
+        }
+        return descriptors.getOrDefault(desc, HeaderIndex.NO_METHODS);
+    }
+
+    /**
+     * Obtains all methods whose descriptor could be matched by a descriptor containing class mapping requests,
+     * as done by {@link DescriptorPattern#mapDescriptor(String, FramedRemapper)}, regardless of the mappings
+     * that are applied at the time.
+     *
+     * @param pattern The descriptor of the expression.
+     * @return The ascendingly sorted ordinals of all methods that could be matched.
+     */
+    @Contract(pure = false)
+    int @NotNull[] getMethodsByDescriptorShape(@NotNull DescriptorPattern pattern) {
+        Map<String, int[]> shapes = this.shapes;
+        if (shapes == null) {
+            this.shapes = shapes = this.group((name, methodDesc) -> HeaderIndex.getShape(methodDesc));
+        }
+        Map<String, int[]> shapeMatches = this.shapeMatches;
+        String methodDescText = pattern.getToken().getText();
+        int[] matches = shapeMatches.get(methodDescText);
+        if (matches != null) {
+            return matches;
+        }
+
+        // There are far fewer shapes than methods, so it is feasible to test every shape
+        int matchCount = 0;
+        for (Map.Entry<String, int[]> shape : shapes.entrySet()) {
+            if (pattern.matchesShape(shape.getKey())) {
+                matchCount += shape.getValue().length;
+            }
+        }
+        matches = new int[matchCount];
+        matchCount = 0;
+        for (Map.Entry<String, int[]> shape : shapes.entrySet()) {
+            if (pattern.matchesShape(shape.getKey())) {
+                System.arraycopy(shape.getValue(), 0, matches, matchCount, shape.getValue().length);
+                matchCount += shape.getValue().length;
+            }
+        }
+        Arrays.sort(matches);
+        shapeMatches.put(methodDescText, matches);
+        return matches;
+    }
+
+    /**
+     * Obtains all methods with the given name.
+     *
+     * @param name The name of the method.
+     * @return The ascendingly sorted ordinals of all methods with the name.
+     */
+    @Contract(pure = false)
+    int @NotNull[] getMethodsByName(@NotNull String name) {
+        Map<String, int[]> names = this.names;
+        if (names == null) {
+            this.names = names = this.group((methodName, desc) -> methodName);
+        }
+        return names.getOrDefault(name, HeaderIndex.NO_METHODS);
+    }
+
+    @FunctionalInterface
+    private static interface KeyFunction {
+        @NotNull
+        String getKey(@NotNull String name, @NotNull String desc);
+    }
+}
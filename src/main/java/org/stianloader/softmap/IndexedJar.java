@@ -0,0 +1,96 @@
+package org.stianloader.softmap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Unmodifiable;
+import org.objectweb.asm.tree.ClassNode;
+import org.stianloader.softmap.classpath.ClassNodeCache;
+import org.stianloader.softmap.classpath.ClassStore;
+
+/**
+ * The classes of a jar, indexed once and kept resident for many applications of expressions, for example by a long-running daemon.
+ *
+ * <p>Only the headers of the classes are kept on the heap. The instructions of all methods are encoded once into a compact
+ * store outside of the heap, from which all indices read. Method bodies are only decoded through the {@link ClassNodeCache}
+ * when the instruction blocks of an expression are matched against a candidate method, and are evicted from the cache as usual.
+ * As such, the resident heap usage of the jar is bounded by the size of the headers and the maximum size of the cache,
+ * as opposed to keeping every decoded class resident. Without an indexed jar, the instructions are encoded anew
+ * for every application of the expressions.
+ *
+ * <p>The classes of the store must not be modified once the jar is indexed. An indexed jar may be applied by multiple threads at once.
+ */
+public final class IndexedJar {
+
+    @NotNull
+    private final ClassNodeCache classes;
+
+    @NotNull
+    @Unmodifiable
+    private final List<@NotNull ClassNode> headers;
+
+    @NotNull
+    private final InstructionStore instructions;
+
+    /**
+     * Indexes the classes of a {@link ClassStore}, decoding every class once.
+     *
+     * <p>The cache should decode classes without {@link org.objectweb.asm.ClassReader#SKIP_CODE skipping code} and should not
+     * {@link org.objectweb.asm.ClassReader#EXPAND_FRAMES expand frames}, as frames are part of the instructions matched
+     * by the expressions.
+     *
+     * @param classes The cache of the classes to index.
+     */
+    public IndexedJar(@NotNull ClassNodeCache classes) {
+        ClassStore store = classes.getStore();
+        List<@NotNull ClassNode> headers = new ArrayList<>(store.getClassCount());
+        for (int i = 0; i < store.getClassCount(); i++) {
+            headers.add(store.readHeader(i));
+        }
+        this.classes = classes;
+        this.headers = Collections.unmodifiableList(headers);
+        this.instructions = new InstructionStore(new MethodTable(this.headers, classes), true);
+    }
+
+    /**
+     * Obtains the cache of the indexed classes.
+     *
+     * @return The cache.
+     */
+    @NotNull
+    @Contract(pure = true)
+    public ClassNodeCache getClasses() {
+        return this.classes;
+    }
+
+    /**
+     * Obtains the headers of the indexed classes, in the order of the store.
+     *
+     * @return The headers.
+     */
+    @NotNull
+    @Unmodifiable
+    @Contract(pure = true)
+    List<@NotNull ClassNode> getHeaders() {
+        return this.headers;
+    }
+
+    /**
+     * Obtains the amount of memory occupied by the encoded instructions outside of the heap.
+     *
+     * @return The size of the encoded instructions in bytes.
+     */
+    @Contract(pure = true)
+    public long getInstructionSize() {
+        return this.instructions.getByteSize();
+    }
+
+    @NotNull
+    @Contract(pure = true)
+    InstructionStore getInstructions() {
+        return this.instructions;
+    }
+}
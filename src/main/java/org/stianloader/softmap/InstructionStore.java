@@ -0,0 +1,416 @@
+package org.stianloader.softmap;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.IincInsnNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.IntInsnNode;
+import org.objectweb.asm.tree.InvokeDynamicInsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MultiANewArrayInsnNode;
+import org.objectweb.asm.tree.TypeInsnNode;
+import org.objectweb.asm.tree.VarInsnNode;
+
+/**
+ * A compact encoding of the instructions of all methods within a {@link MethodTable}, stored either on or outside of the heap.
+ *
+ * <p>Each instruction (including pseudo-instructions) occupies a single byte holding its opcode, so that opcodes can be
+ * accessed by the offset of the instruction. The operands of the instructions are stored in a separate stream of
+ * variable-length integers which is read sequentially by a {@link Cursor}. Names and descriptors are interned through a {@link SymbolTable}
+ * and constants through a map, both are referenced by their id so that every distinct symbol is only held once.
+ *
+ * <p>Operands of switch instructions, the bootstrap method of <code>INVOKEDYNAMIC</code> instructions as well as
+ * the contents of pseudo-instructions are not stored. Jump targets are stored as the offset of the target label.
+ *
+ * <p>By default, a store is built on the heap by each {@link MethodTable} when its indices are first needed and is collected
+ * together with the table. An {@link IndexedJar} instead builds the store outside of the heap once and keeps it for all applications
+ * of expressions on the jar, in which case the store replaces the instructions of the decoded classes as the resident representation of the jar.
+ * Direct buffers are only released once they are garbage collected, so they are not used for short-lived stores.
+ * Once built, a store is never modified and may be read by multiple threads at once.
+ */
+final class InstructionStore {
+
+    /**
+     * A sequential reader of the instructions of a single method.
+     */
+    final class Cursor {
+        private int end;
+        private int offset;
+        private int opcode;
+        private final int @NotNull[] operands = new int[3];
+        private int opcodeStart;
+        private int operandPosition;
+
+        private Cursor() {
+        }
+
+        /**
+         * Obtains the constant loaded by the current <code>LDC</code> instruction.
+         *
+         * @return The constant.
+         */
+        @NotNull
+        @Contract(pure = true)
+        Object getConstant() {
+            return InstructionStore.this.constants[this.operands[0]];
+        }
+
+        /**
+         * Obtains the descriptor referenced by the current field, method or <code>INVOKEDYNAMIC</code> instruction,
+         * or the internal name referenced by the current type instruction.
+         *
+         * @return The descriptor.
+         */
+        @NotNull
+        @Contract(pure = true)
+        String getDesc() {
+            return InstructionStore.this.symbols[this.operands[2]];
+        }
+
+        /**
+         * Obtains the integer operand of the current instruction: The operand of <code>BIPUSH</code>, <code>SIPUSH</code> and
+         * <code>NEWARRAY</code>, the local variable of variable and <code>IINC</code> instructions, the offset of the target of jumps
+         * or the dimensions of <code>MULTIANEWARRAY</code> instructions.
+         *
+         * @return The integer operand.
+         */
+        @Contract(pure = true)
+        int getIntOperand() {
+            return this.operands[0];
+        }
+
+        @NotNull
+        @Contract(pure = true)
+        String getName() {
+            return InstructionStore.this.symbols[this.operands[1]];
+        }
+
+        /**
+         * Obtains the offset of the current instruction within the method, including pseudo-instructions.
+         *
+         * @return The offset of the instruction.
+         */
+        @Contract(pure = true)
+        int getOffset() {
+            return this.offset;
+        }
+
+        /**
+         * Obtains the opcode of the current instruction, -1 for pseudo-instructions.
+         *
+         * @return The opcode.
+         */
+        @Contract(pure = true)
+        int getOpcode() {
+            return this.opcode;
+        }
+
+        @NotNull
+        @Contract(pure = true)
+        String getOwner() {
+            return InstructionStore.this.symbols[this.operands[0]];
+        }
+
+        /**
+         * Advances the cursor to the next instruction.
+         *
+         * @return False if there are no more instructions.
+         */
+        @Contract(pure = false)
+        boolean next() {
+            if (++this.offset >= this.end) {
+                this.offset = this.end;
+                return false;
+            }
+            ByteBuffer operands = InstructionStore.this.operands;
+            int opcode = InstructionStore.this.opcodes.get(this.opcodeStart + this.offset) & 0xFF;
+            if (opcode == InstructionStore.PSEUDO_OPCODE) {
+                this.opcode = -1;
+                return true;
+            }
+            this.opcode = opcode;
+            int operandCount = InstructionStore.OPERAND_COUNTS[opcode];
+            for (int i = 0; i < operandCount; i++) {
+                int value = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = operands.get(this.operandPosition++);
+                    value |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                this.operands[i] = value;
+            }
+            if (opcode == Opcodes.BIPUSH || opcode == Opcodes.SIPUSH || opcode == Opcodes.NEWARRAY) {
+                this.operands[0] = (this.operands[0] >>> 1) ^ -(this.operands[0] & 1);
+            } else if (opcode == Opcodes.IINC) {
+                this.operands[1] = (this.operands[1] >>> 1) ^ -(this.operands[1] & 1);
+            } else if (opcode == Opcodes.INVOKEDYNAMIC) {
+                this.operands[2] = this.operands[1];
+                this.operands[1] = this.operands[0];
+            } else if (opcode == Opcodes.MULTIANEWARRAY) {
+                this.operands[2] = this.operands[0];
+                this.operands[0] = this.operands[1];
+            } else if (opcode == Opcodes.NEW || opcode == Opcodes.ANEWARRAY || opcode == Opcodes.CHECKCAST || opcode == Opcodes.INSTANCEOF) {
+                this.operands[2] = this.operands[0];
+            }
+            return true;
+        }
+
+        @NotNull
+        @Contract(pure = false, value = "_ -> this")
+        Cursor reset(int ordinal) {
+            this.opcodeStart = InstructionStore.this.opcodeStarts[ordinal];
+            this.end = InstructionStore.this.opcodeStarts[ordinal + 1] - this.opcodeStart;
+            this.operandPosition = InstructionStore.this.operandStarts[ordinal];
+            this.offset = -1;
+            this.opcode = -1;
+            return this;
+        }
+    }
+
+    /**
+     * The amount of operands stored for each opcode.
+     */
+    static final int @NotNull[] OPERAND_COUNTS = new int[256];
+
+    /**
+     * The value used to encode the opcode of pseudo-instructions, which is not used by any instruction.
+     */
+    private static final int PSEUDO_OPCODE = 0xFF;
+
+    static {
+        for (int opcode : new int[] {Opcodes.BIPUSH, Opcodes.SIPUSH, Opcodes.NEWARRAY, Opcodes.LDC, Opcodes.RET}) {
+            InstructionStore.OPERAND_COUNTS[opcode] = 1;
+        }
+        for (int opcode = Opcodes.ILOAD; opcode <= Opcodes.ALOAD; opcode++) {
+            InstructionStore.OPERAND_COUNTS[opcode] = 1;
+        }
+        for (int opcode = Opcodes.ISTORE; opcode <= Opcodes.ASTORE; opcode++) {
+            InstructionStore.OPERAND_COUNTS[opcode] = 1;
+        }
+        for (int opcode = Opcodes.IFEQ; opcode <= Opcodes.JSR; opcode++) {
+            InstructionStore.OPERAND_COUNTS[opcode] = 1;
+        }
+        InstructionStore.OPERAND_COUNTS[Opcodes.IFNULL] = 1;
+        InstructionStore.OPERAND_COUNTS[Opcodes.IFNONNULL] = 1;
+        for (int opcode : new int[] {Opcodes.NEW, Opcodes.ANEWARRAY, Opcodes.CHECKCAST, Opcodes.INSTANCEOF}) {
+            // Type instructions only have a single symbol, which is stored as the descriptor
+            InstructionStore.OPERAND_COUNTS[opcode] = 1;
+        }
+        InstructionStore.OPERAND_COUNTS[Opcodes.IINC] = 2;
+        InstructionStore.OPERAND_COUNTS[Opcodes.MULTIANEWARRAY] = 2;
+        InstructionStore.OPERAND_COUNTS[Opcodes.INVOKEDYNAMIC] = 2;
+        for (int opcode = Opcodes.GETSTATIC; opcode <= Opcodes.INVOKEINTERFACE; opcode++) {
+            InstructionStore.OPERAND_COUNTS[opcode] = 3;
+        }
+    }
+
+    @NotNull
+    private Object @NotNull[] constants = new Object[64];
+
+    private final boolean direct;
+
+    private final int @NotNull[] opcodeStarts;
+
+    @NotNull
+    private ByteBuffer opcodes;
+
+    @NotNull
+    private ByteBuffer operands;
+
+    private final int @NotNull[] operandStarts;
+
+    /**
+     * The names and descriptors referenced by the instructions, indexed by their id within the {@link SymbolTable} used while encoding.
+     */
+    @NotNull
+    private final String @NotNull[] symbols;
+
+    /**
+     * Creates a store holding the instructions of all methods of a table.
+     *
+     * @param table The table.
+     * @param direct True to store the instructions outside of the heap, false to store them in heap buffers.
+     */
+    InstructionStore(@NotNull MethodTable table, boolean direct) {
+        int methodCount = table.getMethodCount();
+        this.direct = direct;
+        this.opcodeStarts = new int[methodCount + 1];
+        this.operandStarts = new int[methodCount + 1];
+        this.opcodes = this.allocate(Math.max(methodCount * 32, 64));
+        this.operands = this.allocate(Math.max(methodCount * 32, 64));
+
+        Map<@NotNull Object, @NotNull Integer> constantIds = new HashMap<>();
+        SymbolTable symbols = new SymbolTable();
+        for (int ordinal = 0; ordinal < methodCount; ordinal++) {
+            this.opcodeStarts[ordinal] = this.opcodes.position();
+            this.operandStarts[ordinal] = this.operands.position();
+            InsnList instructions = table.getMethod(ordinal).instructions;
+            if (this.opcodes.remaining() < instructions.size()) {
+                this.opcodes = this.grow(this.opcodes, instructions.size());
+            }
+            for (AbstractInsnNode insn = instructions.getFirst(); insn != null; insn = insn.getNext()) {
+                int opcode = insn.getOpcode();
+                if (opcode < 0) {
+                    this.opcodes.put((byte) InstructionStore.PSEUDO_OPCODE);
+                    continue;
+                }
+                this.opcodes.put((byte) opcode);
+                if (InstructionStore.OPERAND_COUNTS[opcode] == 0) {
+                    continue;
+                }
+                if (this.operands.remaining() < 15) {
+                    this.operands = this.grow(this.operands, 15);
+                }
+                if (insn instanceof FieldInsnNode) {
+                    FieldInsnNode fInsn = (FieldInsnNode) insn;
+                    this.putVarInt(symbols.getId(fInsn.owner));
+                    this.putVarInt(symbols.getId(fInsn.name));
+                    this.putVarInt(symbols.getId(fInsn.desc));
+                } else if (insn instanceof MethodInsnNode) {
+                    MethodInsnNode mInsn = (MethodInsnNode) insn;
+                    this.putVarInt(symbols.getId(mInsn.owner));
+                    this.putVarInt(symbols.getId(mInsn.name));
+                    this.putVarInt(symbols.getId(mInsn.desc));
+                } else if (insn instanceof InvokeDynamicInsnNode) {
+                    InvokeDynamicInsnNode indyInsn = (InvokeDynamicInsnNode) insn;
+                    this.putVarInt(symbols.getId(indyInsn.name));
+                    this.putVarInt(symbols.getId(indyInsn.desc));
+                } else if (insn instanceof LdcInsnNode) {
+                    this.putVarInt(this.internConstant(constantIds, ((LdcInsnNode) insn).cst));
+                } else if (insn instanceof IntInsnNode) {
+                    int operand = ((IntInsnNode) insn).operand;
+                    this.putVarInt((operand << 1) ^ (operand >> 31));
+                } else if (insn instanceof VarInsnNode) {
+                    this.putVarInt(((VarInsnNode) insn).var);
+                } else if (insn instanceof IincInsnNode) {
+                    int incr = ((IincInsnNode) insn).incr;
+                    this.putVarInt(((IincInsnNode) insn).var);
+                    this.putVarInt((incr << 1) ^ (incr >> 31));
+                } else if (insn instanceof JumpInsnNode) {
+                    this.putVarInt(instructions.indexOf(((JumpInsnNode) insn).label));
+                } else if (insn instanceof TypeInsnNode) {
+                    this.putVarInt(symbols.getId(((TypeInsnNode) insn).desc));
+                } else if (insn instanceof MultiANewArrayInsnNode) {
+                    this.putVarInt(symbols.getId(((MultiANewArrayInsnNode) insn).desc));
+                    this.putVarInt(((MultiANewArrayInsnNode) insn).dims);
+                }
+            }
+        }
+        this.opcodeStarts[methodCount] = this.opcodes.position();
+        this.operandStarts[methodCount] = this.operands.position();
+        this.opcodes = this.trim(this.opcodes);
+        this.operands = this.trim(this.operands);
+        this.constants = Arrays.copyOf(this.constants, constantIds.size());
+        // Copied into a plain array, so that cursors can read symbols without synchronization
+        this.symbols = symbols.getSymbols();
+    }
+
+    @NotNull
+    @Contract(pure = true, value = "_ -> new")
+    private ByteBuffer allocate(int capacity) {
+        return this.direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    @NotNull
+    @Contract(pure = true, value = "_, _ -> new")
+    private ByteBuffer grow(@NotNull ByteBuffer buffer, int minimumRemaining) {
+        ByteBuffer grown = this.allocate(Math.max(buffer.capacity() * 2, buffer.position() + minimumRemaining));
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+
+    @NotNull
+    @Contract(pure = true, value = "_ -> new")
+    private ByteBuffer trim(@NotNull ByteBuffer buffer) {
+        ByteBuffer trimmed = this.allocate(buffer.position());
+        buffer.flip();
+        trimmed.put(buffer);
+        return trimmed;
+    }
+
+    /**
+     * Obtains the total amount of memory held by the buffers of this store, which reside outside of the heap for direct stores.
+     *
+     * @return The size of the encoded instructions in bytes.
+     */
+    @Contract(pure = true)
+    long getByteSize() {
+        return (long) this.opcodes.capacity() + this.operands.capacity();
+    }
+
+    /**
+     * Checks whether the instructions are stored outside of the heap.
+     *
+     * @return True if the buffers of this store are direct buffers.
+     */
+    @Contract(pure = true)
+    boolean isDirect() {
+        return this.direct;
+    }
+
+    @Contract(pure = true)
+    int getInstructionCount(int ordinal) {
+        return this.opcodeStarts[ordinal + 1] - this.opcodeStarts[ordinal];
+    }
+
+    /**
+     * Obtains the opcode of an instruction.
+     *
+     * @param ordinal The ordinal of the method.
+     * @param offset The offset of the instruction within the method, including pseudo-instructions.
+     * @return The opcode of the instruction, -1 for pseudo-instructions.
+     */
+    @Contract(pure = true)
+    int getOpcode(int ordinal, int offset) {
+        int opcode = this.opcodes.get(this.opcodeStarts[ordinal] + offset) & 0xFF;
+        return opcode == InstructionStore.PSEUDO_OPCODE ? -1 : opcode;
+    }
+
+    @Contract(pure = false)
+    private int internConstant(@NotNull Map<@NotNull Object, @NotNull Integer> constantIds, @NotNull Object constant) {
+        Integer id = constantIds.get(constant);
+        if (id == null) {
+            id = constantIds.size();
+            if (id == this.constants.length) {
+                this.constants = Arrays.copyOf(this.constants, id * 2);
+            }
+            this.constants[id] = constant;
+            constantIds.put(constant, id);
+        }
+        return id;
+    }
+
+    /**
+     * Creates a cursor positioned before the first instruction of a method.
+     *
+     * @param ordinal The ordinal of the method.
+     * @return The cursor.
+     */
+    @NotNull
+    @Contract(pure = true, value = "_ -> new")
+    Cursor open(int ordinal) {
+        return new Cursor().reset(ordinal);
+    }
+
+    @Contract(pure = false)
+    private void putVarInt(int value) {
+        while ((value & ~0x7F) != 0) {
+            this.operands.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        this.operands.put((byte) value);
+    }
+}
@@ -0,0 +1,439 @@
+package org.stianloader.softmap;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Existing mappings which are written into the base frame of the remapper before any expression is applied.
+ *
+ * <p>Seeded mappings behave exactly like mappings produced by earlier expressions: Explicit names are compared against them
+ * and mapping requests (names suffixed with '?') must agree with them. As such, seeding the remapper with partial mappings
+ * (e.g. mappings of an older version) makes expressions more selective. Seeded mappings are exported alongside the
+ * mappings produced by the expressions.
+ *
+ * <p>Mappings are read line by line from tinyV1, Enigma or ProGuard files. Names are interned while reading, so that
+ * the many repeated owners and descriptors of a mapping file share a single string instance. Mappings of multiple files may
+ * be read into the same seed, in which case later mappings take precedence over earlier mappings of the same class or member.
+ */
+public final class MappingSeed {
+
+    @FunctionalInterface
+    private static interface LineConsumer {
+        void accept(char @NotNull[] buffer, int start, int end, int lineNumber) throws IOException;
+    }
+
+    /**
+     * The amount of values stored per member: owner, source name, source descriptor and destination name.
+     */
+    private static final int STRIDE = 4;
+
+    @Contract(pure = true)
+    private static int indexOf(char @NotNull[] buffer, int start, int end, char c) {
+        for (int i = start; i < end; i++) {
+            if (buffer[i] == c) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    @Contract(pure = true)
+    private static boolean isEnigmaModifiers(char @NotNull[] buffer, int start, int end) {
+        return end - start >= 4 && buffer[start] == 'A' && buffer[start + 1] == 'C' && buffer[start + 2] == 'C' && buffer[start + 3] == ':';
+    }
+
+    @NotNull
+    @Contract(pure = true, value = "_, _ -> new")
+    private static IOException malformed(@NotNull String format, int lineNumber) {
+        return new IOException("Malformed " + format + " mappings at line " + lineNumber);
+    }
+
+    @Contract(pure = false)
+    private static void readLines(@NotNull Reader reader, @NotNull LineConsumer consumer) throws IOException {
+        char[] buffer = new char[8192];
+        int length = 0;
+        int lineNumber = 0;
+        while (true) {
+            int read = reader.read(buffer, length, buffer.length - length);
+            if (read == -1) {
+                if (length != 0) {
+                    consumer.accept(buffer, 0, buffer[length - 1] == '\r' ? length - 1 : length, ++lineNumber);
+                }
+                return;
+            }
+            length += read;
+            int lineStart = 0;
+            for (int i = length - read; i < length; i++) {
+                if (buffer[i] != '\n') {
+                    continue;
+                }
+                int lineEnd = i != lineStart && buffer[i - 1] == '\r' ? i - 1 : i;
+                consumer.accept(buffer, lineStart, lineEnd, ++lineNumber);
+                lineStart = i + 1;
+            }
+            length -= lineStart;
+            System.arraycopy(buffer, lineStart, buffer, 0, length);
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+        }
+    }
+
+    private int classCount;
+
+    /**
+     * Pairs of source and destination names of classes.
+     */
+    @NotNull
+    private String @NotNull[] classes = new String[32];
+
+    private int memberCount;
+
+    /**
+     * The members, each stored as {@link #STRIDE} values. Fields and methods are distinguished by their descriptor.
+     */
+    @NotNull
+    private String @NotNull[] members = new String[64 * MappingSeed.STRIDE];
+
+    @NotNull
+    private final SymbolTable symbols = new SymbolTable();
+
+    @Contract(pure = false)
+    private void addClass(@NotNull String srcName, @NotNull String dstName) {
+        if (this.classCount * 2 == this.classes.length) {
+            this.classes = Arrays.copyOf(this.classes, this.classes.length * 2);
+        }
+        this.classes[this.classCount * 2] = srcName;
+        this.classes[this.classCount++ * 2 + 1] = dstName;
+    }
+
+    @Contract(pure = false)
+    private void addMember(@NotNull String owner, @NotNull String srcName, @NotNull String srcDesc, @NotNull String dstName) {
+        int base = this.memberCount * MappingSeed.STRIDE;
+        if (base == this.members.length) {
+            this.members = Arrays.copyOf(this.members, base * 2);
+        }
+        this.members[base] = owner;
+        this.members[base + 1] = srcName;
+        this.members[base + 2] = srcDesc;
+        this.members[base + 3] = dstName;
+        this.memberCount++;
+    }
+
+    /**
+     * Writes all seeded mappings into the uppermost frame of a remapper. Method mappings are skipped if the
+     * remapper does not know the realm of the method, that is if the owner of the method is not present.
+     *
+     * @param remapper The remapper to write the mappings to.
+     */
+    @Contract(pure = false)
+    void apply(@NotNull SimpleFramedRemapper remapper) {
+        for (int i = 0; i < this.classCount; i++) {
+            remapper.mapClass(this.classes[i * 2], this.classes[i * 2 + 1]);
+        }
+        String[] members = this.members;
+        for (int base = 0; base < this.memberCount * MappingSeed.STRIDE; base += MappingSeed.STRIDE) {
+            if (members[base + 2].codePointAt(0) != '(') {
+                remapper.mapField(members[base], members[base + 1], members[base + 2], members[base + 3]);
+            } else if (remapper.hasRealm(members[base], members[base + 1], members[base + 2])) {
+                remapper.mapMethod(members[base], members[base + 1], members[base + 2], members[base + 3]);
+            }
+        }
+    }
+
+    /**
+     * Obtains the amount of seeded classes, fields and methods.
+     *
+     * @return The amount of mappings.
+     */
+    @Contract(pure = true)
+    public int getMappingCount() {
+        return this.classCount + this.memberCount;
+    }
+
+    /**
+     * Reads mappings in the Enigma format. Each class, field or method is mapped from its obfuscated name to its
+     * deobfuscated name, if any. Argument and comment entries are ignored.
+     *
+     * @param reader The reader to read the mappings from.
+     * @return This instance, for chaining.
+     * @throws IOException If the reader fails or if the mappings are malformed.
+     */
+    @NotNull
+    @Contract(pure = false, value = "_ -> this")
+    public MappingSeed readEnigma(@NotNull Reader reader) throws IOException {
+        // The source and destination names of the enclosing classes, indexed by indentation depth
+        List<@NotNull String> srcOwners = new ArrayList<>();
+        List<@NotNull String> dstOwners = new ArrayList<>();
+        int[] tokenStarts = new int[4];
+        int[] tokenEnds = new int[4];
+        MappingSeed.readLines(reader, (buffer, start, end, lineNumber) -> {
+            int depth = 0;
+            while (start + depth < end && buffer[start + depth] == '\t') {
+                depth++;
+            }
+            int tokenCount = 0;
+            for (int i = start + depth; i < end && tokenCount != tokenStarts.length;) {
+                int tokenEnd = MappingSeed.indexOf(buffer, i, end, ' ');
+                if (tokenEnd != i) {
+                    tokenStarts[tokenCount] = i;
+                    tokenEnds[tokenCount++] = tokenEnd;
+                }
+                i = tokenEnd + 1;
+            }
+            if (tokenCount == 0) {
+                return;
+            }
+            String kind = this.symbols.intern(buffer, tokenStarts[0], tokenEnds[0]);
+            if (kind.equals("CLASS")) {
+                if (tokenCount < 2 || depth > srcOwners.size()) {
+                    throw MappingSeed.malformed("Enigma", lineNumber);
+                }
+                srcOwners.subList(depth, srcOwners.size()).clear();
+                dstOwners.subList(depth, dstOwners.size()).clear();
+                String srcName = this.symbols.intern(buffer, tokenStarts[1], tokenEnds[1]);
+                boolean mapped = tokenCount > 2 && !MappingSeed.isEnigmaModifiers(buffer, tokenStarts[2], tokenEnds[2]);
+                String dstName = mapped ? this.symbols.intern(buffer, tokenStarts[2], tokenEnds[2]) : null;
+                if (depth != 0) {
+                    // Inner classes are either given with their full name or with their name relative to the enclosing class
+                    String srcOuter = srcOwners.get(depth - 1);
+                    String dstOuter = dstOwners.get(depth - 1);
+                    if (srcName.indexOf('/') == -1 && !srcName.startsWith(srcOuter + '$')) {
+                        srcName = this.symbols.intern(srcOuter + '$' + srcName);
+                    }
+                    if (dstName == null) {
+                        dstName = this.symbols.intern(dstOuter + srcName.substring(srcOuter.length()));
+                    } else if (dstName.indexOf('/') == -1 && !dstName.startsWith(dstOuter + '$')) {
+                        dstName = this.symbols.intern(dstOuter + '$' + dstName);
+                    }
+                } else if (dstName == null) {
+                    dstName = srcName;
+                }
+                srcOwners.add(srcName);
+                dstOwners.add(dstName);
+                if (mapped || !dstName.equals(srcName)) {
+                    // Unmapped inner classes of mapped classes are implicitly renamed
+                    this.addClass(srcName, dstName);
+                }
+            } else if (kind.equals("FIELD") || kind.equals("METHOD")) {
+                if (tokenCount < 3 || depth == 0 || depth > srcOwners.size()) {
+                    throw MappingSeed.malformed("Enigma", lineNumber);
+                }
+                if (tokenCount == 3 || MappingSeed.isEnigmaModifiers(buffer, tokenStarts[3], tokenEnds[3])) {
+                    return; // Unmapped member: "FIELD <name> <desc>"
+                }
+                String owner = srcOwners.get(depth - 1);
+                String srcName = this.symbols.intern(buffer, tokenStarts[1], tokenEnds[1]);
+                String dstName = this.symbols.intern(buffer, tokenStarts[2], tokenEnds[2]);
+                String desc = this.symbols.intern(buffer, tokenStarts[3], tokenEnds[3]);
+                this.addMember(owner, srcName, desc, dstName);
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Reads mappings in the ProGuard format. As ProGuard maps deobfuscated names to obfuscated names,
+     * the mappings are inverted: Each class and member is mapped from its obfuscated name to its original name.
+     * Members inlined from other classes are ignored.
+     *
+     * @param reader The reader to read the mappings from.
+     * @return This instance, for chaining.
+     * @throws IOException If the reader fails or if the mappings are malformed.
+     */
+    @NotNull
+    @Contract(pure = false, value = "_ -> this")
+    public MappingSeed readProGuard(@NotNull Reader reader) throws IOException {
+        // Descriptors can only be computed once all classes are known, as they use deobfuscated type names.
+        // Members are buffered as their owner, obfuscated name, original name, original return or field type and original arguments.
+        List<@Nullable String> pendingMembers = new ArrayList<>();
+        Map<@NotNull String, @NotNull String> obfuscatedNames = new HashMap<>();
+        String[] owner = new String[1];
+        MappingSeed.readLines(reader, (buffer, start, end, lineNumber) -> {
+            int arrow = -1;
+            for (int i = start; i + 3 < end; i++) {
+                if (buffer[i] == ' ' && buffer[i + 1] == '-' && buffer[i + 2] == '>' && buffer[i + 3] == ' ') {
+                    arrow = i;
+                    break;
+                }
+            }
+            int contentStart = start;
+            while (contentStart < end && (buffer[contentStart] == ' ' || buffer[contentStart] == '\t')) {
+                contentStart++;
+            }
+            if (contentStart == end || buffer[contentStart] == '#') {
+                return; // Blank line or comment (including metadata comments of members)
+            } else if (arrow == -1) {
+                throw MappingSeed.malformed("ProGuard", lineNumber);
+            }
+
+            if (contentStart == start) {
+                // Class: "<original> -> <obfuscated>:"
+                int obfEnd = end;
+                while (obfEnd > arrow + 4 && (buffer[obfEnd - 1] == ':' || buffer[obfEnd - 1] == ' ')) {
+                    obfEnd--;
+                }
+                String dstName = this.symbols.intern(new String(buffer, start, arrow - start).replace('.', '/'));
+                String srcName = this.symbols.intern(new String(buffer, arrow + 4, obfEnd - arrow - 4).replace('.', '/'));
+                owner[0] = srcName;
+                obfuscatedNames.put(dstName, srcName);
+                this.addClass(srcName, dstName);
+                return;
+            }
+
+            // Member: "[<line>:<line>:]<type> <original>[(<arguments>)[:<line>[:<line>]]] -> <obfuscated>"
+            if (owner[0] == null) {
+                throw MappingSeed.malformed("ProGuard", lineNumber);
+            }
+            int i = contentStart;
+            while (buffer[i] == ':' || Character.isDigit(buffer[i])) {
+                i++;
+            }
+            int typeEnd = MappingSeed.indexOf(buffer, i, arrow, ' ');
+            int openParen = MappingSeed.indexOf(buffer, typeEnd, arrow, '(');
+            int nameEnd = openParen;
+            String args = null;
+            if (openParen != arrow) {
+                int closeParen = MappingSeed.indexOf(buffer, openParen, arrow, ')');
+                if (closeParen == arrow) {
+                    throw MappingSeed.malformed("ProGuard", lineNumber);
+                }
+                args = new String(buffer, openParen + 1, closeParen - openParen - 1);
+            }
+            if (typeEnd == arrow || typeEnd + 1 >= nameEnd) {
+                throw MappingSeed.malformed("ProGuard", lineNumber);
+            }
+            if (MappingSeed.indexOf(buffer, typeEnd + 1, nameEnd, '.') != nameEnd) {
+                return; // Inlined from another class
+            }
+            pendingMembers.add(owner[0]);
+            pendingMembers.add(this.symbols.intern(buffer, arrow + 4, end));
+            pendingMembers.add(this.symbols.intern(buffer, typeEnd + 1, nameEnd));
+            pendingMembers.add(this.symbols.intern(buffer, i, typeEnd));
+            pendingMembers.add(args);
+        });
+
+        StringBuilder desc = new StringBuilder();
+        for (int i = 0; i < pendingMembers.size(); i += 5) {
+            desc.setLength(0);
+            String args = pendingMembers.get(i + 4);
+            if (args != null) {
+                desc.append('(');
+                for (int argStart = 0; argStart < args.length();) {
+                    int argEnd = args.indexOf(',', argStart);
+                    if (argEnd == -1) {
+                        argEnd = args.length();
+                    }
+                    MappingSeed.appendProGuardType(desc, args.substring(argStart, argEnd).trim(), obfuscatedNames);
+                    argStart = argEnd + 1;
+                }
+                desc.append(')');
+            }
+            MappingSeed.appendProGuardType(desc, pendingMembers.get(i + 3), obfuscatedNames);
+            String srcDesc = this.symbols.intern(desc.toString());
+            this.addMember(pendingMembers.get(i), pendingMembers.get(i + 1), srcDesc, pendingMembers.get(i + 2));
+        }
+        return this;
+    }
+
+    @Contract(pure = false, mutates = "param1")
+    private static void appendProGuardType(@NotNull StringBuilder desc, @NotNull String type, @NotNull Map<@NotNull String, @NotNull String> obfuscatedNames) {
+        int elementEnd = type.length();
+        while (elementEnd >= 2 && type.charAt(elementEnd - 2) == '[' && type.charAt(elementEnd - 1) == ']') {
+            desc.append('[');
+            elementEnd -= 2;
+        }
+        String element = type.substring(0, elementEnd);
+        switch (element) {
+        case "boolean":
+            desc.append('Z');
+            break;
+        case "byte":
+            desc.append('B');
+            break;
+        case "char":
+            desc.append('C');
+            break;
+        case "short":
+            desc.append('S');
+            break;
+        case "int":
+            desc.append('I');
+            break;
+        case "long":
+            desc.append('J');
+            break;
+        case "float":
+            desc.append('F');
+            break;
+        case "double":
+            desc.append('D');
+            break;
+        case "void":
+            desc.append('V');
+            break;
+        default:
+            String internalName = element.replace('.', '/');
+            desc.append('L').append(obfuscatedNames.getOrDefault(internalName, internalName)).append(';');
+        }
+    }
+
+    /**
+     * Reads mappings in the tinyV1 format, mapping the first namespace to the second namespace.
+     * The header is optional, so that the output of {@link FramedRemapper#exportToTinyV1()} can be read as-is.
+     *
+     * @param reader The reader to read the mappings from.
+     * @return This instance, for chaining.
+     * @throws IOException If the reader fails or if the mappings are malformed.
+     */
+    @NotNull
+    @Contract(pure = false, value = "_ -> this")
+    public MappingSeed readTinyV1(@NotNull Reader reader) throws IOException {
+        int[] columnStarts = new int[6];
+        int[] columnEnds = new int[6];
+        MappingSeed.readLines(reader, (buffer, start, end, lineNumber) -> {
+            int columnCount = 0;
+            for (int i = start; i <= end && columnCount != columnStarts.length; i++) {
+                int columnEnd = MappingSeed.indexOf(buffer, i, end, '\t');
+                columnStarts[columnCount] = i;
+                columnEnds[columnCount++] = columnEnd;
+                i = columnEnd;
+            }
+            if (start == end || buffer[start] == '#') {
+                return;
+            }
+            String kind = this.symbols.intern(buffer, columnStarts[0], columnEnds[0]);
+            if (kind.equals("v1")) {
+                return; // Header
+            } else if (kind.equals("CLASS")) {
+                if (columnCount < 3) {
+                    throw MappingSeed.malformed("tinyV1", lineNumber);
+                } else if (columnStarts[2] != columnEnds[2]) {
+                    this.addClass(this.symbols.intern(buffer, columnStarts[1], columnEnds[1]), this.symbols.intern(buffer, columnStarts[2], columnEnds[2]));
+                }
+            } else if (kind.equals("FIELD") || kind.equals("METHOD")) {
+                if (columnCount < 5) {
+                    throw MappingSeed.malformed("tinyV1", lineNumber);
+                } else if (columnStarts[4] != columnEnds[4]) {
+                    String owner = this.symbols.intern(buffer, columnStarts[1], columnEnds[1]);
+                    String desc = this.symbols.intern(buffer, columnStarts[2], columnEnds[2]);
+                    String srcName = this.symbols.intern(buffer, columnStarts[3], columnEnds[3]);
+                    String dstName = this.symbols.intern(buffer, columnStarts[4], columnEnds[4]);
+                    this.addMember(owner, srcName, desc, dstName);
+                }
+            } else {
+                throw MappingSeed.malformed("tinyV1", lineNumber);
+            }
+        });
+        return this;
+    }
+}
@@ -0,0 +1,77 @@
+package org.stianloader.softmap;
+
+import java.util.List;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Unmodifiable;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.stianloader.softmap.SimpleFramedRemapper.MethodLoc;
+import org.stianloader.softmap.SoftmapContext.ApplicationResult;
+
+/**
+ * The methods matched by the expressions of a {@link SoftmapContext} when applied to a previous version of a jar,
+ * used to speed up applying the same expressions to another version of the jar.
+ *
+ * <p>Most methods are identical between versions once the names of obfuscated classes and members are abstracted out.
+ * For every expression that matched a method in the previous version, the normalized hash of the body of that method is recorded.
+ * When applying the expressions to the other version, the expression is first matched against the only method with the same hash
+ * (if there is exactly one such method). Only if it does not match, the expression is matched against all methods as usual.
+ *
+ * <p>Beware that an expression matching a carried over method is not checked against the other methods,
+ * so an expression that becomes ambiguous in the other version is not reported as such.
+ */
+public final class MatchCarryover {
+
+    private final long @NotNull[] hashes;
+    private final boolean @NotNull[] matched;
+
+    /**
+     * Records the methods matched in a previous version.
+     *
+     * @param previousNodes The classes of the previous version, including the method bodies.
+     * @param previousResult The result of applying the expressions to the classes of the previous version.
+     * The result must stem from a context with the same expressions in the same order as the context
+     * this carryover is used with, as matches are associated with expressions by their index.
+     */
+    public MatchCarryover(@NotNull @Unmodifiable List<@NotNull ClassNode> previousNodes, @NotNull ApplicationResult previousResult) {
+        List<MethodLoc> matchedMethods = previousResult.getMatchedMethods();
+        this.hashes = new long[matchedMethods.size()];
+        this.matched = new boolean[matchedMethods.size()];
+        MethodTable table = new MethodTable(previousNodes);
+        for (int i = 0; i < matchedMethods.size(); i++) {
+            MethodLoc loc = matchedMethods.get(i);
+            if (loc == null) {
+                continue;
+            }
+            int classIndex = table.getClassIndex(loc.getOwner());
+            if (classIndex == -1) {
+                continue;
+            }
+            for (int ordinal = table.getFirstOrdinal(classIndex); ordinal < table.getFirstOrdinal(classIndex + 1); ordinal++) {
+                MethodNode method = table.getMethodHeader(ordinal);
+                if (method.name.equals(loc.getName()) && method.desc.equals(loc.getDesc())) {
+                    this.hashes[i] = BodyHashIndex.getBodyHash(table, ordinal);
+                    this.matched[i] = true;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Obtains the method an expression is likely to match as it matched a method with the same body in the previous version.
+     *
+     * @param exprIndex The index of the expression.
+     * @param index The body hash index of the methods the expression is applied to.
+     * @return The ordinal of the method, -1 if there is no such method.
+     */
+    @Contract(pure = false)
+    int getCarriedMethod(int exprIndex, @NotNull BodyHashIndex index) {
+        if (exprIndex >= this.matched.length || !this.matched[exprIndex]) {
+            return -1;
+        }
+        return index.getUniqueMethod(this.hashes[exprIndex]);
+    }
+}
@@ -0,0 +1,545 @@
+package org.stianloader.softmap;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.IntInsnNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.VarInsnNode;
+import org.stianloader.softmap.insns.ConstantInsn;
+import org.stianloader.softmap.insns.FieldInsn;
+import org.stianloader.softmap.insns.InsnBlock;
+import org.stianloader.softmap.insns.InvokeInsn;
+import org.stianloader.softmap.insns.MatchResult;
+import org.stianloader.softmap.insns.SimpleInsnBlock;
+import org.stianloader.softmap.insns.VarInsn;
+import org.stianloader.softmap.insns.WildcardInsnBlock;
+import org.stianloader.softmap.tokens.StringToken;
+
+/**
+ * Generates {@link ExpressionMatcher} subclasses specialized for the instruction blocks of a single expression.
+ *
+ * <p>The generated {@link ExpressionMatcher#match(InsnList, int, OpcodeIndex, BlockMemo, int[], FramedRemapper, ExpressionMatcher.Progress) match}
+ * method has the block sequence unrolled, so that each block has its own section of code and the blocks are invoked through
+ * fields of their exact type instead of through the {@link InsnBlock} interface. Opcode checks are inlined, and so are the
+ * comparisons against literal operands of blocks which never touch the remapper (e.g. explicitly named fields, local variable indices
+ * or constants). Such blocks are only invoked when the instruction does not match them in order to obtain the error.
+ * As these blocks have no effect on the remapper, no remapping frames are pushed for them either. For the same reason,
+ * the {@link BlockMemo memo table} is not consulted by compiled matchers, the inlined comparisons are cheaper than a lookup.
+ *
+ * <p>The generated classes are defined as hidden classes within this package should the runtime support it. Runtimes lacking
+ * support for hidden classes fall back to regular class definition through {@code Lookup.defineClass},
+ * and runtimes lacking both (i.e. Java 8) do not compile matchers at all. The lookup API is accessed reflectively as softmap
+ * targets Java 8.
+ */
+final class MatcherCompiler {
+
+    private static final String ABSTRACT_INSN_NODE = Type.getInternalName(AbstractInsnNode.class);
+
+    private static final AtomicInteger CLASS_COUNTER = new AtomicInteger();
+
+    @Nullable
+    private static final Method DEFINE_CLASS;
+
+    @Nullable
+    private static final Method DEFINE_HIDDEN_CLASS;
+
+    private static final String EXPRESSION_MATCHER = Type.getInternalName(ExpressionMatcher.class);
+
+    private static final String FRAMED_REMAPPER = Type.getInternalName(FramedRemapper.class);
+
+    @Nullable
+    private static final Object HIDDEN_CLASS_OPTIONS;
+
+    private static final String INSN_LIST = Type.getInternalName(InsnList.class);
+
+    private static final MethodHandles.@NotNull Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final String MATCH_DESC = Type.getMethodDescriptor(Type.getType(MatchResult.class), Type.getType(InsnList.class), Type.INT_TYPE,
+            Type.getType(OpcodeIndex.class), Type.getType(BlockMemo.class), Type.getType(int[].class), Type.getType(FramedRemapper.class),
+            Type.getType(ExpressionMatcher.Progress.class));
+
+    private static final String MATCH_RESULT = Type.getInternalName(MatchResult.class);
+
+    private static final String MATCHES_INSTRUCTION_DESC = Type.getMethodDescriptor(Type.getType(MatchResult.class), Type.getType(AbstractInsnNode.class), Type.getType(FramedRemapper.class));
+
+    private static final String PROGRESS = Type.getInternalName(ExpressionMatcher.Progress.class);
+
+    // Local variable slots of the generated match method
+    private static final int VAR_BLOCK_INDEX = 13;
+    private static final int VAR_INSN = 8;
+    private static final int VAR_INSTRUCTIONS = 1;
+    private static final int VAR_LAST_RESULT = 12;
+    private static final int VAR_OFFSET = 9;
+    private static final int VAR_OPCODE_INDEX = 3;
+    private static final int VAR_ORDINAL = 2;
+    private static final int VAR_PROGRESS = 7;
+    private static final int VAR_REMAPPER = 6;
+    private static final int VAR_RESULT = 14;
+    private static final int VAR_SEED_OFFSET = 11;
+    private static final int VAR_SEEDED_BLOCK = 10;
+
+    static {
+        Method defineHiddenClass = null;
+        Object hiddenClassOptions = null;
+        Method defineClass = null;
+        try {
+            Class<?> optionClass = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+            hiddenClassOptions = Array.newInstance(optionClass, 0);
+            defineHiddenClass = MethodHandles.Lookup.class.getMethod("defineHiddenClass", byte[].class, boolean.class, hiddenClassOptions.getClass());
+        } catch (ReflectiveOperationException e) {
+            hiddenClassOptions = null;
+            try {
+                defineClass = MethodHandles.Lookup.class.getMethod("defineClass", byte[].class);
+            } catch (ReflectiveOperationException e2) {
+                // Java 8: Matchers cannot be compiled
+            }
+        }
+        DEFINE_HIDDEN_CLASS = defineHiddenClass;
+        HIDDEN_CLASS_OPTIONS = hiddenClassOptions;
+        DEFINE_CLASS = defineClass;
+    }
+
+    /**
+     * Generates a matcher for the given instruction blocks.
+     *
+     * @param insnBlocks The instruction blocks of the expression.
+     * @return The compiled matcher, or null if the blocks cannot be compiled or the runtime does not support defining classes.
+     */
+    @Nullable
+    @Contract(pure = false)
+    static ExpressionMatcher compile(@NotNull List<? extends @NotNull InsnBlock> insnBlocks) {
+        if (MatcherCompiler.DEFINE_HIDDEN_CLASS == null && MatcherCompiler.DEFINE_CLASS == null) {
+            return null;
+        }
+        for (InsnBlock block : insnBlocks) {
+            if (MatcherCompiler.getBlockType(block) == null) {
+                return null;
+            }
+        }
+
+        String name = MatcherCompiler.EXPRESSION_MATCHER + "$Compiled" + MatcherCompiler.CLASS_COUNTER.getAndIncrement();
+        byte[] bytes = MatcherCompiler.generate(name, insnBlocks);
+        try {
+            Class<?> matcherClass;
+            Method defineHiddenClass = MatcherCompiler.DEFINE_HIDDEN_CLASS;
+            if (defineHiddenClass != null) {
+                matcherClass = ((MethodHandles.Lookup) defineHiddenClass.invoke(MatcherCompiler.LOOKUP, bytes, true, MatcherCompiler.HIDDEN_CLASS_OPTIONS)).lookupClass();
+            } else {
+                matcherClass = (Class<?>) Objects.requireNonNull(MatcherCompiler.DEFINE_CLASS).invoke(MatcherCompiler.LOOKUP, bytes);
+            }
+            return (ExpressionMatcher) matcherClass.getConstructor(List.class).newInstance(insnBlocks);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // Fall back to the interpreter
+            return null;
+        }
+    }
+
+    /**
+     * Emits the evaluation of a block against the current instruction. If the block matches, control is transferred to
+     * the success label and mappings requested by the block are merged into the frame of the method.
+     * Otherwise, the result of the block is stored as the last result and control is transferred to the failure label.
+     *
+     * @param mv The visitor of the match method.
+     * @param owner The internal name of the generated class.
+     * @param insnBlocks The instruction blocks.
+     * @param blockIndex The index of the block to evaluate.
+     * @param success The label to jump to if the block matches.
+     * @param failure The label to jump to if the block does not match.
+     */
+    @Contract(pure = false)
+    private static void emitBlock(@NotNull MethodVisitor mv, @NotNull String owner, @NotNull List<? extends @NotNull InsnBlock> insnBlocks, int blockIndex,
+            @NotNull Label success, @NotNull Label failure) {
+        InsnBlock block = insnBlocks.get(blockIndex);
+        String blockType = MatcherCompiler.getBlockType(block);
+        Label mismatch = new Label();
+
+        mv.visitVarInsn(Opcodes.ALOAD, MatcherCompiler.VAR_INSN);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, MatcherCompiler.ABSTRACT_INSN_NODE, "getOpcode", "()I", false);
+        MatcherCompiler.pushInt(mv, block.getOpcode());
+        mv.visitJumpInsn(Opcodes.IF_ICMPNE, mismatch);
+
+        if (MatcherCompiler.isPure(block)) {
+            MatcherCompiler.emitOperandChecks(mv, block, mismatch);
+            mv.visitJumpInsn(Opcodes.GOTO, success);
+        } else {
+            Label failed = new Label();
+            mv.visitVarInsn(Opcodes.ALOAD, MatcherCompiler.VAR_REMAPPER);
+            mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, MatcherCompiler.FRAMED_REMAPPER, "pushFrame", "()V", true);
+            MatcherCompiler.emitMatchesInstruction(mv, owner, blockType, blockIndex);
+            mv.visitVarInsn(Opcodes.ASTORE, MatcherCompiler.VAR_RESULT);
+            mv.visitVarInsn(Opcodes.ALOAD, MatcherCompiler.VAR_RESULT);
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, MatcherCompiler.MATCH_RESULT, "isBreakingMatching", "()Z", false);
+            mv.visitJumpInsn(Opcodes.IFEQ, failed);
+            mv.visitVarInsn(Opcodes.ALOAD, MatcherCompiler.VAR_REMAPPER);
+            mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, MatcherCompiler.FRAMED_REMAPPER, "mergeFrame", "()V", true);
+            mv.visitJumpInsn(Opcodes.GOTO, success);
+            mv.visitLabel(failed);
+            mv.visitVarInsn(Opcodes.ALOAD, MatcherCompiler.VAR_RESULT);
+            mv.visitVarInsn(Opcodes.ASTORE, MatcherCompiler.VAR_LAST_RESULT);
+            mv.visitVarInsn(Opcodes.ALOAD, MatcherCompiler.VAR_REMAPPER);
+            mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, MatcherCompiler.FRAMED_REMAPPER, "discardFrame", "()V", true);
+            mv.visitJumpInsn(Opcodes.GOTO, failure);
+        }
+
+        // The block does not match the instruction, so it is only evaluated to obtain the error.
+        // All supported blocks check the opcode before touching the remapper, so no frame is required.
+        mv.visitLabel(mismatch);
+        MatcherCompiler.emitMatchesInstruction(mv, owner, blockType, blockIndex);
+        mv.visitVarInsn(Opcodes.ASTORE, MatcherCompiler.VAR_LAST_RESULT);
+        mv.visitJumpInsn(Opcodes.GOTO, failure);
+    }
+
+    @Contract(pure = false)
+    private static void emitMatchesInstruction(@NotNull MethodVisitor mv, @NotNull String owner, @NotNull String blockType, int blockIndex) {
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitFieldInsn(Opcodes.GETFIELD, owner, "block" + blockIndex, 'L' + blockType + ';');
+        mv.visitVarInsn(Opcodes.ALOAD, MatcherCompiler.VAR_INSN);
+        mv.visitVarInsn(Opcodes.ALOAD, MatcherCompiler.VAR_REMAPPER);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, blockType, "matchesInstruction", MatcherCompiler.MATCHES_INSTRUCTION_DESC, false);
+    }
+
+    /**
+     * Emits the comparisons of the operands of the current instruction against the literal operands of a {@link #isPure(InsnBlock) pure} block.
+     * The opcode of the instruction must have already been checked.
+     *
+     * @param mv The visitor of the match method.
+     * @param block The block.
+     * @param mismatch The label to jump to if an operand does not match.
+     */
+    @Contract(pure = false)
+    private static void emitOperandChecks(@NotNull MethodVisitor mv, @NotNull InsnBlock block, @NotNull Label mismatch) {
+        if (block instanceof VarInsn) {
+            VarInsn varInsn = (VarInsn) block;
+            if (varInsn.getVarToken() != null) {
+                mv.visitVarInsn(Opcodes.ALOAD, MatcherCompiler.VAR_INSN);
+                mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(VarInsnNode.class));
+                mv.visitFieldInsn(Opcodes.GETFIELD, Type.getInternalName(VarInsnNode.class), "var", "I");
+                MatcherCompiler.pushInt(mv, varInsn.getVar());
+                mv.visitJumpInsn(Opcodes.IF_ICMPNE, mismatch);
+            }
+        } else if (block instanceof ConstantInsn) {
+            ConstantInsn constantInsn = (ConstantInsn) block;
+            if (constantInsn.getConstantToken() == null) {
+                return;
+            }
+            Object constant = constantInsn.getConstant();
+            mv.visitVarInsn(Opcodes.ALOAD, MatcherCompiler.VAR_INSN);
+            if (constantInsn.getOpcode() != Opcodes.LDC) {
+                mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(IntInsnNode.class));
+                mv.visitFieldInsn(Opcodes.GETFIELD, Type.getInternalName(IntInsnNode.class), "operand", "I");
+                MatcherCompiler.pushInt(mv, (Integer) constant);
+                mv.visitJumpInsn(Opcodes.IF_ICMPNE, mismatch);
+            } else {
+                mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(LdcInsnNode.class));
+                mv.visitFieldInsn(Opcodes.GETFIELD, Type.getInternalName(LdcInsnNode.class), "cst", "Ljava/lang/Object;");
+                mv.visitLdcInsn(constant);
+                if (!(constant instanceof String)) {
+                    Type boxType = Type.getType(constant.getClass());
+                    Type primitiveType = constant instanceof Integer ? Type.INT_TYPE
+                            : constant instanceof Float ? Type.FLOAT_TYPE
+                            : constant instanceof Long ? Type.LONG_TYPE
+                            : Type.DOUBLE_TYPE;
+                    mv.visitMethodInsn(Opcodes.INVOKESTATIC, boxType.getInternalName(), "valueOf", Type.getMethodDescriptor(boxType, primitiveType), false);
+                }
+                mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/Object", "equals", "(Ljava/lang/Object;)Z", false);
+                mv.visitJumpInsn(Opcodes.IFEQ, mismatch);
+            }
+        } else if (block instanceof FieldInsn) {
+            FieldInsn fieldInsn = (FieldInsn) block;
+            MatcherCompiler.emitStringCheck(mv, fieldInsn.getFieldOwner(), "owner", mismatch);
+            MatcherCompiler.emitStringCheck(mv, fieldInsn.getFieldName(), "name", mismatch);
+            MatcherCompiler.emitStringCheck(mv, fieldInsn.getFieldDesc(), "desc", mismatch);
+        }
+    }
+
+    /**
+     * Emits a section of the match method, which evaluates a single block (or a wildcard along with the block following it)
+     * against the current instruction.
+     *
+     * @param mv The visitor of the match method.
+     * @param owner The internal name of the generated class.
+     * @param insnBlocks The instruction blocks.
+     * @param blockIndex The index of the block evaluated by the section.
+     * @param sections The labels of all sections, with the last label being used once all blocks were matched.
+     * @param end The label of the epilogue of the match method.
+     */
+    @Contract(pure = false)
+    private static void emitSection(@NotNull MethodVisitor mv, @NotNull String owner, @NotNull List<? extends @NotNull InsnBlock> insnBlocks, int blockIndex,
+            @NotNull Label @NotNull[] sections, @NotNull Label end) {
+        mv.visitLabel(sections[blockIndex]);
+        MatcherCompiler.pushInt(mv, blockIndex);
+        mv.visitVarInsn(Opcodes.ISTORE, MatcherCompiler.VAR_BLOCK_INDEX);
+        mv.visitVarInsn(Opcodes.ALOAD, MatcherCompiler.VAR_INSN);
+        mv.visitJumpInsn(Opcodes.IFNULL, end);
+
+        if (!(insnBlocks.get(blockIndex) instanceof WildcardInsnBlock)) {
+            Label success = new Label();
+            MatcherCompiler.emitBlock(mv, owner, insnBlocks, blockIndex, success, end);
+            mv.visitLabel(success);
+            MatcherCompiler.emitNextInstruction(mv, sections[blockIndex + 1]);
+            return;
+        }
+
+        // See ExpressionMatcher#match for the seeding of wildcards
+        Label reseed = new Label();
+        Label seeded = new Label();
+        mv.visitVarInsn(Opcodes.ILOAD, MatcherCompiler.VAR_SEEDED_BLOCK);
+        MatcherCompiler.pushInt(mv, blockIndex);
+        mv.visitJumpInsn(Opcodes.IF_ICMPNE, reseed);
+        mv.visitVarInsn(Opcodes.ILOAD, MatcherCompiler.VAR_OFFSET);
+        mv.visitVarInsn(Opcodes.ILOAD, MatcherCompiler.VAR_SEED_OFFSET);
+        mv.visitJumpInsn(Opcodes.IF_ICMPLE, seeded);
+        mv.visitLabel(reseed);
+        MatcherCompiler.pushInt(mv, blockIndex);
+        mv.visitVarInsn(Opcodes.ISTORE, MatcherCompiler.VAR_SEEDED_BLOCK);
+        int nextOpcode = blockIndex + 1 == insnBlocks.size() ? -1 : insnBlocks.get(blockIndex + 1).getOpcode();
+        if (blockIndex + 1 == insnBlocks.size()) {
+            mv.visitVarInsn(Opcodes.ALOAD, MatcherCompiler.VAR_INSTRUCTIONS);
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, MatcherCompiler.INSN_LIST, "size", "()I", false);
+        } else if (nextOpcode >= 0) {
+            mv.visitVarInsn(Opcodes.ALOAD, MatcherCompiler.VAR_OPCODE_INDEX);
+            mv.visitVarInsn(Opcodes.ILOAD, MatcherCompiler.VAR_ORDINAL);
+            MatcherCompiler.pushInt(mv, nextOpcode);
+            mv.visitVarInsn(Opcodes.ILOAD, MatcherCompiler.VAR_OFFSET);
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(OpcodeIndex.class), "getNextOccurrence", "(III)I", false);
+        } else {
+            mv.visitVarInsn(Opcodes.ILOAD, MatcherCompiler.VAR_OFFSET);
+        }
+        mv.visitVarInsn(Opcodes.ISTORE, MatcherCompiler.VAR_SEED_OFFSET);
+        mv.visitLabel(seeded);
+
+        Label skipped = new Label();
+        mv.visitVarInsn(Opcodes.ILOAD, MatcherCompiler.VAR_SEED_OFFSET);
+        mv.visitInsn(Opcodes.ICONST_1);
+        mv.visitInsn(Opcodes.ISUB);
+        mv.visitVarInsn(Opcodes.ILOAD, MatcherCompiler.VAR_OFFSET);
+        mv.visitJumpInsn(Opcodes.IF_ICMPLE, skipped);
+        mv.visitVarInsn(Opcodes.ILOAD, MatcherCompiler.VAR_SEED_OFFSET);
+        mv.visitInsn(Opcodes.ICONST_1);
+        mv.visitInsn(Opcodes.ISUB);
+        mv.visitVarInsn(Opcodes.ISTORE, MatcherCompiler.VAR_OFFSET);
+        mv.visitVarInsn(Opcodes.ALOAD, MatcherCompiler.VAR_INSTRUCTIONS);
+        mv.visitVarInsn(Opcodes.ILOAD, MatcherCompiler.VAR_OFFSET);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, MatcherCompiler.INSN_LIST, "get", "(I)L" + MatcherCompiler.ABSTRACT_INSN_NODE + ';', false);
+        mv.visitVarInsn(Opcodes.ASTORE, MatcherCompiler.VAR_INSN);
+        mv.visitLabel(skipped);
+
+        // Wildcards always match greedily and have no effect on the remapper, so the frame the interpreter pushes
+        // for them is only relevant to the block following the wildcard.
+        if (blockIndex + 1 == insnBlocks.size()) {
+            mv.visitFieldInsn(Opcodes.GETSTATIC, MatcherCompiler.MATCH_RESULT, "RESULT_GREEDY", 'L' + MatcherCompiler.MATCH_RESULT + ';');
+            mv.visitVarInsn(Opcodes.ASTORE, MatcherCompiler.VAR_LAST_RESULT);
+            MatcherCompiler.emitNextInstruction(mv, sections[blockIndex]);
+        } else if (insnBlocks.get(blockIndex + 1) instanceof WildcardInsnBlock) {
+            MatcherCompiler.emitNextInstruction(mv, sections[blockIndex + 1]);
+        } else {
+            Label success = new Label();
+            Label failure = new Label();
+            MatcherCompiler.emitBlock(mv, owner, insnBlocks, blockIndex + 1, success, failure);
+            mv.visitLabel(success);
+            MatcherCompiler.emitNextInstruction(mv, sections[blockIndex + 2]);
+            mv.visitLabel(failure);
+            MatcherCompiler.emitNextInstruction(mv, sections[blockIndex]);
+        }
+    }
+
+    @Contract(pure = false)
+    private static void emitNextInstruction(@NotNull MethodVisitor mv, @NotNull Label section) {
+        mv.visitVarInsn(Opcodes.ALOAD, MatcherCompiler.VAR_INSN);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, MatcherCompiler.ABSTRACT_INSN_NODE, "getNext", "()L" + MatcherCompiler.ABSTRACT_INSN_NODE + ';', false);
+        mv.visitVarInsn(Opcodes.ASTORE, MatcherCompiler.VAR_INSN);
+        mv.visitIincInsn(MatcherCompiler.VAR_OFFSET, 1);
+        mv.visitJumpInsn(Opcodes.GOTO, section);
+    }
+
+    @Contract(pure = false)
+    private static void emitStringCheck(@NotNull MethodVisitor mv, @Nullable StringToken token, @NotNull String fieldName, @NotNull Label mismatch) {
+        if (token == null) {
+            return;
+        }
+        mv.visitLdcInsn(token.getText());
+        mv.visitVarInsn(Opcodes.ALOAD, MatcherCompiler.VAR_INSN);
+        mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(FieldInsnNode.class));
+        mv.visitFieldInsn(Opcodes.GETFIELD, Type.getInternalName(FieldInsnNode.class), fieldName, "Ljava/lang/String;");
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/String", "equals", "(Ljava/lang/Object;)Z", false);
+        mv.visitJumpInsn(Opcodes.IFEQ, mismatch);
+    }
+
+    @Contract(pure = true)
+    private static byte @NotNull[] generate(@NotNull String name, @NotNull List<? extends @NotNull InsnBlock> insnBlocks) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES) {
+            @Override
+            protected String getCommonSuperClass(String type1, String type2) {
+                // Locals are always assigned values of the same type, and loading classes from here is not desirable
+                return type1.equals(type2) ? type1 : "java/lang/Object";
+            }
+        };
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_FINAL | Opcodes.ACC_SUPER | Opcodes.ACC_SYNTHETIC, name, null, MatcherCompiler.EXPRESSION_MATCHER, null);
+
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "(Ljava/util/List;)V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, MatcherCompiler.EXPRESSION_MATCHER, "<init>", "(Ljava/util/List;)V", false);
+        for (int i = 0; i < insnBlocks.size(); i++) {
+            InsnBlock block = insnBlocks.get(i);
+            if (block instanceof WildcardInsnBlock) {
+                continue;
+            }
+            String blockType = MatcherCompiler.getBlockType(block);
+            cw.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "block" + i, 'L' + blockType + ';', null, null).visitEnd();
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+            mv.visitVarInsn(Opcodes.ALOAD, 1);
+            MatcherCompiler.pushInt(mv, i);
+            mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, "java/util/List", "get", "(I)Ljava/lang/Object;", true);
+            mv.visitTypeInsn(Opcodes.CHECKCAST, blockType);
+            mv.visitFieldInsn(Opcodes.PUTFIELD, name, "block" + i, 'L' + blockType + ';');
+        }
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        mv = cw.visitMethod(0, "match", MatcherCompiler.MATCH_DESC, null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, MatcherCompiler.VAR_INSTRUCTIONS);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, MatcherCompiler.INSN_LIST, "getFirst", "()L" + MatcherCompiler.ABSTRACT_INSN_NODE + ';', false);
+        mv.visitVarInsn(Opcodes.ASTORE, MatcherCompiler.VAR_INSN);
+        mv.visitInsn(Opcodes.ICONST_0);
+        mv.visitVarInsn(Opcodes.ISTORE, MatcherCompiler.VAR_OFFSET);
+        mv.visitInsn(Opcodes.ICONST_M1);
+        mv.visitVarInsn(Opcodes.ISTORE, MatcherCompiler.VAR_SEEDED_BLOCK);
+        mv.visitInsn(Opcodes.ICONST_M1);
+        mv.visitVarInsn(Opcodes.ISTORE, MatcherCompiler.VAR_SEED_OFFSET);
+        mv.visitInsn(Opcodes.ACONST_NULL);
+        mv.visitVarInsn(Opcodes.ASTORE, MatcherCompiler.VAR_LAST_RESULT);
+        mv.visitInsn(Opcodes.ICONST_0);
+        mv.visitVarInsn(Opcodes.ISTORE, MatcherCompiler.VAR_BLOCK_INDEX);
+        mv.visitInsn(Opcodes.ACONST_NULL);
+        mv.visitVarInsn(Opcodes.ASTORE, MatcherCompiler.VAR_RESULT);
+
+        Label[] sections = new Label[insnBlocks.size() + 1];
+        for (int i = 0; i < sections.length; i++) {
+            sections[i] = new Label();
+        }
+        Label end = new Label();
+        for (int i = 0; i < insnBlocks.size(); i++) {
+            MatcherCompiler.emitSection(mv, name, insnBlocks, i, sections, end);
+        }
+        mv.visitLabel(sections[insnBlocks.size()]);
+        MatcherCompiler.pushInt(mv, insnBlocks.size());
+        mv.visitVarInsn(Opcodes.ISTORE, MatcherCompiler.VAR_BLOCK_INDEX);
+
+        Label notExhausted = new Label();
+        Label exhaustionStored = new Label();
+        mv.visitLabel(end);
+        mv.visitVarInsn(Opcodes.ALOAD, MatcherCompiler.VAR_PROGRESS);
+        mv.visitVarInsn(Opcodes.ILOAD, MatcherCompiler.VAR_BLOCK_INDEX);
+        mv.visitFieldInsn(Opcodes.PUTFIELD, MatcherCompiler.PROGRESS, "evaluatedBlocks", "I");
+        mv.visitVarInsn(Opcodes.ALOAD, MatcherCompiler.VAR_PROGRESS);
+        mv.visitVarInsn(Opcodes.ALOAD, MatcherCompiler.VAR_INSN);
+        mv.visitJumpInsn(Opcodes.IFNONNULL, notExhausted);
+        mv.visitInsn(Opcodes.ICONST_1);
+        mv.visitJumpInsn(Opcodes.GOTO, exhaustionStored);
+        mv.visitLabel(notExhausted);
+        mv.visitInsn(Opcodes.ICONST_0);
+        mv.visitLabel(exhaustionStored);
+        mv.visitFieldInsn(Opcodes.PUTFIELD, MatcherCompiler.PROGRESS, "exhaustedInstructions", "Z");
+        mv.visitVarInsn(Opcodes.ALOAD, MatcherCompiler.VAR_LAST_RESULT);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * Obtains the internal name of the class of a block if the compiler supports blocks of the class.
+     * Subclasses of supported blocks are not supported, as their behaviour may differ. Bounded wildcards are left to the interpreter.
+     *
+     * @param block The block.
+     * @return The internal name of the class of the block, or null if the block cannot be compiled.
+     */
+    @Nullable
+    @Contract(pure = true)
+    private static String getBlockType(@NotNull InsnBlock block) {
+        Class<?> blockClass = block.getClass();
+        if (block instanceof WildcardInsnBlock && ((WildcardInsnBlock) block).isBounded()) {
+            return null;
+        } else if (blockClass == WildcardInsnBlock.class
+                || blockClass == SimpleInsnBlock.class
+                || blockClass == VarInsn.class
+                || blockClass == ConstantInsn.class
+                || blockClass == FieldInsn.class
+                || blockClass == InvokeInsn.class) {
+            return Type.getInternalName(blockClass);
+        }
+        return null;
+    }
+
+    @Contract(pure = true)
+    private static boolean isMappingRequest(@Nullable StringToken token) {
+        return token != null && token.codepointBefore(token.getContentLength()) == '?';
+    }
+
+    /**
+     * Checks whether a block never interacts with the remapper and whether its operand comparisons can be emitted
+     * by {@link #emitOperandChecks(MethodVisitor, InsnBlock, Label)}, in which case the block matches an instruction exactly
+     * when the opcode and the emitted comparisons match.
+     *
+     * @param block The block.
+     * @return True if the block is pure.
+     */
+    @Contract(pure = true)
+    static boolean isPure(@NotNull InsnBlock block) {
+        if (block instanceof SimpleInsnBlock || block instanceof VarInsn) {
+            return true;
+        } else if (block instanceof ConstantInsn) {
+            ConstantInsn constantInsn = (ConstantInsn) block;
+            Object constant = constantInsn.getConstant();
+            if (constantInsn.getConstantToken() == null) {
+                return true;
+            } else if (constantInsn.getOpcode() != Opcodes.LDC) {
+                return constant instanceof Integer;
+            }
+            return !constantInsn.isClassReference()
+                    && (constant instanceof String || constant instanceof Integer || constant instanceof Float
+                            || constant instanceof Long || constant instanceof Double);
+        } else if (block instanceof FieldInsn) {
+            FieldInsn fieldInsn = (FieldInsn) block;
+            return !MatcherCompiler.isMappingRequest(fieldInsn.getFieldOwner())
+                    && !MatcherCompiler.isMappingRequest(fieldInsn.getFieldName())
+                    && !MatcherCompiler.isMappingRequest(fieldInsn.getFieldDesc());
+        }
+        return false;
+    }
+
+    @Contract(pure = false)
+    private static void pushInt(@NotNull MethodVisitor mv, int value) {
+        if (value >= -1 && value <= 5) {
+            mv.visitInsn(Opcodes.ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(Opcodes.BIPUSH, value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            mv.visitIntInsn(Opcodes.SIPUSH, value);
+        } else {
+            mv.visitLdcInsn(value);
+        }
+    }
+}
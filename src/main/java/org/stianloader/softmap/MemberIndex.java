@@ -0,0 +1,385 @@
+package org.stianloader.softmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.Opcodes;
+import org.stianloader.softmap.insns.ConstantInsn;
+import org.stianloader.softmap.insns.FieldInsn;
+import org.stianloader.softmap.insns.InsnBlock;
+import org.stianloader.softmap.insns.InvokeInsn;
+import org.stianloader.softmap.tokens.StringToken;
+
+/**
+ * An inverted index of the fields and methods referenced by the instructions of the methods within a {@link MethodTable}.
+ * Member references are stored under the names used by the instructions (that is, the source names),
+ * mappings are only taken into account when looking up references.
+ *
+ * <p>The index is used to select the candidate methods of expressions that explicitly refer to a member
+ * (so-called anchors). If the method has at least as many instructions as the expression has instruction blocks,
+ * every block must match an instruction for the expression to match. As such, all anchors of an expression must be
+ * referenced by the method in that case.
+ */
+final class MemberIndex {
+
+    /**
+     * The occurrences of a single key within the instructions of all methods.
+     * Occurrences are stored in ascending order of their method and their instruction offset within the method.
+     */
+    static final class Postings {
+        private int length;
+        private int @Nullable[] methods;
+        private int @NotNull[] offsets = new int[4];
+        private int @NotNull[] ordinals = new int[4];
+
+        @Contract(pure = false)
+        void add(int ordinal, int offset) {
+            if (this.length == this.ordinals.length) {
+                this.ordinals = Arrays.copyOf(this.ordinals, this.length * 2);
+                this.offsets = Arrays.copyOf(this.offsets, this.length * 2);
+            }
+            this.ordinals[this.length] = ordinal;
+            this.offsets[this.length++] = offset;
+        }
+
+        /**
+         * Obtains all methods in which the key occurs at least once.
+         *
+         * @return The ascendingly sorted ordinals of the methods.
+         */
+        @Contract(pure = false)
+        int @NotNull[] getMethods() {
+            int[] methods = this.methods;
+            if (methods == null) {
+                methods = new int[this.length];
+                int methodCount = 0;
+                for (int i = 0; i < this.length; i++) {
+                    if (methodCount == 0 || methods[methodCount - 1] != this.ordinals[i]) {
+                        methods[methodCount++] = this.ordinals[i];
+                    }
+                }
+                this.methods = methods = Arrays.copyOf(methods, methodCount);
+            }
+            return methods;
+        }
+
+        /**
+         * Obtains the instruction offset of the n-th occurrence. The offset is the index of the instruction
+         * within the instruction list of the method, including pseudo-instructions.
+         *
+         * @param occurrence The index of the occurrence.
+         * @return The instruction offset of the occurrence.
+         */
+        @Contract(pure = true)
+        int getOffset(int occurrence) {
+            return this.offsets[occurrence];
+        }
+
+        @Contract(pure = true)
+        int getOccurrenceCount() {
+            return this.length;
+        }
+
+        /**
+         * Obtains the first occurrence at or after a given instruction offset within a given method.
+         *
+         * @param ordinal The ordinal of the method.
+         * @param offset The instruction offset within the method.
+         * @return The index of the occurrence, or {@link #getOccurrenceCount()} if there is no such occurrence in any method
+         * with an ordinal greater or equal to the given ordinal.
+         */
+        @Contract(pure = true)
+        int getFirstOccurrence(int ordinal, int offset) {
+            int low = 0;
+            int high = this.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (this.ordinals[mid] < ordinal || (this.ordinals[mid] == ordinal && this.offsets[mid] < offset)) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Obtains the method of the n-th occurrence.
+         *
+         * @param occurrence The index of the occurrence.
+         * @return The ordinal of the method the occurrence is in.
+         */
+        @Contract(pure = true)
+        int getOrdinal(int occurrence) {
+            return this.ordinals[occurrence];
+        }
+    }
+
+    /**
+     * A method referenced by at least one instruction, grouped by the owner the instructions refer to.
+     */
+    private static final class MethodReference {
+        @NotNull
+        private final String desc;
+        @NotNull
+        private final String name;
+        @NotNull
+        private final Postings postings = new Postings();
+
+        private MethodReference(@NotNull String name, @NotNull String desc) {
+            this.name = name;
+            this.desc = desc;
+        }
+    }
+
+    /**
+     * Postings of a key that does not occur anywhere. Must not be modified.
+     */
+    @NotNull
+    static final Postings NO_OCCURRENCES = new Postings();
+
+    @Contract(pure = true)
+    private static boolean isExplicit(@Nullable StringToken token) {
+        return token != null && token.getContentLength() != 0 && token.lastCodepoint() != '?';
+    }
+
+    @NotNull
+    private final Map<@NotNull String, @NotNull Postings> fieldMembers = new HashMap<>();
+
+    @NotNull
+    private final Map<@NotNull String, @NotNull Postings> fieldNames = new HashMap<>();
+
+    @NotNull
+    private final Map<@NotNull String, @NotNull Postings> fieldOwners = new HashMap<>();
+
+    @NotNull
+    private final Map<@NotNull String, @NotNull Map<@NotNull String, @NotNull MethodReference>> methodReferences = new HashMap<>();
+
+    @NotNull
+    private final Map<@NotNull String, @NotNull Postings> methodOwners = new HashMap<>();
+
+    private boolean indexed;
+
+    @NotNull
+    private final MethodTable table;
+
+    MemberIndex(@NotNull MethodTable table) {
+        this.table = table;
+    }
+
+    /**
+     * Builds the index. This is done lazily as it requires walking over all instructions of all methods,
+     * which is wasted effort if no expression has any anchors.
+     */
+    @Contract(pure = false)
+    private void ensureIndexed() {
+        if (this.indexed) {
+            return;
+        }
+        this.indexed = true;
+        MethodTable table = this.table;
+        InstructionStore instructions = table.getInstructions();
+        for (int ordinal = 0; ordinal < table.getMethodCount(); ordinal++) {
+            InstructionStore.Cursor insn = instructions.open(ordinal);
+            while (insn.next()) {
+                int opcode = insn.getOpcode();
+                int offset = insn.getOffset();
+                if (opcode >= Opcodes.GETSTATIC && opcode <= Opcodes.PUTFIELD) {
+                    String owner = insn.getOwner();
+                    String name = insn.getName();
+                    this.fieldOwners.computeIfAbsent(owner, (ignore) -> new Postings()).add(ordinal, offset);
+                    this.fieldNames.computeIfAbsent(name, (ignore) -> new Postings()).add(ordinal, offset);
+                    this.fieldMembers.computeIfAbsent(owner + '.' + name, (ignore) -> new Postings()).add(ordinal, offset);
+                } else if (opcode >= Opcodes.INVOKEVIRTUAL && opcode <= Opcodes.INVOKEINTERFACE) {
+                    String name = insn.getName();
+                    String desc = insn.getDesc();
+                    this.methodOwners.computeIfAbsent(insn.getOwner(), (ignore) -> new Postings()).add(ordinal, offset);
+                    this.methodReferences.computeIfAbsent(insn.getOwner(), (ignore) -> new HashMap<>())
+                        .computeIfAbsent(name + desc, (ignore) -> new MethodReference(name, desc))
+                        .postings.add(ordinal, offset);
+                }
+            }
+        }
+    }
+
+    /**
+     * Obtains the methods that reference all anchors of an expression. Anchors are instruction blocks that
+     * explicitly name the owner or name of a field or method.
+     *
+     * <p>Explicit names of invoked methods are compared against mapped names. As such the lookup depends on the current
+     * state of the remapper, and since the expression may itself map classes or methods while being matched,
+     * anchors whose name is the target of a mapping request within the expression are ignored.
+     *
+     * <p>Note that methods with fewer instructions than blocks are not necessarily referencing all anchors
+     * yet may still be matched by the expression; they need to be added to the result by the caller.
+     *
+     * <p>Looking up invoked methods requires checking the mapped name of every class owning a referenced method.
+     * Such lookups are skipped if they are more expensive than evaluating the remaining candidates.
+     *
+     * @param expr The expression.
+     * @param remapper The remapper holding the mappings that are applied while matching the expression.
+     * @param candidateCount The amount of methods that would be evaluated without making use of the anchors.
+     * @return The ascendingly sorted ordinals of the methods referencing all anchors, or null if the expression has no usable anchors.
+     */
+    @Contract(pure = false)
+    int @Nullable[] getAnchoredMethods(@NotNull MethodExpression expr, @NotNull FramedRemapper remapper, int candidateCount) {
+        this.ensureIndexed();
+        int[] anchoredMethods = null;
+        boolean hasInvokes = false;
+        for (InsnBlock block : expr.getInsns()) {
+            if (block instanceof FieldInsn) {
+                anchoredMethods = MethodTable.intersect(anchoredMethods, this.getFieldReferences((FieldInsn) block));
+            } else if (block instanceof InvokeInsn) {
+                hasInvokes = true;
+            }
+        }
+
+        if (!hasInvokes || (anchoredMethods == null ? candidateCount : anchoredMethods.length) <= this.methodOwners.size()) {
+            return anchoredMethods;
+        }
+
+        List<@NotNull String> mappingRequests = MemberIndex.collectMappingRequests(expr);
+        for (InsnBlock block : expr.getInsns()) {
+            if (block instanceof InvokeInsn) {
+                anchoredMethods = MethodTable.intersect(anchoredMethods, this.getMethodReferences((InvokeInsn) block, remapper, mappingRequests));
+                if (anchoredMethods != null && anchoredMethods.length <= this.methodOwners.size()) {
+                    break;
+                }
+            }
+        }
+        return anchoredMethods;
+    }
+
+    @Contract(pure = false, mutates = "param2")
+    private static void collectMappingRequest(@Nullable StringToken token, @NotNull List<@NotNull String> out) {
+        if (token != null && token.indexOf('?') != -1) {
+            // Mapping requests map to (a part of) the text of the token, so the full text is collected
+            out.add(token.getText());
+        }
+    }
+
+    /**
+     * Collects the text of all tokens of an expression which request mappings to be applied.
+     * The names mapped by the expression are substrings of the collected texts.
+     *
+     * @param expr The expression.
+     * @return The texts of all tokens containing a mapping request.
+     */
+    @NotNull
+    @Contract(pure = true)
+    static List<@NotNull String> collectMappingRequests(@NotNull MethodExpression expr) {
+        List<@NotNull String> mappingRequests = new ArrayList<>();
+        MemberIndex.collectMappingRequest(expr.getOwnerName(), mappingRequests);
+        MemberIndex.collectMappingRequest(expr.getMethodName(), mappingRequests);
+        MemberIndex.collectMappingRequest(expr.getMethodDesc(), mappingRequests);
+        for (InsnBlock block : expr.getInsns()) {
+            if (block instanceof FieldInsn) {
+                MemberIndex.collectMappingRequest(((FieldInsn) block).getFieldOwner(), mappingRequests);
+                MemberIndex.collectMappingRequest(((FieldInsn) block).getFieldName(), mappingRequests);
+                MemberIndex.collectMappingRequest(((FieldInsn) block).getFieldDesc(), mappingRequests);
+            } else if (block instanceof InvokeInsn) {
+                MemberIndex.collectMappingRequest(((InvokeInsn) block).getClassName(), mappingRequests);
+                MemberIndex.collectMappingRequest(((InvokeInsn) block).getMethodName(), mappingRequests);
+                MemberIndex.collectMappingRequest(((InvokeInsn) block).getMethodDescriptor(), mappingRequests);
+            } else if (block instanceof ConstantInsn && ((ConstantInsn) block).isClassReference()) {
+                MemberIndex.collectMappingRequest(((ConstantInsn) block).getConstantToken(), mappingRequests);
+            }
+        }
+        return mappingRequests;
+    }
+
+    /**
+     * Checks whether a name may be the target of a mapping requested by an expression.
+     *
+     * @param text The name.
+     * @param mappingRequests The mapping requests of the expression, as per {@link #collectMappingRequests(MethodExpression)}.
+     * @return True if the name may be mapped by the expression.
+     */
+    @Contract(pure = true)
+    static boolean isMappingTarget(@NotNull String text, @NotNull List<@NotNull String> mappingRequests) {
+        for (String request : mappingRequests) {
+            if (request.contains(text)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Obtains the occurrences of instructions referring to the field explicitly named by a field instruction block.
+     * Occurrences are not filtered by opcode.
+     *
+     * @param block The instruction block.
+     * @return The occurrences of the field, or null if the block does not explicitly name the owner or name of the field.
+     */
+    @Nullable
+    @Contract(pure = false)
+    Postings getFieldPostings(@NotNull FieldInsn block) {
+        // Field owners and names are compared against the names used by the instruction, so no mappings are involved
+        StringToken owner = block.getFieldOwner();
+        StringToken name = block.getFieldName();
+        this.ensureIndexed();
+        Postings postings;
+        if (MemberIndex.isExplicit(owner) && MemberIndex.isExplicit(name)) {
+            postings = this.fieldMembers.get(owner.getText() + '.' + name.getText());
+        } else if (MemberIndex.isExplicit(owner)) {
+            postings = this.fieldOwners.get(owner.getText());
+        } else if (MemberIndex.isExplicit(name)) {
+            postings = this.fieldNames.get(name.getText());
+        } else {
+            return null;
+        }
+        return postings == null ? MemberIndex.NO_OCCURRENCES : postings;
+    }
+
+    @Contract(pure = false)
+    private int @Nullable[] getFieldReferences(@NotNull FieldInsn block) {
+        Postings postings = this.getFieldPostings(block);
+        return postings == null ? null : postings.getMethods();
+    }
+
+    @Contract(pure = false)
+    private int @Nullable[] getMethodReferences(@NotNull InvokeInsn block, @NotNull FramedRemapper remapper, @NotNull List<@NotNull String> mappingRequests) {
+        StringToken owner = block.getClassName();
+        if (owner == null || !MemberIndex.isExplicit(owner) || MemberIndex.isMappingTarget(owner.getText(), mappingRequests)) {
+            return null;
+        }
+        StringToken name = block.getMethodName();
+        if (name != null && (!MemberIndex.isExplicit(name) || MemberIndex.isMappingTarget(name.getText(), mappingRequests))) {
+            name = null;
+        }
+
+        this.ensureIndexed();
+        int[] methods = new int[0];
+        for (Map.Entry<String, Postings> ownerEntry : this.methodOwners.entrySet()) {
+            String srcOwner = ownerEntry.getKey();
+            if (!owner.contentMatches(remapper.getMappedClassOpt(srcOwner))) {
+                continue;
+            }
+            if (name == null) {
+                methods = MethodTable.union(methods, ownerEntry.getValue().getMethods());
+                continue;
+            }
+            for (MethodReference reference : this.methodReferences.get(srcOwner).values()) {
+                String dstName;
+                try {
+                    dstName = remapper.getMappedMethodOpt(srcOwner, reference.name, reference.desc);
+                } catch (IllegalStateException e) {
+                    // The remapper does not know the method (e.g. a method inherited from a library class),
+                    // the actual matching will need to deal with it.
+                    dstName = null;
+                }
+                if (dstName == null || name.contentMatches(dstName)) {
+                    methods = MethodTable.union(methods, reference.postings.getMethods());
+                }
+            }
+        }
+        return methods;
+    }
+}
@@ -6,6 +6,7 @@ import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.Unmodifiable;
+import org.stianloader.softmap.insns.DescriptorPattern;
 import org.stianloader.softmap.insns.InsnBlock;
 import org.stianloader.softmap.tokens.BlockToken;
 import org.stianloader.softmap.tokens.StringToken;
@@ -13,6 +14,13 @@ import org.stianloader.softmap.tokens.Token;
 
 class MethodExpression {
 
+    /**
+     * The matcher compiled for the instruction blocks, null if no compilation was attempted yet.
+     * Set to the interpreter if the blocks cannot be compiled.
+     */
+    @Nullable
+    private ExpressionMatcher compiledMatcher;
+
     @NotNull
     private final StringToken declaringLocation;
 
@@ -23,9 +31,15 @@ class MethodExpression {
     @Unmodifiable
     private final List<@NotNull ? extends InsnBlock> insns;
 
+    @NotNull
+    private final ExpressionMatcher interpreter;
+
     @Nullable
     private final StringToken methodDesc;
 
+    @Nullable
+    private final DescriptorPattern methodDescPattern;
+
     @Nullable
     private final StringToken methodLocation;
 
@@ -48,10 +62,12 @@ class MethodExpression {
         this.ownerName = ownerName;
         this.methodName = methodName;
         this.methodDesc = methodDesc;
+        this.methodDescPattern = methodDesc == null ? null : new DescriptorPattern(methodDesc);
         this.startOfBody = startOfBody;
         this.endOfBody = endOfBody;
         this.tokens = tokens;
         this.insns = insns;
+        this.interpreter = new ExpressionMatcher(insns);
     }
 
     @NotNull
@@ -72,12 +88,49 @@ class MethodExpression {
         return this.insns;
     }
 
+    /**
+     * Obtains the matcher used to match the instruction blocks of this expression against the instructions of methods.
+     * Compiled matchers are generated on first use and reused afterwards.
+     *
+     * @param compiled Whether a {@link MatcherCompiler compiled} matcher should be used if possible.
+     * @return The matcher.
+     */
+    @NotNull
+    @Contract(pure = false)
+    ExpressionMatcher getMatcher(boolean compiled) {
+        if (!compiled) {
+            return this.interpreter;
+        }
+        synchronized (this) {
+            ExpressionMatcher matcher = this.compiledMatcher;
+            if (matcher == null) {
+                matcher = MatcherCompiler.compile(this.insns);
+                if (matcher == null) {
+                    matcher = this.interpreter;
+                }
+                this.compiledMatcher = matcher;
+            }
+            return matcher;
+        }
+    }
+
     @Nullable
     @Contract(pure = true)
     public StringToken getMethodDesc() {
         return this.methodDesc;
     }
 
+    /**
+     * Obtains the descriptor of the method as written in the expression, decoded for repeated matching.
+     *
+     * @return The descriptor, or null if the descriptor is not matched.
+     */
+    @Nullable
+    @Contract(pure = true)
+    public DescriptorPattern getMethodDescPattern() {
+        return this.methodDescPattern;
+    }
+
     @Nullable
     @Contract(pure = true)
     public StringToken getMethodLocation() {
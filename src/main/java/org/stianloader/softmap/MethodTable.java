@@ -0,0 +1,358 @@
+package org.stianloader.softmap;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Unmodifiable;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.stianloader.softmap.classpath.ClassNodeCache;
+
+/**
+ * A flat view of all methods of a list of classes. Each method is identified by an ordinal,
+ * where the ordinals follow the order of the classes in the list and the order of the methods within each class.
+ * As such, iterating over ordinals in ascending order visits methods in the same order
+ * as iterating over the classes and their methods.
+ *
+ * <p>Sets of methods are represented as ascendingly sorted int arrays of ordinals throughout the application logic.
+ *
+ * <p>The classes may either be complete or only consist of their headers, in which case the method bodies
+ * are obtained from a {@link ClassNodeCache} whenever they are needed.
+ */
+final class MethodTable {
+
+    /**
+     * Computes the intersection of two sets of methods, where null represents the set of all methods.
+     *
+     * @param a The first ascendingly sorted set of ordinals, or null.
+     * @param b The second ascendingly sorted set of ordinals, or null.
+     * @return The ascendingly sorted intersection, which is null only if both arguments are null.
+     */
+    @Contract(pure = true)
+    static int @Nullable[] intersect(int @Nullable[] a, int @Nullable[] b) {
+        if (a == null) {
+            return b;
+        } else if (b == null) {
+            return a;
+        }
+        int[] intersection = new int[Math.min(a.length, b.length)];
+        int length = 0;
+        for (int i = 0, j = 0; i != a.length && j != b.length;) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                intersection[length++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return length == intersection.length ? intersection : Arrays.copyOf(intersection, length);
+    }
+
+    /**
+     * Computes the union of two sets of methods, where null represents the set of all methods.
+     *
+     * @param a The first ascendingly sorted set of ordinals, or null.
+     * @param b The second ascendingly sorted set of ordinals, or null.
+     * @return The ascendingly sorted union, which is null if either argument is null.
+     */
+    @Contract(pure = true)
+    static int @Nullable[] union(int @Nullable[] a, int @Nullable[] b) {
+        if (a == null || b == null) {
+            return null;
+        } else if (a.length == 0) {
+            return b;
+        } else if (b.length == 0) {
+            return a;
+        }
+        int[] union = new int[a.length + b.length];
+        int length = 0;
+        int i = 0;
+        int j = 0;
+        while (i != a.length && j != b.length) {
+            if (a[i] < b[j]) {
+                union[length++] = a[i++];
+            } else if (a[i] > b[j]) {
+                union[length++] = b[j++];
+            } else {
+                union[length++] = a[i++];
+                j++;
+            }
+        }
+        while (i != a.length) {
+            union[length++] = a[i++];
+        }
+        while (j != b.length) {
+            union[length++] = b[j++];
+        }
+        return length == union.length ? union : Arrays.copyOf(union, length);
+    }
+
+    /**
+     * Obtains the index of the first element within a sorted array that is greater or equal to a given value.
+     *
+     * @param sorted The ascendingly sorted array.
+     * @param value The value to search for.
+     * @return The index of the first element that is not smaller than the value, the length of the array if there is none.
+     */
+    @Contract(pure = true)
+    static int lowerBound(int @NotNull[] sorted, int value) {
+        int index = Arrays.binarySearch(sorted, value);
+        return index < 0 ? -(index + 1) : index;
+    }
+
+    /**
+     * The cache holding the complete classes, null if the classes of the table are complete.
+     */
+    @Nullable
+    private final ClassNodeCache bodies;
+
+    @NotNull
+    private final Map<@NotNull String, @NotNull Integer> classIndices = new HashMap<>();
+
+    @NotNull
+    private final Map<@NotNull Integer, int @NotNull[]> shortMethods = new HashMap<>();
+
+    @NotNull
+    private final ClassNode @NotNull[] classes;
+
+    /**
+     * The ordinal of the first method of each class, with an additional trailing element
+     * that is equal to the total amount of methods.
+     */
+    private final int @NotNull[] firstOrdinals;
+
+    @NotNull
+    private final MethodNode @NotNull[] methods;
+
+    /**
+     * The instructions of all methods, encoded lazily unless supplied by an {@link IndexedJar}.
+     */
+    @Nullable
+    private InstructionStore instructions;
+
+    private final int @NotNull[] ownerIndices;
+
+    @NotNull
+    private final ClassNode @NotNull[] owners;
+
+    MethodTable(@NotNull @Unmodifiable List<@NotNull ClassNode> nodes) {
+        this(nodes, null);
+    }
+
+    /**
+     * Creates a table from the headers of classes, where the methods bodies are obtained from a cache.
+     *
+     * @param nodes The classes, which may lack method bodies if a cache is present.
+     * @param bodies The cache holding the complete classes at the same indices as the list of classes, null if the classes are complete.
+     */
+    MethodTable(@NotNull @Unmodifiable List<@NotNull ClassNode> nodes, @Nullable ClassNodeCache bodies) {
+        this(nodes, bodies, null);
+    }
+
+    /**
+     * Creates a table from the headers of classes, reusing instructions which were encoded ahead of time.
+     *
+     * @param nodes The classes, which may lack method bodies if a cache is present.
+     * @param bodies The cache holding the complete classes at the same indices as the list of classes, null if the classes are complete.
+     * @param instructions The encoded instructions of a table created from the same classes in the same order,
+     * or null to encode the instructions once they are needed.
+     */
+    MethodTable(@NotNull @Unmodifiable List<@NotNull ClassNode> nodes, @Nullable ClassNodeCache bodies, @Nullable InstructionStore instructions) {
+        this.bodies = bodies;
+        this.instructions = instructions;
+        this.classes = nodes.toArray(new ClassNode[0]);
+        this.firstOrdinals = new int[this.classes.length + 1];
+        int methodCount = 0;
+        for (int i = 0; i < this.classes.length; i++) {
+            this.firstOrdinals[i] = methodCount;
+            methodCount += this.classes[i].methods.size();
+            this.classIndices.put(this.classes[i].name, i); // Later classes shadow earlier classes, as is done by the node lookup
+        }
+        this.firstOrdinals[this.classes.length] = methodCount;
+        this.methods = new MethodNode[methodCount];
+        this.owners = new ClassNode[methodCount];
+        this.ownerIndices = new int[methodCount];
+        for (int i = 0; i < this.classes.length; i++) {
+            int ordinal = this.firstOrdinals[i];
+            for (MethodNode method : this.classes[i].methods) {
+                this.owners[ordinal] = this.classes[i];
+                this.ownerIndices[ordinal] = i;
+                this.methods[ordinal++] = method;
+            }
+        }
+    }
+
+    /**
+     * Obtains the index of the class with the given name, -1 if there is no such class.
+     * Should multiple classes share the same name, the index of the last class is returned.
+     *
+     * @param name The internal name of the class.
+     * @return The index of the class.
+     */
+    @Contract(pure = true)
+    int getClassIndex(@NotNull String name) {
+        Integer index = this.classIndices.get(name);
+        return index == null ? -1 : index;
+    }
+
+    @Contract(pure = true)
+    int getClassCount() {
+        return this.classes.length;
+    }
+
+    @NotNull
+    @Contract(pure = true)
+    ClassNode getClassNode(int classIndex) {
+        return this.classes[classIndex];
+    }
+
+    /**
+     * Obtains the ordinal of the first method of a class.
+     * The methods of the class occupy the ordinals from this ordinal (inclusive) up to the first ordinal of the next class (exclusive).
+     *
+     * @param classIndex The index of the class, may be equal to the amount of classes.
+     * @return The first ordinal of the class.
+     */
+    @Contract(pure = true)
+    int getFirstOrdinal(int classIndex) {
+        return this.firstOrdinals[classIndex];
+    }
+
+    /**
+     * Obtains the number of instructions of a method, including pseudo-instructions.
+     *
+     * @param ordinal The ordinal of the method.
+     * @return The amount of instructions.
+     */
+    @Contract(pure = false)
+    int getInstructionCount(int ordinal) {
+        return this.getInstructions().getInstructionCount(ordinal);
+    }
+
+    /**
+     * Obtains the encoded instructions of all methods. Unless the instructions were encoded ahead of time by an {@link IndexedJar},
+     * they are encoded on the first call, which requires walking over the instructions of all methods once. In that case the store
+     * is kept on the heap and only lives as long as the table, that is for a single application of the expressions.
+     *
+     * <p>Indices should read the instructions from the returned store rather than from the method nodes,
+     * as the method bodies may need to be decoded every time they are accessed.
+     *
+     * @return The encoded instructions.
+     */
+    @NotNull
+    @Contract(pure = false)
+    InstructionStore getInstructions() {
+        InstructionStore instructions = this.instructions;
+        if (instructions == null) {
+            this.instructions = instructions = new InstructionStore(this, false);
+        }
+        return instructions;
+    }
+
+    /**
+     * Obtains a method including its body. Should the method body be obtained from a cache,
+     * the returned node is not necessarily the same node for subsequent calls.
+     *
+     * @param ordinal The ordinal of the method.
+     * @return The method.
+     */
+    @NotNull
+    @Contract(pure = false)
+    MethodNode getMethod(int ordinal) {
+        ClassNodeCache bodies = this.bodies;
+        if (bodies == null) {
+            return this.methods[ordinal];
+        }
+        int classIndex = this.ownerIndices[ordinal];
+        return bodies.getClassNode(classIndex).methods.get(ordinal - this.firstOrdinals[classIndex]);
+    }
+
+    /**
+     * Obtains the header of a method, that is a method node which does not necessarily contain the method body.
+     *
+     * @param ordinal The ordinal of the method.
+     * @return The method header.
+     */
+    @NotNull
+    @Contract(pure = true)
+    MethodNode getMethodHeader(int ordinal) {
+        return this.methods[ordinal];
+    }
+
+    @Contract(pure = true)
+    int getMethodCount() {
+        return this.methods.length;
+    }
+
+    /**
+     * Obtains all methods with fewer instructions (including pseudo-instructions) than the given amount.
+     * An expression may match such methods without every instruction block being evaluated
+     * as the instructions run out before the instruction blocks do.
+     *
+     * @param insnCount The amount of instructions.
+     * @return The ascendingly sorted ordinals of all methods with fewer instructions.
+     */
+    @Contract(pure = false)
+    int @NotNull[] getMethodsShorterThan(int insnCount) {
+        return this.shortMethods.computeIfAbsent(insnCount, (count) -> {
+            int[] ordinals = new int[16];
+            int length = 0;
+            for (int ordinal = 0; ordinal < this.methods.length; ordinal++) {
+                if (this.getInstructionCount(ordinal) < count) {
+                    if (length == ordinals.length) {
+                        ordinals = Arrays.copyOf(ordinals, length * 2);
+                    }
+                    ordinals[length++] = ordinal;
+                }
+            }
+            return Arrays.copyOf(ordinals, length);
+        });
+    }
+
+    @NotNull
+    @Contract(pure = true)
+    ClassNode getOwner(int ordinal) {
+        return this.owners[ordinal];
+    }
+
+    /**
+     * Obtains the methods of a set of classes.
+     *
+     * @param classIndices The ascendingly sorted indices of the classes.
+     * @param ordinals The ascendingly sorted set of ordinals to select from, null to select from all methods.
+     * @return The ascendingly sorted ordinals of all selected methods which are declared by any of the classes.
+     */
+    @Contract(pure = true)
+    int @NotNull[] getMethodsOf(int @NotNull[] classIndices, int @Nullable[] ordinals) {
+        if (ordinals == null) {
+            int methodCount = 0;
+            for (int classIndex : classIndices) {
+                methodCount += this.firstOrdinals[classIndex + 1] - this.firstOrdinals[classIndex];
+            }
+            int[] methods = new int[methodCount];
+            methodCount = 0;
+            for (int classIndex : classIndices) {
+                for (int ordinal = this.firstOrdinals[classIndex]; ordinal < this.firstOrdinals[classIndex + 1]; ordinal++) {
+                    methods[methodCount++] = ordinal;
+                }
+            }
+            return methods;
+        }
+        int[] methods = new int[ordinals.length];
+        int methodCount = 0;
+        for (int ordinal : ordinals) {
+            if (Arrays.binarySearch(classIndices, this.ownerIndices[ordinal]) >= 0) {
+                methods[methodCount++] = ordinal;
+            }
+        }
+        return Arrays.copyOf(methods, methodCount);
+    }
+}
@@ -0,0 +1,462 @@
+package org.stianloader.softmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Unmodifiable;
+import org.stianloader.softmap.insns.InsnBlock;
+import org.stianloader.softmap.insns.WildcardInsnBlock;
+
+/**
+ * Determines which methods could possibly be matched by which {@link MethodExpression expressions}
+ * while only walking over the instructions of every method once.
+ *
+ * <p>Each expression is reduced to the runs of opcodes between its wildcards. A method can only be matched by an
+ * expression if all of the expression's runs occur within the method in the same order without overlapping each other,
+ * with the first run starting at the first instruction if the expression does not start with a wildcard.
+ * All distinct runs of all expressions are compiled into a single Aho-Corasick automaton over opcodes,
+ * so the occurrences of all runs within a method are found in a single pass. Every occurrence of a run
+ * then advances all expressions that are currently waiting for said run.
+ *
+ * <p>As the matching behaviour of an expression depends on the mappings that were applied by the expressions before it,
+ * this class only looks at opcodes and never decides whether an expression matches. Instead it only discards methods that
+ * can never be matched, leaving the actual matching to {@link SoftmapContext#tryApply(List)}.
+ */
+final class MultiPatternMatcher {
+
+    private static final int EDGE_SYMBOL_BITS = 8;
+
+    /**
+     * The pattern ids of the runs of each expression, or null if the expression cannot be reduced to runs of opcodes.
+     */
+    private final int @Nullable[] @NotNull[] expressionRuns;
+
+    private final int @NotNull[] blockCounts;
+
+    /**
+     * For each pattern the ids of the expressions whose first run is the pattern and that have to match the first run
+     * at the very first instruction.
+     */
+    private final int @NotNull[] @NotNull[] anchoredFirstRuns;
+
+    /**
+     * For each pattern the ids of the expressions whose first run is the pattern and that may match the first run anywhere.
+     */
+    private final int @NotNull[] @NotNull[] unanchoredFirstRuns;
+
+    private final int @NotNull[] patternLengths;
+
+    // Automaton states. State 0 is the root of the trie.
+    private int stateCount;
+    private int @NotNull[] statePatterns = new int[16];
+    private int @NotNull[] failureLinks = new int[16];
+    private int @NotNull[] dictionaryLinks = new int[16];
+    private int @NotNull[] firstChildren = new int[16];
+    private int @NotNull[] nextSiblings = new int[16];
+    private int @NotNull[] stateSymbols = new int[16];
+
+    // Trie edges, stored in an open-addressing hash table keyed by (state << 8 | symbol)
+    private long @NotNull[] edgeKeys;
+    private int @NotNull[] edgeTargets;
+    private int edgeCount;
+
+    MultiPatternMatcher(@NotNull @Unmodifiable List<@NotNull MethodExpression> expressions) {
+        int expressionCount = expressions.size();
+        this.expressionRuns = new int[expressionCount][];
+        this.blockCounts = new int[expressionCount];
+        this.edgeKeys = new long[64];
+        this.edgeTargets = new int[64];
+        Arrays.fill(this.edgeKeys, -1L);
+        this.newState(-1);
+
+        Map<@NotNull String, @NotNull Integer> patternIds = new HashMap<>();
+        List<@NotNull Integer> patternLengths = new ArrayList<>();
+        boolean[] anchored = new boolean[expressionCount];
+
+        for (int expr = 0; expr < expressionCount; expr++) {
+            List<@NotNull ? extends InsnBlock> blocks = expressions.get(expr).getInsns();
+            this.blockCounts[expr] = blocks.size();
+            anchored[expr] = !blocks.isEmpty() && !(blocks.get(0) instanceof WildcardInsnBlock);
+
+            List<@NotNull String> runs = new ArrayList<>();
+            StringBuilder run = new StringBuilder();
+            boolean reducible = true;
+            for (InsnBlock block : blocks) {
+                if (block instanceof WildcardInsnBlock) {
+                    if (run.length() != 0) {
+                        runs.add(run.toString());
+                        run.setLength(0);
+                    }
+                    continue;
+                }
+                int opcode = block.getOpcode();
+                if (opcode < 0) {
+                    reducible = false;
+                    break;
+                }
+                run.append((char) opcode);
+            }
+            if (run.length() != 0) {
+                runs.add(run.toString());
+            }
+            if (!reducible || runs.isEmpty()) {
+                continue;
+            }
+
+            int[] runIds = new int[runs.size()];
+            for (int i = 0; i < runIds.length; i++) {
+                String pattern = runs.get(i);
+                Integer id = patternIds.get(pattern);
+                if (id == null) {
+                    id = patternIds.size();
+                    patternIds.put(pattern, id);
+                    patternLengths.add(pattern.length());
+                    this.insertPattern(pattern, id);
+                }
+                runIds[i] = id;
+            }
+            this.expressionRuns[expr] = runIds;
+        }
+
+        int patternCount = patternIds.size();
+        this.patternLengths = new int[patternCount];
+        for (int i = 0; i < patternCount; i++) {
+            this.patternLengths[i] = patternLengths.get(i);
+        }
+
+        int[] anchoredCounts = new int[patternCount];
+        int[] unanchoredCounts = new int[patternCount];
+        for (int expr = 0; expr < expressionCount; expr++) {
+            int[] runs = this.expressionRuns[expr];
+            if (runs != null) {
+                if (anchored[expr]) {
+                    anchoredCounts[runs[0]]++;
+                } else {
+                    unanchoredCounts[runs[0]]++;
+                }
+            }
+        }
+        this.anchoredFirstRuns = new int[patternCount][];
+        this.unanchoredFirstRuns = new int[patternCount][];
+        for (int i = 0; i < patternCount; i++) {
+            this.anchoredFirstRuns[i] = new int[anchoredCounts[i]];
+            this.unanchoredFirstRuns[i] = new int[unanchoredCounts[i]];
+        }
+        for (int expr = expressionCount - 1; expr >= 0; expr--) {
+            int[] runs = this.expressionRuns[expr];
+            if (runs != null) {
+                if (anchored[expr]) {
+                    this.anchoredFirstRuns[runs[0]][--anchoredCounts[runs[0]]] = expr;
+                } else {
+                    this.unanchoredFirstRuns[runs[0]][--unanchoredCounts[runs[0]]] = expr;
+                }
+            }
+        }
+
+        this.computeLinks();
+    }
+
+    @Contract(pure = false)
+    private void computeLinks() {
+        int[] queue = new int[this.stateCount];
+        int head = 0;
+        int tail = 0;
+        for (int child = this.firstChildren[0]; child != -1; child = this.nextSiblings[child]) {
+            this.failureLinks[child] = 0;
+            this.dictionaryLinks[child] = -1;
+            queue[tail++] = child;
+        }
+        while (head != tail) {
+            int state = queue[head++];
+            for (int child = this.firstChildren[state]; child != -1; child = this.nextSiblings[child]) {
+                int symbol = this.stateSymbols[child];
+                int fallback = this.failureLinks[state];
+                int target;
+                while ((target = this.getEdge(fallback, symbol)) == -1 && fallback != 0) {
+                    fallback = this.failureLinks[fallback];
+                }
+                if (target == -1) {
+                    target = 0;
+                }
+                this.failureLinks[child] = target;
+                this.dictionaryLinks[child] = this.statePatterns[target] != -1 ? target : this.dictionaryLinks[target];
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    @Contract(pure = true)
+    private int getEdge(int state, int symbol) {
+        long key = ((long) state << MultiPatternMatcher.EDGE_SYMBOL_BITS) | symbol;
+        int mask = this.edgeKeys.length - 1;
+        for (int slot = MultiPatternMatcher.hash(key) & mask;; slot = (slot + 1) & mask) {
+            long slotKey = this.edgeKeys[slot];
+            if (slotKey == key) {
+                return this.edgeTargets[slot];
+            } else if (slotKey == -1L) {
+                return -1;
+            }
+        }
+    }
+
+    @Contract(pure = true)
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @Contract(pure = false)
+    private void insertPattern(@NotNull String pattern, int patternId) {
+        int state = 0;
+        for (int i = 0; i < pattern.length(); i++) {
+            int symbol = pattern.charAt(i);
+            int next = this.getEdge(state, symbol);
+            if (next == -1) {
+                next = this.newState(symbol);
+                this.nextSiblings[next] = this.firstChildren[state];
+                this.firstChildren[state] = next;
+                this.putEdge(state, symbol, next);
+            }
+            state = next;
+        }
+        this.statePatterns[state] = patternId;
+    }
+
+    @Contract(pure = false)
+    private int newState(int symbol) {
+        if (this.stateCount == this.statePatterns.length) {
+            int capacity = this.stateCount * 2;
+            this.statePatterns = Arrays.copyOf(this.statePatterns, capacity);
+            this.failureLinks = Arrays.copyOf(this.failureLinks, capacity);
+            this.dictionaryLinks = Arrays.copyOf(this.dictionaryLinks, capacity);
+            this.firstChildren = Arrays.copyOf(this.firstChildren, capacity);
+            this.nextSiblings = Arrays.copyOf(this.nextSiblings, capacity);
+            this.stateSymbols = Arrays.copyOf(this.stateSymbols, capacity);
+        }
+        int state = this.stateCount++;
+        this.statePatterns[state] = -1;
+        this.failureLinks[state] = 0;
+        this.dictionaryLinks[state] = -1;
+        this.firstChildren[state] = -1;
+        this.nextSiblings[state] = -1;
+        this.stateSymbols[state] = symbol;
+        return state;
+    }
+
+    @Contract(pure = false)
+    private void putEdge(int state, int symbol, int target) {
+        if ((this.edgeCount + 1) * 2 > this.edgeKeys.length) {
+            long[] oldKeys = this.edgeKeys;
+            int[] oldTargets = this.edgeTargets;
+            this.edgeKeys = new long[oldKeys.length * 2];
+            this.edgeTargets = new int[oldKeys.length * 2];
+            Arrays.fill(this.edgeKeys, -1L);
+            this.edgeCount = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != -1L) {
+                    this.putEdge((int) (oldKeys[i] >>> MultiPatternMatcher.EDGE_SYMBOL_BITS), (int) (oldKeys[i] & ((1 << MultiPatternMatcher.EDGE_SYMBOL_BITS) - 1)), oldTargets[i]);
+                }
+            }
+        }
+        long key = ((long) state << MultiPatternMatcher.EDGE_SYMBOL_BITS) | symbol;
+        int mask = this.edgeKeys.length - 1;
+        int slot = MultiPatternMatcher.hash(key) & mask;
+        while (this.edgeKeys[slot] != -1L) {
+            slot = (slot + 1) & mask;
+        }
+        this.edgeKeys[slot] = key;
+        this.edgeTargets[slot] = target;
+        this.edgeCount++;
+    }
+
+    /**
+     * Walks over all methods of a {@link MethodTable} once and collects the methods that could be matched
+     * by each expression.
+     *
+     * @param table The methods to scan.
+     * @return The methods each expression could match.
+     */
+    @NotNull
+    @Contract(pure = true, value = "_ -> new")
+    Candidates scan(@NotNull MethodTable table) {
+        return new Scan(table).run();
+    }
+
+    /**
+     * The outcome of {@link MultiPatternMatcher#scan(MethodTable)}.
+     */
+    final class Candidates {
+        private final int @Nullable[] @NotNull[] matchedOrdinals;
+        @NotNull
+        private final MethodTable table;
+
+        private Candidates(@NotNull MethodTable table, int @Nullable[] @NotNull[] matchedOrdinals) {
+            this.table = table;
+            this.matchedOrdinals = matchedOrdinals;
+        }
+
+        /**
+         * Obtains the methods that could be matched by an expression.
+         *
+         * @param expr The index of the expression, in the order supplied to the constructor of the matcher.
+         * @return The ascendingly sorted ordinals of the methods the expression could match,
+         * or null if the expression could match any method.
+         */
+        @Contract(pure = false)
+        int @Nullable[] get(int expr) {
+            int[] matched = this.matchedOrdinals[expr];
+            if (matched == null) {
+                return null;
+            }
+            // Should the instructions run out before all blocks are evaluated, an expression may match
+            // even if the method does not contain every run.
+            return MethodTable.union(matched, this.table.getMethodsShorterThan(MultiPatternMatcher.this.blockCounts[expr]));
+        }
+    }
+
+    /**
+     * The per-scan state of the matcher, which keeps the matcher itself immutable after construction.
+     */
+    private final class Scan {
+        private final int @NotNull[] candidateCounts;
+        private final int @Nullable[] @NotNull[] candidates;
+        private final int @NotNull[] cursors;
+        private final int @NotNull[] expressionStamps;
+        private final int @NotNull[] firstRunStamps;
+        private final int @NotNull[] minimumStarts;
+        private final int @NotNull[] nextWaiting;
+        private int stamp;
+        @NotNull
+        private final MethodTable table;
+        private final int @NotNull[] waitingHeads;
+        private final int @NotNull[] waitingStamps;
+
+        private Scan(@NotNull MethodTable table) {
+            this.table = table;
+            int expressionCount = MultiPatternMatcher.this.expressionRuns.length;
+            int patternCount = MultiPatternMatcher.this.patternLengths.length;
+            this.candidates = new int[expressionCount][];
+            this.candidateCounts = new int[expressionCount];
+            this.cursors = new int[expressionCount];
+            this.expressionStamps = new int[expressionCount];
+            this.minimumStarts = new int[expressionCount];
+            this.nextWaiting = new int[expressionCount];
+            this.firstRunStamps = new int[patternCount];
+            this.waitingHeads = new int[patternCount];
+            this.waitingStamps = new int[patternCount];
+            for (int expr = 0; expr < expressionCount; expr++) {
+                if (MultiPatternMatcher.this.expressionRuns[expr] != null) {
+                    this.candidates[expr] = new int[8];
+                }
+            }
+        }
+
+        @Contract(pure = false)
+        private void addCandidate(int expr, int ordinal) {
+            int[] list = this.candidates[expr];
+            if (list == null) {
+                return;
+            }
+            if (this.candidateCounts[expr] == list.length) {
+                list = this.candidates[expr] = Arrays.copyOf(list, list.length * 2);
+            }
+            list[this.candidateCounts[expr]++] = ordinal;
+        }
+
+        @Contract(pure = false)
+        private void advance(int expr, int end, int ordinal) {
+            int cursor = (this.expressionStamps[expr] == this.stamp ? this.cursors[expr] : 0) + 1;
+            this.expressionStamps[expr] = this.stamp;
+            this.cursors[expr] = cursor;
+            this.minimumStarts[expr] = end;
+            int[] runs = MultiPatternMatcher.this.expressionRuns[expr];
+            if (cursor == runs.length) {
+                this.addCandidate(expr, ordinal);
+            } else {
+                this.enqueue(runs[cursor], expr);
+            }
+        }
+
+        @Contract(pure = false)
+        private void enqueue(int pattern, int expr) {
+            if (this.waitingStamps[pattern] != this.stamp) {
+                this.waitingStamps[pattern] = this.stamp;
+                this.waitingHeads[pattern] = -1;
+            }
+            this.nextWaiting[expr] = this.waitingHeads[pattern];
+            this.waitingHeads[pattern] = expr;
+        }
+
+        @Contract(pure = false)
+        private void onOccurrence(int pattern, int start, int end, int ordinal) {
+            if (this.firstRunStamps[pattern] != this.stamp) {
+                // The first occurrence of a pattern is the earliest occurrence for all expressions starting with said pattern
+                this.firstRunStamps[pattern] = this.stamp;
+                for (int expr : MultiPatternMatcher.this.unanchoredFirstRuns[pattern]) {
+                    this.advance(expr, end, ordinal);
+                }
+            }
+            if (start == 0) {
+                for (int expr : MultiPatternMatcher.this.anchoredFirstRuns[pattern]) {
+                    this.advance(expr, end, ordinal);
+                }
+            }
+            if (this.waitingStamps[pattern] == this.stamp) {
+                int expr = this.waitingHeads[pattern];
+                this.waitingHeads[pattern] = -1;
+                while (expr != -1) {
+                    int next = this.nextWaiting[expr];
+                    if (start >= this.minimumStarts[expr]) {
+                        this.advance(expr, end, ordinal);
+                    } else {
+                        this.enqueue(pattern, expr);
+                    }
+                    expr = next;
+                }
+            }
+        }
+
+        @NotNull
+        @Contract(pure = false, value = "-> new")
+        private Candidates run() {
+            MultiPatternMatcher matcher = MultiPatternMatcher.this;
+            InstructionStore instructions = this.table.getInstructions();
+            for (int ordinal = 0; ordinal < this.table.getMethodCount(); ordinal++) {
+                this.stamp++;
+                int state = 0;
+                int insnCount = instructions.getInstructionCount(ordinal);
+                for (int position = 0; position < insnCount; position++) {
+                    int opcode = instructions.getOpcode(ordinal, position);
+                    if (opcode < 0) {
+                        // Pseudo-instructions (labels, frames, line numbers) are never matched by runs
+                        state = 0;
+                        continue;
+                    }
+                    int next;
+                    while ((next = matcher.getEdge(state, opcode)) == -1 && state != 0) {
+                        state = matcher.failureLinks[state];
+                    }
+                    state = next == -1 ? 0 : next;
+                    for (int out = matcher.statePatterns[state] != -1 ? state : matcher.dictionaryLinks[state]; out != -1; out = matcher.dictionaryLinks[out]) {
+                        int pattern = matcher.statePatterns[out];
+                        this.onOccurrence(pattern, position + 1 - matcher.patternLengths[pattern], position + 1, ordinal);
+                    }
+                }
+            }
+
+            for (int expr = 0; expr < this.candidates.length; expr++) {
+                int[] list = this.candidates[expr];
+                if (list != null) {
+                    this.candidates[expr] = Arrays.copyOf(list, this.candidateCounts[expr]);
+                }
+            }
+            return new Candidates(this.table, this.candidates);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.stianloader.softmap;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.stianloader.softmap.MemberIndex.Postings;
+
+/**
+ * A positional index of the opcodes of the instructions of the methods within a {@link MethodTable}.
+ *
+ * <p>The index is used to seed wildcards: A wildcard consumes instructions up to the first instruction
+ * matched by the following instruction block. Blocks which only match a single opcode cannot match any other
+ * instruction, so that all instructions up to the next occurrence of the opcode can be skipped without evaluating
+ * the block against each of them.
+ */
+final class OpcodeIndex {
+
+    /**
+     * The occurrences of each opcode, indexed by the opcode. Pseudo-instructions are not indexed.
+     */
+    @Nullable
+    private Postings @Nullable[] opcodes;
+
+    @NotNull
+    private final MethodTable table;
+
+    OpcodeIndex(@NotNull MethodTable table) {
+        this.table = table;
+    }
+
+    @NotNull
+    @Contract(pure = false)
+    private Postings @NotNull[] ensureIndexed() {
+        Postings[] opcodes = this.opcodes;
+        if (opcodes != null) {
+            return opcodes;
+        }
+        // Opcodes fit into a single unsigned byte as per the JVMS
+        this.opcodes = opcodes = new Postings[256];
+        MethodTable table = this.table;
+        InstructionStore instructions = table.getInstructions();
+        for (int ordinal = 0; ordinal < table.getMethodCount(); ordinal++) {
+            int insnCount = instructions.getInstructionCount(ordinal);
+            for (int offset = 0; offset < insnCount; offset++) {
+                int opcode = instructions.getOpcode(ordinal, offset);
+                if (opcode < 0) {
+                    continue;
+                }
+                Postings postings = opcodes[opcode];
+                if (postings == null) {
+                    opcodes[opcode] = postings = new Postings();
+                }
+                postings.add(ordinal, offset);
+            }
+        }
+        return opcodes;
+    }
+
+    /**
+     * Obtains the offset of the next instruction with a given opcode within a method.
+     *
+     * @param ordinal The ordinal of the method.
+     * @param opcode The opcode of the instruction.
+     * @param offset The offset of the instruction to start searching at (inclusive), including pseudo-instructions.
+     * @return The offset of the next instruction with the opcode, or the amount of instructions of the method if there is none.
+     */
+    @Contract(pure = false)
+    int getNextOccurrence(int ordinal, int opcode, int offset) {
+        Postings postings = this.ensureIndexed()[opcode];
+        if (postings != null) {
+            int occurrence = postings.getFirstOccurrence(ordinal, offset);
+            if (occurrence != postings.getOccurrenceCount() && postings.getOrdinal(occurrence) == ordinal) {
+                return postings.getOffset(occurrence);
+            }
+        }
+        return this.table.getInstructionCount(ordinal);
+    }
+}
@@ -0,0 +1,293 @@
+package org.stianloader.softmap;
+
+import java.util.Arrays;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.Opcodes;
+import org.stianloader.softmap.insns.FieldInsn;
+import org.stianloader.softmap.insns.InsnBlock;
+import org.stianloader.softmap.insns.InvokeInsn;
+import org.stianloader.softmap.insns.WildcardInsnBlock;
+import org.stianloader.softmap.tokens.StringToken;
+
+/**
+ * A locality-sensitive hashing index of the methods within a {@link MethodTable}, used to suggest the methods most similar
+ * to an {@link MethodExpression expression} which did not match any method.
+ *
+ * <p>Methods are described by a set of features: The trigrams of the opcodes of their instructions (ignoring pseudo-instructions),
+ * the fields they access and the names of the methods they invoke. Expressions are described the same way by the runs of blocks
+ * between wildcards and by the explicitly named members of their blocks. Field owners and names are the names used by the instructions
+ * (that is, the source names), which is also how field blocks are matched. The names of invoked methods are compared as written in the
+ * expression, so that only methods whose names do not change (e.g. methods of the standard library) contribute to the similarity.
+ *
+ * <p>The feature set of each method is reduced to a MinHash signature of {@value #BANDS} bands of {@value #ROWS} hashes each. Methods sharing
+ * at least one band with the expression are candidates, which are ranked by the exact Jaccard similarity of their features to the features
+ * of the expression. A lookup thus only touches the methods that are likely to be similar, regardless of the amount of methods in the table.
+ * Bands shared by a large amount of methods (as is the case for trivial getters) are only scanned partially.
+ */
+final class SimilarityIndex {
+
+    private static final int BANDS = 8;
+
+    /**
+     * The maximum amount of methods considered per band and lookup.
+     */
+    private static final int MAXIMUM_BAND_SCAN = 256;
+
+    private static final int ROWS = 4;
+
+    @Contract(pure = true)
+    private static int getBandHash(int @NotNull[] features, int band) {
+        int hash = 0;
+        for (int row = 0; row < SimilarityIndex.ROWS; row++) {
+            int minimum = Integer.MAX_VALUE;
+            int seed = band * SimilarityIndex.ROWS + row + 1;
+            for (int feature : features) {
+                minimum = Math.min(minimum, SimilarityIndex.mix(feature * 0x9E3779B9 + seed * 0x85EBCA6B));
+            }
+            hash = hash * 31 + minimum;
+        }
+        return SimilarityIndex.mix(hash);
+    }
+
+    /**
+     * Obtains the features of an expression.
+     *
+     * @param expr The expression.
+     * @return The ascendingly sorted and distinct features.
+     */
+    @Contract(pure = true)
+    private static int @NotNull[] getFeatures(@NotNull MethodExpression expr) {
+        int[] features = new int[expr.getInsns().size() * 2];
+        int featureCount = 0;
+        int gram = 0;
+        int gramLength = 0;
+        for (InsnBlock block : expr.getInsns()) {
+            int opcode = block.getOpcode();
+            if (block instanceof WildcardInsnBlock || opcode < 0) {
+                gramLength = 0;
+            } else {
+                gram = ((gram << 8) | opcode) & 0xFFFFFF;
+                if (++gramLength >= 3) {
+                    features[featureCount++] = SimilarityIndex.mix(gram);
+                }
+            }
+
+            if (block instanceof FieldInsn) {
+                StringToken owner = ((FieldInsn) block).getFieldOwner();
+                StringToken name = ((FieldInsn) block).getFieldName();
+                if (owner != null && name != null && owner.indexOf('?') == -1 && name.indexOf('?') == -1) {
+                    features[featureCount++] = SimilarityIndex.getFieldFeature(owner.getText(), name.getText());
+                }
+            } else if (block instanceof InvokeInsn) {
+                StringToken name = ((InvokeInsn) block).getMethodName();
+                if (name != null && name.indexOf('?') == -1) {
+                    features[featureCount++] = SimilarityIndex.getMethodFeature(name.getText());
+                }
+            }
+        }
+        return SimilarityIndex.sortDistinct(features, featureCount);
+    }
+
+    @Contract(pure = true)
+    private static int getFieldFeature(@NotNull String owner, @NotNull String name) {
+        return SimilarityIndex.mix(owner.hashCode() * 31 + name.hashCode() + 0x46);
+    }
+
+    @Contract(pure = true)
+    private static int getMethodFeature(@NotNull String name) {
+        return SimilarityIndex.mix(name.hashCode() + 0x4D);
+    }
+
+    /**
+     * Obtains the similarity of a pair returned by {@link #getSimilarMethods(MethodExpression, int)}.
+     *
+     * @param pair The pair.
+     * @return The Jaccard similarity of the features, in percent.
+     */
+    @Contract(pure = true)
+    static int getSimilarity(long pair) {
+        return 100 - (int) (pair >>> 32);
+    }
+
+    /**
+     * Obtains the ordinal of a pair returned by {@link #getSimilarMethods(MethodExpression, int)}.
+     *
+     * @param pair The pair.
+     * @return The ordinal of the method.
+     */
+    @Contract(pure = true)
+    static int getOrdinal(long pair) {
+        return (int) pair;
+    }
+
+    @Contract(pure = true)
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE35;
+        return hash ^ (hash >>> 16);
+    }
+
+    @Contract(pure = true)
+    private static int @NotNull[] sortDistinct(int @NotNull[] features, int featureCount) {
+        Arrays.sort(features, 0, featureCount);
+        int distinctCount = 0;
+        for (int i = 0; i < featureCount; i++) {
+            if (distinctCount == 0 || features[distinctCount - 1] != features[i]) {
+                features[distinctCount++] = features[i];
+            }
+        }
+        return Arrays.copyOf(features, distinctCount);
+    }
+
+    /**
+     * Computes the Jaccard similarity of two feature sets.
+     *
+     * @param a The ascendingly sorted and distinct features of the first set.
+     * @param b The ascendingly sorted and distinct features of the second set.
+     * @return The similarity, in percent.
+     */
+    @Contract(pure = true)
+    private static int getSimilarity(int @NotNull[] a, int @NotNull[] b) {
+        int shared = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length;) {
+            if (a[i] == b[j]) {
+                shared++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return shared * 100 / (a.length + b.length - shared);
+    }
+
+    /**
+     * For each band, the pairs of the band hash and the ordinal of every method with at least one feature, in ascending order.
+     */
+    private long @Nullable[] @NotNull[] bands;
+
+    @NotNull
+    private final MethodTable table;
+
+    SimilarityIndex(@NotNull MethodTable table) {
+        this.table = table;
+    }
+
+    /**
+     * Builds the index. This is done lazily as it requires walking over all instructions of all methods,
+     * which is wasted effort if all expressions match.
+     *
+     * @return The bands.
+     */
+    @Contract(pure = false)
+    private long @NotNull[] @NotNull[] ensureIndexed() {
+        long[][] bands = this.bands;
+        if (bands != null) {
+            return bands;
+        }
+        MethodTable table = this.table;
+        InstructionStore instructions = table.getInstructions();
+        int methodCount = table.getMethodCount();
+        bands = new long[SimilarityIndex.BANDS][methodCount];
+        int indexedCount = 0;
+        for (int ordinal = 0; ordinal < methodCount; ordinal++) {
+            int[] features = this.getFeatures(instructions, ordinal);
+            if (features.length == 0) {
+                continue;
+            }
+            for (int band = 0; band < SimilarityIndex.BANDS; band++) {
+                bands[band][indexedCount] = ((long) SimilarityIndex.getBandHash(features, band) << 32) | ordinal;
+            }
+            indexedCount++;
+        }
+        for (int band = 0; band < SimilarityIndex.BANDS; band++) {
+            bands[band] = Arrays.copyOf(bands[band], indexedCount);
+            Arrays.sort(bands[band]);
+        }
+        return this.bands = bands;
+    }
+
+    /**
+     * Obtains the features of a method.
+     *
+     * @param instructions The instructions of all methods.
+     * @param ordinal The ordinal of the method.
+     * @return The ascendingly sorted and distinct features.
+     */
+    @Contract(pure = true)
+    private int @NotNull[] getFeatures(@NotNull InstructionStore instructions, int ordinal) {
+        int[] features = new int[instructions.getInstructionCount(ordinal) * 2];
+        int featureCount = 0;
+        int gram = 0;
+        int gramLength = 0;
+        InstructionStore.Cursor insn = instructions.open(ordinal);
+        while (insn.next()) {
+            int opcode = insn.getOpcode();
+            if (opcode < 0) {
+                continue;
+            }
+            gram = ((gram << 8) | opcode) & 0xFFFFFF;
+            if (++gramLength >= 3) {
+                features[featureCount++] = SimilarityIndex.mix(gram);
+            }
+            if (opcode >= Opcodes.GETSTATIC && opcode <= Opcodes.PUTFIELD) {
+                features[featureCount++] = SimilarityIndex.getFieldFeature(insn.getOwner(), insn.getName());
+            } else if (opcode >= Opcodes.INVOKEVIRTUAL && opcode <= Opcodes.INVOKEINTERFACE) {
+                features[featureCount++] = SimilarityIndex.getMethodFeature(insn.getName());
+            }
+        }
+        return SimilarityIndex.sortDistinct(features, featureCount);
+    }
+
+    /**
+     * Obtains the methods most similar to an expression.
+     *
+     * @param expr The expression.
+     * @param limit The maximum amount of methods to obtain.
+     * @return Pairs of the ordinal of a method and its similarity, in descending order of the similarity.
+     * Methods sharing no features with the expression are omitted.
+     */
+    @Contract(pure = false)
+    long @NotNull[] getSimilarMethods(@NotNull MethodExpression expr, int limit) {
+        int[] features = SimilarityIndex.getFeatures(expr);
+        if (features.length == 0 || limit == 0) {
+            return new long[0];
+        }
+        long[][] bands = this.ensureIndexed();
+        InstructionStore instructions = this.table.getInstructions();
+        int[] candidates = new int[SimilarityIndex.BANDS * SimilarityIndex.MAXIMUM_BAND_SCAN];
+        int candidateCount = 0;
+        for (int band = 0; band < SimilarityIndex.BANDS; band++) {
+            long bandHash = SimilarityIndex.getBandHash(features, band);
+            long[] pairs = bands[band];
+            int index = Arrays.binarySearch(pairs, bandHash << 32);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            int end = Math.min(pairs.length, index + SimilarityIndex.MAXIMUM_BAND_SCAN);
+            for (; index < end && (pairs[index] >> 32) == bandHash; index++) {
+                candidates[candidateCount++] = (int) pairs[index];
+            }
+        }
+        candidates = SimilarityIndex.sortDistinct(candidates, candidateCount);
+
+        // Sort by dissimilarity first and then by ordinal
+        long[] ranked = new long[candidates.length];
+        int rankedCount = 0;
+        for (int ordinal : candidates) {
+            int similarity = SimilarityIndex.getSimilarity(features, this.getFeatures(instructions, ordinal));
+            if (similarity != 0) {
+                ranked[rankedCount++] = ((long) (100 - similarity) << 32) | ordinal;
+            }
+        }
+        Arrays.sort(ranked, 0, rankedCount);
+        return Arrays.copyOf(ranked, Math.min(rankedCount, limit));
+    }
+}
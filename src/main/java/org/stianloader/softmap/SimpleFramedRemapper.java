@@ -5,6 +5,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -21,6 +22,7 @@ import org.jetbrains.annotations.Unmodifiable;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.MethodNode;
+import org.stianloader.softmap.classpath.ClassHeaderCache;
 
 public class SimpleFramedRemapper implements FramedRemapper {
 
@@ -91,6 +93,18 @@ public class SimpleFramedRemapper implements FramedRemapper {
             this.methodDesc = methodDesc;
             this.realmMembers = realmMembers;
         }
+
+        @NotNull
+        @Contract(pure = true)
+        String getDeclaringClass() {
+            return this.declaringClass;
+        }
+
+        @NotNull
+        @Contract(pure = true)
+        Set<@NotNull String> getRealmMembers() {
+            return this.realmMembers;
+        }
     }
 
     private static class RemappingFrame implements FramedRemapper.RemapperFrame {
@@ -110,6 +124,40 @@ public class SimpleFramedRemapper implements FramedRemapper {
          */
         @NotNull
         private final Map<@NotNull MethodLoc, String> methodFieldMappings = new HashMap<>();
+
+        /**
+         * Reverse index of {@link #classNameMappings}, mapping destination names to source names.
+         */
+        @NotNull
+        private final Map<String, String> classNameSources = new HashMap<>();
+
+        /**
+         * Reverse index of {@link #methodFieldMappings}, where the keys are made up of the owner, the destination name
+         * and the source descriptor and the values are the source names.
+         *
+         * <p>Unlike {@link #methodFieldMappings}, methods are stored for every member of the method realm,
+         * so that two methods of a class cannot be mapped to the same name regardless of which realm they belong to.
+         */
+        @NotNull
+        private final Map<@NotNull MethodLoc, String> methodFieldSources = new HashMap<>();
+
+        private void putClass(@NotNull String srcName, @NotNull String dstName) {
+            String oldDstName = this.classNameMappings.put(srcName, dstName);
+            if (oldDstName != null && !oldDstName.equals(dstName)) {
+                this.classNameSources.remove(oldDstName, srcName);
+            }
+            this.classNameSources.put(dstName, srcName);
+        }
+
+        private void putMember(@NotNull MethodLoc loc, @NotNull String dstName, @NotNull Set<@NotNull String> owners) {
+            String oldDstName = this.methodFieldMappings.put(loc, dstName);
+            for (String owner : owners) {
+                if (oldDstName != null && !oldDstName.equals(dstName)) {
+                    this.methodFieldSources.remove(new MethodLoc(owner, oldDstName, loc.desc), loc.name);
+                }
+                this.methodFieldSources.put(new MethodLoc(owner, dstName, loc.desc), loc.name);
+            }
+        }
     }
 
     /**
@@ -161,6 +209,24 @@ public class SimpleFramedRemapper implements FramedRemapper {
     @NotNull
     @Unmodifiable
     public static Map<@NotNull MethodLoc, @NotNull MethodRealm> realmsOf(@Unmodifiable @NotNull List<@NotNull ClassNode> nodes) {
+        return SimpleFramedRemapper.realmsOf(nodes, null);
+    }
+
+    /**
+     * Computes the method realms of a list of classes, taking library supertypes into account.
+     *
+     * <p>Realms only ever contain the given classes. However, methods of the given classes which override or implement
+     * the same method of a library supertype are combined into a single realm, even if the classes share no common supertype
+     * among the given classes (for example two classes implementing the same library interface).
+     * Library classes are read from the cache as the walk of the class hierarchy reaches them.
+     *
+     * @param nodes The classes to compute the realms of.
+     * @param libraries The headers of library classes, or null to only consider the given classes.
+     * @return The realms of all methods declared or inherited by the given classes, keyed by the owner, name and descriptor.
+     */
+    @NotNull
+    @Unmodifiable
+    public static Map<@NotNull MethodLoc, @NotNull MethodRealm> realmsOf(@Unmodifiable @NotNull List<@NotNull ClassNode> nodes, @Nullable ClassHeaderCache libraries) {
         Map<@NotNull String, Set<@NotNull String>> immediateChildren = new HashMap<>();
         Map<@NotNull String, ClassNode> nodeLookup = new HashMap<>();
         for (ClassNode node : nodes) {
@@ -262,9 +328,160 @@ public class SimpleFramedRemapper implements FramedRemapper {
             }
         }
 
+        if (libraries != null) {
+            SimpleFramedRemapper.joinLibraryRealms(nodes, nodeLookup, libraries, realms);
+        }
+
         return Collections.unmodifiableMap(realms);
     }
 
+    /**
+     * Collects the overridable methods declared by the library supertypes of a class, keyed by the declaring library class,
+     * name and descriptor. Package-private methods are ignored as library packages are not expected to contain
+     * any of the given classes.
+     *
+     * @param name The name of the class.
+     * @param nodeLookup The given classes.
+     * @param libraries The headers of library classes.
+     * @param inherited The already collected methods of each class.
+     * @return The library methods the class inherits (or declares if it is a library class itself).
+     */
+    @NotNull
+    @Contract(pure = false, mutates = "param4")
+    private static Set<@NotNull MethodLoc> getLibraryMethods(@NotNull String name, @NotNull Map<@NotNull String, ClassNode> nodeLookup,
+            @NotNull ClassHeaderCache libraries, @NotNull Map<@NotNull String, @NotNull Set<@NotNull MethodLoc>> inherited) {
+        Set<MethodLoc> methods = inherited.get(name);
+        if (methods != null) {
+            return methods;
+        }
+        // Guard against (illegal) circular hierarchies
+        inherited.put(name, Collections.emptySet());
+        ClassNode node = nodeLookup.get(name);
+        boolean library = node == null;
+        if (library) {
+            node = libraries.getHeader(name);
+            if (node == null) {
+                return Collections.emptySet();
+            }
+        }
+        methods = new HashSet<>();
+        if (node.superName != null) {
+            methods.addAll(SimpleFramedRemapper.getLibraryMethods(node.superName, nodeLookup, libraries, inherited));
+        }
+        for (String interfaceName : node.interfaces) {
+            methods.addAll(SimpleFramedRemapper.getLibraryMethods(interfaceName, nodeLookup, libraries, inherited));
+        }
+        if (library) {
+            for (MethodNode method : node.methods) {
+                if ((method.access & (Opcodes.ACC_PUBLIC | Opcodes.ACC_PROTECTED)) != 0
+                        && (method.access & (Opcodes.ACC_STATIC | Opcodes.ACC_PRIVATE)) == 0
+                        && method.name.codePointAt(0) != '<') {
+                    methods.add(new MethodLoc(node.name, method.name, method.desc));
+                }
+            }
+        }
+        inherited.put(name, methods);
+        return methods;
+    }
+
+    /**
+     * Combines the realms of methods which override or implement the same library method.
+     *
+     * @param nodes The given classes.
+     * @param nodeLookup The given classes, keyed by their name.
+     * @param libraries The headers of library classes.
+     * @param realms The realms of the given classes, which are updated in place.
+     */
+    @Contract(pure = false, mutates = "param4")
+    private static void joinLibraryRealms(@NotNull List<@NotNull ClassNode> nodes, @NotNull Map<@NotNull String, ClassNode> nodeLookup,
+            @NotNull ClassHeaderCache libraries, @NotNull Map<@NotNull MethodLoc, @NotNull MethodRealm> realms) {
+        Map<String, Set<MethodLoc>> inherited = new HashMap<>();
+        // The realms bound to each library method, with the realms themselves as the keys of identity maps
+        Map<MethodLoc, Map<MethodRealm, Boolean>> boundRealms = new HashMap<>();
+        for (ClassNode node : nodes) {
+            for (MethodLoc libraryMethod : SimpleFramedRemapper.getLibraryMethods(node.name, nodeLookup, libraries, inherited)) {
+                MethodRealm realm = realms.get(new MethodLoc(node.name, libraryMethod.name, libraryMethod.desc));
+                if (realm != null && SimpleFramedRemapper.isOverriding(nodeLookup.get(realm.declaringClass), libraryMethod)) {
+                    boundRealms.computeIfAbsent(libraryMethod, (ignore) -> new IdentityHashMap<>()).put(realm, Boolean.TRUE);
+                }
+            }
+        }
+
+        // Union-find over the realms, where each realm bound to the same library method is joined
+        Map<MethodRealm, MethodRealm> parents = new IdentityHashMap<>();
+        for (Map<MethodRealm, Boolean> bound : boundRealms.values()) {
+            MethodRealm root = null;
+            for (MethodRealm realm : bound.keySet()) {
+                MethodRealm realmRoot = SimpleFramedRemapper.findRoot(parents, realm);
+                if (root == null) {
+                    root = realmRoot;
+                } else if (root != realmRoot) {
+                    parents.put(realmRoot, root);
+                }
+            }
+        }
+        if (parents.isEmpty()) {
+            return;
+        }
+
+        Map<MethodRealm, Set<String>> joinedMembers = new IdentityHashMap<>();
+        for (MethodRealm realm : new ArrayList<>(parents.keySet())) {
+            joinedMembers.put(SimpleFramedRemapper.findRoot(parents, realm), new TreeSet<>());
+        }
+        Map<MethodRealm, String> joinedDeclaringClasses = new IdentityHashMap<>();
+        Map<MethodRealm, Boolean> visited = new IdentityHashMap<>();
+        for (MethodRealm realm : realms.values()) {
+            MethodRealm root = SimpleFramedRemapper.findRoot(parents, realm);
+            Set<String> members = joinedMembers.get(root);
+            if (members == null || visited.put(realm, Boolean.TRUE) != null) {
+                continue; // Not joined with any other realm or already visited
+            }
+            members.addAll(realm.realmMembers);
+            // Use the lexicographically smallest declaring class so that the result does not depend on iteration order
+            joinedDeclaringClasses.merge(root, realm.declaringClass, (a, b) -> a.compareTo(b) <= 0 ? a : b);
+        }
+        Map<MethodRealm, MethodRealm> joinedRealms = new IdentityHashMap<>();
+        for (Map.Entry<MethodRealm, Set<String>> entry : joinedMembers.entrySet()) {
+            MethodRealm root = entry.getKey();
+            joinedRealms.put(root, new MethodRealm(joinedDeclaringClasses.get(root), root.methodName, root.methodDesc, entry.getValue()));
+        }
+        for (Map.Entry<MethodLoc, MethodRealm> entry : realms.entrySet()) {
+            MethodRealm joined = joinedRealms.get(SimpleFramedRemapper.findRoot(parents, entry.getValue()));
+            if (joined != null) {
+                entry.setValue(joined);
+            }
+        }
+    }
+
+    @Contract(pure = true)
+    private static boolean isOverriding(@Nullable ClassNode declaringNode, @NotNull MethodLoc libraryMethod) {
+        if (declaringNode == null) {
+            return false;
+        }
+        for (MethodNode method : declaringNode.methods) {
+            if (method.name.equals(libraryMethod.name) && method.desc.equals(libraryMethod.desc)) {
+                return (method.access & (Opcodes.ACC_STATIC | Opcodes.ACC_PRIVATE)) == 0;
+            }
+        }
+        return false;
+    }
+
+    @NotNull
+    @Contract(pure = false, mutates = "param1")
+    private static MethodRealm findRoot(@NotNull Map<MethodRealm, MethodRealm> parents, @NotNull MethodRealm realm) {
+        MethodRealm root = realm;
+        for (MethodRealm parent = parents.get(root); parent != null; parent = parents.get(root)) {
+            root = parent;
+        }
+        // Path compression
+        while (realm != root) {
+            MethodRealm parent = parents.get(realm);
+            parents.put(realm, root);
+            realm = parent;
+        }
+        return root;
+    }
+
     @NotNull
     private final Queue<RemappingFrame> frames = Collections.asLifoQueue(new ArrayDeque<>());
 
@@ -281,42 +498,56 @@ public class SimpleFramedRemapper implements FramedRemapper {
         this.frames.remove();
     }
 
+    /**
+     * Exports the mappings of a single frame in the tinyV1 format. Method mappings are exported for all members of the method realm.
+     *
+     * @param classNameMappings The class mappings.
+     * @param methodFieldMappings The field and method mappings, where methods are keyed by the declaring class of their realm.
+     * @param realms The method realms.
+     * @param tiny The list to add the tinyV1 lines to.
+     */
+    @Contract(pure = false, mutates = "param4")
+    static void exportToTinyV1(@NotNull Map<String, String> classNameMappings, @NotNull Map<@NotNull MethodLoc, String> methodFieldMappings,
+            @NotNull Map<MethodLoc, MethodRealm> realms, @NotNull List<@NotNull String> tiny) {
+        for (String key : classNameMappings.keySet()) {
+            tiny.add("CLASS\t" + key + '\t' + classNameMappings.get(key));
+        }
+        for (MethodLoc key : methodFieldMappings.keySet()) {
+            if (key.desc.codePointAt(0) == '(') {
+                // Method
+                // Large parts of the stianloader toolchain incorrectly used to use "<owner> <name> <desc> <name>",
+                // but that is not correct.
+                // Why exactly this mistake was introduced in the first place and why it was never really fixed is a bit beyond me.
+                // While some might advocate sticking to the bugged behaviour, it is ultimately the goal of completely reverting
+                // this bugged behaviour and returning to valid tinyv1 files.
+                // Incidentally recaf 3X does the same mistake but for fields instead of methods. Why two independent implementations
+                // made similar mistakes begs the question of how well tinyv1 is defined and how great the deviations are between
+                // implementation to implementation.
+
+                // Simpler/Dumber tools may completely discard the existence of inheritance, so we shall remap the entire
+                // method realm, even though that may be counterproductive in terms of performance and usefulness to more
+                // robust remappers or other well-written tools consuming tinyV1 files.
+                MethodRealm realm = realms.get(key);
+                if (!realm.realmMembers.contains(realm.declaringClass)) {
+                    throw new AssertionError("Declaring class not in realm members: " + realm.declaringClass + " for " + key);
+                }
+                for (String realmMember : realm.realmMembers) {
+                    tiny.add("METHOD\t" + realmMember + '\t' + key.desc + '\t' + key.name + '\t' + methodFieldMappings.get(key));
+                }
+            } else {
+                // Field
+                tiny.add("FIELD\t" + key.owner + '\t' + key.desc + '\t' + key.name + '\t' + methodFieldMappings.get(key));
+            }
+        }
+    }
+
     @Override
     @NotNull
     @Contract(pure = true, value = "-> new")
     public @Unmodifiable List<@NotNull String> exportToTinyV1() {
         List<@NotNull String> tiny = new ArrayList<>();
         for (RemappingFrame frame : this.frames) {
-            for (String key : frame.classNameMappings.keySet()) {
-                tiny.add("CLASS\t" + key + '\t' + frame.classNameMappings.get(key));
-            }
-            for (MethodLoc key : frame.methodFieldMappings.keySet()) {
-                if (key.desc.codePointAt(0) == '(') {
-                    // Method
-                    // Large parts of the stianloader toolchain incorrectly used to use "<owner> <name> <desc> <name>",
-                    // but that is not correct.
-                    // Why exactly this mistake was introduced in the first place and why it was never really fixed is a bit beyond me.
-                    // While some might advocate sticking to the bugged behaviour, it is ultimately the goal of completely reverting
-                    // this bugged behaviour and returning to valid tinyv1 files.
-                    // Incidentally recaf 3X does the same mistake but for fields instead of methods. Why two independent implementations
-                    // made similar mistakes begs the question of how well tinyv1 is defined and how great the deviations are between
-                    // implementation to implementation.
-
-                    // Simpler/Dumber tools may completely discard the existence of inheritance, so we shall remap the entire
-                    // method realm, even though that may be counterproductive in terms of performance and usefulness to more
-                    // robust remappers or other well-written tools consuming tinyV1 files.
-                    MethodRealm realm = this.realms.get(key);
-                    if (!realm.realmMembers.contains(realm.declaringClass)) {
-                        throw new AssertionError("Declaring class not in realm members: " + realm.declaringClass + " for " + key);
-                    }
-                    for (String realmMember : realm.realmMembers) {
-                        tiny.add("METHOD\t" + realmMember + '\t' + key.desc + '\t' + key.name + '\t' + frame.methodFieldMappings.get(key));
-                    }
-                } else {
-                    // Field
-                    tiny.add("FIELD\t" + key.owner + '\t' + key.desc + '\t' + key.name + '\t' + frame.methodFieldMappings.get(key));
-                }
-            }
+            SimpleFramedRemapper.exportToTinyV1(frame.classNameMappings, frame.methodFieldMappings, this.realms, tiny);
         }
         return Collections.unmodifiableList(tiny);
     }
@@ -380,6 +611,152 @@ public class SimpleFramedRemapper implements FramedRemapper {
         }
     }
 
+    /**
+     * Obtains the source name of a method which already uses a destination name within any member of the realm of a given method.
+     *
+     * @param remapper The remapper to query the reverse index of.
+     * @param realm The realm of the method, or null if the method is not known.
+     * @param owner The owner of the method.
+     * @param srcName The name of the method.
+     * @param desc The descriptor of the method.
+     * @param dstName The destination name the method is about to be mapped to.
+     * @return The source name of the colliding method, or null if there is none.
+     */
+    @Nullable
+    @Contract(pure = true)
+    static String getCollidingMethod(@NotNull FramedRemapper remapper, @Nullable MethodRealm realm, @NotNull String owner,
+            @NotNull String srcName, @NotNull String desc, @NotNull String dstName) {
+        Set<String> members = realm == null ? Collections.singleton(owner) : realm.realmMembers;
+        for (String member : members) {
+            String collidingName = remapper.getSourceMethod(member, dstName, desc);
+            if (collidingName != null && !collidingName.equals(srcName)) {
+                return collidingName;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Obtains the class declaring the realm of a method, which is the class under which mappings of the method are stored.
+     *
+     * @param owner The owner of the method.
+     * @param srcName The name of the method.
+     * @param desc The descriptor of the method.
+     * @return The declaring class of the method realm.
+     */
+    @NotNull
+    @Contract(pure = true)
+    String getRealmOwner(@NotNull String owner, @NotNull String srcName, @NotNull String desc) {
+        return this.realms.get(new MethodLoc(owner, srcName, desc)).declaringClass;
+    }
+
+    @Override
+    @Nullable
+    @Contract(pure = true)
+    public String getSourceClass(@NotNull String dstName) {
+        for (RemappingFrame frame : this.frames) {
+            String srcName = frame.classNameSources.get(dstName);
+            // The mapping may be shadowed by a different mapping of the same class in a lower frame
+            if (srcName != null && dstName.equals(this.getMappedClassOpt(srcName))) {
+                return srcName;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    @Nullable
+    @Contract(pure = true)
+    public String getSourceField(@NotNull String srcNameOwner, @NotNull String dstNameField, @NotNull String srcDescField) {
+        MethodLoc loc = new MethodLoc(srcNameOwner, dstNameField, srcDescField);
+        for (RemappingFrame frame : this.frames) {
+            String srcName = frame.methodFieldSources.get(loc);
+            if (srcName != null && dstNameField.equals(this.getMappedFieldOpt(srcNameOwner, srcName, srcDescField))) {
+                return srcName;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    @Nullable
+    @Contract(pure = true)
+    public String getCollidingMethod(@NotNull String srcNameOwner, @NotNull String srcNameMethod, @NotNull String srcDescMethod, @NotNull String dstNameMethod) {
+        MethodRealm realm = this.realms.get(new MethodLoc(srcNameOwner, srcNameMethod, srcDescMethod));
+        return SimpleFramedRemapper.getCollidingMethod(this, realm, srcNameOwner, srcNameMethod, srcDescMethod, dstNameMethod);
+    }
+
+    /**
+     * Obtains the realm of a method.
+     *
+     * @param owner The owner of the method.
+     * @param srcName The name of the method.
+     * @param desc The descriptor of the method.
+     * @return The method realm, or null if the method is not known.
+     */
+    @Nullable
+    @Contract(pure = true)
+    MethodRealm getRealm(@NotNull String owner, @NotNull String srcName, @NotNull String desc) {
+        return this.realms.get(new MethodLoc(owner, srcName, desc));
+    }
+
+    @Override
+    @Nullable
+    @Contract(pure = true)
+    public String getSourceMethod(@NotNull String srcNameOwner, @NotNull String dstNameMethod, @NotNull String srcDescMethod) {
+        MethodLoc loc = new MethodLoc(srcNameOwner, dstNameMethod, srcDescMethod);
+        for (RemappingFrame frame : this.frames) {
+            String srcName = frame.methodFieldSources.get(loc);
+            if (srcName != null && dstNameMethod.equals(this.getMappedMethodOpt(srcNameOwner, srcName, srcDescMethod))) {
+                return srcName;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether the realm of a method is known.
+     *
+     * @param owner The owner of the method.
+     * @param srcName The name of the method.
+     * @param desc The descriptor of the method.
+     * @return True if the method has a realm.
+     */
+    @Contract(pure = true)
+    boolean hasRealm(@NotNull String owner, @NotNull String srcName, @NotNull String desc) {
+        return this.realms.containsKey(new MethodLoc(owner, srcName, desc));
+    }
+
+    /**
+     * Checks whether a class is a member of the realm of a method.
+     *
+     * @param owner The class.
+     * @param srcName The name of the method.
+     * @param desc The descriptor of the method.
+     * @param realmOwner The declaring class of the method realm.
+     * @return True if the class is a member of the method realm.
+     */
+    @Contract(pure = true)
+    boolean isRealmMember(@NotNull String owner, @NotNull String srcName, @NotNull String desc, @NotNull String realmOwner) {
+        MethodRealm realm = this.realms.get(new MethodLoc(realmOwner, srcName, desc));
+        return realm != null && realm.realmMembers.contains(owner);
+    }
+
+    /**
+     * Obtains the owners under which a field or method mapping is stored in the reverse index.
+     *
+     * @param loc The field, or the method keyed by the declaring class of its realm.
+     * @return The owner of the field or the members of the method realm.
+     */
+    @NotNull
+    @Contract(pure = true)
+    private Set<@NotNull String> getReverseOwners(@NotNull MethodLoc loc) {
+        if (loc.desc.codePointAt(0) == '(') {
+            return this.realms.get(loc).realmMembers;
+        }
+        return Collections.singleton(loc.owner);
+    }
+
     @Override
     @Contract(pure = false)
     public void mapClass(@NotNull String srcOwner, @NotNull String dstOwner) {
@@ -396,7 +773,7 @@ public class SimpleFramedRemapper implements FramedRemapper {
             throw new IllegalArgumentException("Illegal owner for the destination namespace: " + dstOwner);
         }
 
-        frame.classNameMappings.put(srcOwner, dstOwner);
+        frame.putClass(srcOwner, dstOwner);
     }
 
     @Override
@@ -406,7 +783,7 @@ public class SimpleFramedRemapper implements FramedRemapper {
             throw new NoSuchElementException("No frame to edit");
         }
 
-        frame.methodFieldMappings.put(new MethodLoc(owner, srcName, desc), dstName);
+        frame.putMember(new MethodLoc(owner, srcName, desc), dstName, Collections.singleton(owner));
     }
 
     @Override
@@ -417,8 +794,8 @@ public class SimpleFramedRemapper implements FramedRemapper {
             throw new NoSuchElementException("No frame to edit");
         }
 
-        owner = this.realms.get(new MethodLoc(owner, srcName, desc)).declaringClass;
-        frame.methodFieldMappings.put(new MethodLoc(owner, srcName, desc), dstName);
+        MethodRealm realm = this.realms.get(new MethodLoc(owner, srcName, desc));
+        frame.putMember(new MethodLoc(realm.declaringClass, srcName, desc), dstName, realm.realmMembers);
     }
 
     @Override
@@ -431,8 +808,13 @@ public class SimpleFramedRemapper implements FramedRemapper {
         RemappingFrame topFrame = this.frames.remove();
         RemappingFrame bottomFrame = this.frames.element();
 
-        bottomFrame.classNameMappings.putAll(topFrame.classNameMappings);
-        bottomFrame.methodFieldMappings.putAll(topFrame.methodFieldMappings);
+        for (Map.Entry<String, String> entry : topFrame.classNameMappings.entrySet()) {
+            bottomFrame.putClass(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<MethodLoc, String> entry : topFrame.methodFieldMappings.entrySet()) {
+            MethodLoc loc = entry.getKey();
+            bottomFrame.putMember(loc, entry.getValue(), this.getReverseOwners(loc));
+        }
     }
 
     @Override
@@ -1,7 +1,12 @@
 package org.stianloader.softmap;
 
+import java.util.Collections;
+import java.util.List;
+
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Unmodifiable;
+import org.stianloader.softmap.SimpleFramedRemapper.MethodLoc;
 import org.stianloader.softmap.tokens.Token;
 
 public class SoftmapApplicationError {
@@ -9,10 +14,18 @@ public class SoftmapApplicationError {
     private final String description;
     @NotNull
     private final Token errorLocation;
+    @NotNull
+    @Unmodifiable
+    private final List<@NotNull MethodLoc> suggestions;
 
     public SoftmapApplicationError(@NotNull Token errorLocation, @NotNull String description) {
+        this(errorLocation, description, Collections.emptyList());
+    }
+
+    public SoftmapApplicationError(@NotNull Token errorLocation, @NotNull String description, @NotNull @Unmodifiable List<@NotNull MethodLoc> suggestions) {
         this.description = description;
         this.errorLocation = errorLocation;
+        this.suggestions = suggestions;
     }
 
     @NotNull
@@ -26,4 +39,18 @@ public class SoftmapApplicationError {
     public Token getErrorLocation() {
         return this.errorLocation;
     }
+
+    /**
+     * Obtains the methods most similar to the expression that failed to match, in descending order of their similarity.
+     * Suggestions are only made if enabled through {@link SoftmapContext#setSuggestionCount(int)}, and only for expressions
+     * that did not match any method.
+     *
+     * @return The suggested methods, named by their source (that is, unmapped) owner, name and descriptor.
+     */
+    @NotNull
+    @Unmodifiable
+    @Contract(pure = true)
+    public List<@NotNull MethodLoc> getSuggestions() {
+        return this.suggestions;
+    }
 }
@@ -1,6 +1,7 @@
 package org.stianloader.softmap;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -8,17 +9,21 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.function.UnaryOperator;
 
 import org.jetbrains.annotations.CheckReturnValue;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.Unmodifiable;
-import org.objectweb.asm.tree.AbstractInsnNode;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.MethodNode;
 import org.stianloader.softmap.FramedRemapper.RemapperFrame;
 import org.stianloader.softmap.SimpleFramedRemapper.MethodLoc;
+import org.stianloader.softmap.classpath.ClassHeaderCache;
+import org.stianloader.softmap.classpath.ClassNodeCache;
+import org.stianloader.softmap.classpath.ClassStore;
+import org.stianloader.softmap.insns.ConstantInsn;
 import org.stianloader.softmap.insns.FieldInsn;
 import org.stianloader.softmap.insns.InsnBlock;
 import org.stianloader.softmap.insns.InsnParser;
@@ -39,13 +44,31 @@ public class SoftmapContext {
         @Unmodifiable
         private final List<@NotNull SoftmapApplicationError> errors;
 
+        @NotNull
+        @Unmodifiable
+        private final List<@NotNull String> explanation;
+
         @NotNull
         @Unmodifiable
         private final List<@NotNull String> generatedTinyV1Mappings;
 
+        @NotNull
+        @Unmodifiable
+        private final List<@Nullable MethodLoc> matchedMethods;
+
         public ApplicationResult(@NotNull @Unmodifiable List<@NotNull String> tinyV1, @NotNull @Unmodifiable List<@NotNull SoftmapApplicationError> errors) {
+            this(tinyV1, errors, Collections.emptyList());
+        }
+
+        public ApplicationResult(@NotNull @Unmodifiable List<@NotNull String> tinyV1, @NotNull @Unmodifiable List<@NotNull SoftmapApplicationError> errors, @NotNull @Unmodifiable List<@NotNull String> explanation) {
+            this(tinyV1, errors, explanation, Collections.emptyList());
+        }
+
+        public ApplicationResult(@NotNull @Unmodifiable List<@NotNull String> tinyV1, @NotNull @Unmodifiable List<@NotNull SoftmapApplicationError> errors, @NotNull @Unmodifiable List<@NotNull String> explanation, @NotNull @Unmodifiable List<@Nullable MethodLoc> matchedMethods) {
             this.generatedTinyV1Mappings = tinyV1;
             this.errors = errors;
+            this.explanation = explanation;
+            this.matchedMethods = matchedMethods;
         }
 
         @Contract(pure = true)
@@ -55,14 +78,51 @@ public class SoftmapContext {
             return this.errors;
         }
 
+        /**
+         * Obtains a human-readable description of the cost of applying each expression, with one line per expression
+         * in the order the expressions were applied. Each line names the expression, the amount of candidate methods
+         * that was estimated when {@link SoftmapContext#setPlanningExpressions(boolean) planning} the order of expressions
+         * (if enabled), the amount of methods the instructions of the expression were matched against and the time it took
+         * to apply the expression.
+         *
+         * <p>The format of the lines is not specified and may change at any time.
+         *
+         * @return The explanation.
+         */
+        @Contract(pure = true)
+        @NotNull
+        @Unmodifiable
+        public List<@NotNull String> getExplanation() {
+            return this.explanation;
+        }
+
         @Contract(pure = true)
         @NotNull
         @Unmodifiable
         public List<@NotNull String> getGeneratedTinyV1Mappings() {
             return this.generatedTinyV1Mappings;
         }
+
+        /**
+         * Obtains the method matched by each expression, in the order the expressions are declared in.
+         * Expressions which did not match any method (or matched multiple methods) are associated with null.
+         * Used to {@link MatchCarryover carry over} matches to another version of the classes.
+         *
+         * @return The matched methods.
+         */
+        @Contract(pure = true)
+        @NotNull
+        @Unmodifiable
+        public List<@Nullable MethodLoc> getMatchedMethods() {
+            return this.matchedMethods;
+        }
     }
 
+    /**
+     * The maximum amount of methods reported as approximate matches, see {@link #setApproximateMatching(int, int)}.
+     */
+    private static final int APPROXIMATE_MATCHES = 5;
+
     /**
      * The version identifier to use as a fallback when a version has not been explicitly
      * defined. Note that it is still an error to not define the version the parser should be used,
@@ -77,6 +137,7 @@ public class SoftmapContext {
     static {
         Map<@NotNull String, @NotNull InsnParser<?>> insnParsersModifable = new HashMap<>();
         insnParsersModifable.put("*", WildcardInsnBlock.PARSER);
+        insnParsersModifable.put("?", WildcardInsnBlock.PARSER);
 
         insnParsersModifable.put("GETFIELD", FieldInsn.PARSER_GETFIELD);
         insnParsersModifable.put("GETSTATIC", FieldInsn.PARSER_GETSTATIC);
@@ -88,8 +149,26 @@ public class SoftmapContext {
         insnParsersModifable.put("INVOKESTATIC", InvokeInsn.PARSER_INVOKESTATIC);
         insnParsersModifable.put("INVOKESPECIAL", InvokeInsn.PARSER_INVOKESPECIAL);
 
+        insnParsersModifable.put("LDC", ConstantInsn.PARSER_LDC);
+        insnParsersModifable.put("BIPUSH", ConstantInsn.PARSER_BIPUSH);
+        insnParsersModifable.put("SIPUSH", ConstantInsn.PARSER_SIPUSH);
+
         insnParsersModifable.put("NOP", SimpleInsnBlock.NOP);
         insnParsersModifable.put("ACONST_NULL", SimpleInsnBlock.ACONST_NULL);
+        insnParsersModifable.put("ICONST_M1", SimpleInsnBlock.ICONST_M1);
+        insnParsersModifable.put("ICONST_0", SimpleInsnBlock.ICONST_0);
+        insnParsersModifable.put("ICONST_1", SimpleInsnBlock.ICONST_1);
+        insnParsersModifable.put("ICONST_2", SimpleInsnBlock.ICONST_2);
+        insnParsersModifable.put("ICONST_3", SimpleInsnBlock.ICONST_3);
+        insnParsersModifable.put("ICONST_4", SimpleInsnBlock.ICONST_4);
+        insnParsersModifable.put("ICONST_5", SimpleInsnBlock.ICONST_5);
+        insnParsersModifable.put("LCONST_0", SimpleInsnBlock.LCONST_0);
+        insnParsersModifable.put("LCONST_1", SimpleInsnBlock.LCONST_1);
+        insnParsersModifable.put("FCONST_0", SimpleInsnBlock.FCONST_0);
+        insnParsersModifable.put("FCONST_1", SimpleInsnBlock.FCONST_1);
+        insnParsersModifable.put("FCONST_2", SimpleInsnBlock.FCONST_2);
+        insnParsersModifable.put("DCONST_0", SimpleInsnBlock.DCONST_0);
+        insnParsersModifable.put("DCONST_1", SimpleInsnBlock.DCONST_1);
         insnParsersModifable.put("IALOAD", SimpleInsnBlock.IALOAD);
         insnParsersModifable.put("LALOAD", SimpleInsnBlock.LALOAD);
         insnParsersModifable.put("FALOAD", SimpleInsnBlock.FALOAD);
@@ -194,6 +273,15 @@ public class SoftmapContext {
         INSTRUCTION_PARSERS = Collections.unmodifiableMap(insnParsersModifable);
     }
 
+    @Contract(pure = true)
+    private static int countRows(@NotNull String text, int start, int end) {
+        int rows = 0;
+        for (int i = text.indexOf('\n', start); i != -1 && i < end; i = text.indexOf('\n', i + 1)) {
+            rows++;
+        }
+        return rows;
+    }
+
     @Nullable
     private static InsnBlock evaluateMethodBodyLine(@NotNull List<@NotNull SoftmapParseError> errors, @NotNull List<@NotNull Token> line) {
         List<@NotNull StringToken> dataTokens = new ArrayList<>();
@@ -214,7 +302,10 @@ public class SoftmapContext {
 
         String opcode = dataTokens.get(0).getText();
 
-        if (!SoftmapContext.INSTRUCTION_PARSERS.containsKey(opcode)) {
+        if (opcode.startsWith("*{")) {
+            // Quantified wildcard, see TokenizeReader#consumeString
+            opcode = "*";
+        } else if (!SoftmapContext.INSTRUCTION_PARSERS.containsKey(opcode)) {
             opcode = opcode.toUpperCase(Locale.ROOT);
             if (!SoftmapContext.INSTRUCTION_PARSERS.containsKey(opcode)) {
                 errors.add(new SoftmapParseError(dataTokens.get(0), "Cannot decode instruction line: Unknown/Unsupported opcode"));
@@ -230,14 +321,170 @@ public class SoftmapContext {
         return insn;
     }
 
+    /**
+     * Copies an expression, replacing each of its tokens with the token returned by a function.
+     * The instruction blocks are evaluated again so that they refer to the replaced tokens. Parse errors
+     * encountered while doing so are discarded, as they were already reported when the expression was parsed.
+     *
+     * @param expr The expression to copy.
+     * @param copier The function returning the replacement of a token.
+     * @param retainTokens Whether the copy should retain the tokens of the expression body, which are only required for reparsing.
+     * @return The copied expression.
+     */
+    @NotNull
+    @Contract(pure = true, value = "_, _, _ -> new")
+    private static MethodExpression copyExpression(@NotNull MethodExpression expr, @NotNull UnaryOperator<@NotNull Token> copier, boolean retainTokens) {
+        StringToken methodLoc = expr.getMethodLocation();
+        StringToken ownerName = null;
+        StringToken methodName = null;
+        StringToken methodDesc = null;
+        if (methodLoc != null) {
+            StringToken copiedLoc = (StringToken) copier.apply(methodLoc);
+            ownerName = SoftmapContext.copySubtoken(methodLoc, copiedLoc, expr.getOwnerName());
+            methodName = SoftmapContext.copySubtoken(methodLoc, copiedLoc, expr.getMethodName());
+            methodDesc = SoftmapContext.copySubtoken(methodLoc, copiedLoc, expr.getMethodDesc());
+            methodLoc = copiedLoc;
+        }
+
+        BlockToken startOfBody = expr.getStartOfBody();
+        if (startOfBody != null) {
+            startOfBody = (BlockToken) copier.apply(startOfBody);
+        }
+        BlockToken endOfBody = expr.getEndOfBody();
+        if (endOfBody != null) {
+            endOfBody = (BlockToken) copier.apply(endOfBody);
+        }
+
+        List<@NotNull Token> bodyTokens = new ArrayList<>(expr.getTokens().size());
+        for (Token token : expr.getTokens()) {
+            bodyTokens.add(copier.apply(token));
+        }
+        List<@NotNull ? extends InsnBlock> insns = SoftmapContext.parseMethodBody(bodyTokens, new ArrayList<>());
+
+        List<@NotNull Token> tokens = retainTokens ? Collections.unmodifiableList(bodyTokens) : Collections.emptyList();
+        return new MethodExpression((StringToken) copier.apply(expr.getDeclaringLocation()), methodLoc, ownerName, methodName, methodDesc, startOfBody, endOfBody, tokens, Collections.unmodifiableList(insns));
+    }
+
+    @Nullable
+    @Contract(pure = true, value = "_, _, null -> null; _, _, !null -> new")
+    private static StringToken copySubtoken(@NotNull StringToken token, @NotNull StringToken copiedToken, @Nullable StringToken subtoken) {
+        if (subtoken == null) {
+            return null;
+        }
+        int from = subtoken.getStart() - token.getStart();
+        return copiedToken.subtoken(from, from + subtoken.getContentLength());
+    }
+
+    /**
+     * Obtains a copy of a token that is moved by a given amount of codepoints and rows and which reads its text from another source string.
+     * The column of the token remains unchanged.
+     *
+     * @param token The token to move.
+     * @param codepointDelta The amount of codepoints to move the token by.
+     * @param rowDelta The amount of rows to move the token by.
+     * @param source The source string the moved token is read from.
+     * @return The moved token.
+     */
+    @NotNull
+    @Contract(pure = true, value = "_, _, _, _ -> new")
+    private static Token moveToken(@NotNull Token token, int codepointDelta, int rowDelta, @NotNull String source) {
+        if (token instanceof StringToken) {
+            return new StringToken(source, token.getStart() + codepointDelta, token.getEnd() + codepointDelta, token.getRow() + rowDelta, token.getColumn());
+        } else if (token instanceof BlockToken) {
+            return new BlockToken(token.getStart() + codepointDelta, token.getEnd() + codepointDelta, token.getRow() + rowDelta, token.getColumn(), ((BlockToken) token).isStartOfBlock());
+        } else if (token instanceof CommentToken) {
+            CommentToken comment = (CommentToken) token;
+            return new CommentToken(comment.getRow() + rowDelta, comment.getColumn(), comment.getCommentTextStart() + codepointDelta, comment.getCommentTextEnd() + codepointDelta, comment.isCStyleComment());
+        }
+        throw new IllegalStateException("Unknown token type: " + token.getClass().getName());
+    }
+
+    /**
+     * Applies the mappings requested by the header of an expression to a method, that is the mappings of the owner,
+     * name and descriptor of the method.
+     *
+     * @param expr The expression.
+     * @param node The class declaring the method.
+     * @param method The method.
+     * @param mapOwnerName Whether the owner should be mapped.
+     * @param mappedOwnerName The name the owner should be mapped to, if applicable.
+     * @param mapMethodName Whether the name of the method should be mapped.
+     * @param mappedMethodName The name the method should be mapped to, if applicable.
+     * @param mapMethodDesc Whether the descriptor of the method should be mapped.
+     * @param remapper The remapper to apply the mappings to.
+     * @return False if the method cannot be mapped as requested, in which case the mappings applied to the remapper must be discarded.
+     */
+    @Contract(pure = false, mutates = "param9")
+    private static boolean mapHeader(@NotNull MethodExpression expr, @NotNull ClassNode node, @NotNull MethodNode method, boolean mapOwnerName, @Nullable String mappedOwnerName,
+            boolean mapMethodName, @Nullable String mappedMethodName, boolean mapMethodDesc, @NotNull FramedRemapper remapper) {
+        if (mapOwnerName) {
+            String nameSrc = node.name;
+            String nameDst = remapper.getMappedClassOpt(nameSrc);
+            if (!nameSrc.equals(nameDst)) {
+                if (!Objects.requireNonNull(mappedOwnerName).equals(nameDst)) {
+                    return false;
+                }
+            } else {
+                String collidingName = remapper.getSourceClass(Objects.requireNonNull(mappedOwnerName));
+                if (collidingName != null && !collidingName.equals(nameSrc)) {
+                    // Another class is already mapped to the name
+                    return false;
+                }
+                remapper.mapClass(nameSrc, Objects.requireNonNull(mappedOwnerName));
+            }
+        }
+        if (mapMethodName) {
+            String nameSrc = method.name;
+            String nameDst = remapper.getMappedMethodOpt(node.name, nameSrc, method.desc);
+            if (!nameSrc.equals(nameDst)) {
+                if (!Objects.requireNonNull(mappedMethodName).equals(nameDst)) {
+                    return false;
+                }
+            } else {
+                if (remapper.getCollidingMethod(node.name, nameSrc, method.desc, Objects.requireNonNull(mappedMethodName)) != null) {
+                    return false;
+                }
+                remapper.mapMethod(node.name, nameSrc, method.desc, Objects.requireNonNull(mappedMethodName));
+            }
+        }
+        if (mapMethodDesc) {
+            // Using InvokeInsn's descriptor matching isn't too ideal, but writing very similar code
+            // pretty much twice to thrice is not what I have in mind, so reusing an implementation
+            // is better in the short term and is better for those that wish to maintain this software.
+            if (Objects.requireNonNull(expr.getMethodDescPattern()).mapDescriptor(method.desc, remapper) != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @NotNull
     @Contract(pure = true, value = "null, _, _, _, _ -> fail; !null, _, _, _, _ -> new")
     public static SoftmapContext parse(@NotNull String source, int start, int end, int rowStart, int columnStart) {
         List<Token> tokens = SoftmapContext.tokenize(source, start, end, rowStart, columnStart);
         List<@NotNull MethodExpression> methods = new ArrayList<>();
         List<@NotNull SoftmapParseError> parseErrors = new ArrayList<>();
+        List<@NotNull StringToken> versionDeclarations = new ArrayList<>();
 
-        int currentVersion = -1;
+        SoftmapContext.parseTopLevel(tokens, -1, methods, parseErrors, versionDeclarations);
+
+        int versionDeclarationOffset = versionDeclarations.isEmpty() ? -1 : versionDeclarations.get(0).getStart();
+        return new SoftmapContext(source, start, end, rowStart, columnStart, versionDeclarationOffset, Collections.unmodifiableList(methods), Collections.unmodifiableList(parseErrors));
+    }
+
+    /**
+     * Parse the top-level expressions ('softmap [...]' and 'method [...]') of a token stream.
+     *
+     * @param tokens The tokens to parse.
+     * @param currentVersion The format version in effect at the first token, or -1 if no version was declared yet.
+     * @param methods The list to which all parsed method expressions are added to.
+     * @param parseErrors The list to which all encountered parse errors are added to.
+     * @param versionDeclarations The list to which the 'softmap' tokens of all valid version declarations are added to.
+     * @return True if the last top-level expression is complete, false if it was cut off by the end of the token stream.
+     */
+    @Contract(pure = false, mutates = "param3,param4,param5")
+    private static boolean parseTopLevel(@NotNull List<@NotNull Token> tokens, int currentVersion, @NotNull List<@NotNull MethodExpression> methods, @NotNull List<@NotNull SoftmapParseError> parseErrors, @NotNull List<@NotNull StringToken> versionDeclarations) {
+        boolean complete = true;
 
         for (int readerIndex = 0; readerIndex < tokens.size(); readerIndex++) {
             Token token = tokens.get(readerIndex);
@@ -257,8 +504,11 @@ public class SoftmapContext {
                     useVersion = SoftmapContext.FALLBACK_VERSION;
                     parseErrors.add(new SoftmapParseError(stringToken, "Start of 'method' expression without declaring the format version/header. Expected 'softmap v" + SoftmapContext.FALLBACK_VERSION + "' at this position."));
                 }
+                int expressionCount = methods.size();
                 readerIndex += SoftmapContext.parseMethod(tokens, readerIndex, useVersion, methods, parseErrors);
+                complete = expressionCount != methods.size() && methods.get(expressionCount).getEndOfBody() != null;
             } else if (stringToken.contentMatches(true, "softmap")) {
+                complete = false;
                 StringToken next = null;
                 while (++readerIndex < tokens.size()) {
                     Token t = tokens.get(readerIndex);
@@ -290,16 +540,19 @@ public class SoftmapContext {
                     continue;
                 }
 
+                complete = true;
+
                 if (parsedVersion != 1) {
                     parseErrors.add(new SoftmapParseError(next.getStart(), next.getEnd(), next.getRow(), next.getColumn(), "Incorrect expression 'softmap <version>'; Unknown version. This parser only supports version 1."));
                     continue;
                 }
 
                 currentVersion = parsedVersion;
+                versionDeclarations.add(stringToken);
             }
         }
 
-        return new SoftmapContext(Collections.unmodifiableList(methods), Collections.unmodifiableList(parseErrors));
+        return complete;
     }
 
     @Contract(pure = false, mutates = "param4,param5")
@@ -312,9 +565,9 @@ public class SoftmapContext {
         }
         Token t = tokens.get(readerIndex);
         while (t instanceof CommentToken) {
-            if (readerIndex == tokens.size()) {
+            if (readerIndex + 1 == tokens.size()) {
                 errors.add(new SoftmapParseError(tokens.get(startIndex).getStart(), t.getEnd(), t.getRow(), t.getColumn(), "Unable to parse method expression: Premature end of token stream. Expected at least the following structure: 'method <class>.<method><descriptor> {}'"));
-                return readerIndex - startIndex - 1;
+                return readerIndex - startIndex;
             }
             t = tokens.get(++readerIndex);
         }
@@ -367,9 +620,13 @@ public class SoftmapContext {
             }
         }
 
+        if (readerIndex + 1 == tokens.size()) {
+            errors.add(new SoftmapParseError(t, "Unable to parse method expression: Premature end of token stream. Expected at least the following structure: 'method <class>.<method><descriptor> {}'"));
+            return readerIndex - startIndex;
+        }
         t = tokens.get(++readerIndex);
         while (t instanceof CommentToken) {
-            if (readerIndex == tokens.size()) {
+            if (readerIndex + 1 == tokens.size()) {
                 int startError;
                 if (methodLoc != null) {
                     startError = methodLoc.getEnd() + 1;
@@ -377,7 +634,7 @@ public class SoftmapContext {
                     startError = tokens.get(startIndex).getStart();
                 }
                 errors.add(new SoftmapParseError(startError, t.getEnd(), t.getRow(), t.getColumn(), "Unable to parse method expression: Premature end of token stream. Expected at least the following structure: 'method <class>.<method><descriptor> {}'"));
-                return readerIndex - startIndex - 1;
+                return readerIndex - startIndex;
             }
             t = tokens.get(++readerIndex);
         }
@@ -501,6 +758,37 @@ public class SoftmapContext {
         return expressions;
     }
 
+    private final int columnStart;
+
+    /**
+     * The maximum distance of methods reported as approximate matches, -1 if approximate matching is disabled.
+     * See {@link #setApproximateMatching(int, int)}.
+     */
+    private volatile int approximateMatchingDistance = -1;
+
+    /**
+     * The margin by which the closest approximate match must be closer than the runner-up in order to be applied,
+     * 0 if approximate matches are never applied. See {@link #setApproximateMatching(int, int)}.
+     */
+    private volatile int approximateMatchingMargin;
+
+    /**
+     * Whether instructions are matched using compiled matchers, see {@link #setCompilingMatchers(boolean)}.
+     */
+    private volatile boolean compilingMatchers;
+
+    /**
+     * Whether expressions are applied in the order of their estimated cost, see {@link #setPlanningExpressions(boolean)}.
+     */
+    private volatile boolean planningExpressions;
+
+    /**
+     * The amount of similar methods suggested for expressions that match no method, see {@link #setSuggestionCount(int)}.
+     */
+    private volatile int suggestionCount;
+
+    private final int end;
+
     @NotNull
     @Unmodifiable
     private final List<@NotNull MethodExpression> methodExpressions;
@@ -509,11 +797,66 @@ public class SoftmapContext {
     @Unmodifiable
     private final List<@NotNull SoftmapParseError> parseErrors;
 
+    private final int rowStart;
+
+    /**
+     * The source string this context was parsed from, or null if the context was not created through parsing
+     * or if the source string was {@link #release() released}.
+     * Only required for {@link #reparse(int, int, String) incremental reparsing}.
+     */
+    @Nullable
+    private final String source;
+
+    private final int start;
+
+    /**
+     * The codepoint at which the first valid 'softmap [...]' version declaration begins, -1 if there is none.
+     */
+    private final int versionDeclarationOffset;
+
     protected SoftmapContext(@NotNull @Unmodifiable List<@NotNull MethodExpression> expressions, @NotNull @Unmodifiable List<@NotNull SoftmapParseError> parseErrors) {
+        this(null, 0, 0, 1, 1, -1, expressions, parseErrors);
+    }
+
+    private SoftmapContext(@Nullable String source, int start, int end, int rowStart, int columnStart, int versionDeclarationOffset, @NotNull @Unmodifiable List<@NotNull MethodExpression> expressions, @NotNull @Unmodifiable List<@NotNull SoftmapParseError> parseErrors) {
+        this.source = source;
+        this.start = start;
+        this.end = end;
+        this.rowStart = rowStart;
+        this.columnStart = columnStart;
+        this.versionDeclarationOffset = versionDeclarationOffset;
         this.methodExpressions = expressions;
         this.parseErrors = parseErrors;
     }
 
+    /**
+     * Obtains the maximum distance of methods reported as approximate matches, see {@link #setApproximateMatching(int, int)}.
+     *
+     * @return The maximum distance, -1 if approximate matching is disabled.
+     */
+    @Contract(pure = true)
+    public int getApproximateMatchingDistance() {
+        return this.approximateMatchingDistance;
+    }
+
+    /**
+     * Obtains the margin by which the closest approximate match must be closer than the runner-up in order to be applied,
+     * see {@link #setApproximateMatching(int, int)}.
+     *
+     * @return The margin, 0 if approximate matches are never applied.
+     */
+    @Contract(pure = true)
+    public int getApproximateMatchingMargin() {
+        return this.approximateMatchingMargin;
+    }
+
+    @NotNull
+    @Unmodifiable
+    @Contract(pure = true)
+    List<@NotNull MethodExpression> getMethodExpressions() {
+        return this.methodExpressions;
+    }
+
     @NotNull
     @Unmodifiable
     @Contract(pure = true)
@@ -521,21 +864,447 @@ public class SoftmapContext {
         return this.parseErrors;
     }
 
+    /**
+     * Obtains the amount of similar methods suggested for expressions that match no method, see {@link #setSuggestionCount(int)}.
+     *
+     * @return The maximum amount of suggested methods, 0 if no methods are suggested.
+     */
+    @Contract(pure = true)
+    public int getSuggestionCount() {
+        return this.suggestionCount;
+    }
+
+    /**
+     * Checks whether the instructions of methods are matched using classes generated for each method expression,
+     * see {@link #setCompilingMatchers(boolean)}.
+     *
+     * @return True if matchers are compiled, false if the instruction blocks are interpreted.
+     */
+    @Contract(pure = true)
+    public boolean isCompilingMatchers() {
+        return this.compilingMatchers;
+    }
+
+    /**
+     * Checks whether expressions are applied in the order of their estimated cost, see {@link #setPlanningExpressions(boolean)}.
+     *
+     * @return True if the order of expressions is planned, false if expressions are applied in the order of declaration.
+     */
+    @Contract(pure = true)
+    public boolean isPlanningExpressions() {
+        return this.planningExpressions;
+    }
+
+    /**
+     * Sets whether methods should be matched approximately if no method matches an expression exactly, which usually is
+     * the case if the bytecode of the method changed slightly between versions. Approximate matching scores the methods
+     * that pass the owner, name and descriptor of the expression by the edit distance between the opcodes of their
+     * instructions and the instruction blocks of the expression, considering neither operands nor the order of the runs
+     * of blocks between wildcards. The closest methods along with their distance are appended to the description of the
+     * error reported for the expression.
+     *
+     * <p>If the closest method is closer than the runner-up by at least the given margin, the mappings of the owner, name and
+     * descriptor requested by the expression are applied to the closest method, as if it was matched. Mappings requested by
+     * the instruction blocks are not applied. The error is reported regardless, as the expression should be updated nonetheless.
+     *
+     * <p>Contexts obtained through {@link #release()} or {@link #reparse(int, int, String)} do not inherit this setting.
+     * By default, approximate matching is disabled.
+     *
+     * @param maximumDistance The maximum distance of reported methods, -1 to disable approximate matching.
+     * @param applicationMargin The margin by which the closest method must be closer than the runner-up (if any) in order for the mappings
+     * to be applied to it, 0 to never apply approximate matches.
+     */
+    @Contract(pure = false)
+    public void setApproximateMatching(int maximumDistance, int applicationMargin) {
+        if (maximumDistance < -1) {
+            throw new IllegalArgumentException("maximumDistance may not be below -1: " + maximumDistance);
+        } else if (applicationMargin < 0) {
+            throw new IllegalArgumentException("applicationMargin may not be negative: " + applicationMargin);
+        }
+        this.approximateMatchingDistance = maximumDistance;
+        this.approximateMatchingMargin = applicationMargin;
+    }
+
+    /**
+     * Sets whether the instructions of methods should be matched using a class generated for each method expression
+     * instead of interpreting the instruction blocks of the expression one by one. The generated classes have the block sequence
+     * unrolled, with opcode checks and comparisons against literal operands inlined. They are generated the first time an
+     * expression is applied and are reused by all subsequent {@link #tryApply(List) applications} of the expression, including
+     * applications through contexts {@link #reparse(int, int, String) reparsed} from this context that retain the expression.
+     *
+     * <p>Compiled matchers behave exactly like the interpreter. Matchers are only compiled on runtimes supporting
+     * the definition of hidden classes (or at least the definition of classes through a {@link java.lang.invoke.MethodHandles.Lookup}),
+     * otherwise the interpreter is used regardless of this setting. The same applies to expressions containing instruction blocks
+     * that cannot be compiled. Contexts obtained through {@link #release()} or {@link #reparse(int, int, String)} do not inherit this setting.
+     *
+     * <p>Compiling matchers is only worth it if the expressions are applied many times, for example
+     * to many versions of a jar. By default, matchers are not compiled.
+     *
+     * @param compilingMatchers True to compile matchers, false to interpret instruction blocks.
+     */
+    @Contract(pure = false)
+    public void setCompilingMatchers(boolean compilingMatchers) {
+        this.compilingMatchers = compilingMatchers;
+    }
+
+    /**
+     * Sets whether expressions should be applied in the order of their estimated cost instead of the order they are declared in.
+     * The cost of an expression is estimated from the amount of methods that pass the lookups of the explicitly named owner,
+     * name and descriptor of the expression as well as the opcode scan. Expressions requesting their owner to be mapped are
+     * re-estimated as classes get mapped, so that an expression naming a class explicitly can make later expressions
+     * requesting the same class cheap to apply.
+     *
+     * <p>As the mappings applied by an expression influence the expressions applied after it, the order of expressions may
+     * change which methods are matched should the expressions be ambiguous. Application errors are reported in the order
+     * the expressions are applied in. The estimated and actual cost of each expression is reported by
+     * {@link ApplicationResult#getExplanation()}. Contexts obtained through {@link #release()} or {@link #reparse(int, int, String)}
+     * do not inherit this setting. By default, expressions are applied in the order of declaration.
+     *
+     * @param planningExpressions True to apply expressions in the order of their estimated cost, false to apply them in the order of declaration.
+     */
+    @Contract(pure = false)
+    public void setPlanningExpressions(boolean planningExpressions) {
+        this.planningExpressions = planningExpressions;
+    }
+
+    /**
+     * Sets the maximum amount of similar methods suggested for expressions that match no method. Suggestions are attached
+     * to the error reported for the expression, see {@link SoftmapApplicationError#getSuggestions()}. Methods are suggested
+     * regardless of their owner, name and descriptor, as the similarity is based on the opcodes of their instructions
+     * and the members they reference. As such, suggestions are meant to reveal where a method went after it was changed
+     * or moved between versions.
+     *
+     * <p>The similarity index is built the first time a suggestion is made in an application, which requires walking over all
+     * instructions of all methods once. Lookups only consider the methods that are likely to be similar to the expression as per
+     * locality-sensitive hashing, so similar methods may be missed and the suggestions are not necessarily the most similar methods.
+     *
+     * <p>Contexts obtained through {@link #release()} or {@link #reparse(int, int, String)} do not inherit this setting.
+     * By default, no methods are suggested.
+     *
+     * @param suggestionCount The maximum amount of suggested methods per expression, 0 to not suggest methods.
+     */
+    @Contract(pure = false)
+    public void setSuggestionCount(int suggestionCount) {
+        if (suggestionCount < 0) {
+            throw new IllegalArgumentException("suggestionCount may not be negative: " + suggestionCount);
+        }
+        this.suggestionCount = suggestionCount;
+    }
+
+    /**
+     * Obtains the matchers of all expressions ahead of time, so that matchers are compiled (if {@link #setCompilingMatchers(boolean) enabled})
+     * before the expressions are applied concurrently instead of by whichever application first needs them.
+     */
+    @Contract(pure = false)
+    void prepareMatchers() {
+        boolean compileMatchers = this.compilingMatchers;
+        for (MethodExpression expr : this.methodExpressions) {
+            expr.getMatcher(compileMatchers);
+        }
+    }
+
+    /**
+     * Obtains a context that only retains the data required to {@link #tryApply(List) apply} the method expressions
+     * and to report errors. More specifically, the tokens of expression bodies are dropped and all remaining tokens
+     * only keep a (deduplicated) copy of their own text instead of the entire source string.
+     * This makes the returned context suitable for being kept around for a long time, but means that it can no longer be
+     * {@link #reparse(int, int, String) reparsed}.
+     *
+     * <p>The locations of tokens, application errors and parse errors remain unchanged, so diagnostics
+     * may still be correlated with the source file on demand. This context is left untouched and
+     * shares no tokens with the returned context.
+     *
+     * @return A context with a reduced memory footprint.
+     */
+    @NotNull
+    @Contract(pure = true, value = "-> new")
+    public SoftmapContext release() {
+        Map<@NotNull String, @NotNull String> textPool = new HashMap<>();
+        List<@NotNull MethodExpression> expressions = new ArrayList<>(this.methodExpressions.size());
+        for (MethodExpression expr : this.methodExpressions) {
+            expressions.add(SoftmapContext.copyExpression(expr, (token) -> token instanceof StringToken ? ((StringToken) token).detach(textPool) : token, false));
+        }
+        return new SoftmapContext(null, this.start, this.end, this.rowStart, this.columnStart, this.versionDeclarationOffset, Collections.unmodifiableList(expressions), this.parseErrors);
+    }
+
+    /**
+     * Incrementally parse the source of this context after a single text edit has been applied to it.
+     * Only the top-level expressions touched by the edit are parsed again, all other
+     * {@link MethodExpression method expressions} are reused. Expressions before the edit are the same instances
+     * in both the returned context and this context, and as such keep reading their text from the source of this context.
+     * Expressions and parse errors following the edit are copied and moved accordingly, without tokenizing them again.
+     *
+     * <p>Tokens are immutable, so this context as well as all tokens and errors obtained from it remain valid
+     * after this method returns.
+     *
+     * <p>The result of this method is equivalent to calling {@link #parse(String, int, int, int, int)} on the edited
+     * source, which is what this method falls back to whenever the edit cannot be isolated (e.g. because
+     * the version declaration was edited or because an expression is not terminated).
+     *
+     * @param editOffset The codepoint at which the edit starts (in the coordinates of the unedited source).
+     * @param removedLength The amount of codepoints removed at the start of the edit.
+     * @param insertedText The text inserted at the start of the edit, after removing the removed codepoints.
+     * @return The context of the edited source.
+     */
+    @NotNull
+    @Contract(pure = false, value = "_, _, null -> fail; _, _, !null -> new")
+    public SoftmapContext reparse(int editOffset, int removedLength, @NotNull String insertedText) {
+        String source = this.source;
+        if (source == null) {
+            throw new IllegalStateException("This context does not retain the text it was parsed from.");
+        }
+        if (removedLength < 0 || editOffset < this.start || editOffset + removedLength > this.end) {
+            throw new IndexOutOfBoundsException("Edit out of the parsed range: " + editOffset + " + " + removedLength + " is not within [" + this.start + ", " + this.end + "]");
+        }
+
+        int editEnd = editOffset + removedLength;
+        int codepointDelta = insertedText.length() - removedLength;
+        int rowDelta = SoftmapContext.countRows(insertedText, 0, insertedText.length()) - SoftmapContext.countRows(source, editOffset, editEnd);
+        String editedSource = source.substring(0, editOffset) + insertedText + source.substring(editEnd);
+        int editedEnd = this.end + codepointDelta;
+
+        // Expressions in [0, prefixEnd) end before the edit, expressions in [suffixStart, size) begin on a row after the edit.
+        int prefixEnd = 0;
+        int suffixStart = this.methodExpressions.size();
+        for (MethodExpression expr : this.methodExpressions) {
+            BlockToken endOfBody = expr.getEndOfBody();
+            if (endOfBody == null) {
+                return SoftmapContext.parse(editedSource, this.start, editedEnd, this.rowStart, this.columnStart);
+            } else if (endOfBody.getEnd() <= editOffset) {
+                prefixEnd++;
+            }
+        }
+        while (suffixStart != prefixEnd) {
+            int exprStart = this.methodExpressions.get(suffixStart - 1).getDeclaringLocation().getStart();
+            if (exprStart <= editEnd || source.lastIndexOf('\n', exprStart - 1) < editEnd) {
+                break;
+            }
+            suffixStart--;
+        }
+
+        int gapStart = this.start;
+        int gapRow = this.rowStart;
+        int gapColumn = this.columnStart;
+        if (prefixEnd != 0) {
+            BlockToken endOfBody = Objects.requireNonNull(this.methodExpressions.get(prefixEnd - 1).getEndOfBody());
+            gapStart = endOfBody.getEnd();
+            gapRow = endOfBody.getRow();
+            gapColumn = endOfBody.getColumn() + 1;
+        }
+        int gapEnd = this.end;
+        if (suffixStart != this.methodExpressions.size()) {
+            gapEnd = this.methodExpressions.get(suffixStart).getDeclaringLocation().getStart();
+        }
+
+        if (this.versionDeclarationOffset >= gapStart && this.versionDeclarationOffset < gapEnd) {
+            return SoftmapContext.parse(editedSource, this.start, editedEnd, this.rowStart, this.columnStart);
+        }
+        for (Token token : SoftmapContext.tokenize(source, gapStart, gapEnd, gapRow, gapColumn)) {
+            if (token instanceof StringToken && ((StringToken) token).contentMatches(true, "softmap")) {
+                // Invalid version declarations might become valid (or the other way around)
+                return SoftmapContext.parse(editedSource, this.start, editedEnd, this.rowStart, this.columnStart);
+            }
+        }
+
+        List<@NotNull Token> gapTokens = SoftmapContext.tokenize(editedSource, gapStart, gapEnd + codepointDelta, gapRow, gapColumn);
+        for (Token token : gapTokens) {
+            if (token.getEnd() > gapEnd + codepointDelta || (token instanceof StringToken && ((StringToken) token).contentMatches(true, "softmap"))) {
+                // Either a comment that is not closed within the gap or a newly declared version
+                return SoftmapContext.parse(editedSource, this.start, editedEnd, this.rowStart, this.columnStart);
+            }
+        }
+
+        List<@NotNull MethodExpression> methods = new ArrayList<>(this.methodExpressions.subList(0, prefixEnd));
+        List<@NotNull SoftmapParseError> parseErrors = new ArrayList<>();
+        for (SoftmapParseError error : this.parseErrors) {
+            if (error.startCodepoint < gapStart) {
+                parseErrors.add(error);
+            }
+        }
+
+        int gapVersion = (this.versionDeclarationOffset != -1 && this.versionDeclarationOffset < gapStart) ? 1 : -1;
+        if (!SoftmapContext.parseTopLevel(gapTokens, gapVersion, methods, parseErrors, new ArrayList<>())) {
+            // The gap ends within an expression, which would swallow the following expressions
+            return SoftmapContext.parse(editedSource, this.start, editedEnd, this.rowStart, this.columnStart);
+        }
+
+        for (SoftmapParseError error : this.parseErrors) {
+            if (error.startCodepoint >= gapEnd) {
+                parseErrors.add(error.shift(codepointDelta, rowDelta));
+            }
+        }
+
+        List<@NotNull MethodExpression> suffix = this.methodExpressions.subList(suffixStart, this.methodExpressions.size());
+        if (codepointDelta == 0 && rowDelta == 0) {
+            methods.addAll(suffix);
+        } else {
+            for (MethodExpression expr : suffix) {
+                methods.add(SoftmapContext.copyExpression(expr, (token) -> SoftmapContext.moveToken(token, codepointDelta, rowDelta, editedSource), true));
+            }
+        }
+
+        int versionDeclarationOffset = this.versionDeclarationOffset;
+        if (versionDeclarationOffset >= gapEnd) {
+            versionDeclarationOffset += codepointDelta;
+        }
+
+        return new SoftmapContext(editedSource, this.start, editedEnd, this.rowStart, this.columnStart, versionDeclarationOffset, Collections.unmodifiableList(methods), Collections.unmodifiableList(parseErrors));
+    }
+
     @NotNull
     @Contract(pure = true)
     public ApplicationResult tryApply(@NotNull List<@NotNull ClassNode> obfuscatedNodes) {
-        FramedRemapper remapper = new SimpleFramedRemapper(SimpleFramedRemapper.realmsOf(obfuscatedNodes));
-        remapper.pushFrame(); // Create the initial frame (this is not done by the remapper on creation as discarding the initial frame allows to )
+        return this.tryApply(obfuscatedNodes, null);
+    }
+
+    /**
+     * Applies all method expressions on a list of classes, starting from existing mappings.
+     *
+     * @param obfuscatedNodes The classes to apply the expressions on.
+     * @param seed The mappings to write into the base frame before applying any expression, or null to start without mappings.
+     * The seeded mappings are part of the generated mappings.
+     * @return The generated mappings and the errors that occurred while applying the expressions.
+     */
+    @NotNull
+    @Contract(pure = true)
+    public ApplicationResult tryApply(@NotNull List<@NotNull ClassNode> obfuscatedNodes, @Nullable MappingSeed seed) {
+        return this.tryApply(obfuscatedNodes, seed, null);
+    }
+
+    /**
+     * Applies all method expressions on a list of classes, starting from existing mappings and taking library
+     * supertypes of the classes into account when computing method realms.
+     *
+     * @param obfuscatedNodes The classes to apply the expressions on.
+     * @param seed The mappings to write into the base frame before applying any expression, or null to start without mappings.
+     * The seeded mappings are part of the generated mappings.
+     * @param libraries The headers of library classes, or null to compute method realms from the given classes only.
+     * See {@link SimpleFramedRemapper#realmsOf(List, ClassHeaderCache)}.
+     * @return The generated mappings and the errors that occurred while applying the expressions.
+     */
+    @NotNull
+    @Contract(pure = true)
+    public ApplicationResult tryApply(@NotNull List<@NotNull ClassNode> obfuscatedNodes, @Nullable MappingSeed seed, @Nullable ClassHeaderCache libraries) {
+        return this.tryApply(obfuscatedNodes, null, seed, libraries, null, null);
+    }
+
+    /**
+     * Applies all method expressions on a list of classes, first trying the methods whose bodies are identical
+     * to the bodies of the methods matched when applying the expressions to a previous version of the classes.
+     *
+     * <p>The carried over methods are matched against the expressions like any other method, so a method is only matched
+     * if it still matches the expression. Only if it does not, the expression is applied to all methods as usual.
+     * However, an expression matching a carried over method is not checked for further matches. See {@link MatchCarryover}.
+     *
+     * @param obfuscatedNodes The classes to apply the expressions on.
+     * @param seed The mappings to write into the base frame before applying any expression, or null to start without mappings.
+     * The seeded mappings are part of the generated mappings.
+     * @param libraries The headers of library classes, or null to compute method realms from the given classes only.
+     * @param carryover The methods matched in the previous version, or null to apply the expressions without carrying over any matches.
+     * @return The generated mappings and the errors that occurred while applying the expressions.
+     */
+    @NotNull
+    @Contract(pure = true)
+    public ApplicationResult tryApply(@NotNull List<@NotNull ClassNode> obfuscatedNodes, @Nullable MappingSeed seed, @Nullable ClassHeaderCache libraries, @Nullable MatchCarryover carryover) {
+        return this.tryApply(obfuscatedNodes, null, seed, libraries, carryover, null);
+    }
 
-        Map<String, ClassNode> nodeLookup = new HashMap<>();
-        for (ClassNode node : obfuscatedNodes) {
-            nodeLookup.put(node.name, node);
+    /**
+     * Applies all method expressions on the classes of a {@link ClassStore}, only keeping the method bodies
+     * of as many classes in memory as the given cache allows.
+     *
+     * <p>Only the headers of all classes are kept in memory for the whole application. The cache should decode
+     * classes without {@link org.objectweb.asm.ClassReader#SKIP_CODE skipping code} and should not
+     * {@link org.objectweb.asm.ClassReader#EXPAND_FRAMES expand frames}, as frames are part of the instructions matched
+     * by the expressions. Should the cache be smaller than the classes, method bodies are decoded multiple times
+     * while the indices are built and while the expressions are applied.
+     *
+     * @param classes The cache of the classes to apply the expressions on.
+     * @param seed The mappings to write into the base frame before applying any expression, or null to start without mappings.
+     * The seeded mappings are part of the generated mappings.
+     * @param libraries The headers of library classes, or null to compute method realms from the given classes only.
+     * @return The generated mappings and the errors that occurred while applying the expressions.
+     */
+    @NotNull
+    @Contract(pure = false)
+    public ApplicationResult tryApply(@NotNull ClassNodeCache classes, @Nullable MappingSeed seed, @Nullable ClassHeaderCache libraries) {
+        ClassStore store = classes.getStore();
+        List<@NotNull ClassNode> headers = new ArrayList<>(store.getClassCount());
+        for (int i = 0; i < store.getClassCount(); i++) {
+            headers.add(store.readHeader(i));
         }
+        return this.tryApply(headers, classes, seed, libraries, null, null);
+    }
+
+    /**
+     * Applies all method expressions on the classes of an {@link IndexedJar}, reusing the instructions
+     * encoded when the jar was indexed instead of encoding the instructions of all methods again.
+     *
+     * @param jar The indexed classes to apply the expressions on.
+     * @param seed The mappings to write into the base frame before applying any expression, or null to start without mappings.
+     * The seeded mappings are part of the generated mappings.
+     * @param libraries The headers of library classes, or null to compute method realms from the given classes only.
+     * @return The generated mappings and the errors that occurred while applying the expressions.
+     */
+    @NotNull
+    @Contract(pure = false)
+    public ApplicationResult tryApply(@NotNull IndexedJar jar, @Nullable MappingSeed seed, @Nullable ClassHeaderCache libraries) {
+        return this.tryApply(jar.getHeaders(), jar.getClasses(), seed, libraries, null, jar.getInstructions());
+    }
+
+    /**
+     * Applies all method expressions on the headers of classes, where the method bodies are obtained from a cache.
+     *
+     * @param obfuscatedNodes The classes to apply the expressions on, which may lack method bodies if a cache is present.
+     * @param bodies The cache holding the complete classes at the same indices as the list of classes, null if the classes are complete.
+     * @param seed The mappings to write into the base frame before applying any expression, or null to start without mappings.
+     * @param libraries The headers of library classes, or null to compute method realms from the given classes only.
+     * @param carryover The methods matched in the previous version, or null to apply the expressions without carrying over any matches.
+     * @param instructions The instructions encoded ahead of time for the same classes, or null to encode them during the application.
+     * @return The generated mappings and the errors that occurred while applying the expressions.
+     */
+    @NotNull
+    @Contract(pure = false)
+    ApplicationResult tryApply(@NotNull List<@NotNull ClassNode> obfuscatedNodes, @Nullable ClassNodeCache bodies, @Nullable MappingSeed seed, @Nullable ClassHeaderCache libraries,
+            @Nullable MatchCarryover carryover, @Nullable InstructionStore instructions) {
+        SimpleFramedRemapper remapper = new SimpleFramedRemapper(SimpleFramedRemapper.realmsOf(obfuscatedNodes, libraries));
+        remapper.pushFrame(); // Create the initial frame (this is not done by the remapper on creation as discarding the initial frame allows to )
+        if (seed != null) {
+            seed.apply(remapper);
+        }
+        // Methods are evaluated in deferred frames, so that the mappings are only written to the remapper once a method matches
+        FramedRemapper matchRemapper = new DeferredBindingRemapper(remapper);
+
+        MethodTable methodTable = new MethodTable(obfuscatedNodes, bodies, instructions);
+        // Candidate methods only depend on the opcodes of the instructions, so they can be computed ahead of time
+        MultiPatternMatcher.Candidates candidateOrdinals = new MultiPatternMatcher(this.methodExpressions).scan(methodTable);
+        HeaderIndex headerIndex = new HeaderIndex(methodTable);
+        MemberIndex memberIndex = new MemberIndex(methodTable);
+        ConstantIndex constantIndex = new ConstantIndex(methodTable);
+        OpcodeIndex opcodeIndex = new OpcodeIndex(methodTable);
+        AnchorMatcher anchorMatcher = new AnchorMatcher(methodTable, memberIndex, constantIndex);
+        ClassFingerprintIndex fingerprintIndex = new ClassFingerprintIndex(methodTable);
+
+        ExpressionPlanner planner = new ExpressionPlanner(this.methodExpressions, methodTable, headerIndex, candidateOrdinals, this.planningExpressions);
 
         List<@NotNull SoftmapApplicationError> applicationErrors = new ArrayList<>();
+        BlockMemo blockMemo = new BlockMemo(this.methodExpressions);
+        ExpressionMatcher.Progress progress = new ExpressionMatcher.Progress();
+        boolean compileMatchers = this.compilingMatchers;
+        int approximateMatchingMargin = this.approximateMatchingMargin;
+        int approximateMatchingDistance = this.approximateMatchingDistance;
+        ApproximateMatcher approximateMatcher = approximateMatchingDistance == -1 ? null : new ApproximateMatcher(methodTable, approximateMatchingDistance);
+        int suggestionCount = this.suggestionCount;
+        SimilarityIndex similarityIndex = new SimilarityIndex(methodTable);
+        BodyHashIndex bodyHashIndex = new BodyHashIndex(methodTable);
+        MethodLoc[] matchedMethods = new MethodLoc[this.methodExpressions.size()];
 
         exprLoop:
-        for (MethodExpression expr : this.methodExpressions) {
+        for (int step = 0; step < this.methodExpressions.size(); step++) {
+            int exprIndex = planner.next(remapper);
+            MethodExpression expr = this.methodExpressions.get(exprIndex);
+            ExpressionMatcher matcher = expr.getMatcher(compileMatchers);
+            int[] blockIds = blockMemo.getBlockIds(exprIndex);
             boolean mapOwnerName = false;
             String mappedOwnerName = null;
             StringToken ownerName = expr.getOwnerName();
@@ -570,14 +1339,16 @@ public class SoftmapContext {
                 mappedMethodDesc = methodDesc.getText();
             }
 
-            Iterable<ClassNode> candidateNodes = obfuscatedNodes;
+            int ordinalStart = 0;
+            int ordinalEnd = methodTable.getMethodCount();
             if (!mapOwnerName && mappedOwnerName != null) {
-                ClassNode foundNode = nodeLookup.get(mappedOwnerName);
-                if (foundNode == null) {
+                int classIndex = methodTable.getClassIndex(mappedOwnerName);
+                if (classIndex == -1) {
                     applicationErrors.add(new SoftmapApplicationError(Objects.requireNonNull(ownerName), "No class exists with this name"));
                     continue;
                 }
-                candidateNodes = Collections.singleton(foundNode);
+                ordinalStart = methodTable.getFirstOrdinal(classIndex);
+                ordinalEnd = methodTable.getFirstOrdinal(classIndex + 1);
             }
 
             RemapperFrame completeFrameFrame = null;
@@ -586,110 +1357,98 @@ public class SoftmapContext {
             MatchResult furthestError = null;
             boolean furthestExhaustedInstructions = false;
             List<MethodLoc> visitedMethods = new ArrayList<>();
+            ApproximateMatcher.Ranking ranking = approximateMatcher == null ? null : approximateMatcher.newRanking(expr);
+
+            // Methods which do not match the header of the expression are skipped without further effect.
+            // The index lookups of the name and descriptor merely skip them early.
+            int[] headerCandidates = null;
+            if (!mapMethodName && mappedMethodName != null) {
+                headerCandidates = headerIndex.getMethodsByName(mappedMethodName);
+            }
+            if (mapMethodDesc) {
+                headerCandidates = MethodTable.intersect(headerCandidates, headerIndex.getMethodsByDescriptorShape(Objects.requireNonNull(expr.getMethodDescPattern())));
+            } else if (mappedMethodDesc != null) {
+                headerCandidates = MethodTable.intersect(headerCandidates, headerIndex.getMethodsByDescriptor(mappedMethodDesc));
+            }
+            if (mapOwnerName) {
+                // The owner can be any class declaring a method with the right descriptor that is not mapped to another name yet
+                ClassFingerprintIndex.Query ownerQuery = new ClassFingerprintIndex.Query();
+                if (!mapMethodDesc && mappedMethodDesc != null) {
+                    ownerQuery.requireMethod(mappedMethodDesc);
+                }
+                int[] ownerCandidates = fingerprintIndex.getMappableClasses(ownerQuery, remapper, Objects.requireNonNull(mappedOwnerName));
+                if (headerCandidates != null || ownerCandidates.length != methodTable.getClassCount()) {
+                    headerCandidates = methodTable.getMethodsOf(ownerCandidates, headerCandidates);
+                }
+            }
+            int[] candidates = MethodTable.intersect(headerCandidates, candidateOrdinals.get(exprIndex));
+            int candidateCount = candidates == null ? ordinalEnd - ordinalStart : MethodTable.lowerBound(candidates, ordinalEnd) - MethodTable.lowerBound(candidates, ordinalStart);
+            int[] anchoredCandidates = constantIndex.getAnchoredMethods(expr, remapper);
+            if (anchoredCandidates != null) {
+                candidateCount = Math.min(candidateCount, anchoredCandidates.length + methodTable.getMethodsShorterThan(expr.getInsns().size()).length);
+            }
+            anchoredCandidates = MethodTable.intersect(anchoredCandidates, memberIndex.getAnchoredMethods(expr, remapper, candidateCount));
+            if (anchoredCandidates != null) {
+                anchoredCandidates = MethodTable.union(anchoredCandidates, methodTable.getMethodsShorterThan(expr.getInsns().size()));
+                candidates = MethodTable.intersect(candidates, anchoredCandidates);
+            }
+            if (candidates != null) {
+                candidates = anchorMatcher.filter(expr, candidates, ordinalStart, ordinalEnd);
+            }
 
-            for (ClassNode node : candidateNodes) {
+            // The method with the same body as the method matched in the previous version is tried before all other candidates
+            int[] filteredCandidates = candidates;
+            int[] carriedCandidates = null;
+            int carriedOrdinal = carryover == null ? -1 : carryover.getCarriedMethod(exprIndex, bodyHashIndex);
+            if (carriedOrdinal != -1) {
+                carriedCandidates = MethodTable.intersect(headerCandidates, new int[] {carriedOrdinal});
+                candidates = carriedCandidates;
+            }
+
+            while (true) {
+                int candidateIndex = candidates == null ? ordinalStart : MethodTable.lowerBound(candidates, ordinalStart);
+                int candidateEnd = candidates == null ? ordinalEnd : MethodTable.lowerBound(candidates, ordinalEnd);
                 methodLoop:
-                for (MethodNode method : node.methods) {
+                for (; candidateIndex < candidateEnd; candidateIndex++) {
+                    int ordinal = candidates == null ? candidateIndex : candidates[candidateIndex];
+                    ClassNode node = methodTable.getOwner(ordinal);
+                    MethodNode method = methodTable.getMethod(ordinal);
                     if (!mapMethodName && mappedMethodName != null && !method.name.equals(mappedMethodName)) {
                         continue;
                     }
                     if (!mapMethodDesc && mappedMethodDesc != null && !method.desc.equals(mappedMethodDesc)) {
                         continue;
                     }
-                    if (remapper.getFrameCount() != 1) {
-                        throw new IllegalStateException("Unexpected frame count: " + remapper.getFrameCount());
+                    if (matchRemapper.getFrameCount() != 1) {
+                        throw new IllegalStateException("Unexpected frame count: " + matchRemapper.getFrameCount());
                     }
-                    remapper.pushFrame();
-                    if (mapOwnerName) {
-                        String nameSrc = node.name;
-                        String nameDst = remapper.getMappedClassOpt(nameSrc);
-                        if (!nameSrc.equals(nameDst)) {
-                            if (!Objects.requireNonNull(mappedOwnerName).equals(nameDst)) {
-                                remapper.discardFrame();
-                                continue;
-                            }
-                        } else {
-                            remapper.mapClass(nameSrc, Objects.requireNonNull(mappedOwnerName));
-                        }
-                    }
-                    if (mapMethodName) {
-                        String nameSrc = method.name;
-                        String nameDst = remapper.getMappedMethodOpt(node.name, nameSrc, method.desc);
-                        if (!nameSrc.equals(nameDst)) {
-                            if (!Objects.requireNonNull(mappedMethodName).equals(nameDst)) {
-                                remapper.discardFrame();
-                                continue;
-                            }
-                        } else {
-                            remapper.mapMethod(node.name, nameSrc, method.desc, Objects.requireNonNull(mappedMethodName));
-                        }
-                    }
-                    if (mapMethodDesc) {
-                        // Using InvokeInsn's mapDescriptor method isn't too ideal, but writing very similar code
-                        // pretty much twice to thrice is not what I have in mind, so reusing an implementation
-                        // is better in the short term and is better for those that wish to maintain this software.
-                        if (InvokeInsn.mapDescriptor(Objects.requireNonNull(methodDesc), method.desc, remapper) != null) {
-                            remapper.discardFrame();
-                            continue;
-                        }
+                    matchRemapper.pushFrame();
+                    if (!SoftmapContext.mapHeader(expr, node, method, mapOwnerName, mappedOwnerName, mapMethodName, mappedMethodName, mapMethodDesc, matchRemapper)) {
+                        matchRemapper.discardFrame();
+                        continue;
                     }
 
-                    if (remapper.getFrameCount() != 2) {
-                        throw new IllegalStateException("Unexpected frame count: " + remapper.getFrameCount());
+                    if (matchRemapper.getFrameCount() != 2) {
+                        throw new IllegalStateException("Unexpected frame count: " + matchRemapper.getFrameCount());
                     }
                     visitedMethods.add(new MethodLoc(node.name, method.name, method.desc));
-
-                    List<? extends @NotNull InsnBlock> insnBlocks = expr.getInsns();
-                    int i = 0;
-                    AbstractInsnNode currentInsn = method.instructions.getFirst();
-                    MatchResult lastResult = null;
-                    while (i != insnBlocks.size() && currentInsn != null) {
-                        InsnBlock currentBlock = insnBlocks.get(i);
-                        remapper.pushFrame();
-                        if (remapper.getFrameCount() != 3) {
-                            throw new IllegalStateException("Unexpected frame count: " + remapper.getFrameCount());
-                        }
-                        MatchResult result = currentBlock.matchesInstruction(currentInsn, remapper);
-                        if (result.isBreakingMatching()) {
-                            i++;
-                            remapper.mergeFrame();
-                        } else if (result.isGreedyMatch() && insnBlocks.size() != i + 1) {
-                            result = insnBlocks.get(i + 1).matchesInstruction(currentInsn, remapper);
-                            if (result.isBreakingMatching()) {
-                                remapper.mergeFrame();
-                                i += 2;
-                            } else if (result.isContinuingMatching() || result.isGreedyMatch()) {
-                                i++;
-                                remapper.mergeFrame();
-                            } else if (result.isAnyMatch()) {
-                                throw new IllegalStateException("Unexpected positive-match type (problem in the softmap implementation code - please report this bug):" + result.toString());
-                            } else {
-                                lastResult = result;
-                                remapper.discardFrame();
-                            }
-                        } else if (result.isGreedyMatch() /* Final greedy matcher */ || result.isContinuingMatching()) {
-                            // NOP
-                            remapper.mergeFrame();
-                            lastResult = result;
-                        } else if (result.isAnyMatch()) {
-                            throw new IllegalStateException("Unexpected positive-match type (problem in the softmap implementation code - please report this bug):" + result.toString());
-                        } else {
-                            lastResult = result;
-                            remapper.discardFrame();
-                            break;
-                        }
-                        currentInsn = currentInsn.getNext();
+                    if (ranking != null) {
+                        ranking.offer(ordinal);
                     }
 
+                    planner.countEvaluation();
+                    MatchResult lastResult = matcher.match(method.instructions, ordinal, opcodeIndex, blockMemo, blockIds, matchRemapper, progress);
+                    int i = progress.evaluatedBlocks;
+
                     // Hint: i != insnBlocks.size()  would have issues when matching the final RETURN for example
                     // People are expected to use '*' if the instructions after some point don't matter.
                     if (lastResult != null && !lastResult.isGreedyMatch()) {
                         if (i > furthestInsns) {
                             furthestInsns = i;
                             furthestError = lastResult;
-                            furthestExhaustedInstructions = currentInsn == null;
+                            furthestExhaustedInstructions = progress.exhaustedInstructions;
                         }
-                        remapper.discardFrame();
+                        matchRemapper.discardFrame();
                         continue methodLoop; // We only use continue with labels for clarity, but this isn't actually necessary
                     }
 
@@ -705,16 +1464,83 @@ public class SoftmapContext {
                         sourceB += method.name.equals(completeFrameLoc.getName()) ? "*" : completeFrameLoc.getName();
                         sourceB += method.desc.equals(completeFrameLoc.getDesc()) ? "*" : completeFrameLoc.getDesc();
                         applicationErrors.add(new SoftmapApplicationError(errorSource, "Multiple methods match the expression. Two of potentially multiple matches: '" + sourceA + "' and '" + sourceB + "'."));
-                        remapper.discardFrame();
+                        matchRemapper.discardFrame();
                         continue exprLoop;
                     }
 
                     completeFrameLoc = newLoc;
-                    completeFrameFrame = remapper.popFrame();
+                    completeFrameFrame = matchRemapper.popFrame();
+                }
+
+                if (completeFrameFrame != null || candidates == headerCandidates) {
+                    break;
+                }
+
+                if (carriedCandidates != null && candidates == carriedCandidates && filteredCandidates != headerCandidates) {
+                    candidates = filteredCandidates;
+                    furthestInsns = -1;
+                    furthestError = null;
+                    furthestExhaustedInstructions = false;
+                    visitedMethods.clear();
+                    if (ranking != null) {
+                        ranking.clear();
+                    }
+                    continue;
+                }
+
+                // None of the candidates match. Evaluate all methods with a matching header so that the reported error is the same
+                // as if no methods were skipped. As methods are evaluated in discarded frames, this has no effect on the mappings.
+                candidates = headerCandidates;
+                furthestInsns = -1;
+                furthestError = null;
+                furthestExhaustedInstructions = false;
+                visitedMethods.clear();
+                if (ranking != null) {
+                    ranking.clear();
+                }
+            }
+
+            String approximation = "";
+            if (completeFrameFrame == null && ranking != null) {
+                long[] closest = ranking.rank(SoftmapContext.APPROXIMATE_MATCHES);
+                if (closest.length != 0) {
+                    StringBuilder builder = new StringBuilder(". Closest methods:");
+                    for (long pair : closest) {
+                        int ordinal = ApproximateMatcher.getOrdinal(pair);
+                        MethodNode method = methodTable.getMethodHeader(ordinal);
+                        builder.append(" '").append(methodTable.getOwner(ordinal).name).append('.').append(method.name).append(method.desc)
+                                .append("' (distance ").append(ApproximateMatcher.getDistance(pair)).append(')');
+                    }
+                    int bestOrdinal = ApproximateMatcher.getOrdinal(closest[0]);
+                    if (approximateMatchingMargin != 0 && (closest.length == 1
+                            || ApproximateMatcher.getDistance(closest[1]) - ApproximateMatcher.getDistance(closest[0]) >= approximateMatchingMargin)) {
+                        matchRemapper.pushFrame();
+                        if (SoftmapContext.mapHeader(expr, methodTable.getOwner(bestOrdinal), methodTable.getMethodHeader(bestOrdinal), mapOwnerName, mappedOwnerName, mapMethodName, mappedMethodName, mapMethodDesc, matchRemapper)) {
+                            remapper.pushFrame(matchRemapper.popFrame());
+                            remapper.mergeFrame();
+                            builder.append(". Applied the mappings of the owner, name and descriptor to the closest method");
+                        } else {
+                            matchRemapper.discardFrame();
+                        }
+                    }
+                    approximation = builder.toString();
+                }
+            }
+
+            List<@NotNull MethodLoc> suggestions = Collections.emptyList();
+            if (completeFrameFrame == null && suggestionCount != 0) {
+                long[] similarMethods = similarityIndex.getSimilarMethods(expr, suggestionCount);
+                suggestions = new ArrayList<>(similarMethods.length);
+                for (long pair : similarMethods) {
+                    int ordinal = SimilarityIndex.getOrdinal(pair);
+                    MethodNode method = methodTable.getMethodHeader(ordinal);
+                    suggestions.add(new MethodLoc(methodTable.getOwner(ordinal).name, method.name, method.desc));
                 }
+                suggestions = Collections.unmodifiableList(suggestions);
             }
 
             if (completeFrameFrame != null) {
+                matchedMethods[exprIndex] = completeFrameLoc;
                 remapper.pushFrame(completeFrameFrame);
                 remapper.mergeFrame();
             } else if (furthestError != null) {
@@ -723,21 +1549,21 @@ public class SoftmapContext {
                     errorSource = expr.getDeclaringLocation();
                 }
                 if (furthestExhaustedInstructions) {
-                    applicationErrors.add(new SoftmapApplicationError(errorSource, "Instructions exhausted after evaluating " + furthestInsns + " insn blocks. Beware that the supplied error message and error location may not be the ultimate cause of the issue. Provided error message: " + furthestError.getErrorDescription()));
+                    applicationErrors.add(new SoftmapApplicationError(errorSource, "Instructions exhausted after evaluating " + furthestInsns + " insn blocks. Beware that the supplied error message and error location may not be the ultimate cause of the issue. Provided error message: " + furthestError.getErrorDescription() + approximation, suggestions));
                 } else {
-                    applicationErrors.add(new SoftmapApplicationError(errorSource, "InsnBlock failed match after evaluating " + furthestInsns + " insn blocks. Beware that the supplied error message and error location may not be the ultimate cause of the issue. Provided error message: " + furthestError.getErrorDescription()));
+                    applicationErrors.add(new SoftmapApplicationError(errorSource, "InsnBlock failed match after evaluating " + furthestInsns + " insn blocks. Beware that the supplied error message and error location may not be the ultimate cause of the issue. Provided error message: " + furthestError.getErrorDescription() + approximation, suggestions));
                 }
             } else {
                 Token errorSource = expr.getMethodLocation();
                 if (errorSource == null) {
                     errorSource = expr.getDeclaringLocation();
                 }
-                applicationErrors.add(new SoftmapApplicationError(errorSource, "No methods match the expression. Consider double-checking for typos and cross-reference the supplied method owner, name and descriptor with the bytecode owner, name and descriptor. Visited methods: " + visitedMethods));
+                applicationErrors.add(new SoftmapApplicationError(errorSource, "No methods match the expression. Consider double-checking for typos and cross-reference the supplied method owner, name and descriptor with the bytecode owner, name and descriptor. Visited methods: " + visitedMethods + approximation, suggestions));
             }
         }
 
         List<@NotNull String> tiny = remapper.exportToTinyV1();
         remapper.discardFrame(); // Destroy the initial frame
-        return new ApplicationResult(tiny, Collections.unmodifiableList(applicationErrors));
+        return new ApplicationResult(tiny, Collections.unmodifiableList(applicationErrors), planner.explain(), Collections.unmodifiableList(Arrays.asList(matchedMethods)));
     }
 }
@@ -29,4 +29,10 @@ public class SoftmapParseError {
     public String getDescription() {
         return this.description;
     }
+
+    @NotNull
+    @Contract(pure = true, value = "_, _ -> new")
+    SoftmapParseError shift(int codepointDelta, int rowDelta) {
+        return new SoftmapParseError(this.startCodepoint + codepointDelta, this.endCodepoint + codepointDelta, this.row + rowDelta, this.column, this.description);
+    }
 }
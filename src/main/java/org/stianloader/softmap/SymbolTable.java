@@ -0,0 +1,186 @@
+package org.stianloader.softmap;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * An open-addressing table of interned strings, which assigns each distinct string a dense id in the order the strings were added.
+ *
+ * <p>Strings can be looked up by character ranges, so that names which were already read by a {@link MappingSeed} do not need
+ * to be allocated again. The {@link InstructionStore} refers to the names and descriptors of instructions by their id, and
+ * the {@link BatchApplication} shares the names and descriptors of the headers of all versions through a single table.
+ * All methods may be called by multiple threads at once.
+ */
+final class SymbolTable {
+
+    @Contract(pure = true)
+    private static int hash(char @NotNull[] buffer, int start, int end) {
+        // Same hash as String#hashCode, so that rehashing does not need to recompute hashes
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+        return hash;
+    }
+
+    @Contract(pure = true)
+    private static boolean matches(@NotNull String symbol, char @NotNull[] buffer, int start, int end) {
+        if (symbol.length() != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (symbol.charAt(i - start) != buffer[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int size;
+
+    /**
+     * The id of the symbol occupying each slot plus one, 0 for free slots.
+     */
+    private int @NotNull[] slots = new int[1024];
+
+    /**
+     * The symbols by their id.
+     */
+    private String @NotNull[] symbols = new String[512];
+
+    @Contract(pure = false)
+    private int add(int slot, @NotNull String symbol) {
+        int id = this.size++;
+        if (id == this.symbols.length) {
+            this.symbols = Arrays.copyOf(this.symbols, id * 2);
+        }
+        this.symbols[id] = symbol;
+        this.slots[slot] = id + 1;
+        if (this.size * 2 > this.slots.length) {
+            this.rehash();
+        }
+        return id;
+    }
+
+    /**
+     * Obtains the id of a symbol, adding the symbol to the table if it is not yet known.
+     *
+     * @param symbol The symbol.
+     * @return The id of the symbol.
+     */
+    @Contract(pure = false)
+    synchronized int getId(@NotNull String symbol) {
+        int mask = this.slots.length - 1;
+        int slot = symbol.hashCode() & mask;
+        int id;
+        while ((id = this.slots[slot]) != 0) {
+            if (symbol.equals(this.symbols[id - 1])) {
+                return id - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return this.add(slot, symbol);
+    }
+
+    /**
+     * Obtains all symbols of the table, indexed by their id.
+     *
+     * @return A copy of the symbols.
+     */
+    @NotNull
+    @Contract(pure = true, value = "-> new")
+    synchronized String @NotNull[] getSymbols() {
+        return Arrays.copyOf(this.symbols, this.size);
+    }
+
+    /**
+     * Interns the characters within a range of a buffer, only allocating a string if the symbol is not yet known.
+     *
+     * @param buffer The buffer.
+     * @param start The index of the first character of the symbol.
+     * @param end The index after the last character of the symbol.
+     * @return The interned symbol.
+     */
+    @NotNull
+    @Contract(pure = false)
+    synchronized String intern(char @NotNull[] buffer, int start, int end) {
+        int mask = this.slots.length - 1;
+        int slot = SymbolTable.hash(buffer, start, end) & mask;
+        int id;
+        while ((id = this.slots[slot]) != 0) {
+            String symbol = this.symbols[id - 1];
+            if (SymbolTable.matches(symbol, buffer, start, end)) {
+                return symbol;
+            }
+            slot = (slot + 1) & mask;
+        }
+        // Adding the symbol may grow the array of symbols
+        id = this.add(slot, new String(buffer, start, end - start));
+        return this.symbols[id];
+    }
+
+    @NotNull
+    @Contract(pure = false)
+    synchronized String intern(@NotNull String symbol) {
+        int id = this.getId(symbol);
+        return this.symbols[id];
+    }
+
+    @Contract(pure = false)
+    private void internAll(@Nullable List<String> symbols) {
+        if (symbols != null) {
+            symbols.replaceAll(this::intern);
+        }
+    }
+
+    /**
+     * Interns the names, descriptors and signatures of a class header in place.
+     *
+     * @param header The header, which must not yet be shared with other threads.
+     */
+    @Contract(pure = false)
+    void internHeader(@NotNull ClassNode header) {
+        header.name = this.intern(header.name);
+        header.superName = this.internNullable(header.superName);
+        header.signature = this.internNullable(header.signature);
+        this.internAll(header.interfaces);
+        for (FieldNode field : header.fields) {
+            field.name = this.intern(field.name);
+            field.desc = this.intern(field.desc);
+            field.signature = this.internNullable(field.signature);
+        }
+        for (MethodNode method : header.methods) {
+            method.name = this.intern(method.name);
+            method.desc = this.intern(method.desc);
+            method.signature = this.internNullable(method.signature);
+            this.internAll(method.exceptions);
+        }
+    }
+
+    @Nullable
+    @Contract(pure = false, value = "null -> null; !null -> !null")
+    private String internNullable(@Nullable String symbol) {
+        return symbol == null ? null : this.intern(symbol);
+    }
+
+    @Contract(pure = false)
+    private void rehash() {
+        int[] slots = new int[this.slots.length * 2];
+        int mask = slots.length - 1;
+        for (int id = 0; id < this.size; id++) {
+            int slot = this.symbols[id].hashCode() & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+        this.slots = slots;
+    }
+}
@@ -92,6 +92,14 @@ class TokenizeReader {
         while (this.position < this.endPosition) {
             int codepoint = this.peekCodepoint();
             // TODO '{' and '}' in Strings or codepoint literals
+            if (codepoint == '{' && this.position == start + 1 && this.source.codePointAt(start) == '*') {
+                // Quantified wildcards ('*{n}' or '*{min,max}') are a single token
+                int quantifierEnd = this.getQuantifierEnd(this.position);
+                if (quantifierEnd != -1) {
+                    this.position = quantifierEnd;
+                    continue;
+                }
+            }
             if (JavaInterop.isBlank(codepoint)
                     || codepoint == '\r'
                     || codepoint == '\n'
@@ -113,6 +121,26 @@ class TokenizeReader {
         return new StringToken(this.source, start, this.position, this.line, startCol);
     }
 
+    /**
+     * Obtains the end of the quantifier of a wildcard, that is the text between curly brackets immediately following the wildcard.
+     * Blanks may occur within the curly brackets, line breaks may not.
+     * The quantifier itself is validated when parsing the wildcard.
+     *
+     * @param from The position of the opening curly bracket.
+     * @return The position after the closing curly bracket, or -1 if the curly brackets do not enclose a quantifier.
+     */
+    private int getQuantifierEnd(int from) {
+        for (int position = from + 1; position < this.endPosition; position++) {
+            char c = this.source.charAt(position);
+            if (c == '}') {
+                return position + 1;
+            } else if (c == '\r' || c == '\n' || c == '{') {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
     public int peekCodepoint() {
         if (this.isExhausted()) {
             throw new IllegalStateException("Reader is exhausted at " + this.getVerboseCurrentLocation());
@@ -150,11 +178,11 @@ class TokenizeReader {
                     // Single-line comment
                     int commentPos = this.position;
                     this.position += 2;
-                    // Exhaust the entire line
-                    while (++this.position < this.endPosition && this.source.codePointAt(this.position) != '\n');
+                    // Exhaust the entire line (the line break itself is consumed as whitespace afterwards)
+                    while (this.position < this.endPosition && this.source.codePointAt(this.position) != '\n') {
+                        this.position++;
+                    }
                     stream.add(new CommentToken(this.line, this.column, commentPos + 2, this.position, false));
-                    this.line++;
-                    this.column = 1;
                 } else {
                     // not actually a comment (this could for example be a plain division sign)
                     break;
@@ -0,0 +1,84 @@
+package org.stianloader.softmap.classpath;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+
+/**
+ * A bounded cache of the headers of library classes, that is their name, access flags, supertypes
+ * and the signatures of their fields and methods, read from a {@link ClassProvider} on demand.
+ *
+ * <p>Headers are read without method bodies, debug information or frames. Once the cache is full,
+ * the least recently used header is evicted. The absence of a class is cached as well.
+ */
+public final class ClassHeaderCache {
+
+    /**
+     * Marker for classes which are not known to the provider.
+     */
+    @NotNull
+    private static final ClassNode MISSING = new ClassNode();
+
+    @NotNull
+    private final Map<@NotNull String, @NotNull ClassNode> headers;
+
+    @NotNull
+    private final ClassProvider provider;
+
+    /**
+     * Creates a cache reading headers from a provider.
+     *
+     * @param provider The provider to read the class files from.
+     * @param maximumSize The maximum amount of headers (including missing classes) held by the cache.
+     */
+    public ClassHeaderCache(@NotNull ClassProvider provider, int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("The maximum size must be positive: " + maximumSize);
+        }
+        this.provider = provider;
+        this.headers = new LinkedHashMap<String, ClassNode>(16, 0.75F, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ClassNode> eldest) {
+                return this.size() > maximumSize;
+            }
+        };
+    }
+
+    /**
+     * Obtains the header of a class.
+     *
+     * @param internalName The internal name of the class.
+     * @return The header of the class, or null if the provider does not know the class.
+     * @throws UncheckedIOException If the class file could not be read.
+     */
+    @Nullable
+    @Contract(pure = false)
+    public synchronized ClassNode getHeader(@NotNull String internalName) {
+        ClassNode header = this.headers.get(internalName);
+        if (header == null) {
+            byte[] bytes;
+            try {
+                bytes = this.provider.getClassBytes(internalName);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to read class " + internalName, e);
+            }
+            if (bytes == null) {
+                header = ClassHeaderCache.MISSING;
+            } else {
+                header = new ClassNode();
+                new ClassReader(bytes).accept(header, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+            }
+            this.headers.put(internalName, header);
+        }
+        return header == ClassHeaderCache.MISSING ? null : header;
+    }
+}
@@ -0,0 +1,138 @@
+package org.stianloader.softmap.classpath;
+
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+
+/**
+ * A size-bounded cache of decoded classes of a {@link ClassStore}.
+ *
+ * <p>The size of a decoded class is approximated by the size of its class file. Once the total size of the cached
+ * classes exceeds the maximum size, the least recently used classes are evicted. Furthermore cached classes are only softly
+ * referenced, so that they can be evicted by the garbage collector under memory pressure. Evicted classes are decoded again
+ * when they are requested the next time.
+ *
+ * <p>As classes may be decoded multiple times, callers must not rely on the identity of the returned nodes
+ * and must not modify them.
+ */
+public final class ClassNodeCache {
+
+    @NotNull
+    private final Map<@NotNull Integer, @NotNull SoftReference<ClassNode>> cache = new LinkedHashMap<>(16, 0.75F, true);
+
+    private long evictionCount;
+
+    private long hitCount;
+
+    private final long maximumSize;
+
+    private long missCount;
+
+    private final int parsingOptions;
+
+    private long size;
+
+    @NotNull
+    private final ClassStore store;
+
+    /**
+     * Creates a cache of decoded classes.
+     *
+     * @param store The store holding the class files.
+     * @param maximumSize The maximum total size of the class files of all cached classes in bytes.
+     * The most recently used class is always kept, regardless of its size.
+     * @param parsingOptions The options passed to {@link ClassReader#accept(org.objectweb.asm.ClassVisitor, int)} when decoding classes.
+     */
+    public ClassNodeCache(@NotNull ClassStore store, long maximumSize, int parsingOptions) {
+        this.store = store;
+        this.maximumSize = maximumSize;
+        this.parsingOptions = parsingOptions;
+    }
+
+    /**
+     * Obtains the decoded class at the given index of the store, decoding it if it is not cached.
+     *
+     * @param index The index of the class within the store.
+     * @return The decoded class.
+     */
+    @NotNull
+    @Contract(pure = false)
+    public synchronized ClassNode getClassNode(int index) {
+        SoftReference<ClassNode> reference = this.cache.get(index);
+        ClassNode node = reference == null ? null : reference.get();
+        if (node != null) {
+            this.hitCount++;
+            return node;
+        }
+        this.missCount++;
+        if (reference != null) {
+            // Cleared by the garbage collector
+            this.evictionCount++;
+            this.size -= this.store.getClassSize(index);
+        }
+        node = new ClassNode();
+        new ClassReader(this.store.getClassBytes(index)).accept(node, this.parsingOptions);
+        this.cache.put(index, new SoftReference<>(node));
+        this.size += this.store.getClassSize(index);
+
+        Iterator<Map.Entry<Integer, SoftReference<ClassNode>>> it = this.cache.entrySet().iterator();
+        while (this.size > this.maximumSize && this.cache.size() > 1) {
+            int evicted = it.next().getKey();
+            it.remove();
+            this.size -= this.store.getClassSize(evicted);
+            this.evictionCount++;
+        }
+        return node;
+    }
+
+    /**
+     * Obtains the amount of classes evicted from the cache, either because the cache was full or due to memory pressure.
+     *
+     * @return The amount of evictions.
+     */
+    @Contract(pure = true)
+    public synchronized long getEvictionCount() {
+        return this.evictionCount;
+    }
+
+    @Contract(pure = true)
+    public synchronized long getHitCount() {
+        return this.hitCount;
+    }
+
+    /**
+     * Obtains the fraction of requests which were served without decoding the class.
+     *
+     * @return The hit rate between 0 and 1, or 0 if no class was requested yet.
+     */
+    @Contract(pure = true)
+    public synchronized double getHitRate() {
+        long requestCount = this.hitCount + this.missCount;
+        return requestCount == 0 ? 0D : (double) this.hitCount / requestCount;
+    }
+
+    @Contract(pure = true)
+    public synchronized long getMissCount() {
+        return this.missCount;
+    }
+
+    @NotNull
+    @Contract(pure = true)
+    public ClassStore getStore() {
+        return this.store;
+    }
+
+    @Override
+    @NotNull
+    @Contract(pure = true)
+    public synchronized String toString() {
+        return "ClassNodeCache[hits=" + this.hitCount + ", misses=" + this.missCount + ", evictions=" + this.evictionCount
+                + ", hitRate=" + this.getHitRate() + ", cached=" + this.cache.size() + ", size=" + this.size + '/' + this.maximumSize + ']';
+    }
+}
@@ -0,0 +1,88 @@
+package org.stianloader.softmap.classpath;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A source of class files of libraries, which are consulted in order to complete the class hierarchy
+ * of the obfuscated classes.
+ *
+ * <p>Implementations are expected to be cheap to create and to only read the class files once they are requested.
+ * They must be safe for use by multiple threads.
+ */
+@FunctionalInterface
+public interface ClassProvider {
+
+    /**
+     * Creates a provider querying multiple providers in order, returning the class file of the first provider which knows the class.
+     *
+     * @param providers The providers to query.
+     * @return The composite provider.
+     */
+    @NotNull
+    @Contract(pure = true, value = "_ -> new")
+    static ClassProvider of(@NotNull ClassProvider @NotNull... providers) {
+        ClassProvider[] copy = providers.clone();
+        return (internalName) -> {
+            for (ClassProvider provider : copy) {
+                byte[] bytes = provider.getClassBytes(internalName);
+                if (bytes != null) {
+                    return bytes;
+                }
+            }
+            return null;
+        };
+    }
+
+    /**
+     * Creates a provider reading class files from a directory, where each class file is stored in a subdirectory
+     * corresponding to its package.
+     *
+     * @param directory The root directory.
+     * @return The provider.
+     */
+    @NotNull
+    @Contract(pure = true, value = "_ -> new")
+    static ClassProvider ofDirectory(@NotNull Path directory) {
+        return new DirectoryClassProvider(directory);
+    }
+
+    /**
+     * Creates a provider reading class files from a jar file. The jar is opened on first use and kept open
+     * until the provider is closed.
+     *
+     * @param jar The path of the jar file.
+     * @return The provider.
+     */
+    @NotNull
+    @Contract(pure = true, value = "_ -> new")
+    static JarClassProvider ofJar(@NotNull Path jar) {
+        return new JarClassProvider(jar);
+    }
+
+    /**
+     * Creates a provider reading the class files of the running JDK. On Java 9 and later the classes are read from
+     * the <code>jrt:/</code> file system, on older releases they are read from the boot class path.
+     *
+     * @return The provider.
+     */
+    @NotNull
+    @Contract(pure = true, value = "-> new")
+    static ClassProvider ofRuntime() {
+        return new RuntimeClassProvider();
+    }
+
+    /**
+     * Reads the class file of a class.
+     *
+     * @param internalName The internal name of the class, for example <code>java/lang/Object</code>.
+     * @return The contents of the class file, or null if the provider does not know the class.
+     * @throws IOException If the class file could not be read.
+     */
+    @Contract(pure = true)
+    byte @Nullable[] getClassBytes(@NotNull String internalName) throws IOException;
+}
@@ -0,0 +1,372 @@
+package org.stianloader.softmap.classpath;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+
+/**
+ * A store of raw class files, which are decoded into {@link ClassNode ClassNodes} on demand.
+ *
+ * <p>Class files are either kept on the heap or written to a temporary file which is memory-mapped,
+ * in which case the class files occupy no heap memory at all. Each class is identified by the index
+ * it was added at.
+ *
+ * <p>The temporary file is mapped in segments, which grow as class files are added, so that the file is only
+ * as large as the class files it holds (up to a factor of two). The segments are unmapped once the store is closed.
+ * Should the runtime not permit unmapping buffers explicitly, the segments are only unmapped once they are garbage collected,
+ * in which case operating systems which do not permit deleting mapped files (such as Windows) only delete the file
+ * once that happened, or once the JVM exits.
+ */
+public final class ClassStore implements ClassProvider, Closeable {
+
+    /**
+     * The size a segment is initially mapped with.
+     */
+    private static final int MINIMUM_SEGMENT_SIZE = 1 << 16;
+
+    /**
+     * The maximum size of each mapped segment of the temporary file. Class files never span multiple segments.
+     */
+    private static final int SEGMENT_SIZE = 1 << 28;
+
+    /**
+     * Creates a store mapping the class files into memory from a temporary file, which is deleted once the store is closed.
+     *
+     * @return The store.
+     * @throws IOException If the temporary file could not be created.
+     */
+    @NotNull
+    @Contract(pure = false, value = "-> new")
+    public static ClassStore mapped() throws IOException {
+        Path file = Files.createTempFile("softmap-classes", ".bin");
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+        return new ClassStore(channel);
+    }
+
+    /**
+     * Creates a store keeping the class files on the heap.
+     *
+     * @return The store.
+     */
+    @NotNull
+    @Contract(pure = true, value = "-> new")
+    public static ClassStore onHeap() {
+        return new ClassStore(null);
+    }
+
+    /**
+     * Releases the mapping of a buffer without waiting for the buffer to be garbage collected. The buffer must not be accessed afterwards.
+     * Unmapping is done on a best-effort basis, as the runtime may not permit it.
+     *
+     * @param buffer The buffer to unmap.
+     */
+    @Contract(pure = false)
+    private static void unmap(@NotNull MappedByteBuffer buffer) {
+        try {
+            // Java 9 and later
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            try {
+                // Java 8
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            } catch (ReflectiveOperationException | RuntimeException ignored) {
+                // The mapping is released once the buffer is garbage collected
+            }
+        }
+    }
+
+    @Nullable
+    private final FileChannel channel;
+
+    private int classCount;
+
+    @NotNull
+    private final Map<@NotNull String, @NotNull Integer> classIndices = new HashMap<>();
+
+    private boolean closed;
+
+    /**
+     * The class files of all classes, only used if the store is kept on the heap.
+     */
+    private byte @Nullable[] @NotNull[] heapClasses;
+
+    private int @NotNull[] lengths = new int[64];
+
+    @NotNull
+    private String @NotNull[] names = new String[64];
+
+    /**
+     * The offset of each class file within the temporary file, only used if the store is mapped.
+     */
+    private long @NotNull[] offsets = new long[64];
+
+    /**
+     * The mapped segments of the temporary file.
+     */
+    @Nullable
+    private MappedByteBuffer @NotNull[] segments = new MappedByteBuffer[0];
+
+    /**
+     * The offset at which the next class file is written to the temporary file.
+     */
+    private long writeOffset;
+
+    private ClassStore(@Nullable FileChannel channel) {
+        this.channel = channel;
+        this.heapClasses = channel == null ? new byte[64][] : null;
+    }
+
+    /**
+     * Adds a class file to the store. Classes sharing the name of a previously added class shadow that class
+     * when looked up by name.
+     *
+     * @param classFile The class file, which must not be modified afterwards.
+     * @return The index of the class.
+     * @throws IOException If the class file could not be written to the temporary file.
+     * @throws IllegalStateException If the store is closed.
+     */
+    @Contract(pure = false)
+    public synchronized int add(byte @NotNull[] classFile) throws IOException {
+        this.ensureOpen();
+        int index = this.classCount;
+        if (index == this.names.length) {
+            this.names = Arrays.copyOf(this.names, index * 2);
+            this.lengths = Arrays.copyOf(this.lengths, index * 2);
+            this.offsets = Arrays.copyOf(this.offsets, index * 2);
+            byte[][] heapClasses = this.heapClasses;
+            if (heapClasses != null) {
+                this.heapClasses = Arrays.copyOf(heapClasses, index * 2);
+            }
+        }
+        String name = new ClassReader(classFile).getClassName();
+        byte[][] heapClasses = this.heapClasses;
+        if (heapClasses != null) {
+            heapClasses[index] = classFile;
+        } else {
+            if (classFile.length > ClassStore.SEGMENT_SIZE) {
+                throw new IOException("Class file of " + name + " is too large to be stored: " + classFile.length + " bytes");
+            }
+            long offset = this.writeOffset;
+            if (offset / ClassStore.SEGMENT_SIZE != (offset + classFile.length - 1) / ClassStore.SEGMENT_SIZE) {
+                // Move the class file to the next segment
+                offset = (offset / ClassStore.SEGMENT_SIZE + 1) * ClassStore.SEGMENT_SIZE;
+            }
+            MappedByteBuffer segment = this.getSegment((int) (offset / ClassStore.SEGMENT_SIZE), (int) (offset % ClassStore.SEGMENT_SIZE) + classFile.length);
+            segment.position((int) (offset % ClassStore.SEGMENT_SIZE));
+            segment.put(classFile);
+            this.offsets[index] = offset;
+            this.writeOffset = offset + classFile.length;
+        }
+        this.names[index] = name;
+        this.lengths[index] = classFile.length;
+        this.classIndices.put(name, index);
+        this.classCount++;
+        return index;
+    }
+
+    /**
+     * Adds all class files of a jar file to the store.
+     *
+     * @param jar The path of the jar file.
+     * @throws IOException If the jar file could not be read.
+     */
+    @Contract(pure = false)
+    public void addJar(@NotNull Path jar) throws IOException {
+        try (ZipFile zip = new ZipFile(jar.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory() || !entry.getName().endsWith(".class")) {
+                    continue;
+                }
+                try (InputStream in = zip.getInputStream(entry)) {
+                    this.add(JarClassProvider.readAll(in, (int) entry.getSize()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes the store, discarding all class files. If the store is mapped, the segments are unmapped
+     * and the temporary file is deleted.
+     *
+     * @throws IOException If the temporary file could not be closed.
+     */
+    @Override
+    @Contract(pure = false)
+    public synchronized void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        this.heapClasses = null;
+        FileChannel channel = this.channel;
+        if (channel != null) {
+            for (MappedByteBuffer segment : this.segments) {
+                if (segment != null) {
+                    // Class files are always copied out of the segments, so no other references to the segments exist
+                    ClassStore.unmap(segment);
+                }
+            }
+            Arrays.fill(this.segments, null);
+            channel.close();
+        }
+    }
+
+    @Contract(pure = true)
+    private void ensureOpen() {
+        if (this.closed) {
+            throw new IllegalStateException("The store is closed");
+        }
+    }
+
+    /**
+     * Obtains the class file of a class.
+     *
+     * @param index The index of the class.
+     * @return The class file, which must not be modified.
+     * @throws IllegalStateException If the store is closed.
+     */
+    @Contract(pure = true)
+    public synchronized byte @NotNull[] getClassBytes(int index) {
+        this.ensureOpen();
+        if (index < 0 || index >= this.classCount) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for " + this.classCount + " classes");
+        }
+        byte[][] heapClasses = this.heapClasses;
+        if (heapClasses != null) {
+            return heapClasses[index];
+        }
+        long offset = this.offsets[index];
+        byte[] classFile = new byte[this.lengths[index]];
+        MappedByteBuffer segment = this.segments[(int) (offset / ClassStore.SEGMENT_SIZE)];
+        segment.position((int) (offset % ClassStore.SEGMENT_SIZE));
+        segment.get(classFile);
+        return classFile;
+    }
+
+    @Override
+    @Contract(pure = true)
+    public byte @Nullable[] getClassBytes(@NotNull String internalName) {
+        int index = this.getClassIndex(internalName);
+        return index == -1 ? null : this.getClassBytes(index);
+    }
+
+    @Contract(pure = true)
+    public synchronized int getClassCount() {
+        return this.classCount;
+    }
+
+    /**
+     * Obtains the index of the class with the given name. Should multiple classes share the name, the index of the last class is returned.
+     *
+     * @param internalName The internal name of the class.
+     * @return The index of the class, or -1 if there is no such class.
+     */
+    @Contract(pure = true)
+    public synchronized int getClassIndex(@NotNull String internalName) {
+        Integer index = this.classIndices.get(internalName);
+        return index == null ? -1 : index;
+    }
+
+    @NotNull
+    @Contract(pure = true)
+    public synchronized String getClassName(int index) {
+        if (index < 0 || index >= this.classCount) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for " + this.classCount + " classes");
+        }
+        return this.names[index];
+    }
+
+    /**
+     * Obtains the size of the class file of a class in bytes.
+     *
+     * @param index The index of the class.
+     * @return The size of the class file.
+     */
+    @Contract(pure = true)
+    public synchronized int getClassSize(int index) {
+        if (index < 0 || index >= this.classCount) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for " + this.classCount + " classes");
+        }
+        return this.lengths[index];
+    }
+
+    /**
+     * Obtains a mapped segment of the temporary file, mapping or growing it if it is smaller than the requested size.
+     * Segments grow by doubling their size, so that the file is never more than twice as large as the class files it holds.
+     *
+     * @param segmentIndex The index of the segment.
+     * @param minimumSize The minimum size of the mapped segment in bytes, at most {@link #SEGMENT_SIZE}.
+     * @return The segment.
+     * @throws IOException If the segment could not be mapped.
+     */
+    @NotNull
+    @Contract(pure = false)
+    private MappedByteBuffer getSegment(int segmentIndex, int minimumSize) throws IOException {
+        if (segmentIndex >= this.segments.length) {
+            this.segments = Arrays.copyOf(this.segments, segmentIndex + 1);
+        }
+        MappedByteBuffer segment = this.segments[segmentIndex];
+        if (segment == null || segment.capacity() < minimumSize) {
+            FileChannel channel = this.channel;
+            if (channel == null || !channel.isOpen()) {
+                throw new IOException("The store is closed");
+            }
+            int size = segment == null ? ClassStore.MINIMUM_SEGMENT_SIZE : segment.capacity();
+            while (size < minimumSize) {
+                size *= 2;
+            }
+            size = Math.min(size, ClassStore.SEGMENT_SIZE);
+            // The mapping is shared with the file, so the grown mapping holds the class files written to the previous mapping
+            MappedByteBuffer grown = channel.map(FileChannel.MapMode.READ_WRITE, (long) segmentIndex * ClassStore.SEGMENT_SIZE, size);
+            if (segment != null) {
+                ClassStore.unmap(segment);
+            }
+            this.segments[segmentIndex] = segment = grown;
+        }
+        return segment;
+    }
+
+    /**
+     * Decodes the header of a class, that is the class without method bodies, debug information and frames.
+     *
+     * @param index The index of the class.
+     * @return The header.
+     */
+    @NotNull
+    @Contract(pure = true, value = "_ -> new")
+    public ClassNode readHeader(int index) {
+        ClassNode header = new ClassNode();
+        new ClassReader(this.getClassBytes(index)).accept(header, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return header;
+    }
+}
@@ -0,0 +1,29 @@
+package org.stianloader.softmap.classpath;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+final class DirectoryClassProvider implements ClassProvider {
+    @NotNull
+    private final Path directory;
+
+    DirectoryClassProvider(@NotNull Path directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    @Contract(pure = true)
+    public byte @Nullable[] getClassBytes(@NotNull String internalName) throws IOException {
+        try {
+            return Files.readAllBytes(this.directory.resolve(internalName + ".class"));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.stianloader.softmap.classpath;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A {@link ClassProvider} reading class files from a jar file.
+ *
+ * <p>The jar is only opened once a class is requested and stays open until {@link #close()} is called.
+ */
+public final class JarClassProvider implements ClassProvider, Closeable {
+
+    @NotNull
+    @Contract(pure = false)
+    static byte @NotNull[] readAll(@NotNull InputStream in, int sizeHint) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(sizeHint > 0 ? sizeHint : 4096);
+        byte[] buffer = new byte[4096];
+        for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    @NotNull
+    private final Path jar;
+
+    @Nullable
+    private ZipFile zip;
+
+    JarClassProvider(@NotNull Path jar) {
+        this.jar = jar;
+    }
+
+    @Override
+    @Contract(pure = false)
+    public synchronized void close() throws IOException {
+        ZipFile zip = this.zip;
+        this.zip = null;
+        if (zip != null) {
+            zip.close();
+        }
+    }
+
+    @Override
+    @Contract(pure = false)
+    public synchronized byte @Nullable[] getClassBytes(@NotNull String internalName) throws IOException {
+        ZipFile zip = this.zip;
+        if (zip == null) {
+            this.zip = zip = new ZipFile(this.jar.toFile());
+        }
+        ZipEntry entry = zip.getEntry(internalName + ".class");
+        if (entry == null) {
+            return null;
+        }
+        try (InputStream in = zip.getInputStream(entry)) {
+            return JarClassProvider.readAll(in, (int) entry.getSize());
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.stianloader.softmap.classpath;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A {@link ClassProvider} reading the class files of the running JDK.
+ *
+ * <p>The <code>jrt:/</code> file system lists the modules containing each package under <code>/packages</code>,
+ * which is read once on first use in order to locate class files without searching all modules.
+ * If the file system is not available (that is on Java 8), class files are read from the boot class path instead, through a class loader
+ * without any other class path. Classes of the application class path are never provided.
+ */
+final class RuntimeClassProvider implements ClassProvider {
+
+    /**
+     * A class loader delegating to the bootstrap class loader only, used if the <code>jrt:/</code> file system is not available.
+     */
+    @NotNull
+    private static final ClassLoader BOOTSTRAP_LOADER = new ClassLoader(null) { };
+
+    private boolean initialized;
+
+    @Nullable
+    private FileSystem jrt;
+
+    /**
+     * The modules of each package, keyed by the package name in internal form.
+     */
+    @NotNull
+    private final Map<@NotNull String, @NotNull String @NotNull[]> packageModules = new HashMap<>();
+
+    @Override
+    @Contract(pure = false)
+    public synchronized byte @Nullable[] getClassBytes(@NotNull String internalName) throws IOException {
+        if (!this.initialized) {
+            // Should initialization fail, it is attempted again on the next request
+            this.initialize();
+            this.initialized = true;
+        }
+
+        FileSystem jrt = this.jrt;
+        if (jrt == null) {
+            try (InputStream in = RuntimeClassProvider.BOOTSTRAP_LOADER.getResourceAsStream(internalName + ".class")) {
+                return in == null ? null : JarClassProvider.readAll(in, 0);
+            }
+        }
+
+        int lastSlash = internalName.lastIndexOf('/');
+        String[] modules = this.packageModules.get(lastSlash == -1 ? "" : internalName.substring(0, lastSlash));
+        if (modules == null) {
+            return null;
+        }
+        for (String module : modules) {
+            try {
+                return Files.readAllBytes(jrt.getPath("/modules", module, internalName + ".class"));
+            } catch (NoSuchFileException ignored) {
+                // Split packages are not permitted within the JDK, but there is no harm in checking the other modules
+            }
+        }
+        return null;
+    }
+
+    @Contract(pure = false)
+    private void initialize() throws IOException {
+        FileSystem jrt;
+        try {
+            jrt = FileSystems.getFileSystem(URI.create("jrt:/"));
+        } catch (FileSystemNotFoundException | IllegalArgumentException e) {
+            return; // Java 8 - fall back to the class loader
+        }
+        Map<@NotNull String, @NotNull String @NotNull[]> packageModules = new HashMap<>();
+        try (DirectoryStream<Path> packages = Files.newDirectoryStream(jrt.getPath("/packages"))) {
+            for (Path packagePath : packages) {
+                String packageName = packagePath.getFileName().toString().replace('.', '/');
+                try (DirectoryStream<Path> modules = Files.newDirectoryStream(packagePath)) {
+                    for (Path modulePath : modules) {
+                        String module = modulePath.getFileName().toString();
+                        packageModules.merge(packageName, new String[] {module}, (a, b) -> {
+                            String[] merged = new String[a.length + b.length];
+                            System.arraycopy(a, 0, merged, 0, a.length);
+                            System.arraycopy(b, 0, merged, a.length, b.length);
+                            return merged;
+                        });
+                    }
+                }
+            }
+        }
+        this.packageModules.putAll(packageModules);
+        this.jrt = jrt;
+    }
+}
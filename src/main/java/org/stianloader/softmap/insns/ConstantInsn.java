@@ -0,0 +1,374 @@
+package org.stianloader.softmap.insns;
+
+import java.util.List;
+
+import org.jetbrains.annotations.CheckReturnValue;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.IntInsnNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.stianloader.softmap.FramedRemapper;
+import org.stianloader.softmap.SoftmapParseError;
+import org.stianloader.softmap.tokens.StringToken;
+
+/**
+ * An instruction block matching instructions which push a constant onto the operand stack,
+ * that is <code>LDC</code>, <code>BIPUSH</code> and <code>SIPUSH</code>.
+ *
+ * <p><code>BIPUSH</code> and <code>SIPUSH</code> accept an integer operand, e.g. <code>BIPUSH -12</code>.
+ * <code>LDC</code> accepts the following constants:
+ * <ul>
+ *  <li>Strings, written as java string literals, e.g. <code>LDC "Hello world"</code>. Java escape sequences are supported.
+ *  Whitespace within a string literal is read as spaces (use escape sequences such as <code>\t</code> for other whitespace),
+ *  and as '{', '}' and comments are processed before the string literal, they should be escaped via unicode escapes.</li>
+ *  <li>Numbers, written as java number literals, e.g. <code>LDC 100000</code>, <code>LDC 1L</code>,
+ *  <code>LDC 0.5F</code> or <code>LDC 2.5</code>.</li>
+ *  <li>Class literals, written as descriptors, e.g. <code>LDC Ljava/lang/String;</code>.
+ *  Similar to other references of classes, the class name is compared to the mapped name of the class
+ *  and suffixing the descriptor with '?' requests the class to be mapped.</li>
+ * </ul>
+ * Omitting the operand altogether causes the operand to not be compared.
+ */
+public final class ConstantInsn implements InsnBlock {
+
+    private static final class Parser implements InsnParser<ConstantInsn> {
+        private final int opcode;
+
+        private Parser(int opcode) {
+            this.opcode = opcode;
+        }
+
+        @Override
+        @NotNull
+        @Contract(pure = true)
+        public ConstantInsn parseInstruction(@NotNull List<@NotNull StringToken> lineContents, @NotNull List<@NotNull SoftmapParseError> errorStream) {
+            StringToken opcodeToken = lineContents.get(0);
+            if (lineContents.size() == 1) {
+                return new ConstantInsn(this.opcode, opcodeToken, null, null, null, false);
+            }
+
+            StringToken constantToken = lineContents.get(1);
+            if (this.opcode != Opcodes.LDC || constantToken.codepointAt(0) != '"') {
+                if (lineContents.size() > 2) {
+                    StringToken firstSuperflous = lineContents.get(2);
+                    StringToken last = lineContents.get(lineContents.size() - 1);
+                    errorStream.add(new SoftmapParseError(firstSuperflous.getStart(), last.getEnd(), firstSuperflous.getRow(), firstSuperflous.getColumn(), "Constant instruction provided with superflous arguments, it is formatted in the scheme of '<opcode> <constant>'."));
+                }
+            }
+
+            if (this.opcode != Opcodes.LDC) {
+                int value;
+                try {
+                    value = Integer.decode(constantToken.getText());
+                } catch (NumberFormatException e) {
+                    errorStream.add(new SoftmapParseError(constantToken, "Unattainable operand: Operand is not a valid integer."));
+                    return new ConstantInsn(this.opcode, opcodeToken, null, null, null, false);
+                }
+                if (this.opcode == Opcodes.BIPUSH ? (value != (byte) value) : (value != (short) value)) {
+                    errorStream.add(new SoftmapParseError(constantToken, "Unattainable operand: Operand " + value + " is out of range for the opcode."));
+                    return new ConstantInsn(this.opcode, opcodeToken, null, null, null, false);
+                }
+                return new ConstantInsn(this.opcode, opcodeToken, constantToken, value, null, false);
+            }
+
+            int leadingCodepoint = constantToken.codepointAt(0);
+            if (leadingCodepoint == '"') {
+                // String literals may contain whitespace, which the tokenizer uses as a separator
+                StringBuilder literal = new StringBuilder(constantToken.getText());
+                for (int i = 2; i < lineContents.size(); i++) {
+                    StringToken previous = lineContents.get(i - 1);
+                    StringToken next = lineContents.get(i);
+                    for (int j = previous.getEnd(); j < next.getStart(); j++) {
+                        literal.append(' ');
+                    }
+                    literal.append(next.getText());
+                }
+                String value = ConstantInsn.unescapeString(literal, constantToken, errorStream);
+                if (value == null) {
+                    return new ConstantInsn(this.opcode, opcodeToken, null, null, null, false);
+                }
+                return new ConstantInsn(this.opcode, opcodeToken, constantToken, value, null, false);
+            } else if (leadingCodepoint == 'L' || leadingCodepoint == '[') {
+                boolean mapType = constantToken.lastCodepoint() == '?';
+                String desc = mapType ? constantToken.subtext(0, constantToken.getContentLength() - 1) : constantToken.getText();
+                Type type;
+                try {
+                    type = Type.getType(desc);
+                } catch (RuntimeException e) {
+                    type = null;
+                }
+                if (type == null || !type.getDescriptor().equals(desc)) {
+                    errorStream.add(new SoftmapParseError(constantToken, "Malformed constant instruction: Malformed class literal: Class literals are written as descriptors, e.g. 'Ljava/lang/String;'."));
+                    return new ConstantInsn(this.opcode, opcodeToken, null, null, null, false);
+                }
+                Type elementType = type.getSort() == Type.ARRAY ? type.getElementType() : type;
+                if (elementType.getSort() != Type.OBJECT) {
+                    if (mapType) {
+                        errorStream.add(new SoftmapParseError(constantToken, "Malformed constant instruction: Illegal attempt at mapping a primitive."));
+                    }
+                    return new ConstantInsn(this.opcode, opcodeToken, constantToken, type, null, false);
+                }
+                if (desc.indexOf('.') != -1) {
+                    errorStream.add(new SoftmapParseError(constantToken, "Malformed constant instruction: Malformed class literal: Illegal codepoint '.', use forward slashes ('/') to separate packages."));
+                }
+                return new ConstantInsn(this.opcode, opcodeToken, constantToken, type, elementType.getInternalName(), mapType);
+            }
+
+            Object value = ConstantInsn.parseNumber(constantToken.getText());
+            if (value == null) {
+                errorStream.add(new SoftmapParseError(constantToken, "Malformed constant instruction: The constant is neither a string literal, a number nor a class literal."));
+                return new ConstantInsn(this.opcode, opcodeToken, null, null, null, false);
+            }
+            return new ConstantInsn(this.opcode, opcodeToken, constantToken, value, null, false);
+        }
+    }
+
+    @NotNull
+    public static final InsnParser<ConstantInsn> PARSER_BIPUSH = new Parser(Opcodes.BIPUSH);
+    @NotNull
+    public static final InsnParser<ConstantInsn> PARSER_LDC = new Parser(Opcodes.LDC);
+    @NotNull
+    public static final InsnParser<ConstantInsn> PARSER_SIPUSH = new Parser(Opcodes.SIPUSH);
+
+    /**
+     * Parses a java number literal. Integer literals may be written in decimal, hexadecimal or octal notation
+     * and are of type long if suffixed by 'L', floating point literals are of type float if suffixed by 'F'
+     * and of type double otherwise.
+     *
+     * @param text The literal.
+     * @return The boxed value of the literal, or null if the text is not a number literal.
+     */
+    @Nullable
+    @Contract(pure = true)
+    private static Object parseNumber(@NotNull String text) {
+        if (text.isEmpty()) {
+            return null;
+        }
+        String digits = text.codePointAt(0) == '-' ? text.substring(1) : text;
+        boolean hex = digits.startsWith("0x") || digits.startsWith("0X");
+        char suffix = Character.toUpperCase(text.charAt(text.length() - 1));
+        String body = text.substring(0, text.length() - 1);
+        try {
+            if (suffix == 'L') {
+                return Long.decode(body);
+            } else if (hex) {
+                return Integer.decode(text);
+            } else if (suffix == 'F') {
+                return Float.parseFloat(body);
+            } else if (suffix == 'D') {
+                return Double.parseDouble(body);
+            } else if (text.indexOf('.') != -1 || text.indexOf('e') != -1 || text.indexOf('E') != -1) {
+                return Double.parseDouble(text);
+            } else {
+                return Integer.decode(text);
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Nullable
+    @Contract(pure = false, mutates = "param3")
+    private static String unescapeString(@NotNull CharSequence literal, @NotNull StringToken location, @NotNull List<@NotNull SoftmapParseError> errorStream) {
+        int length = literal.length();
+        if (length < 2 || literal.charAt(length - 1) != '"') {
+            errorStream.add(new SoftmapParseError(location, "Malformed constant instruction: Unterminated string literal."));
+            return null;
+        }
+        StringBuilder value = new StringBuilder(length - 2);
+        for (int i = 1; i < length - 1; i++) {
+            char c = literal.charAt(i);
+            if (c == '"') {
+                errorStream.add(new SoftmapParseError(location, "Malformed constant instruction: Unescaped '\"' within string literal."));
+                return null;
+            } else if (c != '\\') {
+                value.append(c);
+                continue;
+            } else if (i + 1 == length - 1) {
+                errorStream.add(new SoftmapParseError(location, "Malformed constant instruction: Unterminated string literal (the closing '\"' is escaped)."));
+                return null;
+            }
+            c = literal.charAt(++i);
+            switch (c) {
+            case 'b':
+                value.append('\b');
+                break;
+            case 'f':
+                value.append('\f');
+                break;
+            case 'n':
+                value.append('\n');
+                break;
+            case 'r':
+                value.append('\r');
+                break;
+            case 's':
+                value.append(' ');
+                break;
+            case 't':
+                value.append('\t');
+                break;
+            case '"':
+            case '\'':
+            case '\\':
+                value.append(c);
+                break;
+            case 'u':
+                if (i + 5 > length - 1) {
+                    errorStream.add(new SoftmapParseError(location, "Malformed constant instruction: Incomplete unicode escape within string literal."));
+                    return null;
+                }
+                try {
+                    value.append((char) Integer.parseInt(literal.subSequence(i + 1, i + 5).toString(), 16));
+                } catch (NumberFormatException e) {
+                    errorStream.add(new SoftmapParseError(location, "Malformed constant instruction: Invalid unicode escape within string literal."));
+                    return null;
+                }
+                i += 4;
+                break;
+            default:
+                errorStream.add(new SoftmapParseError(location, "Malformed constant instruction: Unknown escape sequence '\\" + c + "' within string literal."));
+                return null;
+            }
+        }
+        return value.toString();
+    }
+
+    /**
+     * The constant to match, null if the operand should not be compared.
+     * For LDC instructions this is the boxed value the instruction loads (as per {@link LdcInsnNode#cst}),
+     * for BIPUSH and SIPUSH this is the boxed integer operand.
+     */
+    @Nullable
+    private final Object constant;
+
+    @Nullable
+    private final StringToken constantToken;
+
+    /**
+     * The mapped name of the class (or array element class) of class literals, null if the constant is not a class literal
+     * or the class literal refers to a primitive (array).
+     */
+    @Nullable
+    private final String mappedClassName;
+
+    private final boolean mapClass;
+
+    private final int opcode;
+
+    @NotNull
+    private final StringToken opcodeToken;
+
+    private ConstantInsn(int opcode, @NotNull StringToken opcodeToken, @Nullable StringToken constantToken, @Nullable Object constant, @Nullable String mappedClassName, boolean mapClass) {
+        this.opcode = opcode;
+        this.opcodeToken = opcodeToken;
+        this.constantToken = constantToken;
+        this.constant = constant;
+        this.mappedClassName = mappedClassName;
+        this.mapClass = mapClass;
+    }
+
+    /**
+     * Obtains the constant this block matches, null if any constant is matched.
+     * Class literals are represented as {@link Type}, where the class name is the mapped name of the class.
+     *
+     * @return The constant.
+     */
+    @Nullable
+    @Contract(pure = true)
+    public Object getConstant() {
+        return this.constant;
+    }
+
+    /**
+     * Obtains the token of the constant, which is the first token of the constant should it span multiple tokens.
+     *
+     * @return The constant token, or null if any constant is matched.
+     */
+    @Nullable
+    @Contract(pure = true)
+    public StringToken getConstantToken() {
+        return this.constantToken;
+    }
+
+    @Override
+    @Contract(pure = true)
+    public int getOpcode() {
+        return this.opcode;
+    }
+
+    /**
+     * Checks whether the constant is a class literal whose class name is compared against the mapped name of the class
+     * (or should be mapped) instead of being compared as-is.
+     *
+     * @return True if this block matches a class literal that refers to a class.
+     */
+    @Contract(pure = true)
+    public boolean isClassReference() {
+        return this.mappedClassName != null;
+    }
+
+    @Override
+    @Contract(pure = false, mutates = "param2")
+    @CheckReturnValue
+    @NotNull
+    public MatchResult matchesInstruction(@NotNull AbstractInsnNode insn, @NotNull FramedRemapper remapper) {
+        if (insn.getOpcode() != this.opcode) {
+            return new MatchResult("Instruction opcode mismatch", this.opcodeToken);
+        }
+
+        StringToken constantToken = this.constantToken;
+        if (constantToken == null) {
+            return MatchResult.RESULT_BREAK;
+        }
+
+        if (this.opcode != Opcodes.LDC) {
+            int operand = ((IntInsnNode) insn).operand;
+            if (!Integer.valueOf(operand).equals(this.constant)) {
+                return new MatchResult("Operand mismatch (got " + operand + ')', constantToken);
+            }
+            return MatchResult.RESULT_BREAK;
+        }
+
+        Object cst = ((LdcInsnNode) insn).cst;
+        String mappedClassName = this.mappedClassName;
+        if (mappedClassName == null) {
+            if (!cst.equals(this.constant)) {
+                return new MatchResult("Constant mismatch (got " + cst + " of type " + cst.getClass().getSimpleName() + ')', constantToken);
+            }
+            return MatchResult.RESULT_BREAK;
+        }
+
+        Type expectedType = (Type) this.constant;
+        if (!(cst instanceof Type)) {
+            return new MatchResult("Constant mismatch (got " + cst + " of type " + cst.getClass().getSimpleName() + ", expected a class literal)", constantToken);
+        }
+        Type type = (Type) cst;
+        if (type.getSort() != expectedType.getSort()
+                || (type.getSort() == Type.ARRAY && (type.getDimensions() != expectedType.getDimensions() || type.getElementType().getSort() != Type.OBJECT))) {
+            return new MatchResult("Class literal mismatch (got " + type.getDescriptor() + ')', constantToken);
+        }
+
+        String srcName = (type.getSort() == Type.ARRAY ? type.getElementType() : type).getInternalName();
+        String dstName = remapper.getMappedClassOpt(srcName);
+        if (!this.mapClass) {
+            if (!mappedClassName.equals(dstName)) {
+                return new MatchResult("Class literal mismatch (explicit match, srcName: '" + srcName + "', dstName: '" + dstName + "')", constantToken);
+            }
+        } else if (srcName.equals(dstName)) {
+            String collidingName = remapper.getSourceClass(mappedClassName);
+            if (collidingName != null && !collidingName.equals(srcName)) {
+                return new MatchResult("Class literal mismatch (mapping match; destination collision. srcName: '" + srcName + "', dstName already used by: '" + collidingName + "')", constantToken);
+            }
+            remapper.mapClass(srcName, mappedClassName);
+        } else if (!mappedClassName.equals(dstName)) {
+            return new MatchResult("Class literal mismatch (mapping match; mapping collision. srcName: '" + srcName + "', dstName: '" + dstName + "')", constantToken);
+        }
+
+        return MatchResult.RESULT_BREAK;
+    }
+}
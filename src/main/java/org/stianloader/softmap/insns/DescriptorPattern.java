@@ -0,0 +1,232 @@
+package org.stianloader.softmap.insns;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.stianloader.softmap.FramedRemapper;
+import org.stianloader.softmap.tokens.StringToken;
+
+/**
+ * A method descriptor of an expression which may contain class mapping requests, decoded once so that it can be
+ * matched against the descriptors of many methods without re-reading the token or allocating intermediary strings.
+ *
+ * <p>The codepoints of the descriptor along with the position of the next ';' of every codepoint are stored in arrays.
+ * The class names referred to by the descriptor are cut out of the token the first time they are needed and reused afterwards.
+ * The descriptors of the matched methods are walked in-place, only the names of referenced classes are extracted
+ * as they need to be passed to the remapper.
+ */
+public final class DescriptorPattern {
+
+    /**
+     * The class names within the descriptor, indexed by the offset of their first codepoint. Computed lazily.
+     */
+    @Nullable
+    private final String @NotNull[] classNames;
+
+    private final int @NotNull[] codepoints;
+
+    /**
+     * The offset of the last ')' within the descriptor, -1 if there is none.
+     */
+    private final int lastParenthesis;
+
+    /**
+     * The offset of the first ';' at or after each offset, -1 if there is none.
+     * Contains an additional element for the offset equal to the length of the descriptor.
+     */
+    private final int @NotNull[] semicolons;
+
+    @NotNull
+    private final StringToken token;
+
+    public DescriptorPattern(@NotNull StringToken token) {
+        this.token = token;
+        String text = token.getText();
+        int length = text.length();
+        this.codepoints = new int[length];
+        for (int i = 0; i < length; i++) {
+            this.codepoints[i] = text.codePointAt(i);
+        }
+        this.semicolons = new int[length + 1];
+        int semicolon = -1;
+        for (int i = length; i >= 0; i--) {
+            if (i != length && text.charAt(i) == ';') {
+                semicolon = i;
+            }
+            this.semicolons[i] = semicolon;
+        }
+        this.lastParenthesis = text.lastIndexOf(')');
+        this.classNames = new String[length];
+    }
+
+    /**
+     * Obtains the offset of the end of the next argument type within a method descriptor.
+     *
+     * @param methodDesc The method descriptor.
+     * @param start The offset of the first codepoint of the argument type.
+     * @return The offset right after the argument type.
+     */
+    @Contract(pure = true)
+    private static int getTypeEnd(@NotNull String methodDesc, int start) {
+        int elementStart = start;
+        while (methodDesc.charAt(elementStart) == '[') {
+            elementStart++;
+        }
+        if (methodDesc.charAt(elementStart) == 'L') {
+            return methodDesc.indexOf(';', start) + 1;
+        }
+        return elementStart + 1;
+    }
+
+    @NotNull
+    @Contract(pure = false)
+    private String getClassName(int start, int end) {
+        String className = this.classNames[start];
+        if (className == null) {
+            this.classNames[start] = className = this.token.subtext(start, end);
+        }
+        return className;
+    }
+
+    @Contract(pure = true)
+    private int getCodepoint(int index) {
+        if (index < 0 || index >= this.codepoints.length) {
+            // Same exception as StringToken#codepointAt(int)
+            return this.token.codepointAt(index);
+        }
+        return this.codepoints[index];
+    }
+
+    @Contract(pure = true)
+    private int getNextSemicolon(int fromIndex) {
+        return fromIndex < this.semicolons.length ? this.semicolons[fromIndex] : -1;
+    }
+
+    @NotNull
+    @Contract(pure = true)
+    public StringToken getToken() {
+        return this.token;
+    }
+
+    /**
+     * Matches the descriptor against the descriptor of a method, applying the class mapping requests of the descriptor
+     * to the remapper.
+     *
+     * @param methodDesc The descriptor of the method.
+     * @param remapper The remapper to apply mappings to.
+     * @return The reason why the descriptors do not match, or null if they match.
+     */
+    @Nullable
+    @Contract(pure = false, mutates = "param2")
+    public MatchResult mapDescriptor(@NotNull String methodDesc, @NotNull FramedRemapper remapper) {
+        return this.walkDescriptor(methodDesc, remapper);
+    }
+
+    /**
+     * Checks whether {@link #mapDescriptor(String, FramedRemapper)} could succeed for the given descriptor
+     * under any mappings, see {@link InvokeInsn#matchesDescriptorShape(StringToken, String)}.
+     *
+     * @param methodDesc The descriptor of the method.
+     * @return True if the descriptor could be matched, false if it never can.
+     */
+    @Contract(pure = false)
+    public boolean matchesShape(@NotNull String methodDesc) {
+        try {
+            return this.walkDescriptor(methodDesc, null) == null;
+        } catch (IndexOutOfBoundsException e) {
+            // mapDescriptor would either fail or throw the same exception, so we cannot rule out the descriptor
+            return true;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DescriptorPattern[" + this.token.getText() + ']';
+    }
+
+    @Nullable
+    @Contract(pure = false)
+    private MatchResult walkDescriptor(@NotNull String methodDesc, @Nullable FramedRemapper remapper) {
+        StringToken methodDescToken = this.token;
+        int head = 1;
+        int headCodepoint = this.getCodepoint(head);
+        int argumentsEnd = methodDesc.lastIndexOf(')');
+        int typeEnd = 1;
+        while (headCodepoint != ')') {
+            if (typeEnd == argumentsEnd) {
+                return new MatchResult("Method descriptor mismatch (Argument count mismatch, descriptor of matched method: '" + methodDesc + "')", methodDescToken);
+            }
+            int typeStart = typeEnd;
+            typeEnd = DescriptorPattern.getTypeEnd(methodDesc, typeStart);
+            if (methodDesc.codePointAt(typeStart) != headCodepoint) {
+                return new MatchResult("Method descriptor mismatch (Argument type mismatch [different computational type]; descriptor of matched method: '" + methodDesc + "', discrepancy starting from column " + (methodDescToken.getStart() + head) + ")", methodDescToken);
+            }
+
+            headCodepoint = this.getCodepoint(++head);
+            // verify array depth
+            int arraydepth = 0;
+            if (methodDesc.charAt(typeStart) == '[') {
+                while (headCodepoint == '[') {
+                    arraydepth++;
+                    headCodepoint = this.getCodepoint(++head);
+                }
+                if (typeEnd - typeStart < arraydepth + 2
+                        || methodDesc.charAt(typeStart + arraydepth) != '['
+                        || methodDesc.charAt(typeStart + arraydepth + 1) == '[') {
+                    return new MatchResult("Method descriptor mismatch (Argument type mismatch [different array depth]; descriptor of matched method: '" + methodDesc + "', discrepancy is around column " + (methodDescToken.getStart() + head) + ")", methodDescToken);
+                }
+                arraydepth += 1;
+            }
+
+            int elementCodepoint = methodDesc.codePointAt(typeStart + arraydepth);
+            if (headCodepoint != elementCodepoint) {
+                return new MatchResult("Method descriptor mismatch (Argument type mismatch [different computational types once skipping arrays]; descriptor of matched method: '" + methodDesc + "', discrepancy starting from column " + (methodDescToken.getStart() + head) + ")", methodDescToken);
+            }
+
+            if (headCodepoint != 'L') {
+                // primitive (array)
+                headCodepoint = this.getCodepoint(++head);
+                if (headCodepoint == '?') {
+                    // tried to map primitive (array), which is silently ignored
+                    headCodepoint = this.getCodepoint(++head);
+                }
+            } else {
+                // object (array)
+                int lookaheadIndex = this.getNextSemicolon(++head);
+                if (lookaheadIndex == -1 || this.lastParenthesis < lookaheadIndex) {
+                    return new MatchResult("Invalidly parsed invoke instruction: Invalid method descriptor: Missing closing ';' after start of 'L'-type reference", methodDescToken);
+                }
+
+                if (remapper == null) {
+                    continue; // Only the shape of the descriptor is compared
+                }
+
+                String srcClass = methodDesc.substring(typeStart + arraydepth + 1, typeEnd - 1);
+                String dstClass = remapper.getMappedClassOpt(srcClass);
+                String className = this.getClassName(head, lookaheadIndex);
+
+                if (this.getCodepoint(lookaheadIndex + 1) == '?') {
+                    // Mapping match
+                    if (!srcClass.equals(dstClass)) {
+                        if (!className.equals(dstClass)) {
+                            return new MatchResult("Method descriptor mismatch (mapping match; mapping collision. srcType: '" + srcClass + "', dstType: '" + dstClass + "', full (src) method descriptor of matched method: '" + methodDesc + "'. Discrepancy arises between column " + (head + methodDescToken.getColumn()) + " and " + (lookaheadIndex + methodDescToken.getColumn()) + ")", methodDescToken);
+                        }
+                    } else {
+                        String collidingClass = remapper.getSourceClass(className);
+                        if (collidingClass != null && !collidingClass.equals(srcClass)) {
+                            return new MatchResult("Method descriptor mismatch (mapping match; destination collision. srcType: '" + srcClass + "', dstType already used by: '" + collidingClass + "', full (src) method descriptor of matched method: '" + methodDesc + "'. Discrepancy arises between column " + (head + methodDescToken.getColumn()) + " and " + (lookaheadIndex + methodDescToken.getColumn()) + ")", methodDescToken);
+                        }
+                        remapper.mapClass(srcClass, className);
+                    }
+                } else {
+                    // Explicit match
+                    if (!className.equals(dstClass)) {
+                        return new MatchResult("Method descriptor mismatch (explicit match. srcType: '" + srcClass + "', dstType: '" + dstClass + "', full (src) method descriptor of matched method: '" + methodDesc + "'. Discrepancy arises between column " + (head + methodDescToken.getColumn()) + " and " + (lookaheadIndex + methodDescToken.getColumn()) + ")", methodDescToken);
+                    }
+                }
+            }
+        }
+
+        return null;
+    }
+}
@@ -1,7 +1,9 @@
 package org.stianloader.softmap.insns;
 
 import java.util.List;
+import java.util.Objects;
 
+import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.Opcodes;
@@ -110,10 +112,36 @@ public final class FieldInsn implements InsnBlock {
     public static final InsnParser<FieldInsn> PARSER_PUTSTATIC = new Parser(Opcodes.PUTSTATIC);
     @Nullable
     private final StringToken fieldDesc;
+    /**
+     * The array depth of the descriptor, only computed for descriptors containing a mapping request.
+     */
+    private final int fieldDescArrayDepth;
+    /**
+     * The type of the descriptor once skipping arrays, only computed for descriptors containing a mapping request.
+     */
+    private final int fieldDescElementType;
+    /**
+     * The explicit descriptor, or the class name the descriptor requests a mapping to.
+     */
+    @Nullable
+    private final String fieldDescText;
     @Nullable
     private final StringToken fieldName;
+    /**
+     * The explicit name, or the name the field is requested to be mapped to.
+     */
+    @Nullable
+    private final String fieldNameText;
     @Nullable
     private final StringToken fieldOwner;
+    /**
+     * The explicit owner, or the name the owner is requested to be mapped to.
+     */
+    @Nullable
+    private final String fieldOwnerText;
+    private final boolean mapFieldDesc;
+    private final boolean mapFieldName;
+    private final boolean mapFieldOwner;
     private final int matchOpcode;
 
     @NotNull
@@ -125,6 +153,80 @@ public final class FieldInsn implements InsnBlock {
         this.fieldOwner = fieldOwner;
         this.fieldName = fieldName;
         this.fieldDesc = fieldDesc;
+
+        // The operands are decoded once so that matching instructions does not need to re-read the tokens
+        this.mapFieldOwner = FieldInsn.isMappingRequest(fieldOwner);
+        this.fieldOwnerText = FieldInsn.getMatchedText(fieldOwner, this.mapFieldOwner);
+        this.mapFieldName = FieldInsn.isMappingRequest(fieldName);
+        this.fieldNameText = FieldInsn.getMatchedText(fieldName, this.mapFieldName);
+        this.mapFieldDesc = FieldInsn.isMappingRequest(fieldDesc);
+        if (fieldDesc != null && this.mapFieldDesc) {
+            int arrayDepth = 0;
+            while (fieldDesc.codepointAt(arrayDepth) == '[') arrayDepth++;
+            this.fieldDescArrayDepth = arrayDepth;
+            this.fieldDescElementType = fieldDesc.codepointAt(arrayDepth);
+            // 1 for semicolon, 1 for ?
+            this.fieldDescText = this.fieldDescElementType == 'L' ? fieldDesc.subtext(arrayDepth + 1, fieldDesc.getContentLength() - 2) : null;
+        } else {
+            this.fieldDescArrayDepth = 0;
+            this.fieldDescElementType = 0;
+            this.fieldDescText = fieldDesc == null ? null : fieldDesc.getText();
+        }
+    }
+
+    @Nullable
+    @Contract(pure = true, value = "null, _ -> null; !null, _ -> !null")
+    private static String getMatchedText(@Nullable StringToken token, boolean mappingRequest) {
+        if (token == null) {
+            return null;
+        }
+        return mappingRequest ? token.subtext(0, token.getContentLength() - 1) : token.getText();
+    }
+
+    @Contract(pure = true)
+    private static boolean isMappingRequest(@Nullable StringToken token) {
+        return token != null && token.codepointBefore(token.getContentLength()) == '?';
+    }
+
+    /**
+     * Obtains the descriptor of the field as written in the expression, including the trailing '?' of mapping requests.
+     *
+     * @return The field descriptor token, or null if the descriptor is not matched.
+     */
+    @Nullable
+    @Contract(pure = true)
+    public StringToken getFieldDesc() {
+        return this.fieldDesc;
+    }
+
+    /**
+     * Obtains the name of the field as written in the expression, including the trailing '?' of mapping requests.
+     * Explicit names are compared against the name used in the instruction, not against the mapped name.
+     *
+     * @return The field name token, or null if the name is not matched.
+     */
+    @Nullable
+    @Contract(pure = true)
+    public StringToken getFieldName() {
+        return this.fieldName;
+    }
+
+    /**
+     * Obtains the owner of the field as written in the expression, including the trailing '?' of mapping requests.
+     * Explicit owners are compared against the owner used in the instruction, not against the mapped owner.
+     *
+     * @return The field owner token, or null if the owner is not matched.
+     */
+    @Nullable
+    @Contract(pure = true)
+    public StringToken getFieldOwner() {
+        return this.fieldOwner;
+    }
+
+    @Override
+    @Contract(pure = true)
+    public int getOpcode() {
+        return this.matchOpcode;
     }
 
     @Override
@@ -138,37 +240,36 @@ public final class FieldInsn implements InsnBlock {
 
         StringToken fieldOwner = this.fieldOwner;
         if (fieldOwner != null
-                && fieldOwner.codepointBefore(fieldOwner.getContentLength()) != '?'
-                && !fieldOwner.contentMatches(fInsn.owner)) {
+                && !this.mapFieldOwner
+                && !Objects.requireNonNull(this.fieldOwnerText).equals(fInsn.owner)) {
             return new MatchResult("Field owner mismatch (got " + fInsn.owner + ')', fieldOwner);
         }
 
         StringToken fieldName = this.fieldName;
         if (fieldName != null
-                && fieldName.codepointBefore(fieldName.getContentLength()) != '?'
-                && !fieldName.contentMatches(fInsn.name)) {
+                && !this.mapFieldName
+                && !Objects.requireNonNull(this.fieldNameText).equals(fInsn.name)) {
             return new MatchResult("Field name mismatch (got " + fInsn.name + ')', fieldName);
         }
 
         StringToken fieldDesc = this.fieldDesc;
         if (fieldDesc != null) {
-            if (fieldDesc.codepointBefore(fieldDesc.getContentLength()) != '?') {
-                if (!fieldDesc.contentMatches(fInsn.desc)) {
+            if (!this.mapFieldDesc) {
+                if (!Objects.requireNonNull(this.fieldDescText).equals(fInsn.desc)) {
                     return new MatchResult("Field descriptor mismatch (got " + fInsn.desc + ')', fieldDesc);
                 }
             } else {
-                int srcArrayDepth = 0;
-                while (fieldDesc.codepointAt(srcArrayDepth) == '[') srcArrayDepth++;
+                int srcArrayDepth = this.fieldDescArrayDepth;
                 int dstArrayDepth = 0;
                 while (fInsn.desc.codePointAt(dstArrayDepth) == '[') dstArrayDepth++;
                 if (srcArrayDepth != dstArrayDepth) {
                     return new MatchResult("Field descriptor array depth mismatch (got " + fInsn.desc + ')', fieldDesc);
                 }
-                if (fieldDesc.codepointAt(srcArrayDepth) != fInsn.desc.codePointAt(srcArrayDepth)) {
+                if (this.fieldDescElementType != fInsn.desc.codePointAt(srcArrayDepth)) {
                     return new MatchResult("Field descriptor computation type mismatch (got " + fInsn.desc + ')', fieldDesc);
                 }
-                if (fieldDesc.codepointAt(srcArrayDepth) == 'L') {
-                    String mappedName = fieldDesc.subtext(srcArrayDepth + 1, fieldDesc.getContentLength() - 2); // 1 for semicolon, 1 for ?
+                if (this.fieldDescElementType == 'L') {
+                    String mappedName = Objects.requireNonNull(this.fieldDescText);
                     String srcName  = fInsn.desc.substring(srcArrayDepth + 1, fInsn.desc.length() - 1);
                     String dstName = remapper.getMappedClassOpt(srcName);
                     if (!srcName.equals(dstName)) {
@@ -176,29 +277,43 @@ public final class FieldInsn implements InsnBlock {
                             return new MatchResult("Descriptor mismatch (mapping match; mapping collision. srcName: '" + srcName + "', dstName: '" + dstName + "')", fieldDesc);
                         }
                     } else {
+                        String collidingName = remapper.getSourceClass(mappedName);
+                        if (collidingName != null && !collidingName.equals(srcName)) {
+                            return new MatchResult("Descriptor mismatch (mapping match; destination collision. srcName: '" + srcName + "', dstName already used by: '" + collidingName + "')", fieldDesc);
+                        }
                         remapper.mapClass(srcName, mappedName);
                     }
                 }
             }
         }
 
-        if (fieldOwner != null && fieldOwner.codepointBefore(fieldOwner.getContentLength()) == '?') {
+        if (fieldOwner != null && this.mapFieldOwner) {
             String srcName = fInsn.owner;
             String dstName = remapper.getMappedClassOpt(srcName);
+            String mappedName = Objects.requireNonNull(this.fieldOwnerText);
             if (srcName.equals(dstName)) {
-                remapper.mapClass(srcName, fieldOwner.subtext(0, fieldOwner.getContentLength() - 1));
-            } else if (!dstName.equals(fieldOwner.subtext(0, fieldOwner.getContentLength() - 1))) {
+                String collidingName = remapper.getSourceClass(mappedName);
+                if (collidingName != null && !collidingName.equals(srcName)) {
+                    return new MatchResult("Owner mismatch (mapping match; destination collision. srcName: '" + srcName + "', dstName already used by: '" + collidingName + "')", fieldOwner);
+                }
+                remapper.mapClass(srcName, mappedName);
+            } else if (!dstName.equals(mappedName)) {
                 return new MatchResult("Owner mismatch (mapping match; mapping collision. srcName: '" + srcName + "', dstName: '" + dstName + "')", fieldOwner);
             }
         }
 
-        if (fieldName != null && fieldName.codepointBefore(fieldName.getContentLength()) == '?') {
+        if (fieldName != null && this.mapFieldName) {
             String srcName = fInsn.name;
             String dstName = remapper.getMappedFieldOpt(fInsn.owner, srcName, fInsn.desc);
+            String mappedName = Objects.requireNonNull(this.fieldNameText);
 
             if (srcName.equals(dstName)) {
-                remapper.mapField(fInsn.owner, srcName, fInsn.desc, fieldName.subtext(0, fieldName.getContentLength() - 1));
-            } else if (!dstName.equals(fieldName.subtext(0, fieldName.getContentLength() - 1))) {
+                String collidingName = remapper.getSourceField(fInsn.owner, mappedName, fInsn.desc);
+                if (collidingName != null && !collidingName.equals(srcName)) {
+                    return new MatchResult("Field name mismatch (mapping match; destination collision. srcName: '" + srcName + "', dstName already used by: '" + collidingName + "')", fieldName);
+                }
+                remapper.mapField(fInsn.owner, srcName, fInsn.desc, mappedName);
+            } else if (!dstName.equals(mappedName)) {
                 return new MatchResult("Field name mismatch (mapping match; mapping collision. srcName: '" + srcName + "', dstName: '" + dstName + "')", fieldName);
             }
         }
@@ -7,6 +7,22 @@ import org.objectweb.asm.tree.AbstractInsnNode;
 import org.stianloader.softmap.FramedRemapper;
 
 public interface InsnBlock {
+    /**
+     * Obtains the opcode of the instructions this block is able to match, regardless of the operands of the instructions.
+     * Blocks that are able to match instructions with differing opcodes (as is the case with wildcards)
+     * or blocks that cannot tell which opcode they match must return -1.
+     *
+     * <p>This information is used to cheaply discard methods which cannot be matched by an expression
+     * before actually evaluating the expression, as well as to skip instructions consumed by wildcards.
+     * As such, blocks returning an opcode must never match instructions with a different opcode.
+     *
+     * @return The opcode matched by this block, or -1 if unknown.
+     */
+    @Contract(pure = true)
+    default int getOpcode() {
+        return -1;
+    }
+
     @Contract(pure = false, mutates = "param2")
     @CheckReturnValue
     @NotNull
@@ -1,6 +1,7 @@
 package org.stianloader.softmap.insns;
 
 import java.util.List;
+import java.util.Objects;
 
 import org.jetbrains.annotations.CheckReturnValue;
 import org.jetbrains.annotations.Contract;
@@ -9,7 +10,6 @@ import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.AbstractInsnNode;
 import org.objectweb.asm.tree.MethodInsnNode;
-import org.stianloader.softmap.DescString;
 import org.stianloader.softmap.FramedRemapper;
 import org.stianloader.softmap.SoftmapParseError;
 import org.stianloader.softmap.tokens.StringToken;
@@ -29,10 +29,24 @@ public class InvokeInsn implements InsnBlock {
     private final int opcode;
     @Nullable
     private final StringToken className;
+    /**
+     * The last codepoint of the owner token, or -1 if there is no owner or the owner is empty.
+     */
+    private final int classNameLast;
+    @Nullable
+    private final String classNameText;
     @Nullable
     private final StringToken methodName;
+    /**
+     * The last codepoint of the method name token, or -1 if there is no name or the name is empty.
+     */
+    private final int methodNameLast;
+    @Nullable
+    private final String methodNameText;
     @Nullable
     private final StringToken methodDescriptor;
+    @Nullable
+    private final DescriptorPattern methodDescriptorPattern;
     @NotNull
     private final StringToken opcodeToken;
 
@@ -40,8 +54,13 @@ public class InvokeInsn implements InsnBlock {
         this.opcode = opcode;
         this.opcodeToken = opcodeToken;
         this.className = className;
+        this.classNameLast = className == null || className.getContentLength() == 0 ? -1 : className.lastCodepoint();
+        this.classNameText = className == null ? null : className.getText();
         this.methodName = methodName;
+        this.methodNameLast = methodName == null || methodName.getContentLength() == 0 ? -1 : methodName.lastCodepoint();
+        this.methodNameText = methodName == null ? null : methodName.getText();
         this.methodDescriptor = methodDescriptor;
+        this.methodDescriptorPattern = methodDescriptor == null ? null : new DescriptorPattern(methodDescriptor);
     }
 
     private static final class Parser implements InsnParser<InvokeInsn> {
@@ -122,6 +141,47 @@ public class InvokeInsn implements InsnBlock {
         }
     }
 
+    /**
+     * Obtains the owner of the invoked method as written in the expression, including the trailing '?' of mapping requests.
+     * Explicit owners are compared against the mapped owner of the invoked method.
+     *
+     * @return The owner token, or null if the owner is not matched.
+     */
+    @Nullable
+    @Contract(pure = true)
+    public StringToken getClassName() {
+        return this.className;
+    }
+
+    /**
+     * Obtains the descriptor of the invoked method as written in the expression.
+     *
+     * @return The descriptor token, or null if the descriptor is not matched.
+     */
+    @Nullable
+    @Contract(pure = true)
+    public StringToken getMethodDescriptor() {
+        return this.methodDescriptor;
+    }
+
+    /**
+     * Obtains the name of the invoked method as written in the expression, including the trailing '?' of mapping requests.
+     * Explicit names are compared against the mapped name of the invoked method.
+     *
+     * @return The name token, or null if the name is not matched.
+     */
+    @Nullable
+    @Contract(pure = true)
+    public StringToken getMethodName() {
+        return this.methodName;
+    }
+
+    @Override
+    @Contract(pure = true)
+    public int getOpcode() {
+        return this.opcode;
+    }
+
     @Override
     @Contract(pure = false, mutates = "param2")
     @CheckReturnValue
@@ -137,8 +197,10 @@ public class InvokeInsn implements InsnBlock {
         if (classNameToken != null) {
             String srcOwner = mInsn.owner;
             String dstOwner = remapper.getMappedClassOpt(srcOwner);
-            if (classNameToken.lastCodepoint() != '?') {
-                if (!classNameToken.contentMatches(dstOwner)) {
+            String classNameText = Objects.requireNonNull(this.classNameText);
+            // Empty tokens have no last codepoint, in which case the token throws the appropriate exception
+            if ((this.classNameLast == -1 ? classNameToken.lastCodepoint() : this.classNameLast) != '?') {
+                if (!classNameText.equals(dstOwner)) {
                     if (!srcOwner.equals(dstOwner)) {
                         return new MatchResult("Owner mismatch (explicit match, srcName: '" + srcOwner + "', dstName: '" + dstOwner + "')", classNameToken);
                     } else {
@@ -147,7 +209,11 @@ public class InvokeInsn implements InsnBlock {
                 }
             } else {
                 if (srcOwner.equals(dstOwner)) {
-                    remapper.mapClass(srcOwner, classNameToken.getText());
+                    String collidingOwner = remapper.getSourceClass(classNameText);
+                    if (collidingOwner != null && !collidingOwner.equals(srcOwner)) {
+                        return new MatchResult("Owner mismatch (mapping match; destination collision. srcName: '" + srcOwner + "', dstName already used by: '" + collidingOwner + "')", classNameToken);
+                    }
+                    remapper.mapClass(srcOwner, classNameText);
                 } else if (!classNameToken.contentMatches(false, dstOwner, 0, dstOwner.length())) {
                     return new MatchResult("Owner mismatch (mapping match; mapping collision. srcName: '" + srcOwner + "', dstName: '" + dstOwner + "')", classNameToken);
                 }
@@ -158,23 +224,28 @@ public class InvokeInsn implements InsnBlock {
         if (methodNameToken != null) {
             String srcName = mInsn.name;
             String dstName = remapper.getMappedMethodOpt(mInsn.owner, srcName, mInsn.desc);
+            String methodNameText = Objects.requireNonNull(this.methodNameText);
 
-            if (methodNameToken.lastCodepoint() != '?') {
+            if ((this.methodNameLast == -1 ? methodNameToken.lastCodepoint() : this.methodNameLast) != '?') {
                 // Explicit match
-                if (!methodNameToken.contentMatches(dstName)) {
+                if (!methodNameText.equals(dstName)) {
                     return new MatchResult("Method name mismatch (explicit match, srcName: '" + srcName + "', dstName: '" + dstName + "', srcOwner: '" + mInsn.owner + "', srcDesc: '" + mInsn.desc + "')", methodNameToken);
                 }
             } else {
                 // Mapping mismatch
                 if (srcName.equals(dstName)) {
-                    remapper.mapMethod(mInsn.owner, srcName, mInsn.desc, methodNameToken.getText());
+                    String collidingName = remapper.getCollidingMethod(mInsn.owner, srcName, mInsn.desc, methodNameText);
+                    if (collidingName != null) {
+                        return new MatchResult("Method name mismatch (mapping match; destination collision. srcName: '" + srcName + "', dstName already used by: '" + collidingName + "', srcOwner: '" + mInsn.owner + "', srcDesc: '" + mInsn.desc + "')", methodNameToken);
+                    }
+                    remapper.mapMethod(mInsn.owner, srcName, mInsn.desc, methodNameText);
                 }
             }
         }
 
-        StringToken methodDescToken = this.methodDescriptor;
-        if (methodDescToken != null) {
-            MatchResult result = InvokeInsn.mapDescriptor(methodDescToken, mInsn.desc, remapper);
+        DescriptorPattern methodDescPattern = this.methodDescriptorPattern;
+        if (methodDescPattern != null) {
+            MatchResult result = methodDescPattern.mapDescriptor(mInsn.desc, remapper);
             if (result != null) {
                 return result; // Error occurred during descriptor mapping/reading
             }
@@ -183,90 +254,43 @@ public class InvokeInsn implements InsnBlock {
         return MatchResult.RESULT_BREAK;
     }
 
+    /**
+     * Obtains the descriptor of the invoked method as written in the expression, decoded for repeated matching.
+     *
+     * @return The descriptor, or null if the descriptor is not matched.
+     */
     @Nullable
-    public static MatchResult mapDescriptor(@NotNull StringToken methodDescToken, @NotNull String methodDesc, @NotNull FramedRemapper remapper) {
-        int head = 1;
-        int headCodepoint = methodDescToken.codepointAt(head);
-        DescString dString = new DescString(methodDesc);
-        while (headCodepoint != ')') {
-            // TODO validate `headCodepoint` codepoint (e.g. 'i' or ';' are not allowed)
-            if (!dString.hasNext()) {
-                return new MatchResult("Method descriptor mismatch (Argument count mismatch, descriptor of matched method: '" + methodDesc + "')", methodDescToken);
-            }
-            String cmpType = dString.nextType();
-            if (cmpType.codePointAt(0) != headCodepoint) {
-                return new MatchResult("Method descriptor mismatch (Argument type mismatch [different computational type]; descriptor of matched method: '" + methodDesc + "', discrepancy starting from column " + (methodDescToken.getStart() + head) + ")", methodDescToken);
-            }
-
-            headCodepoint = methodDescToken.codepointAt(++head);
-            // verify array depth
-            int arraydepth = 0;
-            if (cmpType.codePointAt(0) == '[') {
-                while (headCodepoint == '[') {
-                    arraydepth++;
-                    headCodepoint = methodDescToken.codepointAt(++head);
-                }
-                if (cmpType.length() < arraydepth + 2
-                        || cmpType.codePointAt(arraydepth) != '['
-                        || cmpType.codePointAt(arraydepth + 1) == '[') {
-                    return new MatchResult("Method descriptor mismatch (Argument type mismatch [different array depth]; descriptor of matched method: '" + methodDesc + "', discrepancy is around column " + (methodDescToken.getStart() + head) + ")", methodDescToken);
-                }
-                arraydepth += 1;
-            }
-
-            if (headCodepoint != cmpType.codePointAt(arraydepth)) {
-                return new MatchResult("Method descriptor mismatch (Argument type mismatch [different computational types once skipping arrays]; descriptor of matched method: '" + methodDesc + "', discrepancy starting from column " + (methodDescToken.getStart() + head) + ")", methodDescToken);
-            }
-
-            // Note: While 'head'/'headCodepoint2' is not offset by array depth, indices to cmpType is.
-            if (headCodepoint != 'L') {
-                // TODO here too, validate the `headCodepoint` - i.e. it should only be a primitive
-                // primitive (array)
-
-                if (cmpType.codePointAt(arraydepth) != headCodepoint) {
-                    return new MatchResult("Method descriptor mismatch (Argument type mismatch [unrolled computational type mismatch]; descriptor of matched method: '" + methodDesc + "', discrepancy is around column " + (methodDescToken.getStart() + head) + ")", methodDescToken);
-                }
-
-                headCodepoint = methodDescToken.codepointAt(++head);
-                if (headCodepoint == '?') {
-                    // tried to map primitive (array) - an error condition that should honestly be caught at parse time so we shall silently discard this fact
-                    // TODO At least catch that error at parsing time lol
-                    headCodepoint = methodDescToken.codepointAt(++head);
-                }
-            } else {
-                // object (array) - the real deal
-                int lookaheadIndex = methodDescToken.indexOf(';', ++head);
-                if (lookaheadIndex == -1 || methodDescToken.indexOf(')', lookaheadIndex) == -1) {
-                    // Highly invalid descriptor
-                    return new MatchResult("Invalidly parsed invoke instruction: Invalid method descriptor: Missing closing ';' after start of 'L'-type reference", methodDescToken);
-                }
-
-                if (cmpType.codePointAt(arraydepth) != 'L') {
-                    return new MatchResult("Method descriptor mismatch (Argument type mismatch [unrolled computational type mismatch]; descriptor of matched method: '" + methodDesc + "', discrepancy is around column " + (methodDescToken.getStart() + head) + ")", methodDescToken);
-                }
-
-                String srcClass = cmpType.substring(arraydepth + 1, cmpType.length() - 1);
-                String dstClass = remapper.getMappedClassOpt(srcClass);
+    @Contract(pure = true)
+    public DescriptorPattern getMethodDescriptorPattern() {
+        return this.methodDescriptorPattern;
+    }
 
-                if (methodDescToken.codepointAt(lookaheadIndex + 1) == '?') {
-                    // Mapping match
-                    if (!srcClass.equals(dstClass)) {
-                        if (lookaheadIndex - head != dstClass.length() || !methodDescToken.contentMatches(false, head, dstClass, 0, dstClass.length())) {
-                            return new MatchResult("Method descriptor mismatch (mapping match; mapping collision. srcType: '" + srcClass + "', dstType: '" + dstClass + "', full (src) method descriptor of matched method: '" + methodDesc + "'. Discrepancy arises between column " + (head + methodDescToken.getColumn()) + " and " + (lookaheadIndex + methodDescToken.getColumn()) + ")", methodDescToken);
-                        }
-                    } else {
-                        remapper.mapClass(srcClass, methodDescToken.subtext(head, lookaheadIndex));
-                    }
-                } else {
-                    // Explicit match
-                    if (lookaheadIndex - head != dstClass.length()
-                           || !methodDescToken.contentMatches(false, head, dstClass, 0, dstClass.length())) {
-                        return new MatchResult("Method descriptor mismatch (explicit match. srcType: '" + srcClass + "', dstType: '" + dstClass + "', full (src) method descriptor of matched method: '" + methodDesc + "'. Discrepancy arises between column " + (head + methodDescToken.getColumn()) + " and " + (lookaheadIndex + methodDescToken.getColumn()) + ")", methodDescToken);
-                    }
-                }
-            }
-        }
+    /**
+     * Matches a descriptor of an expression against the descriptor of a method, applying the class mapping requests
+     * of the descriptor to the remapper. Callers matching the same descriptor repeatedly should use a {@link DescriptorPattern}.
+     *
+     * @param methodDescToken The descriptor of the expression, which may contain class mapping requests.
+     * @param methodDesc The descriptor of the method that should be matched.
+     * @param remapper The remapper to apply mappings to.
+     * @return The reason why the descriptors do not match, or null if they match.
+     */
+    @Nullable
+    public static MatchResult mapDescriptor(@NotNull StringToken methodDescToken, @NotNull String methodDesc, @NotNull FramedRemapper remapper) {
+        return new DescriptorPattern(methodDescToken).mapDescriptor(methodDesc, remapper);
+    }
 
-        return null;
+    /**
+     * Checks whether {@link #mapDescriptor(StringToken, String, FramedRemapper)} could succeed for the given descriptors
+     * under any mappings. That is, the descriptors are compared while ignoring the names of all referenced classes.
+     * As the names of the classes are not taken into account, they can be omitted in the method descriptor,
+     * e.g. <code>(IL;[L;)V</code> is a valid descriptor for this method.
+     *
+     * @param methodDescToken The descriptor of the expression, which may contain class mapping requests.
+     * @param methodDesc The descriptor of the method that should be matched.
+     * @return True if the descriptor could be matched, false if it never can.
+     */
+    @Contract(pure = true)
+    public static boolean matchesDescriptorShape(@NotNull StringToken methodDescToken, @NotNull String methodDesc) {
+        return new DescriptorPattern(methodDescToken).matchesShape(methodDesc);
     }
 }
@@ -2,6 +2,7 @@ package org.stianloader.softmap.insns;
 
 import java.util.List;
 
+import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.AbstractInsnNode;
@@ -17,6 +18,20 @@ public final class SimpleInsnBlock implements InsnBlock {
 
     public static final @NotNull InsnParser<SimpleInsnBlock> NOP = new SimpleInsnBlockParser(Opcodes.NOP);
     public static final @NotNull InsnParser<SimpleInsnBlock> ACONST_NULL = new SimpleInsnBlockParser(Opcodes.ACONST_NULL);
+    public static final @NotNull InsnParser<SimpleInsnBlock> ICONST_M1 = new SimpleInsnBlockParser(Opcodes.ICONST_M1);
+    public static final @NotNull InsnParser<SimpleInsnBlock> ICONST_0 = new SimpleInsnBlockParser(Opcodes.ICONST_0);
+    public static final @NotNull InsnParser<SimpleInsnBlock> ICONST_1 = new SimpleInsnBlockParser(Opcodes.ICONST_1);
+    public static final @NotNull InsnParser<SimpleInsnBlock> ICONST_2 = new SimpleInsnBlockParser(Opcodes.ICONST_2);
+    public static final @NotNull InsnParser<SimpleInsnBlock> ICONST_3 = new SimpleInsnBlockParser(Opcodes.ICONST_3);
+    public static final @NotNull InsnParser<SimpleInsnBlock> ICONST_4 = new SimpleInsnBlockParser(Opcodes.ICONST_4);
+    public static final @NotNull InsnParser<SimpleInsnBlock> ICONST_5 = new SimpleInsnBlockParser(Opcodes.ICONST_5);
+    public static final @NotNull InsnParser<SimpleInsnBlock> LCONST_0 = new SimpleInsnBlockParser(Opcodes.LCONST_0);
+    public static final @NotNull InsnParser<SimpleInsnBlock> LCONST_1 = new SimpleInsnBlockParser(Opcodes.LCONST_1);
+    public static final @NotNull InsnParser<SimpleInsnBlock> FCONST_0 = new SimpleInsnBlockParser(Opcodes.FCONST_0);
+    public static final @NotNull InsnParser<SimpleInsnBlock> FCONST_1 = new SimpleInsnBlockParser(Opcodes.FCONST_1);
+    public static final @NotNull InsnParser<SimpleInsnBlock> FCONST_2 = new SimpleInsnBlockParser(Opcodes.FCONST_2);
+    public static final @NotNull InsnParser<SimpleInsnBlock> DCONST_0 = new SimpleInsnBlockParser(Opcodes.DCONST_0);
+    public static final @NotNull InsnParser<SimpleInsnBlock> DCONST_1 = new SimpleInsnBlockParser(Opcodes.DCONST_1);
     public static final @NotNull InsnParser<SimpleInsnBlock> IALOAD = new SimpleInsnBlockParser(Opcodes.IALOAD);
     public static final @NotNull InsnParser<SimpleInsnBlock> LALOAD = new SimpleInsnBlockParser(Opcodes.LALOAD);
     public static final @NotNull InsnParser<SimpleInsnBlock> FALOAD = new SimpleInsnBlockParser(Opcodes.FALOAD);
@@ -111,6 +126,12 @@ public final class SimpleInsnBlock implements InsnBlock {
         this.token = token;
     }
 
+    @Override
+    @Contract(pure = true)
+    public int getOpcode() {
+        return this.opcode;
+    }
+
     @Override
     @NotNull
     public MatchResult matchesInstruction(@NotNull AbstractInsnNode insn, @NotNull FramedRemapper remapper) {
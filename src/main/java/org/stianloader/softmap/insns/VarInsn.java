@@ -2,6 +2,7 @@ package org.stianloader.softmap.insns;
 
 import java.util.List;
 
+import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.Opcodes;
@@ -90,6 +91,33 @@ public class VarInsn implements InsnBlock {
         this.varToken = varToken;
     }
 
+    @Override
+    @Contract(pure = true)
+    public int getOpcode() {
+        return this.matchOpcode;
+    }
+
+    /**
+     * Obtains the index of the local variable this block matches. Only meaningful if {@link #getVarToken()} is not null.
+     *
+     * @return The local variable index.
+     */
+    @Contract(pure = true)
+    public int getVar() {
+        return this.var;
+    }
+
+    /**
+     * Obtains the token of the local variable index.
+     *
+     * @return The token of the index, or null if any local variable is matched.
+     */
+    @Nullable
+    @Contract(pure = true)
+    public StringToken getVarToken() {
+        return this.varToken;
+    }
+
     @Override
     @NotNull
     public MatchResult matchesInstruction(@NotNull AbstractInsnNode insn, @NotNull FramedRemapper remapper) {
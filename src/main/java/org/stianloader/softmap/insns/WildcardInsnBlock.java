@@ -5,11 +5,25 @@ import java.util.List;
 import org.jetbrains.annotations.CheckReturnValue;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.tree.AbstractInsnNode;
 import org.stianloader.softmap.FramedRemapper;
 import org.stianloader.softmap.SoftmapParseError;
 import org.stianloader.softmap.tokens.StringToken;
 
+/**
+ * A block consuming any instructions. The plain wildcard '*' consumes any amount of instructions up to the first instruction
+ * matched by the following block. Bounded wildcards consume a limited amount of instructions: '*{n}' consumes exactly n instructions,
+ * '*{min,max}' consumes between min and max instructions (both inclusive) and '?' consumes exactly one instruction.
+ * Like the plain wildcard, bounded wildcards stop at the first instruction matched by the following block once they consumed
+ * at least their minimum amount of instructions. If the following block matches none of the instructions within the bounds
+ * of the wildcard, the expression does not match.
+ *
+ * <p>The bounds count all instructions of the method, including pseudo-instructions such as labels, line numbers and frames.
+ * As such, the amount of instructions matched by a bounded wildcard depends on the debug information of the method: '*{2}'
+ * may cover a single instruction followed by a line number in one class file, but two instructions in a class file compiled
+ * without debug information.
+ */
 public class WildcardInsnBlock implements InsnBlock {
 
     @NotNull
@@ -19,6 +33,40 @@ public class WildcardInsnBlock implements InsnBlock {
 
     private WildcardInsnBlock() {
         // No-args constructor with reduced visibility
+        this(0, Integer.MAX_VALUE, null);
+    }
+
+    private WildcardInsnBlock(int minimumLength, int maximumLength, @Nullable StringToken wildcardToken) {
+        this.minimumLength = minimumLength;
+        this.maximumLength = maximumLength;
+        this.wildcardToken = wildcardToken;
+    }
+
+    /**
+     * Parses a bound of a quantified wildcard, consisting of decimal digits only.
+     * Leading and trailing blanks are ignored.
+     *
+     * @param text The text of the bound.
+     * @return The bound, -1 if the text is not a sequence of digits or if the bound exceeds {@link Integer#MAX_VALUE}.
+     */
+    @Contract(pure = true)
+    private static int parseBound(@NotNull String text) {
+        text = text.trim();
+        if (text.isEmpty()) {
+            return -1;
+        }
+        long bound = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            bound = bound * 10 + (c - '0');
+            if (bound > Integer.MAX_VALUE) {
+                return -1;
+            }
+        }
+        return (int) bound;
     }
 
     private static final class Parser implements InsnParser<WildcardInsnBlock> {
@@ -35,10 +83,86 @@ public class WildcardInsnBlock implements InsnBlock {
                 StringToken endToken = lineContents.get(lineContents.size() - 1);
                 errorStream.add(new SoftmapParseError(startToken.getStart(), endToken.getEnd(), startToken.getRow(), startToken.getColumn(), "Unexpected arguments for wildcard expression."));
             }
-            return WildcardInsnBlock.INSTANCE;
+
+            StringToken wildcardToken = lineContents.get(0);
+            if (wildcardToken.contentMatches("?")) {
+                return new WildcardInsnBlock(1, 1, wildcardToken);
+            } else if (wildcardToken.getContentLength() < 3) {
+                return WildcardInsnBlock.INSTANCE;
+            }
+
+            // Quantified wildcard: '*{n}' or '*{min,max}'
+            String quantifier = wildcardToken.subtext(2, wildcardToken.getContentLength() - 1);
+            int separator = quantifier.indexOf(',');
+            int minimumLength;
+            int maximumLength;
+            if (separator == -1) {
+                minimumLength = WildcardInsnBlock.parseBound(quantifier);
+                maximumLength = minimumLength;
+            } else {
+                minimumLength = WildcardInsnBlock.parseBound(quantifier.substring(0, separator));
+                maximumLength = WildcardInsnBlock.parseBound(quantifier.substring(separator + 1));
+            }
+
+            if (minimumLength < 0 || maximumLength < 0) {
+                errorStream.add(new SoftmapParseError(wildcardToken, "Unattainable wildcard bounds: bounds must be unsigned decimal integers no larger than " + Integer.MAX_VALUE + ". Expression format: '*{<count>}' or '*{<min>,<max>}'."));
+                return WildcardInsnBlock.INSTANCE;
+            } else if (minimumLength > maximumLength) {
+                errorStream.add(new SoftmapParseError(wildcardToken, "Unattainable wildcard bounds: the minimum amount of instructions exceeds the maximum amount."));
+                return WildcardInsnBlock.INSTANCE;
+            }
+
+            return new WildcardInsnBlock(minimumLength, maximumLength, wildcardToken);
         }
     }
 
+    private final int maximumLength;
+    private final int minimumLength;
+    @Nullable
+    private final StringToken wildcardToken;
+
+    /**
+     * Obtains the maximum amount of instructions (including pseudo-instructions) consumed by this wildcard.
+     *
+     * @return The maximum amount of instructions, {@link Integer#MAX_VALUE} if the wildcard is not bounded.
+     */
+    @Contract(pure = true)
+    public int getMaximumLength() {
+        return this.maximumLength;
+    }
+
+    /**
+     * Obtains the minimum amount of instructions (including pseudo-instructions) consumed by this wildcard.
+     *
+     * @return The minimum amount of instructions, 0 if the wildcard is not bounded.
+     */
+    @Contract(pure = true)
+    public int getMinimumLength() {
+        return this.minimumLength;
+    }
+
+    /**
+     * Obtains the token declaring this wildcard.
+     *
+     * @return The token declaring this wildcard, null if the wildcard is not bounded.
+     */
+    @Nullable
+    @Contract(pure = true)
+    public StringToken getWildcardToken() {
+        return this.wildcardToken;
+    }
+
+    /**
+     * Checks whether this wildcard limits the amount of instructions it consumes, that is whether it was declared
+     * as '*{n}', '*{min,max}' or '?' as opposed to '*'.
+     *
+     * @return True if the wildcard is bounded.
+     */
+    @Contract(pure = true)
+    public boolean isBounded() {
+        return this.wildcardToken != null;
+    }
+
     @Override
     @Contract(pure = false, mutates = "param2")
     @CheckReturnValue
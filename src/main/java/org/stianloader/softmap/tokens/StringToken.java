@@ -1,5 +1,6 @@
 package org.stianloader.softmap.tokens;
 
+import java.util.Map;
 import java.util.NoSuchElementException;
 
 import org.jetbrains.annotations.Contract;
@@ -10,9 +11,20 @@ public final class StringToken extends Token {
     @NotNull
     private final String stringSource;
 
+    /**
+     * The codepoint at which {@link #stringSource} begins. This is 0 unless the token was
+     * {@link #detach(Map) detached} from the source it was read from.
+     */
+    private final int sourceOffset;
+
     public StringToken(@NotNull String source, int start, int end, int row, int col) {
+        this(source, 0, start, end, row, col);
+    }
+
+    private StringToken(@NotNull String source, int sourceOffset, int start, int end, int row, int col) {
         super(start, end, row, col);
         this.stringSource = source;
+        this.sourceOffset = sourceOffset;
     }
 
     @Contract(pure = true)
@@ -27,7 +39,7 @@ public final class StringToken extends Token {
 
     @Contract(pure = true)
     public final boolean contentMatches(boolean ignoreCase, @NotNull String other, int ooffset, int length) {
-        return this.stringSource.regionMatches(ignoreCase, this.getStart(), other, ooffset, length);
+        return this.stringSource.regionMatches(ignoreCase, this.getStart() - this.sourceOffset, other, ooffset, length);
     }
 
     @Contract(pure = true)
@@ -39,7 +51,7 @@ public final class StringToken extends Token {
         if (toffset + length > this.getEnd()) {
             throw new IndexOutOfBoundsException("toffset + this.getStart() + length > this.getEnd(): " + (toffset + length) + " > " + this.getEnd());
         }
-        return this.stringSource.regionMatches(ignoreCase, toffset, other, ooffset, length);
+        return this.stringSource.regionMatches(ignoreCase, toffset - this.sourceOffset, other, ooffset, length);
     }
 
     @Contract(pure = true)
@@ -49,8 +61,8 @@ public final class StringToken extends Token {
 
     @Contract(pure = true)
     public final int indexOf(int codepoint, int fromIndex) {
-        int index = this.stringSource.indexOf(codepoint, this.getStart() + fromIndex);
-        return (index != -1 && index < this.getEnd()) ? index - this.getStart() : -1;
+        int index = this.stringSource.indexOf(codepoint, this.getStart() - this.sourceOffset + fromIndex);
+        return (index != -1 && index < this.getEnd() - this.sourceOffset) ? index - this.getStart() + this.sourceOffset : -1;
     }
 
     @Contract(pure = true)
@@ -61,7 +73,7 @@ public final class StringToken extends Token {
     @NotNull
     @Contract(pure = true, value = "-> new")
     public final String getText() {
-        return this.stringSource.substring(this.getStart(), this.getEnd());
+        return this.stringSource.substring(this.getStart() - this.sourceOffset, this.getEnd() - this.sourceOffset);
     }
 
     @NotNull
@@ -76,7 +88,7 @@ public final class StringToken extends Token {
         } else if (to + this.getStart() > this.getEnd()) {
             throw new IndexOutOfBoundsException("to + this.getStart() > this.getEnd(): " + to + " + " + this.getStart() + ", " + this.getEnd());
         }
-        return new StringToken(this.stringSource, this.getStart() + from, this.getStart() + to, this.getRow(), this.getColumn() + from);
+        return new StringToken(this.stringSource, this.sourceOffset, this.getStart() + from, this.getStart() + to, this.getRow(), this.getColumn() + from);
     }
 
     @Contract(pure = true)
@@ -94,7 +106,7 @@ public final class StringToken extends Token {
             throw new IndexOutOfBoundsException("index + this.getStart() > this.getEnd(): " + index + ", " + this.getText());
         }
 
-        return this.stringSource.codePointBefore(index);
+        return this.stringSource.codePointBefore(index - this.sourceOffset);
     }
 
     @Contract(pure = true)
@@ -107,7 +119,7 @@ public final class StringToken extends Token {
             throw new IndexOutOfBoundsException("index + this.getStart() >= this.getEnd(): " + index + ", " + this.getText());
         }
 
-        return this.stringSource.codePointAt(index);
+        return this.stringSource.codePointAt(index - this.sourceOffset);
     }
 
     @Contract(pure = true)
@@ -115,7 +127,7 @@ public final class StringToken extends Token {
         if (this.getStart() == this.getEnd()) {
             throw new NoSuchElementException("Empty token");
         }
-        return this.stringSource.codePointBefore(this.getEnd());
+        return this.stringSource.codePointBefore(this.getEnd() - this.sourceOffset);
     }
 
     @NotNull
@@ -130,7 +142,22 @@ public final class StringToken extends Token {
             throw new IndexOutOfBoundsException("to + this.getEnd() > this.getEnd(): " + to + ", " + this.getEnd());
         }
 
-        return this.stringSource.substring(from + this.getStart(), to);
+        return this.stringSource.substring(from + this.getStart() - this.sourceOffset, to - this.sourceOffset);
+    }
+
+    /**
+     * Obtains a copy of this token at the same location that only retains a copy of the text of this token
+     * instead of the (potentially large) source string it was read from, which allows the source string to be garbage collected.
+     * {@link #subtoken(int, int) Subtokens} of the copy share the copied text.
+     *
+     * @param textPool A pool of already copied texts, used to share a single copy between tokens with equal text.
+     * @return The detached copy of this token.
+     */
+    @NotNull
+    @Contract(pure = false, mutates = "param1", value = "_ -> new")
+    public StringToken detach(@NotNull Map<@NotNull String, @NotNull String> textPool) {
+        String text = textPool.computeIfAbsent(this.getText(), (copy) -> copy);
+        return new StringToken(text, this.getStart(), this.getStart(), this.getEnd(), this.getRow(), this.getColumn());
     }
 
     @Override
@@ -0,0 +1,71 @@
+package org.stianloader.softmap;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.stianloader.softmap.SoftmapContext.ApplicationResult;
+
+public class AnchorMatcherTest {
+
+    @NotNull
+    private static AnchorMatcher newMatcher() {
+        MethodTable table = new MethodTable(Collections.singletonList(AnchorMatcherTest.newClass()));
+        return new AnchorMatcher(table, new MemberIndex(table), new ConstantIndex(table));
+    }
+
+    @NotNull
+    private static ClassNode newClass() {
+        ClassNode node = TestClasses.newClass("x/A");
+        TestClasses.addMethod(node, "a", "()V", new FieldInsnNode(Opcodes.GETSTATIC, "x/A", "f", "I"), new InsnNode(Opcodes.POP), new InsnNode(Opcodes.RETURN));
+        TestClasses.addMethod(node, "b", "()V", new InsnNode(Opcodes.DUP), new InsnNode(Opcodes.POP), new FieldInsnNode(Opcodes.GETSTATIC, "x/A", "f", "I"), new InsnNode(Opcodes.POP), new InsnNode(Opcodes.RETURN));
+        TestClasses.addMethod(node, "c", "()V", new FieldInsnNode(Opcodes.GETSTATIC, "x/A", "f", "I"), new InsnNode(Opcodes.DUP), new InsnNode(Opcodes.RETURN), new InsnNode(Opcodes.RETURN));
+        TestClasses.addMethod(node, "d", "()V", Opcodes.ISUB, Opcodes.RETURN);
+        TestClasses.addMethod(node, "e", "()V", Opcodes.RETURN);
+        TestClasses.addMethod(node, "f", "()V", Opcodes.DUP, Opcodes.DUP, Opcodes.DUP, Opcodes.DUP, Opcodes.RETURN);
+        TestClasses.addMethod(node, "g", "()V", new InsnNode(Opcodes.POP), new InsnNode(Opcodes.POP), new FieldInsnNode(Opcodes.GETSTATIC, "x/A", "f", "I"), new InsnNode(Opcodes.POP), new InsnNode(Opcodes.RETURN), new InsnNode(Opcodes.RETURN));
+        return node;
+    }
+
+    @NotNull
+    private static MethodExpression parseExpression(@NotNull String body) {
+        return TestClasses.parse("method x/A.z?()V {\n" + body + "}\n").getMethodExpressions().get(0);
+    }
+
+    @Test
+    public void testFilterCandidates() {
+        AnchorMatcher matcher = AnchorMatcherTest.newMatcher();
+        int[] candidates = {0, 1, 2, 3, 4, 5, 6};
+        // Methods shorter than the expression always remain candidates
+        assertArrayEquals(new int[] {0, 3, 4}, matcher.filter(AnchorMatcherTest.parseExpression("GETSTATIC x/A.f I\nPOP\n*\n"), candidates, 0, 7));
+        assertArrayEquals(new int[] {0, 1, 3, 4, 6}, matcher.filter(AnchorMatcherTest.parseExpression("*\nGETSTATIC x/A.f I\nPOP\n*\n"), candidates, 0, 7));
+        assertArrayEquals(new int[] {0, 1, 3, 4, 6}, matcher.filter(AnchorMatcherTest.parseExpression("*\nGETSTATIC x/A.f I\nPOP\nRETURN\n"), candidates, 0, 7));
+        assertArrayEquals(new int[] {0, 1, 2, 3, 4}, matcher.filter(AnchorMatcherTest.parseExpression("DUP\n*\nGETSTATIC x/A.f I\nPOP\n*\n"), candidates, 0, 7));
+        assertArrayEquals(new int[] {0, 3, 4}, matcher.filter(AnchorMatcherTest.parseExpression("GETSTATIC x/A.f I\nPOP\n*\nDUP\n"), candidates, 0, 7));
+        assertArrayEquals(new int[] {1}, matcher.filter(AnchorMatcherTest.parseExpression("*\nGETSTATIC x/A.f I\nPOP\nRETURN\n"), candidates, 1, 3));
+
+        // Expressions without anchors are not filtered
+        assertSame(candidates, matcher.filter(AnchorMatcherTest.parseExpression("DUP\n*\n"), candidates, 0, 7));
+    }
+
+    @Test
+    public void testAnchoredApplication() {
+        ApplicationResult result = TestClasses.apply("method x/A.first?()V {\nGETSTATIC x/A.f I\nPOP\n*\n}\n"
+                + "method x/A.second?()V {\nDUP\n*\nGETSTATIC x/A.f I\nPOP\n*\n}\n", AnchorMatcherTest.newClass());
+        assertEquals(Collections.emptyList(), TestClasses.getErrors(result));
+        assertEquals(new HashSet<>(Arrays.asList("METHOD\tx/A\t()V\ta\tfirst", "METHOD\tx/A\t()V\tb\tsecond")), new HashSet<>(result.getGeneratedTinyV1Mappings()));
+
+        // Errors of expressions without viable candidates are still reported
+        assertEquals(1, TestClasses.apply("method x/A.z?()V {\nGETSTATIC x/A.f I\nDUP\nPOP\n*\n}\n", AnchorMatcherTest.newClass()).getErrors().size());
+    }
+}
@@ -0,0 +1,103 @@
+package org.stianloader.softmap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.stianloader.softmap.SoftmapContext.ApplicationResult;
+
+public class ApproximateMatchingTest {
+
+    private static final String SOFTMAP = "method x/A.getFive?()I {\n"
+            + "ICONST_2\n"
+            + "ICONST_3\n"
+            + "IADD\n"
+            + "IRETURN\n"
+            + "}\n";
+
+    @NotNull
+    private static List<@NotNull ClassNode> newClasses() {
+        ClassNode node = TestClasses.newClass("x/A");
+        // The expression no longer matches, as the method changed slightly
+        TestClasses.addMethod(node, "a", "()I", Opcodes.ICONST_2, Opcodes.ICONST_4, Opcodes.IADD, Opcodes.IRETURN);
+        TestClasses.addMethod(node, "b", "()I", Opcodes.ICONST_0, Opcodes.IRETURN);
+        TestClasses.addMethod(node, "c", "()V", Opcodes.ICONST_2, Opcodes.ICONST_3, Opcodes.IADD, Opcodes.POP, Opcodes.RETURN);
+        return Collections.singletonList(node);
+    }
+
+    @NotNull
+    private static ApplicationResult apply(int maximumDistance, int applicationMargin) {
+        SoftmapContext context = TestClasses.parse(ApproximateMatchingTest.SOFTMAP);
+        context.setApproximateMatching(maximumDistance, applicationMargin);
+        ApplicationResult result = context.tryApply(ApproximateMatchingTest.newClasses());
+        // Approximate matches are always reported as errors
+        assertEquals(1, result.getErrors().size());
+        return result;
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        SoftmapContext context = TestClasses.parse(ApproximateMatchingTest.SOFTMAP);
+        assertEquals(-1, context.getApproximateMatchingDistance());
+        assertEquals(0, context.getApproximateMatchingMargin());
+        ApplicationResult result = context.tryApply(ApproximateMatchingTest.newClasses());
+        assertFalse(TestClasses.getErrors(result).get(0).contains("Closest methods"));
+    }
+
+    @Test
+    public void testClosestMethodsAreReported() {
+        ApplicationResult result = ApproximateMatchingTest.apply(4, 0);
+        String error = TestClasses.getErrors(result).get(0);
+        assertTrue(error.contains(". Closest methods: 'x/A.a()I' (distance 1) 'x/A.b()I' (distance "), error);
+        // The descriptor of the expression excludes the method with the closest opcodes
+        assertFalse(error.contains("x/A.c()V"), error);
+        assertFalse(error.contains("Applied"), error);
+        assertEquals(Collections.emptyList(), result.getGeneratedTinyV1Mappings());
+    }
+
+    @Test
+    public void testMaximumDistance() {
+        String error = TestClasses.getErrors(ApproximateMatchingTest.apply(1, 0)).get(0);
+        assertTrue(error.contains(". Closest methods: 'x/A.a()I' (distance 1)"), error);
+        assertFalse(error.contains("x/A.b()I"), error);
+
+        error = TestClasses.getErrors(ApproximateMatchingTest.apply(0, 0)).get(0);
+        assertFalse(error.contains("Closest methods"), error);
+    }
+
+    @Test
+    public void testClosestMethodIsApplied() {
+        ApplicationResult result = ApproximateMatchingTest.apply(4, 1);
+        assertTrue(TestClasses.getErrors(result).get(0).contains("Applied the mappings"));
+        assertEquals(Collections.singletonList("METHOD\tx/A\t()I\ta\tgetFive"), result.getGeneratedTinyV1Mappings());
+
+        // Only the closest method is within the maximum distance, so there is no runner-up
+        result = ApproximateMatchingTest.apply(1, 100);
+        assertEquals(Collections.singletonList("METHOD\tx/A\t()I\ta\tgetFive"), result.getGeneratedTinyV1Mappings());
+    }
+
+    @Test
+    public void testAmbiguousClosestMethodIsNotApplied() {
+        ApplicationResult result = ApproximateMatchingTest.apply(4, 100);
+        assertFalse(TestClasses.getErrors(result).get(0).contains("Applied"));
+        assertEquals(Collections.emptyList(), result.getGeneratedTinyV1Mappings());
+    }
+
+    @Test
+    public void testInvalidSettings() {
+        SoftmapContext context = TestClasses.parse(ApproximateMatchingTest.SOFTMAP);
+        assertThrows(IllegalArgumentException.class, () -> context.setApproximateMatching(-2, 0));
+        assertThrows(IllegalArgumentException.class, () -> context.setApproximateMatching(1, -1));
+        context.setApproximateMatching(3, 2);
+        assertEquals(3, context.getApproximateMatchingDistance());
+        assertEquals(2, context.getApproximateMatchingMargin());
+    }
+}
@@ -0,0 +1,114 @@
+package org.stianloader.softmap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.stianloader.softmap.SoftmapContext.ApplicationResult;
+import org.stianloader.softmap.classpath.ClassNodeCache;
+import org.stianloader.softmap.classpath.ClassStore;
+
+public class BatchApplicationTest {
+
+    private static final String SOFTMAP = "method x/A.getCount?()I {\n"
+            + "GETSTATIC a/Mapped?.count? I\n"
+            + "IRETURN\n"
+            + "}\n";
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @NotNull
+    private static ClassNode newClass(@NotNull String fieldName, @NotNull String methodName) {
+        ClassNode node = TestClasses.newClass("x/A");
+        node.fields.add(new FieldNode(Opcodes.ACC_STATIC, fieldName, "I", null, null));
+        TestClasses.addMethod(node, methodName, "()I", new FieldInsnNode(Opcodes.GETSTATIC, "x/A", fieldName, "I"), new InsnNode(Opcodes.IRETURN));
+        return node;
+    }
+
+    @NotNull
+    private List<@NotNull Path> writeVersions() throws IOException {
+        ClassNode other = TestClasses.newClass("x/B");
+        TestClasses.addMethod(other, "a", "()I", Opcodes.ICONST_0, Opcodes.IRETURN);
+        ClassNode ambiguous = BatchApplicationTest.newClass("f", "a");
+        TestClasses.addMethod(ambiguous, "b", "()I", new FieldInsnNode(Opcodes.GETSTATIC, "x/A", "f", "I"), new InsnNode(Opcodes.IRETURN));
+        return Arrays.asList(
+                TestClasses.writeJar(this.temporaryDirectory.resolve("v1.jar"), BatchApplicationTest.newClass("f", "a"), other),
+                TestClasses.writeJar(this.temporaryDirectory.resolve("v2.jar"), BatchApplicationTest.newClass("g", "b"), other),
+                // Identical to the first version, so that the versions share their headers
+                TestClasses.writeJar(this.temporaryDirectory.resolve("v3.jar"), BatchApplicationTest.newClass("f", "a"), other),
+                TestClasses.writeJar(this.temporaryDirectory.resolve("v4.jar"), ambiguous, other));
+    }
+
+    @NotNull
+    private static ApplicationResult applySequentially(@NotNull SoftmapContext context, @NotNull Path jar) throws IOException {
+        try (ClassStore store = ClassStore.onHeap()) {
+            store.addJar(jar);
+            return context.tryApply(new ClassNodeCache(store, Long.MAX_VALUE, 0), null, null);
+        }
+    }
+
+    @Test
+    public void testBatchMatchesSequentialApplication() throws IOException, InterruptedException {
+        List<@NotNull Path> jars = this.writeVersions();
+        SoftmapContext context = TestClasses.parse(BatchApplicationTest.SOFTMAP);
+        List<ApplicationResult> expected = new ArrayList<>();
+        for (Path jar : jars) {
+            expected.add(BatchApplicationTest.applySequentially(context, jar));
+        }
+        assertEquals(Collections.emptyList(), TestClasses.getErrors(expected.get(0)));
+        assertEquals(Arrays.asList("CLASS\tx/A\ta/Mapped", "FIELD\tx/A\tI\tg\tcount", "METHOD\tx/A\t()I\tb\tgetCount"),
+                BatchApplicationTest.sorted(expected.get(1).getGeneratedTinyV1Mappings()));
+        assertFalse(TestClasses.getErrors(expected.get(3)).isEmpty());
+
+        // A budget too small for a single version and a budget large enough for all versions at once
+        for (long budget : new long[] {1024, 1 << 20}) {
+            for (int parallelism : new int[] {1, 3}) {
+                List<ApplicationResult> results = new BatchApplication(context, budget, parallelism).apply(jars, null, null);
+                assertEquals(jars.size(), results.size());
+                for (int i = 0; i < jars.size(); i++) {
+                    assertEquals(expected.get(i).getGeneratedTinyV1Mappings(), results.get(i).getGeneratedTinyV1Mappings());
+                    assertEquals(expected.get(i).getMatchedMethods(), results.get(i).getMatchedMethods());
+                    assertEquals(TestClasses.getErrors(expected.get(i)), TestClasses.getErrors(results.get(i)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testUnreadableVersion() throws IOException {
+        List<Path> jars = new ArrayList<>(this.writeVersions());
+        jars.add(this.temporaryDirectory.resolve("missing.jar"));
+        BatchApplication batch = new BatchApplication(TestClasses.parse(BatchApplicationTest.SOFTMAP), 1 << 20, 2);
+        assertThrows(IOException.class, () -> batch.apply(jars, null, null));
+    }
+
+    @Test
+    public void testInvalidConfiguration() {
+        SoftmapContext context = TestClasses.parse(BatchApplicationTest.SOFTMAP);
+        assertThrows(IllegalArgumentException.class, () -> new BatchApplication(context, 1023, 1));
+        assertThrows(IllegalArgumentException.class, () -> new BatchApplication(context, 1024, 0));
+    }
+
+    @NotNull
+    private static List<@NotNull String> sorted(@NotNull List<@NotNull String> lines) {
+        List<@NotNull String> copy = new ArrayList<>(lines);
+        Collections.sort(copy);
+        return copy;
+    }
+}
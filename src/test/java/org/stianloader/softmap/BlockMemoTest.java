@@ -0,0 +1,68 @@
+package org.stianloader.softmap;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.stianloader.softmap.SoftmapContext.ApplicationResult;
+
+public class BlockMemoTest {
+
+    @NotNull
+    private static ClassNode newClass() {
+        ClassNode node = TestClasses.newClass("x/A");
+        TestClasses.addMethod(node, "a", "()V", new FieldInsnNode(Opcodes.GETSTATIC, "x/A", "f", "I"), new InsnNode(Opcodes.POP), new InsnNode(Opcodes.RETURN));
+        TestClasses.addMethod(node, "b", "()V", new FieldInsnNode(Opcodes.GETSTATIC, "x/A", "f", "I"), new InsnNode(Opcodes.DUP), new InsnNode(Opcodes.POP2),
+                new LdcInsnNode("text"), new InsnNode(Opcodes.POP), new InsnNode(Opcodes.RETURN));
+        return node;
+    }
+
+    @Test
+    public void testBlockIds() {
+        SoftmapContext context = TestClasses.parse("method x/A.first?()V {\nGETSTATIC x/A.f I\nPOP\nLDC \"text\"\n}\n"
+                + "method x/A.second?()V {\nLDC \"text\"\nGETSTATIC x/A.f I\nGETSTATIC x/A.g I\nPUTSTATIC x/A.f I\n}\n"
+                + "method x/A.third?()V {\nGETSTATIC x/A.f? I\nLDC \"other\"\n}\n");
+        BlockMemo memo = new BlockMemo(context.getMethodExpressions());
+        // Identical literal lines share their id across expressions, blocks which are not memoized have an id of -1
+        assertArrayEquals(new int[] {0, -1, 1}, memo.getBlockIds(0));
+        assertArrayEquals(new int[] {1, 0, 2, 3}, memo.getBlockIds(1));
+        assertArrayEquals(new int[] {-1, 4}, memo.getBlockIds(2));
+    }
+
+    @Test
+    public void testSharedLiteralLines() {
+        ApplicationResult result = TestClasses.apply("method x/A.first?()V {\nGETSTATIC x/A.f I\nPOP\nRETURN\n}\n"
+                + "method x/A.second?()V {\nGETSTATIC x/A.f I\nDUP\nPOP2\nLDC \"text\"\nPOP\nRETURN\n}\n", BlockMemoTest.newClass());
+        assertEquals(Collections.emptyList(), TestClasses.getErrors(result));
+        List<String> mappings = new ArrayList<>(result.getGeneratedTinyV1Mappings());
+        Collections.sort(mappings);
+        assertEquals(Arrays.asList("METHOD\tx/A\t()V\ta\tfirst", "METHOD\tx/A\t()V\tb\tsecond"), mappings);
+    }
+
+    @Test
+    public void testSharedFailuresKeepTheirLocation() {
+        ClassNode node = TestClasses.newClass("x/A");
+        TestClasses.addMethod(node, "a", "()V", new FieldInsnNode(Opcodes.GETSTATIC, "x/A", "g", "I"), new InsnNode(Opcodes.POP), new InsnNode(Opcodes.RETURN));
+        ApplicationResult result = TestClasses.apply("method x/A.first?()V {\nGETSTATIC x/A.f I\nPOP\nRETURN\n}\n"
+                + "method x/A.second?()V {\nGETSTATIC x/A.f I\nPOP\nRETURN\n}\n", node);
+        assertEquals(2, result.getErrors().size());
+        List<Integer> rows = new ArrayList<>();
+        for (SoftmapApplicationError error : result.getErrors()) {
+            rows.add(error.getErrorLocation().getRow());
+        }
+        Collections.sort(rows);
+        // Each error points at the line of its own expression rather than at the line of the memoized failure
+        assertEquals(Arrays.asList(4, 9), rows);
+    }
+}
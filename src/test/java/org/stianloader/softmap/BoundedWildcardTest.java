@@ -0,0 +1,106 @@
+package org.stianloader.softmap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LineNumberNode;
+import org.stianloader.softmap.SimpleFramedRemapper.MethodLoc;
+import org.stianloader.softmap.SoftmapContext.ApplicationResult;
+
+public class BoundedWildcardTest {
+
+    /**
+     * A class with a single method, ICONST_0 ICONST_1 POP POP ICONST_0 IRETURN.
+     */
+    private static ClassNode newClass() {
+        ClassNode node = TestClasses.newClass("a/A");
+        TestClasses.addMethod(node, "m", "()I", Opcodes.ICONST_0, Opcodes.ICONST_1, Opcodes.POP, Opcodes.POP, Opcodes.ICONST_0, Opcodes.IRETURN);
+        return node;
+    }
+
+    private static void assertMatches(String body) {
+        ApplicationResult result = TestClasses.apply("method a/A.mapped?()I {\n" + body + "\n}\n", BoundedWildcardTest.newClass());
+        assertEquals(Collections.emptyList(), TestClasses.getErrors(result), body);
+        assertEquals(Collections.singletonList(new MethodLoc("a/A", "m", "()I")), result.getMatchedMethods(), body);
+        assertEquals(Collections.singletonList("METHOD\ta/A\t()I\tm\tmapped"), result.getGeneratedTinyV1Mappings(), body);
+    }
+
+    private static void assertMismatches(String body) {
+        ApplicationResult result = TestClasses.apply("method a/A.mapped?()I {\n" + body + "\n}\n", BoundedWildcardTest.newClass());
+        assertEquals(1, result.getErrors().size(), body);
+        assertEquals(Collections.singletonList(null), result.getMatchedMethods(), body);
+        assertTrue(result.getGeneratedTinyV1Mappings().isEmpty(), body);
+    }
+
+    @Test
+    public void testLeadingBoundedWildcards() {
+        BoundedWildcardTest.assertMatches("?\nICONST_1\n*");
+        BoundedWildcardTest.assertMatches("*{2}\nPOP\n*");
+        BoundedWildcardTest.assertMatches("*{1,4}\nICONST_0\nIRETURN");
+        // Bounded wildcards stop at the first instruction matched by the following block, they do not backtrack
+        BoundedWildcardTest.assertMismatches("*{0,4}\nICONST_0\nIRETURN");
+        BoundedWildcardTest.assertMismatches("*{3}\nICONST_1\n*");
+        BoundedWildcardTest.assertMismatches("*{0,2}\nIRETURN");
+    }
+
+    @Test
+    public void testTrailingBoundedWildcardAfterWildcard() {
+        // The plain wildcard fails to match POP against the first instructions before it succeeds,
+        // which must not cause the expression to fail once the trailing wildcard is satisfied
+        BoundedWildcardTest.assertMatches("*\nPOP\n*");
+        BoundedWildcardTest.assertMatches("*\nPOP\n?");
+        BoundedWildcardTest.assertMatches("*\nPOP\n*{3}");
+        BoundedWildcardTest.assertMatches("*\nPOP\n*{2,3}");
+        BoundedWildcardTest.assertMatches("*\nPOP\n*{0,1}");
+        BoundedWildcardTest.assertMatches("*\nPOP\n?\n*{1,2}");
+        BoundedWildcardTest.assertMismatches("*\nPOP\n*{4}");
+        BoundedWildcardTest.assertMismatches("*\nPOP\n*{4,5}");
+    }
+
+    @Test
+    public void testBoundedWildcardBetweenBlocks() {
+        BoundedWildcardTest.assertMatches("ICONST_0\n?\nPOP\n*");
+        BoundedWildcardTest.assertMatches("ICONST_0\n*{1,3}\nICONST_0\nIRETURN");
+        BoundedWildcardTest.assertMismatches("ICONST_0\n*{1,2}\nICONST_0\nIRETURN");
+    }
+
+    @Test
+    public void testBoundsCountPseudoInstructions() {
+        ClassNode node = TestClasses.newClass("a/A");
+        LabelNode label = new LabelNode();
+        TestClasses.addMethod(node, "m", "()I", new InsnNode(Opcodes.ICONST_0), label, new LineNumberNode(4, label), new InsnNode(Opcodes.IRETURN));
+        ApplicationResult result = TestClasses.apply("method a/A.mapped?()I {\nICONST_0\n*{2}\nIRETURN\n}\n", node);
+        assertEquals(Collections.emptyList(), TestClasses.getErrors(result));
+        result = TestClasses.apply("method a/A.mapped?()I {\nICONST_0\nIRETURN\n}\n", node);
+        assertEquals(1, result.getErrors().size());
+    }
+
+    @Test
+    public void testBlanksWithinBounds() {
+        for (String wildcard : new String[] {"*{1, 3}", "*{ 3 }", "*{\t1 ,3 }", "*{ 2 }"}) {
+            assertEquals(Collections.emptyList(), TestClasses.parse("method a/A.mapped?()I {\nICONST_0\n" + wildcard + "\nICONST_0\nIRETURN\n}\n").getParseErrors(), wildcard);
+        }
+        BoundedWildcardTest.assertMatches("ICONST_0\n*{1, 3}\nICONST_0\nIRETURN");
+        BoundedWildcardTest.assertMatches("ICONST_0\n*{ 3 }\nICONST_0\nIRETURN");
+        BoundedWildcardTest.assertMatches("ICONST_0\n*{\t1 ,3 }\nICONST_0\nIRETURN");
+        BoundedWildcardTest.assertMismatches("ICONST_0\n*{ 2 }\nICONST_0\nIRETURN");
+    }
+
+    @Test
+    public void testInvalidBounds() {
+        for (String wildcard : new String[] {"*{+3}", "*{-1}", "*{3,+4}", "*{1 2}", "*{ }", "*{}", "*{1,}", "*{x}", "*{4294967298}", "*{2147483648}", "*{3,1}"}) {
+            String source = "softmap v1\n\nmethod a/A.mapped?()I {\n" + wildcard + "\nIRETURN\n}\n";
+            assertFalse(SoftmapContext.parse(source, 0, source.length(), 1, 1).getParseErrors().isEmpty(), wildcard);
+        }
+        TestClasses.parse("method a/A.mapped?()I {\n*{2147483647}\nIRETURN\n}\n");
+        TestClasses.parse("method a/A.mapped?()I {\n*{0,007}\nIRETURN\n}\n");
+    }
+}
@@ -0,0 +1,93 @@
+package org.stianloader.softmap;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.stianloader.softmap.SoftmapContext.ApplicationResult;
+
+public class ClassFingerprintIndexTest {
+
+    @NotNull
+    private static List<@NotNull ClassNode> newClasses() {
+        ClassNode a = TestClasses.newClass("x/A");
+        a.interfaces.add("x/I");
+        a.fields.add(new FieldNode(Opcodes.ACC_PRIVATE, "a", "I", null, null));
+        a.fields.add(new FieldNode(Opcodes.ACC_PRIVATE, "b", "I", null, null));
+        a.fields.add(new FieldNode(Opcodes.ACC_PRIVATE, "c", "Ljava/lang/String;", null, null));
+        TestClasses.addMethod(a, "a", "()V", Opcodes.RETURN);
+        TestClasses.addMethod(a, "b", "()V", Opcodes.RETURN);
+        TestClasses.addMethod(a, "c", "(I)V", Opcodes.RETURN);
+
+        ClassNode b = TestClasses.newClass("x/B");
+        b.access |= Opcodes.ACC_FINAL;
+        b.superName = "x/A";
+        b.fields.add(new FieldNode(Opcodes.ACC_PRIVATE, "a", "I", null, null));
+        TestClasses.addMethod(b, "a", "()V", Opcodes.RETURN);
+
+        ClassNode c = TestClasses.newClass("x/C");
+        c.interfaces.add("x/I");
+        c.interfaces.add("x/J");
+        TestClasses.addMethod(c, "c", "(I)V", Opcodes.RETURN);
+
+        return Arrays.asList(a, b, c);
+    }
+
+    @Test
+    public void testMatchingClasses() {
+        ClassFingerprintIndex index = new ClassFingerprintIndex(new MethodTable(ClassFingerprintIndexTest.newClasses()));
+        assertNull(index.getMatchingClasses(new ClassFingerprintIndex.Query()));
+        assertArrayEquals(new int[] {0, 1}, index.getMatchingClasses(new ClassFingerprintIndex.Query().requireMethod("()V")));
+        assertArrayEquals(new int[] {0}, index.getMatchingClasses(new ClassFingerprintIndex.Query().requireMethod("()V").requireMethod("()V")));
+        assertArrayEquals(new int[0], index.getMatchingClasses(new ClassFingerprintIndex.Query().requireMethod("(J)V")));
+        assertArrayEquals(new int[] {0, 1}, index.getMatchingClasses(new ClassFingerprintIndex.Query().requireField("I")));
+        assertArrayEquals(new int[] {0}, index.getMatchingClasses(new ClassFingerprintIndex.Query().requireField("I").requireField("I")));
+        assertArrayEquals(new int[] {1}, index.getMatchingClasses(new ClassFingerprintIndex.Query().requireSuperclass("x/A")));
+        assertArrayEquals(new int[0], index.getMatchingClasses(new ClassFingerprintIndex.Query().requireSuperclass("x/Z")));
+        assertArrayEquals(new int[] {0, 2}, index.getMatchingClasses(new ClassFingerprintIndex.Query().requireInterface("x/I")));
+        assertArrayEquals(new int[] {2}, index.getMatchingClasses(new ClassFingerprintIndex.Query().requireInterface("x/I").requireInterface("x/J")));
+        assertArrayEquals(new int[] {1}, index.getMatchingClasses(new ClassFingerprintIndex.Query().requireAccess(Opcodes.ACC_FINAL)));
+        assertArrayEquals(new int[] {0, 2}, index.getMatchingClasses(new ClassFingerprintIndex.Query().requireMethod("(I)V").requireInterface("x/I")));
+    }
+
+    @Test
+    public void testMappableClasses() {
+        List<ClassNode> nodes = ClassFingerprintIndexTest.newClasses();
+        ClassFingerprintIndex index = new ClassFingerprintIndex(new MethodTable(nodes));
+        FramedRemapper remapper = new SimpleFramedRemapper(SimpleFramedRemapper.realmsOf(nodes));
+        remapper.pushFrame();
+        remapper.mapClass("x/A", "y/Owner");
+        ClassFingerprintIndex.Query query = new ClassFingerprintIndex.Query().requireMethod("()V");
+        // x/B cannot take the name of x/A
+        assertArrayEquals(new int[] {0}, index.getMappableClasses(query, remapper, "y/Owner"));
+        assertArrayEquals(new int[] {1}, index.getMappableClasses(query, remapper, "y/Other"));
+        assertArrayEquals(new int[] {1, 2}, index.getMappableClasses(new ClassFingerprintIndex.Query(), remapper, "y/Other"));
+    }
+
+    @Test
+    public void testOwnerNarrowingDuringApplication() {
+        ClassNode a = TestClasses.newClass("x/A");
+        TestClasses.addMethod(a, "a", "()V", Opcodes.RETURN);
+        TestClasses.addMethod(a, "b", "(I)V", Opcodes.RETURN);
+        ClassNode b = TestClasses.newClass("x/B");
+        TestClasses.addMethod(b, "b", "(I)V", Opcodes.RETURN);
+
+        // Once x/A is mapped, it can no longer be the owner of the second expression
+        ApplicationResult result = TestClasses.apply("method y/Owner?.run?()V {\nRETURN\n}\n"
+                + "method y/Other?.accept?(I)V {\nRETURN\n}\n", a, b);
+        assertEquals(Collections.emptyList(), TestClasses.getErrors(result));
+        List<String> mappings = new ArrayList<>(result.getGeneratedTinyV1Mappings());
+        Collections.sort(mappings);
+        assertEquals(Arrays.asList("CLASS\tx/A\ty/Owner", "CLASS\tx/B\ty/Other", "METHOD\tx/A\t()V\ta\trun", "METHOD\tx/B\t(I)V\tb\taccept"), mappings);
+    }
+}
@@ -0,0 +1,110 @@
+package org.stianloader.softmap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.IntInsnNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.VarInsnNode;
+import org.stianloader.softmap.SoftmapContext.ApplicationResult;
+
+public class CompiledMatcherTest {
+
+    private static final String SOFTMAP = "method x/A.literals?()I {\n"
+            + "GETSTATIC x/A.f I\n"
+            + "BIPUSH 12\n"
+            + "IADD\n"
+            + "LDC \"text\"\n"
+            + "POP\n"
+            + "ILOAD 0\n"
+            + "IRETURN\n"
+            + "}\n"
+            + "\n"
+            + "method x/A.seeded?()V {\n"
+            + "DUP\n"
+            + "*\n"
+            + "GETSTATIC y/B?.count? I\n"
+            + "POP\n"
+            + "*\n"
+            + "}\n";
+
+    private static final String SOFTMAP_FAILING = "method x/A.literals?()I {\n"
+            + "GETSTATIC x/A.f I\n"
+            + "BIPUSH 13\n"
+            + "*\n"
+            + "}\n"
+            + "\n"
+            + "method x/A.seeded?()V {\n"
+            + "DUP\n"
+            + "*\n"
+            + "GETSTATIC x/A.missing I\n"
+            + "*\n"
+            + "}\n";
+
+    @NotNull
+    private static List<@NotNull String> describe(@NotNull ApplicationResult result) {
+        List<@NotNull String> description = new ArrayList<>(result.getGeneratedTinyV1Mappings());
+        Collections.sort(description);
+        for (SoftmapApplicationError error : result.getErrors()) {
+            description.add(error.getErrorLocation().describeLocation() + ": " + error.getDescription());
+        }
+        return description;
+    }
+
+    @NotNull
+    private static ClassNode @NotNull[] newClasses() {
+        ClassNode a = TestClasses.newClass("x/A");
+        TestClasses.addMethod(a, "a", "()I", new FieldInsnNode(Opcodes.GETSTATIC, "x/A", "f", "I"), new IntInsnNode(Opcodes.BIPUSH, 12),
+                new InsnNode(Opcodes.IADD), new LdcInsnNode("text"), new InsnNode(Opcodes.POP), new VarInsnNode(Opcodes.ILOAD, 0), new InsnNode(Opcodes.IRETURN));
+        TestClasses.addMethod(a, "b", "()V", new InsnNode(Opcodes.DUP), new InsnNode(Opcodes.POP), new FieldInsnNode(Opcodes.GETSTATIC, "x/B", "g", "I"),
+                new InsnNode(Opcodes.POP), new InsnNode(Opcodes.RETURN));
+        TestClasses.addMethod(a, "c", "()I", new IntInsnNode(Opcodes.BIPUSH, 12), new InsnNode(Opcodes.IRETURN));
+        ClassNode b = TestClasses.newClass("x/B");
+        return new ClassNode[] {a, b};
+    }
+
+    private static void assertParity(@NotNull String softmap, boolean expectErrors) {
+        SoftmapContext interpreted = TestClasses.parse(softmap);
+        SoftmapContext compiled = TestClasses.parse(softmap);
+        compiled.setCompilingMatchers(true);
+        if (!System.getProperty("java.specification.version").startsWith("1.")) {
+            // Java 8 cannot define the generated classes, in which case both contexts interpret the blocks
+            for (MethodExpression expr : compiled.getMethodExpressions()) {
+                assertNotSame(expr.getMatcher(false), expr.getMatcher(true));
+            }
+        }
+
+        List<String> expected = CompiledMatcherTest.describe(interpreted.tryApply(new ArrayList<>(Arrays.asList(CompiledMatcherTest.newClasses()))));
+        assertEquals(expectErrors, expected.stream().anyMatch(line -> line.contains(": ")));
+        // Apply twice, so that the second application reuses the generated classes
+        for (int i = 0; i < 2; i++) {
+            assertEquals(expected, CompiledMatcherTest.describe(compiled.tryApply(new ArrayList<>(Arrays.asList(CompiledMatcherTest.newClasses())))));
+        }
+    }
+
+    @Test
+    public void testSuccessfulMatchParity() {
+        CompiledMatcherTest.assertParity(CompiledMatcherTest.SOFTMAP, false);
+        ApplicationResult result = TestClasses.parse(CompiledMatcherTest.SOFTMAP).tryApply(new ArrayList<>(Arrays.asList(CompiledMatcherTest.newClasses())));
+        assertEquals(Arrays.asList("CLASS\tx/B\ty/B", "FIELD\tx/B\tI\tg\tcount", "METHOD\tx/A\t()I\ta\tliterals", "METHOD\tx/A\t()V\tb\tseeded"),
+                CompiledMatcherTest.describe(result));
+    }
+
+    @Test
+    public void testFailedMatchParity() {
+        CompiledMatcherTest.assertParity(CompiledMatcherTest.SOFTMAP_FAILING, true);
+        assertFalse(TestClasses.parse(CompiledMatcherTest.SOFTMAP_FAILING).tryApply(new ArrayList<>(Arrays.asList(CompiledMatcherTest.newClasses()))).getErrors().isEmpty());
+    }
+}
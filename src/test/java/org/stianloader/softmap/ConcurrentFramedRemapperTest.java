@@ -0,0 +1,180 @@
+package org.stianloader.softmap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.stianloader.softmap.FramedRemapper.RemapperFrame;
+import org.stianloader.softmap.SimpleFramedRemapper.MethodLoc;
+import org.stianloader.softmap.SimpleFramedRemapper.MethodRealm;
+
+public class ConcurrentFramedRemapperTest {
+
+    @NotNull
+    private static ConcurrentFramedRemapper newRemapper() {
+        // x/B overrides x/A.m()V, so both share a single realm declared by x/A
+        MethodRealm realm = new MethodRealm("x/A", "m", "()V", new HashSet<>(Arrays.asList("x/A", "x/B")));
+        Map<MethodLoc, MethodRealm> realms = new HashMap<>();
+        realms.put(new MethodLoc("x/A", "m", "()V"), realm);
+        realms.put(new MethodLoc("x/B", "m", "()V"), realm);
+        return new ConcurrentFramedRemapper(Collections.unmodifiableMap(realms));
+    }
+
+    private static boolean hasThreadFrames(@NotNull ConcurrentFramedRemapper remapper) throws ReflectiveOperationException {
+        Field frames = ConcurrentFramedRemapper.class.getDeclaredField("frames");
+        frames.setAccessible(true);
+        return ((ThreadLocal<?>) frames.get(remapper)).get() != null;
+    }
+
+    @Test
+    public void testCommit() throws ReflectiveOperationException {
+        ConcurrentFramedRemapper remapper = ConcurrentFramedRemapperTest.newRemapper();
+        assertEquals(1, remapper.getFrameCount());
+        remapper.pushFrame();
+        remapper.mapClass("x/A", "a/Mapped");
+        remapper.pushFrame();
+        remapper.mapMethod("x/B", "m", "()V", "run");
+        remapper.mapField("x/A", "f", "I", "count");
+        assertEquals(3, remapper.getFrameCount());
+        remapper.mergeFrame();
+        assertEquals("run", remapper.getMappedMethod("x/A", "m", "()V"));
+        assertTrue(remapper.commitFrame());
+        assertEquals(1, remapper.getFrameCount());
+        assertFalse(ConcurrentFramedRemapperTest.hasThreadFrames(remapper));
+
+        assertEquals("a/Mapped", remapper.getMappedClass("x/A"));
+        assertEquals("x/A", remapper.getSourceClass("a/Mapped"));
+        assertEquals("run", remapper.getMappedMethod("x/B", "m", "()V"));
+        assertEquals("m", remapper.getSourceMethod("x/A", "run", "()V"));
+        assertEquals("m", remapper.getSourceMethod("x/B", "run", "()V"));
+        assertEquals("count", remapper.getMappedField("x/A", "f", "I"));
+        assertEquals("f", remapper.getSourceField("x/A", "count", "I"));
+        assertNull(remapper.getMappedClass("x/B"));
+        List<String> tiny = new ArrayList<>(remapper.exportToTinyV1());
+        Collections.sort(tiny);
+        // The method is exported for every member of its realm
+        assertEquals(Arrays.asList("CLASS\tx/A\ta/Mapped", "FIELD\tx/A\tI\tf\tcount", "METHOD\tx/A\t()V\tm\trun", "METHOD\tx/B\t()V\tm\trun"), tiny);
+        assertThrows(NoSuchElementException.class, remapper::popFrame);
+        assertThrows(IllegalStateException.class, remapper::mergeFrame);
+    }
+
+    @Test
+    public void testDiscard() throws ReflectiveOperationException {
+        ConcurrentFramedRemapper remapper = ConcurrentFramedRemapperTest.newRemapper();
+        remapper.pushFrame();
+        remapper.mapClass("x/A", "a/Mapped");
+        remapper.pushFrame();
+        remapper.discardFrame();
+        assertEquals("a/Mapped", remapper.getMappedClass("x/A"));
+        remapper.discardFrame();
+        assertNull(remapper.getMappedClass("x/A"));
+        assertFalse(ConcurrentFramedRemapperTest.hasThreadFrames(remapper));
+        assertEquals(Collections.emptyList(), remapper.exportToTinyV1());
+    }
+
+    @Test
+    public void testConflicts() throws ReflectiveOperationException {
+        ConcurrentFramedRemapper remapper = ConcurrentFramedRemapperTest.newRemapper();
+        remapper.pushFrame();
+        remapper.mapClass("x/A", "a/First");
+        RemapperFrame stale = remapper.popFrame();
+
+        remapper.pushFrame();
+        remapper.mapClass("x/A", "a/Second");
+        remapper.mergeFrame();
+
+        // A different mapping of the same class
+        remapper.pushFrame(stale);
+        assertFalse(remapper.commitFrame());
+        assertEquals(2, remapper.getFrameCount());
+        assertThrows(IllegalStateException.class, remapper::mergeFrame);
+        remapper.discardFrame();
+
+        // A different class mapped to the same name
+        remapper.pushFrame();
+        remapper.mapClass("x/B", "a/Second");
+        assertFalse(remapper.commitFrame());
+        remapper.discardFrame();
+
+        // Committing mappings which are already committed succeeds
+        remapper.pushFrame();
+        remapper.mapClass("x/A", "a/Second");
+        assertTrue(remapper.commitFrame());
+        assertFalse(ConcurrentFramedRemapperTest.hasThreadFrames(remapper));
+        assertEquals("a/Second", remapper.getMappedClass("x/A"));
+    }
+
+    @Test
+    public void testConcurrentCommits() throws Exception {
+        ConcurrentFramedRemapper remapper = ConcurrentFramedRemapperTest.newRemapper();
+        int threads = 8;
+        int commits = 200;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int thread = 0; thread < threads; thread++) {
+                int id = thread;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    int sharedCommits = 0;
+                    for (int i = 0; i < commits; i++) {
+                        remapper.pushFrame();
+                        remapper.mapClass("x/T" + id + "_" + i, "a/T" + id + "_" + i);
+                        remapper.mergeFrame();
+
+                        // All threads race to map the same class, only a single one may succeed
+                        remapper.pushFrame();
+                        remapper.mapClass("x/Shared" + i, "a/Shared" + i + "_" + id);
+                        if (remapper.commitFrame()) {
+                            sharedCommits++;
+                        } else {
+                            remapper.discardFrame();
+                        }
+                    }
+                    assertEquals(1, remapper.getFrameCount());
+                    assertFalse(ConcurrentFramedRemapperTest.hasThreadFrames(remapper));
+                    return sharedCommits;
+                }));
+            }
+            start.countDown();
+            int sharedCommits = 0;
+            for (Future<Integer> future : futures) {
+                sharedCommits += future.get();
+            }
+            assertEquals(commits, sharedCommits);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (int thread = 0; thread < threads; thread++) {
+            for (int i = 0; i < commits; i++) {
+                assertEquals("a/T" + thread + "_" + i, remapper.getMappedClass("x/T" + thread + "_" + i));
+            }
+        }
+        for (int i = 0; i < commits; i++) {
+            String mapping = remapper.getMappedClass("x/Shared" + i);
+            assertTrue(mapping != null && mapping.startsWith("a/Shared" + i + "_"), mapping);
+            assertEquals("x/Shared" + i, remapper.getSourceClass(mapping));
+        }
+        assertEquals(threads * commits + commits, remapper.exportToTinyV1().size());
+    }
+}
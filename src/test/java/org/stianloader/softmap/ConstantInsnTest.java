@@ -0,0 +1,120 @@
+package org.stianloader.softmap;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.IntInsnNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.stianloader.softmap.SoftmapContext.ApplicationResult;
+import org.stianloader.softmap.insns.ConstantInsn;
+
+public class ConstantInsnTest {
+
+    @NotNull
+    private static ClassNode newClass() {
+        ClassNode node = TestClasses.newClass("x/A");
+        TestClasses.addMethod(node, "a", "()V", new LdcInsnNode("hello world"), new InsnNode(Opcodes.POP), new InsnNode(Opcodes.RETURN));
+        TestClasses.addMethod(node, "b", "()V", new IntInsnNode(Opcodes.BIPUSH, 12), new InsnNode(Opcodes.POP), new InsnNode(Opcodes.RETURN));
+        TestClasses.addMethod(node, "c", "()V", new IntInsnNode(Opcodes.SIPUSH, 300), new InsnNode(Opcodes.POP), new InsnNode(Opcodes.RETURN));
+        TestClasses.addMethod(node, "d", "()V", new InsnNode(Opcodes.ICONST_2), new InsnNode(Opcodes.POP), new InsnNode(Opcodes.RETURN));
+        TestClasses.addMethod(node, "e", "()V", new LdcInsnNode(Type.getObjectType("x/B")), new InsnNode(Opcodes.POP), new InsnNode(Opcodes.RETURN));
+        TestClasses.addMethod(node, "f", "()V", new LdcInsnNode(12L), new InsnNode(Opcodes.POP2), new InsnNode(Opcodes.RETURN));
+        TestClasses.addMethod(node, "g", "()V", new LdcInsnNode("other"), new InsnNode(Opcodes.POP), new InsnNode(Opcodes.RETURN));
+        return node;
+    }
+
+    @NotNull
+    private static ConstantInsn parseConstant(@NotNull String line) {
+        return (ConstantInsn) TestClasses.parse("method x/A.z?()V {\n" + line + "\n}\n").getMethodExpressions().get(0).getInsns().get(0);
+    }
+
+    @NotNull
+    private static MethodExpression parseExpression(@NotNull String body) {
+        return TestClasses.parse("method x/A.z?()V {\n" + body + "}\n").getMethodExpressions().get(0);
+    }
+
+    @Test
+    public void testParseConstants() {
+        assertEquals("hello world", ConstantInsnTest.parseConstant("LDC \"hello world\"").getConstant());
+        assertEquals("tab\there", ConstantInsnTest.parseConstant("LDC \"tab\\there\"").getConstant());
+        assertEquals(12L, ConstantInsnTest.parseConstant("LDC 12L").getConstant());
+        assertEquals(1.5F, ConstantInsnTest.parseConstant("LDC 1.5F").getConstant());
+        assertEquals(12, ConstantInsnTest.parseConstant("LDC 12").getConstant());
+        assertEquals(Type.getObjectType("x/B"), ConstantInsnTest.parseConstant("LDC Lx/B;").getConstant());
+        assertTrue(ConstantInsnTest.parseConstant("LDC Lx/B;").isClassReference());
+        assertEquals(-12, ConstantInsnTest.parseConstant("BIPUSH -12").getConstant());
+        assertEquals(0x7FFF, ConstantInsnTest.parseConstant("SIPUSH 0x7FFF").getConstant());
+        assertNull(ConstantInsnTest.parseConstant("LDC").getConstant());
+
+        String source = "softmap v1\n\nmethod x/A.z?()V {\nBIPUSH 128\nSIPUSH x\nLDC foo\nLDC [I?\nICONST_2\nLCONST_0\nFCONST_1\nDCONST_0\n}\n";
+        List<SoftmapParseError> errors = SoftmapContext.parse(source, 0, source.length(), 1, 1).getParseErrors();
+        assertEquals(4, errors.size(), errors.toString());
+        assertTrue(errors.get(0).getDescription().contains("out of range"));
+        assertTrue(errors.get(1).getDescription().contains("not a valid integer"));
+        assertTrue(errors.get(2).getDescription().contains("neither a string literal"));
+        assertTrue(errors.get(3).getDescription().contains("mapping a primitive"));
+    }
+
+    @Test
+    public void testMatchConstants() {
+        ApplicationResult result = TestClasses.apply("method x/A.string?()V {\nLDC \"hello world\"\nPOP\nRETURN\n}\n"
+                + "method x/A.bipush?()V {\nBIPUSH 12\nPOP\nRETURN\n}\n"
+                + "method x/A.sipush?()V {\nSIPUSH 300\nPOP\nRETURN\n}\n"
+                + "method x/A.iconst?()V {\nICONST_2\nPOP\nRETURN\n}\n"
+                + "method x/A.literal?()V {\nLDC Lx/R;?\nPOP\nRETURN\n}\n"
+                + "method x/A.long?()V {\nLDC 12L\nPOP2\nRETURN\n}\n", ConstantInsnTest.newClass());
+        assertEquals(Collections.emptyList(), TestClasses.getErrors(result));
+        List<String> mappings = new ArrayList<>(result.getGeneratedTinyV1Mappings());
+        Collections.sort(mappings);
+        assertEquals(Arrays.asList("CLASS\tx/B\tx/R",
+                "METHOD\tx/A\t()V\ta\tstring",
+                "METHOD\tx/A\t()V\tb\tbipush",
+                "METHOD\tx/A\t()V\tc\tsipush",
+                "METHOD\tx/A\t()V\td\ticonst",
+                "METHOD\tx/A\t()V\te\tliteral",
+                "METHOD\tx/A\t()V\tf\tlong"), mappings);
+    }
+
+    @Test
+    public void testMismatchedConstants() {
+        assertEquals(1, TestClasses.apply("method x/A.z?()V {\nLDC \"missing\"\nPOP\nRETURN\n}\n", ConstantInsnTest.newClass()).getErrors().size());
+        assertEquals(1, TestClasses.apply("method x/A.z?()V {\nBIPUSH 13\nPOP\nRETURN\n}\n", ConstantInsnTest.newClass()).getErrors().size());
+        // The LDC of an int never matches the LDC of a long
+        assertEquals(1, TestClasses.apply("method x/A.z?()V {\nLDC 12\nPOP2\nRETURN\n}\n", ConstantInsnTest.newClass()).getErrors().size());
+        assertEquals(1, TestClasses.apply("method x/A.z?()V {\nLDC Lx/C;\nPOP\nRETURN\n}\n", ConstantInsnTest.newClass()).getErrors().size());
+    }
+
+    @Test
+    public void testConstantIndexCandidates() {
+        List<ClassNode> nodes = Collections.singletonList(ConstantInsnTest.newClass());
+        ConstantIndex index = new ConstantIndex(new MethodTable(nodes));
+        FramedRemapper remapper = new SimpleFramedRemapper(SimpleFramedRemapper.realmsOf(nodes));
+        remapper.pushFrame();
+        assertArrayEquals(new int[] {0}, index.getAnchoredMethods(ConstantInsnTest.parseExpression("LDC \"hello world\"\n"), remapper));
+        assertArrayEquals(new int[] {1}, index.getAnchoredMethods(ConstantInsnTest.parseExpression("BIPUSH 12\n"), remapper));
+        assertArrayEquals(new int[] {5}, index.getAnchoredMethods(ConstantInsnTest.parseExpression("LDC 12L\n"), remapper));
+        assertArrayEquals(new int[0], index.getAnchoredMethods(ConstantInsnTest.parseExpression("LDC 12\n"), remapper));
+        assertArrayEquals(new int[0], index.getAnchoredMethods(ConstantInsnTest.parseExpression("LDC \"hello world\"\nBIPUSH 12\n"), remapper));
+        assertArrayEquals(new int[] {4}, index.getAnchoredMethods(ConstantInsnTest.parseExpression("LDC Lx/B;\n"), remapper));
+        assertNull(index.getAnchoredMethods(ConstantInsnTest.parseExpression("ICONST_2\nLDC\n"), remapper));
+        assertNull(index.getAnchoredMethods(ConstantInsnTest.parseExpression("LDC Lx/R;?\n"), remapper));
+
+        // Class literals are compared against mapped names
+        remapper.mapClass("x/B", "x/R");
+        assertArrayEquals(new int[0], index.getAnchoredMethods(ConstantInsnTest.parseExpression("LDC Lx/B;\n"), remapper));
+        assertArrayEquals(new int[] {4}, index.getAnchoredMethods(ConstantInsnTest.parseExpression("LDC Lx/R;\n"), remapper));
+    }
+}
@@ -0,0 +1,100 @@
+package org.stianloader.softmap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.stianloader.softmap.SoftmapContext.ApplicationResult;
+
+public class DeferredBindingRemapperTest {
+
+    @NotNull
+    private static SimpleFramedRemapper newRemapper() {
+        ClassNode node = TestClasses.newClass("x/A");
+        TestClasses.addMethod(node, "m", "()V", Opcodes.RETURN);
+        SimpleFramedRemapper remapper = new SimpleFramedRemapper(SimpleFramedRemapper.realmsOf(Collections.singletonList(node)));
+        remapper.pushFrame();
+        return remapper;
+    }
+
+    @Test
+    public void testDiscardedFramesAreNotWritten() {
+        SimpleFramedRemapper delegate = DeferredBindingRemapperTest.newRemapper();
+        DeferredBindingRemapper remapper = new DeferredBindingRemapper(delegate);
+        remapper.pushFrame();
+        remapper.mapClass("x/A", "y/A");
+        remapper.mapMethod("x/A", "m", "()V", "n");
+        assertEquals(2, remapper.getFrameCount());
+        assertEquals("y/A", remapper.getMappedClass("x/A"));
+        assertEquals("n", remapper.getMappedMethod("x/A", "m", "()V"));
+        assertNull(delegate.getMappedClass("x/A"));
+        assertEquals(1, delegate.getFrameCount());
+
+        remapper.discardFrame();
+        assertNull(remapper.getMappedClass("x/A"));
+        assertEquals(Collections.emptyList(), delegate.exportToTinyV1());
+    }
+
+    @Test
+    public void testPoppedFramesAreReplayed() {
+        SimpleFramedRemapper delegate = DeferredBindingRemapperTest.newRemapper();
+        DeferredBindingRemapper remapper = new DeferredBindingRemapper(delegate);
+        remapper.pushFrame();
+        remapper.mapClass("x/A", "y/A");
+        remapper.pushFrame();
+        remapper.mapMethod("x/A", "m", "()V", "n");
+        remapper.mergeFrame();
+        remapper.pushFrame();
+        remapper.mapField("x/A", "f", "I", "g");
+        remapper.discardFrame();
+
+        FramedRemapper.RemapperFrame frame = remapper.popFrame();
+        assertEquals(1, remapper.getFrameCount());
+        delegate.pushFrame(frame);
+        assertEquals("y/A", delegate.getMappedClass("x/A"));
+        assertEquals("n", delegate.getMappedMethod("x/A", "m", "()V"));
+        assertNotEquals("g", delegate.getMappedField("x/A", "f", "I"));
+    }
+
+    @Test
+    public void testLookupPrecedenceMirrorsFramedRemapper() {
+        SimpleFramedRemapper expected = DeferredBindingRemapperTest.newRemapper();
+        DeferredBindingRemapper remapper = new DeferredBindingRemapper(DeferredBindingRemapperTest.newRemapper());
+        for (FramedRemapper target : Arrays.<FramedRemapper>asList(expected, remapper)) {
+            target.pushFrame();
+            target.mapClass("x/A", "y/A");
+            target.mapMethod("x/A", "m", "()V", "first");
+            target.mapMethod("x/A", "m", "()V", "second");
+            target.pushFrame();
+            target.mapClass("x/A", "z/A");
+            target.mapField("x/A", "f", "I", "g");
+        }
+        assertEquals(expected.getMappedClass("x/A"), remapper.getMappedClass("x/A"));
+        assertEquals(expected.getMappedMethod("x/A", "m", "()V"), remapper.getMappedMethod("x/A", "m", "()V"));
+        assertEquals(expected.getMappedField("x/A", "f", "I"), remapper.getMappedField("x/A", "f", "I"));
+    }
+
+    @Test
+    public void testMismatchedMethodsDoNotMap() {
+        ClassNode a = TestClasses.newClass("x/A");
+        TestClasses.addMethod(a, "a", "()V", Opcodes.DUP, Opcodes.RETURN);
+        ClassNode b = TestClasses.newClass("x/B");
+        TestClasses.addMethod(b, "b", "()V", Opcodes.POP, Opcodes.RETURN);
+
+        // x/A is mapped while its method is evaluated, but as the method does not match the mapping is never written
+        ApplicationResult result = TestClasses.apply("method y/Owner?.run?()V {\nPOP\nRETURN\n}\n", a, b);
+        assertEquals(Collections.emptyList(), TestClasses.getErrors(result));
+        List<String> mappings = new ArrayList<>(result.getGeneratedTinyV1Mappings());
+        Collections.sort(mappings);
+        assertEquals(Arrays.asList("CLASS\tx/B\ty/Owner", "METHOD\tx/B\t()V\tb\trun"), mappings);
+    }
+}
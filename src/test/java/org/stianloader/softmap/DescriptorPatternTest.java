@@ -0,0 +1,97 @@
+package org.stianloader.softmap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.stianloader.softmap.SoftmapContext.ApplicationResult;
+import org.stianloader.softmap.insns.DescriptorPattern;
+import org.stianloader.softmap.insns.MatchResult;
+import org.stianloader.softmap.tokens.StringToken;
+
+public class DescriptorPatternTest {
+
+    private static final String[] DESCRIPTORS = {"()V", "(I)V", "([I)V", "([[I)V", "([J)V", "([I)I", "([La/B;)V"};
+
+    private static final String[] PATTERNS = {"()V", "([I)V", "([[I)La/X;?", "([J?)V", "(I)V"};
+
+    private static final String SOFTMAP = "method x/A.first?()V {\n"
+            + "GETSTATIC y/Callee?.count? I\n"
+            + "INVOKESTATIC y/Callee.m([I)V\n"
+            + "RETURN\n"
+            + "}\n";
+
+    @Nullable
+    private static String describe(@Nullable MatchResult result) {
+        return result == null ? null : result.getErrorDescription();
+    }
+
+    @NotNull
+    private static List<@NotNull String> getMappings(@NotNull ApplicationResult result) {
+        List<String> mappings = new ArrayList<>(result.getGeneratedTinyV1Mappings());
+        Collections.sort(mappings);
+        return mappings;
+    }
+
+    @NotNull
+    private static DescriptorPattern newPattern(@NotNull String text) {
+        return new DescriptorPattern(new StringToken(text, 0, text.length(), 1, 1));
+    }
+
+    @NotNull
+    private static ClassNode @NotNull[] newVersion(@NotNull String caller, @NotNull String callee) {
+        ClassNode callerNode = TestClasses.newClass(caller);
+        ClassNode calleeNode = TestClasses.newClass(callee);
+        TestClasses.addMethod(calleeNode, "m", "([I)V", Opcodes.RETURN);
+        TestClasses.addMethod(callerNode, "a", "()V", new FieldInsnNode(Opcodes.GETSTATIC, callee, "f", "I"),
+                new MethodInsnNode(Opcodes.INVOKESTATIC, callee, "m", "([I)V"), new InsnNode(Opcodes.RETURN));
+        return new ClassNode[] {callerNode, calleeNode};
+    }
+
+    @Test
+    public void testReusedPatternsMatchFreshPatterns() {
+        for (String text : DescriptorPatternTest.PATTERNS) {
+            DescriptorPattern reused = DescriptorPatternTest.newPattern(text);
+            // Walk every descriptor twice so that the cached class names of the reused pattern come into play
+            for (int i = 0; i < 2; i++) {
+                for (String desc : DescriptorPatternTest.DESCRIPTORS) {
+                    FramedRemapper expectedRemapper = new SimpleFramedRemapper(Collections.emptyMap());
+                    expectedRemapper.pushFrame();
+                    FramedRemapper remapper = new SimpleFramedRemapper(Collections.emptyMap());
+                    remapper.pushFrame();
+                    String expected = DescriptorPatternTest.describe(DescriptorPatternTest.newPattern(text).mapDescriptor(desc, expectedRemapper));
+                    assertEquals(expected, DescriptorPatternTest.describe(reused.mapDescriptor(desc, remapper)), text + " against " + desc);
+                    assertEquals(DescriptorPatternTest.newPattern(text).matchesShape(desc), reused.matchesShape(desc), text + " against " + desc);
+                }
+            }
+        }
+
+        assertNull(DescriptorPatternTest.newPattern("([I)V").mapDescriptor("([I)V", new SimpleFramedRemapper(Collections.emptyMap())));
+        assertNotNull(DescriptorPatternTest.newPattern("([I)V").mapDescriptor("([[I)V", new SimpleFramedRemapper(Collections.emptyMap())));
+    }
+
+    @Test
+    public void testRepeatedApplication() {
+        // Operands are decoded once when parsing, so applying the same expressions to other classes must not carry over any state
+        SoftmapContext context = TestClasses.parse(DescriptorPatternTest.SOFTMAP);
+        ApplicationResult first = context.tryApply(new ArrayList<>(Arrays.asList(DescriptorPatternTest.newVersion("x/A", "x/B"))));
+        ApplicationResult second = context.tryApply(new ArrayList<>(Arrays.asList(DescriptorPatternTest.newVersion("x/A", "x/C"))));
+        assertEquals(Collections.emptyList(), TestClasses.getErrors(first));
+        assertEquals(Collections.emptyList(), TestClasses.getErrors(second));
+        assertEquals(DescriptorPatternTest.getMappings(TestClasses.apply(DescriptorPatternTest.SOFTMAP, DescriptorPatternTest.newVersion("x/A", "x/C"))), DescriptorPatternTest.getMappings(second));
+        assertEquals(Arrays.asList("CLASS\tx/C\ty/Callee", "FIELD\tx/C\tI\tf\tcount", "METHOD\tx/A\t()V\ta\tfirst"), DescriptorPatternTest.getMappings(second));
+    }
+}
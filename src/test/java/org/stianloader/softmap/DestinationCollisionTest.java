@@ -0,0 +1,104 @@
+package org.stianloader.softmap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.stianloader.softmap.SoftmapContext.ApplicationResult;
+
+public class DestinationCollisionTest {
+
+    @NotNull
+    private static List<@NotNull String> getMappings(@NotNull ApplicationResult result) {
+        List<String> mappings = new ArrayList<>(result.getGeneratedTinyV1Mappings());
+        Collections.sort(mappings);
+        return mappings;
+    }
+
+    @NotNull
+    private static List<@NotNull ClassNode> newHierarchy() {
+        ClassNode parent = TestClasses.newClass("x/P");
+        TestClasses.addMethod(parent, "m", "()V", Opcodes.DUP, Opcodes.RETURN).access = Opcodes.ACC_PUBLIC;
+        ClassNode child = TestClasses.newClass("x/C");
+        child.superName = "x/P";
+        TestClasses.addMethod(child, "n", "()V", Opcodes.POP, Opcodes.RETURN).access = Opcodes.ACC_PUBLIC;
+        return Arrays.asList(parent, child);
+    }
+
+    @Test
+    public void testClassCollision() {
+        ClassNode a = TestClasses.newClass("x/A");
+        TestClasses.addMethod(a, "a", "()V", Opcodes.DUP, Opcodes.RETURN);
+        ClassNode b = TestClasses.newClass("x/B");
+        TestClasses.addMethod(b, "b", "()V", Opcodes.POP, Opcodes.RETURN);
+
+        ApplicationResult result = TestClasses.apply("method y/Same?.first?()V {\nDUP\nRETURN\n}\n"
+                + "method y/Same?.second?()V {\nPOP\nRETURN\n}\n", a, b);
+        assertEquals(1, result.getErrors().size(), TestClasses.getErrors(result).toString());
+        assertEquals(Arrays.asList("CLASS\tx/A\ty/Same", "METHOD\tx/A\t()V\ta\tfirst"), DestinationCollisionTest.getMappings(result));
+
+        // Mapping a class to the name it already has is not a collision
+        result = TestClasses.apply("method y/Same?.first?()V {\nDUP\nRETURN\n}\n"
+                + "method y/Same?.first?()V {\nDUP\nRETURN\n}\n", a, b);
+        assertEquals(Collections.emptyList(), TestClasses.getErrors(result));
+    }
+
+    @Test
+    public void testMethodCollision() {
+        ClassNode a = TestClasses.newClass("x/A");
+        TestClasses.addMethod(a, "a", "()V", Opcodes.DUP, Opcodes.RETURN);
+        TestClasses.addMethod(a, "b", "()V", Opcodes.POP, Opcodes.RETURN);
+        TestClasses.addMethod(a, "c", "(I)V", Opcodes.RETURN);
+
+        ApplicationResult result = TestClasses.apply("method x/A.run?()V {\nDUP\nRETURN\n}\n"
+                + "method x/A.run?()V {\nPOP\nRETURN\n}\n"
+                + "method x/A.run?(I)V {\nRETURN\n}\n", a);
+        // Methods with different descriptors may share a name
+        assertEquals(1, result.getErrors().size(), TestClasses.getErrors(result).toString());
+        assertEquals(Arrays.asList("METHOD\tx/A\t()V\ta\trun", "METHOD\tx/A\t(I)V\tc\trun"), DestinationCollisionTest.getMappings(result));
+    }
+
+    @Test
+    public void testRealmCollision() {
+        // x/C inherits x/P.m, so x/P.m cannot take a name already used by a method of x/C with the same descriptor
+        ApplicationResult result = TestClasses.apply("method x/C.run?()V {\nPOP\nRETURN\n}\n"
+                + "method x/P.run?()V {\nDUP\nRETURN\n}\n", DestinationCollisionTest.newHierarchy().toArray(new ClassNode[0]));
+        assertEquals(1, result.getErrors().size(), TestClasses.getErrors(result).toString());
+        assertEquals(Collections.singletonList("METHOD\tx/C\t()V\tn\trun"), DestinationCollisionTest.getMappings(result));
+
+        // The same holds the other way around
+        result = TestClasses.apply("method x/P.run?()V {\nDUP\nRETURN\n}\n"
+                + "method x/C.run?()V {\nPOP\nRETURN\n}\n", DestinationCollisionTest.newHierarchy().toArray(new ClassNode[0]));
+        assertEquals(1, result.getErrors().size(), TestClasses.getErrors(result).toString());
+        assertEquals(Arrays.asList("METHOD\tx/C\t()V\tm\trun", "METHOD\tx/P\t()V\tm\trun"), DestinationCollisionTest.getMappings(result));
+    }
+
+    @Test
+    public void testReverseLookups() {
+        List<ClassNode> nodes = DestinationCollisionTest.newHierarchy();
+        SimpleFramedRemapper remapper = new SimpleFramedRemapper(SimpleFramedRemapper.realmsOf(nodes));
+        remapper.pushFrame();
+        remapper.mapClass("x/P", "y/Parent");
+        remapper.mapMethod("x/P", "m", "()V", "run");
+        assertEquals("x/P", remapper.getSourceClass("y/Parent"));
+        assertNull(remapper.getSourceClass("x/P"));
+        assertEquals("m", remapper.getSourceMethod("x/P", "run", "()V"));
+        // The mapping applies to the whole realm, including the inherited method
+        assertEquals("m", remapper.getSourceMethod("x/C", "run", "()V"));
+        assertNull(remapper.getSourceMethod("x/C", "run", "(I)V"));
+
+        // Shadowed mappings of upper frames are ignored
+        remapper.pushFrame();
+        remapper.mapClass("x/C", "y/Child");
+        remapper.discardFrame();
+        assertNull(remapper.getSourceClass("y/Child"));
+    }
+}
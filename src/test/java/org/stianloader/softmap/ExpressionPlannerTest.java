@@ -0,0 +1,75 @@
+package org.stianloader.softmap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.stianloader.softmap.SoftmapContext.ApplicationResult;
+
+public class ExpressionPlannerTest {
+
+    private static final String SOFTMAP = "method x/A.first?()V {\nDUP\nPOP\nRETURN\n}\n"
+            + "method x/B.second?()V {\nICONST_0\nPOP\nRETURN\n}\n"
+            + "method y/Owner?.third?(I)V {\nRETURN\n}\n"
+            + "method x/A.fourth?()V {\nISUB\nRETURN\n}\n";
+
+    @NotNull
+    private static ApplicationResult apply(boolean planning) {
+        ClassNode a = TestClasses.newClass("x/A");
+        TestClasses.addMethod(a, "a", "()V", Opcodes.DUP, Opcodes.POP, Opcodes.RETURN);
+        TestClasses.addMethod(a, "b", "()V", Opcodes.POP, Opcodes.RETURN);
+        TestClasses.addMethod(a, "c", "(I)V", Opcodes.RETURN);
+        ClassNode b = TestClasses.newClass("x/B");
+        TestClasses.addMethod(b, "m", "()V", Opcodes.ICONST_0, Opcodes.POP, Opcodes.RETURN);
+        SoftmapContext context = TestClasses.parse(ExpressionPlannerTest.SOFTMAP);
+        context.setPlanningExpressions(planning);
+        return context.tryApply(new ArrayList<>(Arrays.asList(a, b)));
+    }
+
+    @NotNull
+    private static List<@NotNull String> getMappings(@NotNull ApplicationResult result) {
+        List<String> mappings = new ArrayList<>(result.getGeneratedTinyV1Mappings());
+        Collections.sort(mappings);
+        return mappings;
+    }
+
+    @Test
+    public void testPlannedOrderMatchesDeclarationOrder() {
+        ApplicationResult declared = ExpressionPlannerTest.apply(false);
+        ApplicationResult planned = ExpressionPlannerTest.apply(true);
+        assertEquals(Arrays.asList("CLASS\tx/A\ty/Owner", "METHOD\tx/A\t()V\ta\tfirst", "METHOD\tx/A\t(I)V\tc\tthird", "METHOD\tx/B\t()V\tm\tsecond"),
+                ExpressionPlannerTest.getMappings(declared));
+        assertEquals(ExpressionPlannerTest.getMappings(declared), ExpressionPlannerTest.getMappings(planned));
+        // The fourth expression never matches, no matter when it is applied
+        assertEquals(1, declared.getErrors().size());
+        assertEquals(TestClasses.getErrors(declared), TestClasses.getErrors(planned));
+    }
+
+    @Test
+    public void testExplanation() {
+        List<String> declared = ExpressionPlannerTest.apply(false).getExplanation();
+        assertEquals(4, declared.size());
+        for (int i = 0; i < declared.size(); i++) {
+            assertTrue(declared.get(i).startsWith((i + 1) + ". Expression #" + (i + 1) + " "), declared.get(i));
+            assertTrue(declared.get(i).contains("estimated n/a candidates"), declared.get(i));
+        }
+
+        // The first expression has the most candidates and is thus applied last, ties keep the order of declaration
+        List<String> planned = ExpressionPlannerTest.apply(true).getExplanation();
+        assertEquals(4, planned.size());
+        assertTrue(planned.get(0).startsWith("1. Expression #2 "), planned.get(0));
+        assertTrue(planned.get(1).startsWith("2. Expression #3 "), planned.get(1));
+        assertTrue(planned.get(2).startsWith("3. Expression #4 "), planned.get(2));
+        assertTrue(planned.get(3).startsWith("4. Expression #1 "), planned.get(3));
+        assertFalse(planned.get(3).contains("n/a"), planned.get(3));
+    }
+}
@@ -0,0 +1,88 @@
+package org.stianloader.softmap;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.stianloader.softmap.SoftmapContext.ApplicationResult;
+import org.stianloader.softmap.insns.DescriptorPattern;
+import org.stianloader.softmap.insns.InvokeInsn;
+import org.stianloader.softmap.tokens.StringToken;
+
+public class HeaderIndexTest {
+
+    private static final String[] DESCRIPTORS = {"()V", "(Ljava/lang/Object;)V", "(La/B;La/C;)V", "([La/B;)V", "([[I)V", "(La/B;[La/C;)I", "([I)V", "(La/B;I)V", "(La/B;)La/C;"};
+
+    private static final String[] PATTERNS = {"()V", "()La/X;?", "(La/X;?)V", "([La/X;?)V", "(La/X;?La/Y;?)V", "([[I)V", "([[I)La/X;?", "(La/X;?[La/Y;?)I", "([I)V", "(La/X;?I)V", "(La/B;)V", "(L;)V"};
+
+    @NotNull
+    private static ClassNode newClass() {
+        ClassNode node = TestClasses.newClass("x/A");
+        for (int i = 0; i < HeaderIndexTest.DESCRIPTORS.length; i++) {
+            TestClasses.addMethod(node, "m" + (i % 3), HeaderIndexTest.DESCRIPTORS[i], Opcodes.RETURN);
+        }
+        return node;
+    }
+
+    @NotNull
+    private static StringToken newToken(@NotNull String text) {
+        return new StringToken(text, 0, text.length(), 1, 1);
+    }
+
+    @Test
+    public void testShapesContainEveryMappableDescriptor() {
+        ClassNode node = HeaderIndexTest.newClass();
+        List<ClassNode> nodes = Collections.singletonList(node);
+        HeaderIndex index = new HeaderIndex(new MethodTable(nodes));
+        for (String pattern : HeaderIndexTest.PATTERNS) {
+            StringToken token = HeaderIndexTest.newToken(pattern);
+            int[] shapeMatches = index.getMethodsByDescriptorShape(new DescriptorPattern(token));
+            for (int ordinal = 0; ordinal < node.methods.size(); ordinal++) {
+                FramedRemapper remapper = new SimpleFramedRemapper(SimpleFramedRemapper.realmsOf(nodes));
+                remapper.pushFrame();
+                boolean mappable;
+                try {
+                    mappable = InvokeInsn.mapDescriptor(token, node.methods.get(ordinal).desc, remapper) == null;
+                } catch (IndexOutOfBoundsException e) {
+                    mappable = false;
+                }
+                if (mappable) {
+                    assertTrue(Arrays.binarySearch(shapeMatches, ordinal) >= 0, pattern + " maps " + node.methods.get(ordinal).desc);
+                }
+            }
+        }
+        // Neither return types nor trailing arguments are compared when mapping descriptors
+        assertArrayEquals(new int[] {0, 1, 2, 3, 4, 5, 6, 7, 8}, index.getMethodsByDescriptorShape(new DescriptorPattern(HeaderIndexTest.newToken("()La/X;?"))));
+        assertArrayEquals(new int[] {4}, index.getMethodsByDescriptorShape(new DescriptorPattern(HeaderIndexTest.newToken("([[I)La/X;?"))));
+    }
+
+    @Test
+    public void testNamesAndDescriptors() {
+        HeaderIndex index = new HeaderIndex(new MethodTable(Collections.singletonList(HeaderIndexTest.newClass())));
+        assertArrayEquals(new int[] {0, 3, 6}, index.getMethodsByName("m0"));
+        assertArrayEquals(new int[] {2, 5, 8}, index.getMethodsByName("m2"));
+        assertArrayEquals(new int[0], index.getMethodsByName("m3"));
+        assertArrayEquals(new int[] {4}, index.getMethodsByDescriptor("([[I)V"));
+        assertArrayEquals(new int[0], index.getMethodsByDescriptor("(I)V"));
+    }
+
+    @Test
+    public void testHeaderLookupsDuringApplication() {
+        ApplicationResult result = TestClasses.apply("method x/A.mapped?([[I)La/X;? {\nRETURN\n}\n"
+                + "method x/A.renamed?([I)V {\nRETURN\n}\n", HeaderIndexTest.newClass());
+        assertEquals(Collections.emptyList(), TestClasses.getErrors(result));
+        assertEquals(Arrays.asList("METHOD\tx/A\t([I)V\tm0\trenamed", "METHOD\tx/A\t([[I)V\tm1\tmapped"), result.getGeneratedTinyV1Mappings());
+
+        // Methods with a different name are never matched, even if their body matches
+        result = TestClasses.apply("method x/A.m2([[I)V {\nRETURN\n}\n", HeaderIndexTest.newClass());
+        assertEquals(1, result.getErrors().size());
+    }
+}
@@ -0,0 +1,174 @@
+package org.stianloader.softmap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.stianloader.softmap.tokens.StringToken;
+import org.stianloader.softmap.tokens.Token;
+
+public class IncrementalReparseTest {
+
+    private static final String SOURCE = "softmap v1\n"
+            + "\n"
+            + "method x/A.a?()I {\n"
+            + "ICONST_0\n"
+            + "IRETURN\n"
+            + "}\n"
+            + "\n"
+            + "// A comment\n"
+            + "method x/A.b?()V {\n"
+            + "RETURN\n"
+            + "}\n"
+            + "\n"
+            + "method x/A.c?()V {\n"
+            + "*\n"
+            + "RETURN\n"
+            + "}\n";
+
+    /**
+     * Describes the expressions, tokens and parse errors of a context, including their locations.
+     *
+     * @param context The context.
+     * @return The description.
+     */
+    @NotNull
+    private static List<@NotNull String> describe(@NotNull SoftmapContext context) {
+        List<@NotNull String> description = new ArrayList<>();
+        for (MethodExpression expr : context.getMethodExpressions()) {
+            description.add("Expression " + expr.getDeclaringLocation().describeLocation());
+            for (Token token : expr.getTokens()) {
+                String text = token instanceof StringToken ? ((StringToken) token).getText() : "";
+                description.add(token.getClass().getSimpleName() + " '" + text + "' " + token.describeLocation());
+            }
+            description.add("Blocks " + expr.getInsns().size());
+        }
+        for (SoftmapParseError error : context.getParseErrors()) {
+            description.add("Error " + error.startCodepoint + "-" + error.endCodepoint + " at " + error.row + ":" + error.column + ": " + error.getDescription());
+        }
+        return description;
+    }
+
+    @NotNull
+    private static SoftmapContext parse(@NotNull String source) {
+        return SoftmapContext.parse(source, 0, source.length(), 1, 1);
+    }
+
+    /**
+     * Applies an edit incrementally and asserts that the result is equivalent to parsing the edited source from scratch.
+     *
+     * @param context The context parsed from the source.
+     * @param source The source before the edit.
+     * @param search The text at which the edit starts.
+     * @param removedLength The amount of removed characters.
+     * @param insertedText The inserted text.
+     * @return The reparsed context.
+     */
+    @NotNull
+    private static SoftmapContext assertReparse(@NotNull SoftmapContext context, @NotNull String source, @NotNull String search, int removedLength, @NotNull String insertedText) {
+        int offset = source.indexOf(search);
+        String edited = source.substring(0, offset) + insertedText + source.substring(offset + removedLength);
+        SoftmapContext reparsed = context.reparse(offset, removedLength, insertedText);
+        assertEquals(IncrementalReparseTest.describe(IncrementalReparseTest.parse(edited)), IncrementalReparseTest.describe(reparsed));
+        return reparsed;
+    }
+
+    @Test
+    public void testUntouchedExpressionsAreReused() {
+        SoftmapContext context = IncrementalReparseTest.parse(IncrementalReparseTest.SOURCE);
+        List<MethodExpression> expressions = context.getMethodExpressions();
+        SoftmapContext reparsed = IncrementalReparseTest.assertReparse(context, IncrementalReparseTest.SOURCE, "RETURN\n}\n\nmethod x/A.c", 0, "*\n");
+        assertSame(expressions.get(0), reparsed.getMethodExpressions().get(0));
+        // Following expressions are moved, which requires copying their tokens
+        assertNotSame(expressions.get(2), reparsed.getMethodExpressions().get(2));
+        assertEquals(2, reparsed.getMethodExpressions().get(1).getInsns().size());
+
+        // Edits that do not move the following expressions allow them to be reused as well
+        reparsed = IncrementalReparseTest.assertReparse(context, IncrementalReparseTest.SOURCE, "RETURN\n}\n\nmethod x/A.c", 6, "ARETUR");
+        assertSame(expressions.get(0), reparsed.getMethodExpressions().get(0));
+        assertSame(expressions.get(2), reparsed.getMethodExpressions().get(2));
+    }
+
+    @Test
+    public void testReparsedContextIsUnchanged() {
+        SoftmapContext context = IncrementalReparseTest.parse(IncrementalReparseTest.SOURCE + "\nmethod x/A.d?()V {\nINVALID\n}\n");
+        List<@NotNull String> description = IncrementalReparseTest.describe(context);
+        SoftmapParseError error = context.getParseErrors().get(0);
+        String errorLocation = error.startCodepoint + "-" + error.endCodepoint + " at " + error.row + ":" + error.column;
+        List<Token> tokens = context.getMethodExpressions().get(2).getTokens();
+        String tokenLocation = tokens.get(0).describeLocation();
+
+        context.reparse(IncrementalReparseTest.SOURCE.indexOf("IRETURN"), 0, "\n\n\nPOP\n");
+        context.reparse(IncrementalReparseTest.SOURCE.indexOf("ICONST_0\n"), "ICONST_0\n".length(), "");
+
+        assertEquals(description, IncrementalReparseTest.describe(context));
+        assertEquals(errorLocation, error.startCodepoint + "-" + error.endCodepoint + " at " + error.row + ":" + error.column);
+        assertEquals(tokenLocation, tokens.get(0).describeLocation());
+        assertEquals("*", ((StringToken) tokens.get(0)).getText());
+    }
+
+    @Test
+    public void testEditsShiftFollowingExpressions() {
+        String source = IncrementalReparseTest.SOURCE;
+        // Adds rows and characters to the first expression
+        IncrementalReparseTest.assertReparse(IncrementalReparseTest.parse(source), source, "IRETURN", 0, "POP\nICONST_1\n");
+        // Removes rows from the first expression
+        IncrementalReparseTest.assertReparse(IncrementalReparseTest.parse(source), source, "ICONST_0\n", "ICONST_0\n".length(), "");
+        // Inserts an expression between two expressions
+        IncrementalReparseTest.assertReparse(IncrementalReparseTest.parse(source), source, "// A comment", 0, "method x/A.d?()V {\nRETURN\n}\n\n");
+        // Renames a member within the declaration
+        IncrementalReparseTest.assertReparse(IncrementalReparseTest.parse(source), source, "b?()V", 1, "renamed");
+        // Removes an expression
+        IncrementalReparseTest.assertReparse(IncrementalReparseTest.parse(source), source, "method x/A.b", "method x/A.b?()V {\nRETURN\n}\n".length(), "");
+    }
+
+    @Test
+    public void testSuccessiveEdits() {
+        String source = IncrementalReparseTest.SOURCE;
+        SoftmapContext context = IncrementalReparseTest.parse(source);
+        String[][] edits = {
+            {"IRETURN", "0", "POP\nICONST_1\n"},
+            {"RETURN\n}\n\nmethod x/A.c", "0", "*\n"},
+            {"method x/A.c", "1", "M"},
+            {"// A comment", "12", "/* Another comment */"},
+        };
+        for (String[] edit : edits) {
+            int offset = source.indexOf(edit[0]);
+            int removedLength = Integer.parseInt(edit[1]);
+            context = IncrementalReparseTest.assertReparse(context, source, edit[0], removedLength, edit[2]);
+            source = source.substring(0, offset) + edit[2] + source.substring(offset + removedLength);
+        }
+        assertFalse(context.getParseErrors().isEmpty());
+    }
+
+    @Test
+    public void testEditsNotIsolatedToExpressions() {
+        String source = IncrementalReparseTest.SOURCE;
+        // Introduces a parse error
+        IncrementalReparseTest.assertReparse(IncrementalReparseTest.parse(source), source, "RETURN\n}\n\nmethod x/A.c", 6, "INVALID");
+        // Unterminated expression swallowing the following expressions
+        IncrementalReparseTest.assertReparse(IncrementalReparseTest.parse(source), source, "}\n\n// A comment", 1, "");
+        // Unterminated comment
+        IncrementalReparseTest.assertReparse(IncrementalReparseTest.parse(source), source, "// A comment", 2, "/*");
+        // Edits the version declaration
+        IncrementalReparseTest.assertReparse(IncrementalReparseTest.parse(source), source, "v1", 2, "v2");
+        IncrementalReparseTest.assertReparse(IncrementalReparseTest.parse(source), source, "softmap v1\n", "softmap v1\n".length(), "");
+        // Declares another version
+        IncrementalReparseTest.assertReparse(IncrementalReparseTest.parse(source), source, "// A comment", 0, "softmap v1\n");
+    }
+
+    @Test
+    public void testEditOutOfBounds() {
+        SoftmapContext context = IncrementalReparseTest.parse(IncrementalReparseTest.SOURCE);
+        assertThrows(IndexOutOfBoundsException.class, () -> context.reparse(IncrementalReparseTest.SOURCE.length(), 1, ""));
+        assertThrows(IndexOutOfBoundsException.class, () -> context.reparse(-1, 0, ""));
+        assertThrows(IndexOutOfBoundsException.class, () -> context.reparse(0, -1, ""));
+    }
+}
@@ -0,0 +1,97 @@
+package org.stianloader.softmap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.stianloader.softmap.SimpleFramedRemapper.MethodLoc;
+import org.stianloader.softmap.SoftmapContext.ApplicationResult;
+import org.stianloader.softmap.classpath.ClassNodeCache;
+import org.stianloader.softmap.classpath.ClassStore;
+
+public class IndexedJarTest {
+
+    private static final String SOFTMAP = "method a/Mapped?.getCount?()I {\n"
+            + "GETSTATIC a/Mapped?.count? I\n"
+            + "IRETURN\n"
+            + "}\n\n"
+            + "method x/A.increment?()V {\n"
+            + "*\n"
+            + "PUTSTATIC a/Mapped?.count? I\n"
+            + "*\n"
+            + "}\n";
+
+    private static List<ClassNode> newClasses() {
+        ClassNode node = TestClasses.newClass("x/A");
+        node.fields.add(new FieldNode(Opcodes.ACC_STATIC, "f", "I", null, null));
+        TestClasses.addMethod(node, "a", "()I", new FieldInsnNode(Opcodes.GETSTATIC, "x/A", "f", "I"), new InsnNode(Opcodes.IRETURN));
+        TestClasses.addMethod(node, "b", "()V", new FieldInsnNode(Opcodes.GETSTATIC, "x/A", "f", "I"), new InsnNode(Opcodes.ICONST_1),
+                new InsnNode(Opcodes.IADD), new FieldInsnNode(Opcodes.PUTSTATIC, "x/A", "f", "I"), new InsnNode(Opcodes.RETURN));
+        ClassNode other = TestClasses.newClass("x/B");
+        TestClasses.addMethod(other, "a", "()I", Opcodes.ICONST_0, Opcodes.IRETURN);
+        return Arrays.asList(node, other);
+    }
+
+    @Test
+    public void testIndexedJarMatchesDecodedClasses() throws IOException {
+        List<ClassNode> classes = IndexedJarTest.newClasses();
+        try (ClassStore store = ClassStore.onHeap()) {
+            for (ClassNode node : classes) {
+                store.add(TestClasses.toBytes(node));
+            }
+            // The cache only holds a single class, so that bodies are decoded again on demand
+            ClassNodeCache cache = new ClassNodeCache(store, 1, 0);
+            IndexedJar jar = new IndexedJar(cache);
+            assertTrue(jar.getInstructionSize() > 0);
+            InstructionStore instructions = jar.getInstructions();
+
+            SoftmapContext context = TestClasses.parse(IndexedJarTest.SOFTMAP);
+            ApplicationResult expected = context.tryApply(IndexedJarTest.newClasses());
+            assertEquals(Collections.emptyList(), TestClasses.getErrors(expected));
+            for (int i = 0; i < 2; i++) {
+                ApplicationResult result = context.tryApply(jar, null, null);
+                assertEquals(Collections.emptyList(), TestClasses.getErrors(result));
+                assertEquals(expected.getGeneratedTinyV1Mappings(), result.getGeneratedTinyV1Mappings());
+                assertEquals(Arrays.asList(new MethodLoc("x/A", "a", "()I"), new MethodLoc("x/A", "b", "()V")), result.getMatchedMethods());
+            }
+            assertSame(instructions, jar.getInstructions());
+        }
+    }
+
+    @Test
+    public void testIndexedJarOnlyKeepsHeaders() throws IOException {
+        try (ClassStore store = ClassStore.onHeap()) {
+            for (ClassNode node : IndexedJarTest.newClasses()) {
+                store.add(TestClasses.toBytes(node));
+            }
+            IndexedJar jar = new IndexedJar(new ClassNodeCache(store, 1, 0));
+            // Only the store of an indexed jar lives outside of the heap, stores built for a single application do not
+            assertTrue(jar.getInstructions().isDirect());
+            assertFalse(new MethodTable(IndexedJarTest.newClasses()).getInstructions().isDirect());
+            for (ClassNode header : jar.getHeaders()) {
+                header.methods.forEach(method -> assertEquals(0, method.instructions.size()));
+            }
+
+            InstructionStore.Cursor cursor = jar.getInstructions().open(0);
+            assertTrue(cursor.next());
+            assertEquals(Opcodes.GETSTATIC, cursor.getOpcode());
+            assertEquals("x/A", cursor.getOwner());
+            assertEquals("f", cursor.getName());
+            assertEquals("I", cursor.getDesc());
+            assertTrue(cursor.next());
+            assertEquals(Opcodes.IRETURN, cursor.getOpcode());
+        }
+    }
+}
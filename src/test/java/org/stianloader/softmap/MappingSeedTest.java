@@ -0,0 +1,131 @@
+package org.stianloader.softmap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.stianloader.softmap.SoftmapContext.ApplicationResult;
+
+public class MappingSeedTest {
+
+    private static final List<String> EXPECTED_MAPPINGS = Arrays.asList(
+            "CLASS\tx/A\tnamed/Outer",
+            "CLASS\tx/A$1\tnamed/Outer$Inner",
+            "CLASS\tx/B\tnamed/Other",
+            "FIELD\tx/A\tI\tf\tcount",
+            "METHOD\tx/A\t(Lx/B;)V\tm\trun");
+
+    private static final String ENIGMA = "CLASS x/A named/Outer\n"
+            + "\tCLASS 1 Inner\n"
+            + "\tFIELD f count I\n"
+            + "\tFIELD g I\n"
+            + "\tMETHOD m run (Lx/B;)V\n"
+            + "\t\tARG 1 other\n"
+            + "\tMETHOD <init> ()V\n"
+            + "CLASS x/B named/Other\n";
+
+    private static final String PROGUARD = "# compiler: R8\n"
+            + "named.Outer -> x.A:\n"
+            + "    int count -> f\n"
+            + "    1:2:void run(named.Other):3:4 -> m\n"
+            + "    # {\"id\":\"sourceFile\",\"fileName\":\"Outer.java\"}\n"
+            + "    5:5:void named.Other.inlined():10:10 -> m\n"
+            + "named.Outer$Inner -> x.A$1:\n"
+            + "named.Other -> x.B:\n";
+
+    private static final String TINY = "v1\tofficial\tnamed\n"
+            + "CLASS\tx/A\tnamed/Outer\n"
+            + "CLASS\tx/A$1\tnamed/Outer$Inner\n"
+            + "CLASS\tx/B\tnamed/Other\n"
+            + "# A comment\n"
+            + "FIELD\tx/A\tI\tf\tcount\n"
+            + "METHOD\tx/A\t(Lx/B;)V\tm\trun\n";
+
+    @NotNull
+    private static List<@NotNull ClassNode> newClasses() {
+        ClassNode outer = TestClasses.newClass("x/A");
+        outer.fields.add(new FieldNode(Opcodes.ACC_STATIC, "f", "I", null, null));
+        TestClasses.addMethod(outer, "m", "(Lx/B;)V", Opcodes.RETURN);
+        return new ArrayList<>(Arrays.asList(outer, TestClasses.newClass("x/A$1"), TestClasses.newClass("x/B")));
+    }
+
+    @NotNull
+    private static List<@NotNull String> apply(@NotNull String softmap, @Nullable MappingSeed seed) {
+        ApplicationResult result = TestClasses.parse(softmap).tryApply(MappingSeedTest.newClasses(), seed);
+        assertEquals(Collections.emptyList(), TestClasses.getErrors(result));
+        List<@NotNull String> mappings = new ArrayList<>(result.getGeneratedTinyV1Mappings());
+        Collections.sort(mappings);
+        return mappings;
+    }
+
+    @Test
+    public void testTinyV1() throws IOException {
+        MappingSeed seed = new MappingSeed().readTinyV1(new StringReader(MappingSeedTest.TINY));
+        assertEquals(5, seed.getMappingCount());
+        assertEquals(MappingSeedTest.EXPECTED_MAPPINGS, MappingSeedTest.apply("", seed));
+    }
+
+    @Test
+    public void testTinyV1RoundTrip() throws IOException {
+        MappingSeed seed = new MappingSeed().readTinyV1(new StringReader(MappingSeedTest.TINY));
+        ApplicationResult result = TestClasses.parse("").tryApply(MappingSeedTest.newClasses(), seed);
+        // The exported mappings can be read again without a header
+        MappingSeed exported = new MappingSeed().readTinyV1(new StringReader(String.join("\n", result.getGeneratedTinyV1Mappings())));
+        assertEquals(MappingSeedTest.EXPECTED_MAPPINGS, MappingSeedTest.apply("", exported));
+    }
+
+    @Test
+    public void testEnigma() throws IOException {
+        MappingSeed seed = new MappingSeed().readEnigma(new StringReader(MappingSeedTest.ENIGMA));
+        assertEquals(5, seed.getMappingCount());
+        assertEquals(MappingSeedTest.EXPECTED_MAPPINGS, MappingSeedTest.apply("", seed));
+    }
+
+    @Test
+    public void testProGuard() throws IOException {
+        MappingSeed seed = new MappingSeed().readProGuard(new StringReader(MappingSeedTest.PROGUARD));
+        assertEquals(5, seed.getMappingCount());
+        assertEquals(MappingSeedTest.EXPECTED_MAPPINGS, MappingSeedTest.apply("", seed));
+    }
+
+    @Test
+    public void testLaterMappingsTakePrecedence() throws IOException {
+        MappingSeed seed = new MappingSeed()
+                .readEnigma(new StringReader(MappingSeedTest.ENIGMA))
+                .readTinyV1(new StringReader("CLASS\tx/B\tnamed/Later\n"));
+        List<String> expected = new ArrayList<>(MappingSeedTest.EXPECTED_MAPPINGS);
+        expected.set(2, "CLASS\tx/B\tnamed/Later");
+        assertEquals(expected, MappingSeedTest.apply("", seed));
+    }
+
+    @Test
+    public void testExpressionsAgreeWithSeed() throws IOException {
+        MappingSeed seed = new MappingSeed().readTinyV1(new StringReader(MappingSeedTest.TINY));
+        assertEquals(MappingSeedTest.EXPECTED_MAPPINGS, MappingSeedTest.apply("method x/A.run?(Lx/B;)V {\nRETURN\n}\n", seed));
+
+        ApplicationResult conflicting = TestClasses.parse("method x/A.other?(Lx/B;)V {\nRETURN\n}\n").tryApply(MappingSeedTest.newClasses(), seed);
+        assertFalse(conflicting.getErrors().isEmpty());
+    }
+
+    @Test
+    public void testMalformedMappings() {
+        assertThrows(IOException.class, () -> new MappingSeed().readTinyV1(new StringReader("CLASS\tx/A\n")));
+        assertThrows(IOException.class, () -> new MappingSeed().readEnigma(new StringReader("FIELD f count I\n")));
+        assertThrows(IOException.class, () -> new MappingSeed().readEnigma(new StringReader("CLASS x/A\n\t\tCLASS 1 Inner\n")));
+        assertThrows(IOException.class, () -> new MappingSeed().readProGuard(new StringReader("    int count -> f\n")));
+        assertThrows(IOException.class, () -> new MappingSeed().readProGuard(new StringReader("named.Outer x.A\n")));
+    }
+}
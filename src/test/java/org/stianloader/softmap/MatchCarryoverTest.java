@@ -0,0 +1,93 @@
+package org.stianloader.softmap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.stianloader.softmap.SimpleFramedRemapper.MethodLoc;
+import org.stianloader.softmap.SoftmapContext.ApplicationResult;
+
+public class MatchCarryoverTest {
+
+    private static final String SOFTMAP = "method a/Mapped?.mapped?()I {\n*\nICONST_3\n*\n}\n";
+
+    private static List<ClassNode> newVersion(String owner, String name, boolean addDecoy) {
+        ClassNode node = TestClasses.newClass(owner);
+        TestClasses.addMethod(node, name, "()I", Opcodes.ICONST_2, Opcodes.ICONST_3, Opcodes.IADD, Opcodes.IRETURN);
+        TestClasses.addMethod(node, "other", "()I", Opcodes.ICONST_2, Opcodes.IRETURN);
+        if (addDecoy) {
+            TestClasses.addMethod(node, "decoy", "()I", Opcodes.ICONST_3, Opcodes.IRETURN);
+        }
+        return Collections.singletonList(node);
+    }
+
+    @Test
+    public void testCarryoverOfRenamedMethod() {
+        SoftmapContext context = TestClasses.parse(MatchCarryoverTest.SOFTMAP);
+        List<ClassNode> previous = MatchCarryoverTest.newVersion("x/A", "a", false);
+        ApplicationResult previousResult = context.tryApply(previous);
+        assertEquals(Collections.singletonList(new MethodLoc("x/A", "a", "()I")), previousResult.getMatchedMethods());
+
+        MatchCarryover carryover = new MatchCarryover(previous, previousResult);
+        List<ClassNode> next = MatchCarryoverTest.newVersion("y/B", "b", false);
+        ApplicationResult expected = context.tryApply(next);
+        ApplicationResult carried = context.tryApply(next, null, null, carryover);
+        assertEquals(Collections.emptyList(), TestClasses.getErrors(carried));
+        assertEquals(Collections.singletonList(new MethodLoc("y/B", "b", "()I")), carried.getMatchedMethods());
+        assertEquals(expected.getGeneratedTinyV1Mappings(), carried.getGeneratedTinyV1Mappings());
+    }
+
+    @Test
+    public void testCarryoverFallsBackWithoutUniqueMethod() {
+        SoftmapContext context = TestClasses.parse(MatchCarryoverTest.SOFTMAP);
+        List<ClassNode> previous = MatchCarryoverTest.newVersion("x/A", "a", false);
+        MatchCarryover carryover = new MatchCarryover(previous, context.tryApply(previous));
+
+        // The body changed, so the expression is matched against all methods
+        ClassNode changed = TestClasses.newClass("y/B");
+        TestClasses.addMethod(changed, "b", "()I", Opcodes.ICONST_3, Opcodes.ICONST_2, Opcodes.IADD, Opcodes.IRETURN);
+        ApplicationResult result = context.tryApply(Collections.singletonList(changed), null, null, carryover);
+        assertEquals(Collections.emptyList(), TestClasses.getErrors(result));
+        assertEquals(Collections.singletonList(new MethodLoc("y/B", "b", "()I")), result.getMatchedMethods());
+
+        // Two methods share the body, so neither is preferred and the ambiguity is reported
+        ClassNode duplicated = TestClasses.newClass("y/B");
+        TestClasses.addMethod(duplicated, "b", "()I", Opcodes.ICONST_2, Opcodes.ICONST_3, Opcodes.IADD, Opcodes.IRETURN);
+        TestClasses.addMethod(duplicated, "c", "()I", Opcodes.ICONST_2, Opcodes.ICONST_3, Opcodes.IADD, Opcodes.IRETURN);
+        result = context.tryApply(Collections.singletonList(duplicated), null, null, carryover);
+        assertEquals(1, result.getErrors().size());
+        assertEquals(Collections.singletonList(null), result.getMatchedMethods());
+    }
+
+    @Test
+    public void testCarriedMatchSkipsAmbiguityCheck() {
+        SoftmapContext context = TestClasses.parse(MatchCarryoverTest.SOFTMAP);
+        List<ClassNode> previous = MatchCarryoverTest.newVersion("x/A", "a", false);
+        MatchCarryover carryover = new MatchCarryover(previous, context.tryApply(previous));
+
+        List<ClassNode> next = MatchCarryoverTest.newVersion("y/B", "b", true);
+        assertEquals(1, context.tryApply(next).getErrors().size());
+        ApplicationResult carried = context.tryApply(next, null, null, carryover);
+        assertEquals(Collections.emptyList(), TestClasses.getErrors(carried));
+        assertEquals(Arrays.asList(new MethodLoc("y/B", "b", "()I")), carried.getMatchedMethods());
+    }
+
+    @Test
+    public void testCarryoverIgnoresUnmatchedExpressions() {
+        SoftmapContext context = TestClasses.parse(MatchCarryoverTest.SOFTMAP);
+        List<ClassNode> previous = MatchCarryoverTest.newVersion("x/A", "a", true);
+        ApplicationResult previousResult = context.tryApply(previous);
+        assertEquals(Collections.singletonList(null), previousResult.getMatchedMethods());
+
+        MatchCarryover carryover = new MatchCarryover(previous, previousResult);
+        List<ClassNode> next = MatchCarryoverTest.newVersion("y/B", "b", false);
+        ApplicationResult carried = context.tryApply(next, null, null, carryover);
+        assertEquals(context.tryApply(next).getGeneratedTinyV1Mappings(), carried.getGeneratedTinyV1Mappings());
+        assertEquals(Collections.singletonList(new MethodLoc("y/B", "b", "()I")), carried.getMatchedMethods());
+    }
+}
@@ -0,0 +1,91 @@
+package org.stianloader.softmap;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.stianloader.softmap.SoftmapContext.ApplicationResult;
+
+public class MemberIndexTest {
+
+    @NotNull
+    private static ClassNode newClass() {
+        ClassNode node = TestClasses.newClass("x/A");
+        TestClasses.addMethod(node, "a", "()V", new FieldInsnNode(Opcodes.GETSTATIC, "x/A", "f", "I"), new InsnNode(Opcodes.POP), new InsnNode(Opcodes.RETURN));
+        TestClasses.addMethod(node, "b", "()V", new FieldInsnNode(Opcodes.GETSTATIC, "x/B", "f", "I"), new InsnNode(Opcodes.POP), new InsnNode(Opcodes.RETURN));
+        TestClasses.addMethod(node, "c", "()V", new FieldInsnNode(Opcodes.GETSTATIC, "x/A", "g", "I"), new InsnNode(Opcodes.POP), new InsnNode(Opcodes.RETURN));
+        TestClasses.addMethod(node, "d", "()V", new MethodInsnNode(Opcodes.INVOKESTATIC, "x/A", "m", "()V", false), new InsnNode(Opcodes.RETURN));
+        TestClasses.addMethod(node, "e", "()V", new MethodInsnNode(Opcodes.INVOKESTATIC, "x/B", "m", "()V", false), new InsnNode(Opcodes.RETURN));
+        TestClasses.addMethod(node, "m", "()V", Opcodes.RETURN);
+        return node;
+    }
+
+    @NotNull
+    private static ClassNode newReferencedClass() {
+        ClassNode node = TestClasses.newClass("x/B");
+        TestClasses.addMethod(node, "m", "()V", Opcodes.RETURN);
+        return node;
+    }
+
+    @NotNull
+    private static MethodExpression parseExpression(@NotNull String body) {
+        return TestClasses.parse("method x/A.z?()V {\n" + body + "}\n").getMethodExpressions().get(0);
+    }
+
+    @Test
+    public void testFieldAnchors() {
+        List<ClassNode> nodes = Collections.singletonList(MemberIndexTest.newClass());
+        MemberIndex index = new MemberIndex(new MethodTable(nodes));
+        FramedRemapper remapper = new SimpleFramedRemapper(SimpleFramedRemapper.realmsOf(nodes));
+        assertArrayEquals(new int[] {0}, index.getAnchoredMethods(MemberIndexTest.parseExpression("GETSTATIC x/A.f I\nPOP\n"), remapper, 6));
+        assertArrayEquals(new int[] {0, 2}, index.getAnchoredMethods(MemberIndexTest.parseExpression("GETSTATIC x/A.f? I\nPOP\n"), remapper, 6));
+        assertArrayEquals(new int[] {0, 1}, index.getAnchoredMethods(MemberIndexTest.parseExpression("GETSTATIC .f I\nPOP\n"), remapper, 6));
+        assertArrayEquals(new int[0], index.getAnchoredMethods(MemberIndexTest.parseExpression("GETSTATIC x/C.f I\nPOP\n"), remapper, 6));
+        assertNull(index.getAnchoredMethods(MemberIndexTest.parseExpression("POP\nRETURN\n"), remapper, 6));
+    }
+
+    @Test
+    public void testInvokeAnchorsUseMappedNames() {
+        List<ClassNode> nodes = Collections.singletonList(MemberIndexTest.newClass());
+        MemberIndex index = new MemberIndex(new MethodTable(nodes));
+        FramedRemapper remapper = new SimpleFramedRemapper(SimpleFramedRemapper.realmsOf(nodes));
+        remapper.pushFrame();
+        assertArrayEquals(new int[] {3}, index.getAnchoredMethods(MemberIndexTest.parseExpression("INVOKESTATIC x/A.m()V\n"), remapper, 6));
+
+        remapper.mapMethod("x/A", "m", "()V", "renamed");
+        assertArrayEquals(new int[0], index.getAnchoredMethods(MemberIndexTest.parseExpression("INVOKESTATIC x/A.m()V\n"), remapper, 6));
+        assertArrayEquals(new int[] {3}, index.getAnchoredMethods(MemberIndexTest.parseExpression("INVOKESTATIC x/A.renamed()V\n"), remapper, 6));
+
+        // Names that are mapped by the expression itself are ignored, leaving only the owner
+        assertArrayEquals(new int[] {3}, index.getAnchoredMethods(MemberIndexTest.parseExpression("INVOKESTATIC x/A.other?()V\n"), remapper, 6));
+        assertArrayEquals(new int[] {4}, index.getAnchoredMethods(MemberIndexTest.parseExpression("INVOKESTATIC x/B.other?()V\n"), remapper, 6));
+
+        // Lookups are skipped if they cost more than evaluating the candidates
+        assertNull(index.getAnchoredMethods(MemberIndexTest.parseExpression("INVOKESTATIC x/A.m()V\n"), remapper, 2));
+    }
+
+    @Test
+    public void testAnchoredApplication() {
+        ApplicationResult result = TestClasses.apply("method x/A.readsA?()V {\nGETSTATIC x/A.f I\nPOP\nRETURN\n}\n"
+                + "method x/A.invokesB?()V {\nINVOKESTATIC x/B.m()V\nRETURN\n}\n", MemberIndexTest.newClass(), MemberIndexTest.newReferencedClass());
+        assertEquals(Collections.emptyList(), TestClasses.getErrors(result));
+        assertEquals(new HashSet<>(Arrays.asList("METHOD\tx/A\t()V\ta\treadsA", "METHOD\tx/A\t()V\te\tinvokesB")), new HashSet<>(result.getGeneratedTinyV1Mappings()));
+
+        // Methods shorter than the expression are still candidates even though they reference no anchors
+        result = TestClasses.apply("method x/A.short?()V {\nRETURN\nGETSTATIC x/C.f I\n}\n", MemberIndexTest.newClass());
+        assertEquals(Collections.emptyList(), TestClasses.getErrors(result));
+        assertEquals(Collections.singletonList("METHOD\tx/A\t()V\tm\tshort"), result.getGeneratedTinyV1Mappings());
+    }
+}
@@ -0,0 +1,92 @@
+package org.stianloader.softmap;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+public class MultiPatternMatcherTest {
+
+    private static final int[] OPCODES = {Opcodes.DUP, Opcodes.ISUB, Opcodes.POP, Opcodes.IADD, Opcodes.RETURN};
+
+    private static final String[] OPCODE_NAMES = {"DUP", "ISUB", "POP", "IADD", "RETURN"};
+
+    /**
+     * Checks whether an expression matches a method by applying the expression on a class containing only the method.
+     */
+    private static boolean matches(@NotNull String body, @NotNull MethodNode method) {
+        ClassNode node = TestClasses.newClass("x/A");
+        node.methods.add(method);
+        return TestClasses.apply("method x/A.mapped?()V {\n" + body + "}\n", node).getErrors().isEmpty();
+    }
+
+    @Test
+    public void testCandidatesContainEveryMatchedMethod() {
+        Random random = new Random(28);
+        for (int round = 0; round < 20; round++) {
+            ClassNode node = TestClasses.newClass("x/A");
+            for (int i = 0; i < 30; i++) {
+                int[] opcodes = new int[random.nextInt(7)];
+                for (int j = 0; j < opcodes.length; j++) {
+                    opcodes[j] = MultiPatternMatcherTest.OPCODES[random.nextInt(MultiPatternMatcherTest.OPCODES.length)];
+                }
+                TestClasses.addMethod(node, "m" + i, "()V", opcodes);
+            }
+
+            List<String> bodies = new ArrayList<>();
+            StringBuilder softmap = new StringBuilder();
+            for (int i = 0; i < 10; i++) {
+                StringBuilder body = new StringBuilder();
+                for (int j = random.nextInt(4) + 1; j != 0; j--) {
+                    if (random.nextInt(4) == 0) {
+                        body.append("*\n");
+                    } else {
+                        body.append(MultiPatternMatcherTest.OPCODE_NAMES[random.nextInt(MultiPatternMatcherTest.OPCODE_NAMES.length)]).append('\n');
+                    }
+                }
+                bodies.add(body.toString());
+                softmap.append("method x/A.mapped").append(i).append("?()V {\n").append(body).append("}\n");
+            }
+
+            List<MethodExpression> expressions = TestClasses.parse(softmap.toString()).getMethodExpressions();
+            MultiPatternMatcher.Candidates candidates = new MultiPatternMatcher(expressions).scan(new MethodTable(Collections.singletonList(node)));
+            for (int expr = 0; expr < bodies.size(); expr++) {
+                int[] ordinals = candidates.get(expr);
+                if (ordinals == null) {
+                    continue;
+                }
+                for (int ordinal = 0; ordinal < node.methods.size(); ordinal++) {
+                    if (MultiPatternMatcherTest.matches(bodies.get(expr), node.methods.get(ordinal))) {
+                        assertTrue(Arrays.binarySearch(ordinals, ordinal) >= 0, "Expression " + bodies.get(expr) + " matches m" + ordinal + " but it is not a candidate");
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMethodsWithoutRunsAreDiscarded() {
+        ClassNode node = TestClasses.newClass("x/A");
+        TestClasses.addMethod(node, "a", "()V", Opcodes.DUP, Opcodes.POP, Opcodes.RETURN);
+        TestClasses.addMethod(node, "b", "()V", Opcodes.ISUB, Opcodes.POP, Opcodes.DUP, Opcodes.RETURN);
+        TestClasses.addMethod(node, "c", "()V", Opcodes.ISUB, Opcodes.DUP, Opcodes.POP, Opcodes.POP, Opcodes.RETURN);
+        // Shorter than the expression
+        TestClasses.addMethod(node, "d", "()V", Opcodes.RETURN);
+
+        List<MethodExpression> expressions = TestClasses.parse("method x/A.a?()V {\nDUP\nPOP\n*\n}\n"
+                + "method x/A.b?()V {\n*\nDUP\nPOP\n*\n}\n").getMethodExpressions();
+        MultiPatternMatcher.Candidates candidates = new MultiPatternMatcher(expressions).scan(new MethodTable(Collections.singletonList(node)));
+        assertArrayEquals(new int[] {0, 3}, candidates.get(0));
+        assertArrayEquals(new int[] {0, 2, 3}, candidates.get(1));
+    }
+}
@@ -0,0 +1,61 @@
+package org.stianloader.softmap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.stianloader.softmap.SoftmapContext.ApplicationResult;
+
+public class OpcodeIndexTest {
+
+    @NotNull
+    private static ClassNode newClass() {
+        ClassNode node = TestClasses.newClass("x/A");
+        TestClasses.addMethod(node, "a", "()V", new InsnNode(Opcodes.DUP), new InsnNode(Opcodes.POP), new LabelNode(), new InsnNode(Opcodes.DUP), new InsnNode(Opcodes.ISUB), new InsnNode(Opcodes.RETURN));
+        TestClasses.addMethod(node, "b", "()I", Opcodes.ISUB, Opcodes.ISUB, Opcodes.IADD, Opcodes.IADD, Opcodes.IADD, Opcodes.IRETURN);
+        return node;
+    }
+
+    @Test
+    public void testNextOccurrence() {
+        OpcodeIndex index = new OpcodeIndex(new MethodTable(Collections.singletonList(OpcodeIndexTest.newClass())));
+        assertEquals(0, index.getNextOccurrence(0, Opcodes.DUP, 0));
+        // Pseudo-instructions count towards the offset
+        assertEquals(3, index.getNextOccurrence(0, Opcodes.DUP, 1));
+        assertEquals(3, index.getNextOccurrence(0, Opcodes.DUP, 3));
+        assertEquals(6, index.getNextOccurrence(0, Opcodes.DUP, 4));
+        assertEquals(4, index.getNextOccurrence(0, Opcodes.ISUB, 0));
+        assertEquals(6, index.getNextOccurrence(0, Opcodes.IADD, 0));
+        assertEquals(2, index.getNextOccurrence(1, Opcodes.IADD, 0));
+        assertEquals(4, index.getNextOccurrence(1, Opcodes.IADD, 4));
+        assertEquals(6, index.getNextOccurrence(1, Opcodes.DUP, 0));
+        assertEquals(6, index.getNextOccurrence(1, Opcodes.RETURN, 0));
+    }
+
+    @Test
+    public void testSeededWildcards() {
+        ApplicationResult result = TestClasses.apply("method x/A.first?()V {\nDUP\n*\nISUB\n*\n}\n"
+                + "method x/A.second?()I {\nISUB\n*\nIADD\nIADD\n*\n}\n", OpcodeIndexTest.newClass());
+        assertEquals(Collections.emptyList(), TestClasses.getErrors(result));
+        assertEquals(new HashSet<>(Arrays.asList("METHOD\tx/A\t()V\ta\tfirst", "METHOD\tx/A\t()I\tb\tsecond")), new HashSet<>(result.getGeneratedTinyV1Mappings()));
+
+        // Trailing wildcards consume all remaining instructions
+        result = TestClasses.apply("method x/A.first?()V {\nDUP\nPOP\n*\n}\n", OpcodeIndexTest.newClass());
+        assertEquals(Collections.emptyList(), TestClasses.getErrors(result));
+        assertEquals(Collections.singletonList("METHOD\tx/A\t()V\ta\tfirst"), result.getGeneratedTinyV1Mappings());
+
+        // The following block is not present after the wildcard
+        assertEquals(1, TestClasses.apply("method x/A.first?()V {\nDUP\n*\nIADD\n*\n}\n", OpcodeIndexTest.newClass()).getErrors().size());
+
+        // Wildcards stop at the first occurrence of the following block, even if the expression then fails to match
+        assertEquals(1, TestClasses.apply("method x/A.second?()I {\nISUB\n*\nIADD\nIRETURN\n*\n}\n", OpcodeIndexTest.newClass()).getErrors().size());
+    }
+}
@@ -0,0 +1,131 @@
+package org.stianloader.softmap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.stianloader.softmap.SoftmapContext.ApplicationResult;
+
+public class ReleaseTest {
+
+    private static final String SOFTMAP = "method x/A.add?()I {\n"
+            + "IADD\n"
+            + "IRETURN\n"
+            + "}\n"
+            + "\n"
+            + "method x/A.multiply?()I {\n"
+            + "IMUL\n"
+            + "IRETURN\n"
+            + "}\n"
+            + "\n"
+            + "method x/A.invalid?()I {\n"
+            + "NOT_AN_OPCODE\n"
+            + "}\n";
+
+    @NotNull
+    private static List<@NotNull ClassNode> newClasses() {
+        ClassNode node = TestClasses.newClass("x/A");
+        TestClasses.addMethod(node, "a", "()I", Opcodes.IADD, Opcodes.IRETURN);
+        TestClasses.addMethod(node, "b", "()I", Opcodes.ISUB, Opcodes.IRETURN);
+        return Collections.singletonList(node);
+    }
+
+    @NotNull
+    private static List<@NotNull String> describeErrors(@NotNull ApplicationResult result) {
+        List<@NotNull String> errors = new ArrayList<>();
+        for (SoftmapApplicationError error : result.getErrors()) {
+            errors.add(error.getErrorLocation().describeLocation() + ": " + error.getDescription());
+        }
+        return errors;
+    }
+
+    @NotNull
+    private static SoftmapContext parse() {
+        String source = "softmap v1\n\n" + ReleaseTest.SOFTMAP;
+        return SoftmapContext.parse(source, 0, source.length(), 1, 1);
+    }
+
+    @Test
+    public void testReleasedContextAppliesIdentically() {
+        ApplicationResult expected = ReleaseTest.parse().tryApply(ReleaseTest.newClasses());
+        assertFalse(expected.getErrors().isEmpty());
+        assertEquals(2, expected.getGeneratedTinyV1Mappings().size());
+
+        SoftmapContext released = ReleaseTest.parse().release();
+        ApplicationResult result = released.tryApply(ReleaseTest.newClasses());
+        assertEquals(expected.getGeneratedTinyV1Mappings(), result.getGeneratedTinyV1Mappings());
+        assertEquals(ReleaseTest.describeErrors(expected), ReleaseTest.describeErrors(result));
+
+        released.setCompilingMatchers(true);
+        result = released.tryApply(ReleaseTest.newClasses());
+        assertEquals(expected.getGeneratedTinyV1Mappings(), result.getGeneratedTinyV1Mappings());
+        assertEquals(ReleaseTest.describeErrors(expected), ReleaseTest.describeErrors(result));
+    }
+
+    @Test
+    public void testReleasedContextDropsBodyTokens() {
+        SoftmapContext context = ReleaseTest.parse();
+        List<String> declarations = new ArrayList<>();
+        for (MethodExpression expr : context.getMethodExpressions()) {
+            assertFalse(expr.getTokens().isEmpty());
+            declarations.add(expr.getDeclaringLocation().describeLocation() + " " + expr.getDeclaringLocation().getText());
+        }
+        List<SoftmapParseError> parseErrors = context.getParseErrors();
+        assertFalse(parseErrors.isEmpty());
+
+        SoftmapContext released = context.release();
+        List<String> releasedDeclarations = new ArrayList<>();
+        for (MethodExpression expr : released.getMethodExpressions()) {
+            assertTrue(expr.getTokens().isEmpty());
+            releasedDeclarations.add(expr.getDeclaringLocation().describeLocation() + " " + expr.getDeclaringLocation().getText());
+        }
+        assertEquals(declarations, releasedDeclarations);
+        assertSame(parseErrors, released.getParseErrors());
+        // The original expressions are left untouched
+        for (MethodExpression expr : context.getMethodExpressions()) {
+            assertFalse(expr.getTokens().isEmpty());
+        }
+    }
+
+    @Test
+    public void testOriginalContextCanBeReparsed() {
+        SoftmapContext context = ReleaseTest.parse();
+        SoftmapContext released = context.release();
+        List<String> locations = new ArrayList<>();
+        for (MethodExpression expr : released.getMethodExpressions()) {
+            locations.add(expr.getDeclaringLocation().describeLocation() + " " + Objects.requireNonNull(expr.getMethodLocation()).getText());
+        }
+        ApplicationResult expected = released.tryApply(ReleaseTest.newClasses());
+
+        String source = "softmap v1\n\n" + ReleaseTest.SOFTMAP;
+        SoftmapContext reparsed = context.reparse(source.indexOf("IADD"), 0, "\n\n\n");
+        assertEquals(3, reparsed.getMethodExpressions().get(1).getDeclaringLocation().getRow() - context.getMethodExpressions().get(1).getDeclaringLocation().getRow());
+
+        List<String> releasedLocations = new ArrayList<>();
+        for (MethodExpression expr : released.getMethodExpressions()) {
+            releasedLocations.add(expr.getDeclaringLocation().describeLocation() + " " + Objects.requireNonNull(expr.getMethodLocation()).getText());
+        }
+        assertEquals(locations, releasedLocations);
+        ApplicationResult result = released.tryApply(ReleaseTest.newClasses());
+        assertEquals(ReleaseTest.describeErrors(expected), ReleaseTest.describeErrors(result));
+    }
+
+    @Test
+    public void testReleasedContextCannotBeReparsed() {
+        SoftmapContext released = ReleaseTest.parse().release();
+        assertThrows(IllegalStateException.class, () -> released.reparse(0, 0, ""));
+        // Releasing a released context is permitted
+        assertEquals(released.getMethodExpressions().size(), released.release().getMethodExpressions().size());
+    }
+}
@@ -0,0 +1,110 @@
+package org.stianloader.softmap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.stianloader.softmap.SimpleFramedRemapper.MethodLoc;
+import org.stianloader.softmap.SoftmapContext.ApplicationResult;
+
+public class SuggestionTest {
+
+    private static final String SOFTMAP = "method x/A.compute?()I {\n"
+            + "GETSTATIC x/A.f I\n"
+            + "ICONST_2\n"
+            + "IMUL\n"
+            + "INVOKESTATIC x/A.helper()I\n"
+            + "ICONST_1\n"
+            + "IADD\n"
+            + "IRETURN\n"
+            + "}\n";
+
+    @NotNull
+    private static AbstractInsnNode @NotNull[] newBody() {
+        return new AbstractInsnNode[] {
+            new FieldInsnNode(Opcodes.GETSTATIC, "x/A", "f", "I"),
+            new InsnNode(Opcodes.ICONST_2),
+            new InsnNode(Opcodes.IMUL),
+            new MethodInsnNode(Opcodes.INVOKESTATIC, "x/A", "helper", "()I", false),
+            new InsnNode(Opcodes.ICONST_1),
+            new InsnNode(Opcodes.IADD),
+            new InsnNode(Opcodes.IRETURN)
+        };
+    }
+
+    @NotNull
+    private static ClassNode newOwner() {
+        ClassNode owner = TestClasses.newClass("x/A");
+        owner.fields.add(new FieldNode(Opcodes.ACC_STATIC, "f", "I", null, null));
+        TestClasses.addMethod(owner, "helper", "()I", Opcodes.ICONST_0, Opcodes.IRETURN);
+        return owner;
+    }
+
+    @NotNull
+    private static List<@NotNull ClassNode> newClasses() {
+        ClassNode owner = SuggestionTest.newOwner();
+        TestClasses.addMethod(owner, "other", "()V", Opcodes.RETURN);
+        // The method moved to another class and gained an argument
+        ClassNode other = TestClasses.newClass("x/B");
+        TestClasses.addMethod(other, "noise", "()V", Opcodes.ICONST_0, Opcodes.POP, Opcodes.RETURN);
+        TestClasses.addMethod(other, "moved", "(I)I", SuggestionTest.newBody());
+        return Arrays.asList(owner, other);
+    }
+
+    @NotNull
+    private static List<@NotNull MethodLoc> getSuggestions(int suggestionCount) {
+        SoftmapContext context = TestClasses.parse(SuggestionTest.SOFTMAP);
+        context.setSuggestionCount(suggestionCount);
+        assertEquals(suggestionCount, context.getSuggestionCount());
+        ApplicationResult result = context.tryApply(SuggestionTest.newClasses());
+        assertEquals(1, result.getErrors().size());
+        return result.getErrors().get(0).getSuggestions();
+    }
+
+    @Test
+    public void testNoSuggestionsByDefault() {
+        assertEquals(Collections.emptyList(), SuggestionTest.getSuggestions(0));
+    }
+
+    @Test
+    public void testMovedMethodIsSuggested() {
+        List<MethodLoc> suggestions = SuggestionTest.getSuggestions(3);
+        assertFalse(suggestions.isEmpty());
+        assertTrue(suggestions.size() <= 3);
+        assertEquals(new MethodLoc("x/B", "moved", "(I)I"), suggestions.get(0));
+        assertFalse(suggestions.contains(new MethodLoc("x/B", "noise", "()V")), suggestions::toString);
+
+        assertEquals(Collections.singletonList(new MethodLoc("x/B", "moved", "(I)I")), SuggestionTest.getSuggestions(1));
+    }
+
+    @Test
+    public void testMatchedExpressionsHaveNoSuggestions() {
+        ClassNode owner = SuggestionTest.newOwner();
+        TestClasses.addMethod(owner, "c", "()I", SuggestionTest.newBody());
+        SoftmapContext context = TestClasses.parse(SuggestionTest.SOFTMAP);
+        context.setSuggestionCount(3);
+        ApplicationResult result = context.tryApply(Collections.singletonList(owner));
+        assertEquals(Collections.emptyList(), TestClasses.getErrors(result));
+        assertEquals(Collections.singletonList("METHOD\tx/A\t()I\tc\tcompute"), result.getGeneratedTinyV1Mappings());
+    }
+
+    @Test
+    public void testInvalidSuggestionCount() {
+        SoftmapContext context = TestClasses.parse(SuggestionTest.SOFTMAP);
+        assertThrows(IllegalArgumentException.class, () -> context.setSuggestionCount(-1));
+    }
+}
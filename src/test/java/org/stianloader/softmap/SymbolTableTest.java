@@ -0,0 +1,91 @@
+package org.stianloader.softmap;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+
+public class SymbolTableTest {
+
+    @Test
+    public void testIdsAreDense() {
+        SymbolTable symbols = new SymbolTable();
+        // Enough symbols to rehash the table multiple times
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(i, symbols.getId("symbol" + i));
+        }
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(i, symbols.getId(new String("symbol" + i)));
+        }
+        String[] all = symbols.getSymbols();
+        assertEquals(5000, all.length);
+        assertEquals("symbol4999", all[4999]);
+    }
+
+    @Test
+    public void testInterning() {
+        SymbolTable symbols = new SymbolTable();
+        String owner = symbols.intern("java/lang/Object");
+        char[] buffer = "CLASS\tjava/lang/Object\ta".toCharArray();
+        assertSame(owner, symbols.intern(buffer, 6, 22));
+        assertSame(owner, symbols.intern(new String("java/lang/Object")));
+        assertEquals("", symbols.intern(buffer, 0, 0));
+        assertSame(symbols.intern(buffer, 0, 5), symbols.intern("CLASS"));
+        assertArrayEquals(new String[] {"java/lang/Object", "", "CLASS"}, symbols.getSymbols());
+    }
+
+    @Test
+    public void testHeaders() {
+        SymbolTable symbols = new SymbolTable();
+        ClassNode first = TestClasses.newClass(new String("x/A"));
+        first.fields.add(new FieldNode(Opcodes.ACC_STATIC, new String("f"), new String("I"), null, null));
+        TestClasses.addMethod(first, new String("f"), "()I", Opcodes.ICONST_0, Opcodes.IRETURN);
+        ClassNode second = TestClasses.newClass(new String("x/A"));
+        second.fields.add(new FieldNode(Opcodes.ACC_STATIC, new String("f"), new String("I"), null, null));
+        symbols.internHeader(first);
+        symbols.internHeader(second);
+        assertSame(first.name, second.name);
+        assertSame(first.superName, second.superName);
+        assertSame(first.fields.get(0).name, second.fields.get(0).name);
+        assertSame(first.fields.get(0).name, first.methods.get(0).name);
+        assertSame(first.fields.get(0).desc, second.fields.get(0).desc);
+    }
+
+    @Test
+    public void testConcurrentInterning() throws Exception {
+        SymbolTable symbols = new SymbolTable();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String[]>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                futures.add(executor.submit(() -> {
+                    String[] interned = new String[2000];
+                    for (int i = 0; i < interned.length; i++) {
+                        interned[i] = symbols.intern("symbol" + i);
+                    }
+                    return interned;
+                }));
+            }
+            String[] expected = futures.get(0).get();
+            for (Future<String[]> future : futures) {
+                String[] interned = future.get();
+                for (int i = 0; i < interned.length; i++) {
+                    assertSame(expected[i], interned[i]);
+                }
+            }
+            assertEquals(2000, symbols.getSymbols().length);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
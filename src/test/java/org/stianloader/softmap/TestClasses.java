@@ -0,0 +1,119 @@
+package org.stianloader.softmap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.jetbrains.annotations.NotNull;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.stianloader.softmap.SoftmapContext.ApplicationResult;
+
+/**
+ * Builds the classes and softmap files the tests apply expressions on.
+ */
+final class TestClasses {
+
+    @NotNull
+    static MethodNode addMethod(@NotNull ClassNode node, @NotNull String name, @NotNull String desc, @NotNull AbstractInsnNode... insns) {
+        MethodNode method = new MethodNode(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, name, desc, null, null);
+        for (AbstractInsnNode insn : insns) {
+            method.instructions.add(insn);
+        }
+        method.maxStack = 8;
+        method.maxLocals = 8;
+        node.methods.add(method);
+        return method;
+    }
+
+    @NotNull
+    static MethodNode addMethod(@NotNull ClassNode node, @NotNull String name, @NotNull String desc, int... opcodes) {
+        AbstractInsnNode[] insns = new AbstractInsnNode[opcodes.length];
+        for (int i = 0; i < opcodes.length; i++) {
+            insns[i] = new InsnNode(opcodes[i]);
+        }
+        return TestClasses.addMethod(node, name, desc, insns);
+    }
+
+    @NotNull
+    static ApplicationResult apply(@NotNull String body, @NotNull ClassNode... nodes) {
+        return TestClasses.parse(body).tryApply(new ArrayList<>(Arrays.asList(nodes)));
+    }
+
+    /**
+     * Obtains the descriptions of the errors of an application, which make for more readable assertion failures than the errors.
+     *
+     * @param result The result of the application.
+     * @return The descriptions of the errors.
+     */
+    @NotNull
+    static List<@NotNull String> getErrors(@NotNull ApplicationResult result) {
+        List<@NotNull String> errors = new ArrayList<>();
+        for (SoftmapApplicationError error : result.getErrors()) {
+            errors.add(error.getDescription());
+        }
+        return errors;
+    }
+
+    @NotNull
+    static ClassNode newClass(@NotNull String name) {
+        ClassNode node = new ClassNode();
+        node.version = Opcodes.V1_8;
+        node.access = Opcodes.ACC_PUBLIC;
+        node.name = name;
+        node.superName = "java/lang/Object";
+        return node;
+    }
+
+    /**
+     * Parses a softmap file, failing if it contains any parse errors.
+     *
+     * @param body The contents of the file, without the version declaration.
+     * @return The context.
+     */
+    @NotNull
+    static SoftmapContext parse(@NotNull String body) {
+        String source = "softmap v1\n\n" + body;
+        SoftmapContext context = SoftmapContext.parse(source, 0, source.length(), 1, 1);
+        List<String> parseErrors = new ArrayList<>();
+        for (SoftmapParseError error : context.getParseErrors()) {
+            parseErrors.add(error.getDescription());
+        }
+        assertEquals(new ArrayList<>(), parseErrors);
+        return context;
+    }
+
+    static byte @NotNull[] toBytes(@NotNull ClassNode node) {
+        ClassWriter writer = new ClassWriter(0);
+        node.accept(writer);
+        return writer.toByteArray();
+    }
+
+    @NotNull
+    static Path writeJar(@NotNull Path jar, @NotNull ClassNode... nodes) throws IOException {
+        try (OutputStream out = Files.newOutputStream(jar); ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (ClassNode node : nodes) {
+                zip.putNextEntry(new ZipEntry(node.name + ".class"));
+                zip.write(TestClasses.toBytes(node));
+                zip.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    private TestClasses() {
+        throw new AssertionError();
+    }
+}
@@ -0,0 +1,138 @@
+package org.stianloader.softmap.classpath;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+
+public class ClassProviderTest {
+
+    private static byte @NotNull[] newClass(@NotNull String name, int padding) {
+        ClassNode node = new ClassNode();
+        node.version = Opcodes.V1_8;
+        node.access = Opcodes.ACC_PUBLIC;
+        node.name = name;
+        node.superName = "java/lang/Object";
+        char[] value = new char[padding];
+        Arrays.fill(value, 'x');
+        node.fields.add(new FieldNode(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "padding", "Ljava/lang/String;", null, new String(value)));
+        ClassWriter writer = new ClassWriter(0);
+        node.accept(writer);
+        return writer.toByteArray();
+    }
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    public void testDirectory() throws IOException {
+        byte[] classFile = ClassProviderTest.newClass("x/y/A", 10);
+        Path file = this.temporaryDirectory.resolve("x/y/A.class");
+        Files.createDirectories(file.getParent());
+        Files.write(file, classFile);
+
+        ClassProvider provider = ClassProvider.ofDirectory(this.temporaryDirectory);
+        assertArrayEquals(classFile, provider.getClassBytes("x/y/A"));
+        assertNull(provider.getClassBytes("x/y/B"));
+        assertNull(provider.getClassBytes("x/z/A"));
+    }
+
+    @Test
+    public void testJar() throws IOException {
+        byte[] classFile = ClassProviderTest.newClass("x/A", 10);
+        Path jar = this.temporaryDirectory.resolve("classes.jar");
+        try (OutputStream out = Files.newOutputStream(jar); ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.putNextEntry(new ZipEntry("x/A.class"));
+            zip.write(classFile);
+            zip.closeEntry();
+        }
+
+        try (JarClassProvider provider = ClassProvider.ofJar(jar)) {
+            assertArrayEquals(classFile, provider.getClassBytes("x/A"));
+            assertNull(provider.getClassBytes("x/B"));
+        }
+
+        try (ClassStore store = ClassStore.onHeap()) {
+            store.addJar(jar);
+            assertEquals(1, store.getClassCount());
+            assertArrayEquals(classFile, store.getClassBytes("x/A"));
+        }
+    }
+
+    @Test
+    public void testRuntime() throws IOException {
+        ClassProvider provider = ClassProvider.ofRuntime();
+        byte[] object = provider.getClassBytes("java/lang/Object");
+        assertNotNull(object);
+        assertEquals("java/lang/Object", new ClassReader(object).getClassName());
+        assertNotNull(provider.getClassBytes("java/util/Map$Entry"));
+        assertNull(provider.getClassBytes("java/lang/Missing"));
+        assertNull(provider.getClassBytes("Missing"));
+        // Classes of the application class path are not part of the runtime
+        assertNull(provider.getClassBytes("org/stianloader/softmap/classpath/ClassProviderTest"));
+        assertNull(provider.getClassBytes("org/objectweb/asm/ClassReader"));
+    }
+
+    @Test
+    public void testComposite() throws IOException {
+        byte[] first = ClassProviderTest.newClass("x/A", 10);
+        byte[] second = ClassProviderTest.newClass("x/A", 20);
+        byte[] other = ClassProviderTest.newClass("x/B", 10);
+        ClassProvider provider = ClassProvider.of(
+                (name) -> name.equals("x/A") ? first : null,
+                (name) -> name.equals("x/A") ? second : name.equals("x/B") ? other : null);
+        assertSame(first, provider.getClassBytes("x/A"));
+        assertSame(other, provider.getClassBytes("x/B"));
+        assertNull(provider.getClassBytes("x/C"));
+    }
+
+    @Test
+    public void testHeaderCache() {
+        byte[] classFile = ClassProviderTest.newClass("x/A", 10);
+        AtomicInteger requests = new AtomicInteger();
+        ClassHeaderCache cache = new ClassHeaderCache((name) -> {
+            requests.incrementAndGet();
+            if (name.equals("x/Broken")) {
+                throw new IOException("Broken class");
+            }
+            return name.equals("x/A") ? classFile : null;
+        }, 2);
+
+        assertEquals("x/A", cache.getHeader("x/A").name);
+        assertEquals("padding", cache.getHeader("x/A").fields.get(0).name);
+        assertNull(cache.getHeader("x/B"));
+        // Both the header and the absence of the class are cached
+        assertSame(cache.getHeader("x/A"), cache.getHeader("x/A"));
+        assertNull(cache.getHeader("x/B"));
+        assertEquals(2, requests.get());
+
+        // Evicts the least recently used entry, that is x/A
+        assertNull(cache.getHeader("x/C"));
+        assertEquals("x/A", cache.getHeader("x/A").name);
+        assertEquals(4, requests.get());
+
+        assertThrows(UncheckedIOException.class, () -> cache.getHeader("x/Broken"));
+        assertThrows(IllegalArgumentException.class, () -> new ClassHeaderCache(ClassProvider.ofRuntime(), 0));
+    }
+}
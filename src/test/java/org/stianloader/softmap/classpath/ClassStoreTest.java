@@ -0,0 +1,129 @@
+package org.stianloader.softmap.classpath;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+
+public class ClassStoreTest {
+
+    private static byte @NotNull[] newClass(@NotNull String name, int padding) {
+        ClassNode node = new ClassNode();
+        node.version = Opcodes.V1_8;
+        node.access = Opcodes.ACC_PUBLIC;
+        node.name = name;
+        node.superName = "java/lang/Object";
+        char[] value = new char[padding];
+        Arrays.fill(value, 'x');
+        node.fields.add(new FieldNode(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "padding", "Ljava/lang/String;", null, new String(value)));
+        ClassWriter writer = new ClassWriter(0);
+        node.accept(writer);
+        return writer.toByteArray();
+    }
+
+    private static void assertRoundTrip(@NotNull ClassStore store) throws IOException {
+        // Enough class files to outgrow the initial mapping of a segment multiple times
+        byte[][] classFiles = new byte[64][];
+        for (int i = 0; i < classFiles.length; i++) {
+            classFiles[i] = ClassStoreTest.newClass("x/C" + i, 1000 + i * 100);
+            assertEquals(i, store.add(classFiles[i]));
+        }
+
+        assertEquals(classFiles.length, store.getClassCount());
+        for (int i = 0; i < classFiles.length; i++) {
+            assertArrayEquals(classFiles[i], store.getClassBytes(i));
+            assertArrayEquals(classFiles[i], store.getClassBytes("x/C" + i));
+            assertEquals("x/C" + i, store.getClassName(i));
+            assertEquals(classFiles[i].length, store.getClassSize(i));
+            assertEquals("x/C" + i, store.readHeader(i).name);
+        }
+        assertNull(store.getClassBytes("x/Missing"));
+        assertEquals(-1, store.getClassIndex("x/Missing"));
+    }
+
+    @Test
+    public void testHeapRoundTrip() throws IOException {
+        try (ClassStore store = ClassStore.onHeap()) {
+            ClassStoreTest.assertRoundTrip(store);
+        }
+    }
+
+    @Test
+    public void testMappedRoundTrip() throws IOException {
+        try (ClassStore store = ClassStore.mapped()) {
+            ClassStoreTest.assertRoundTrip(store);
+        }
+    }
+
+    @Test
+    public void testShadowedClasses() throws IOException {
+        try (ClassStore store = ClassStore.mapped()) {
+            byte[] first = ClassStoreTest.newClass("x/A", 10);
+            byte[] second = ClassStoreTest.newClass("x/A", 20);
+            store.add(first);
+            store.add(second);
+            assertEquals(1, store.getClassIndex("x/A"));
+            assertArrayEquals(second, store.getClassBytes("x/A"));
+            assertArrayEquals(first, store.getClassBytes(0));
+        }
+    }
+
+    @Test
+    public void testClosedStore() throws IOException {
+        for (ClassStore store : new ClassStore[] {ClassStore.onHeap(), ClassStore.mapped()}) {
+            store.add(ClassStoreTest.newClass("x/A", 10));
+            store.close();
+            // Closing twice is permitted
+            store.close();
+            assertThrows(IllegalStateException.class, () -> store.getClassBytes(0));
+            assertThrows(IllegalStateException.class, () -> store.getClassBytes("x/A"));
+            assertThrows(IllegalStateException.class, () -> store.add(ClassStoreTest.newClass("x/B", 10)));
+        }
+    }
+
+    @Test
+    public void testIndexOutOfBounds() throws IOException {
+        try (ClassStore store = ClassStore.mapped()) {
+            store.add(ClassStoreTest.newClass("x/A", 10));
+            assertThrows(IndexOutOfBoundsException.class, () -> store.getClassBytes(1));
+            assertThrows(IndexOutOfBoundsException.class, () -> store.getClassBytes(-1));
+        }
+    }
+
+    @Test
+    public void testNodeCache() throws IOException {
+        try (ClassStore store = ClassStore.mapped()) {
+            byte[] a = ClassStoreTest.newClass("x/A", 100);
+            byte[] b = ClassStoreTest.newClass("x/B", 100);
+            store.add(a);
+            store.add(b);
+            // Only room for a single class
+            ClassNodeCache cache = new ClassNodeCache(store, a.length + b.length - 1, 0);
+
+            ClassNode nodeA = cache.getClassNode(0);
+            assertEquals("x/A", nodeA.name);
+            assertSame(nodeA, cache.getClassNode(0));
+            assertEquals(1, cache.getMissCount());
+            assertEquals(1, cache.getHitCount());
+
+            assertEquals("x/B", cache.getClassNode(1).name);
+            assertEquals(1, cache.getEvictionCount());
+            assertNotSame(nodeA, cache.getClassNode(0));
+            assertEquals(3, cache.getMissCount());
+            assertEquals(2, cache.getEvictionCount());
+            assertSame(store, cache.getStore());
+        }
+    }
+}